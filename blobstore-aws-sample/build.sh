@@ -1,3 +1,4 @@
+mvn -f ../blobstore-common/pom.xml clean install
 mvn clean package
 #echo "yes" | cf delete object-store 
 cf push
@@ -0,0 +1,68 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.admission;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counting semaphore over bytes. Used to bound the memory held by in-flight transfer buffers.
+ */
+public class ByteBudget {
+
+    private final long capacity;
+
+    private final AtomicLong inFlight = new AtomicLong();
+
+    public ByteBudget(long capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Budget capacity must be positive");
+        }
+        this.capacity = capacity;
+    }
+
+    /**
+     * Reserves the given number of bytes without blocking.
+     *
+     * @param bytes bytes to reserve, at most the capacity
+     * @return true if the bytes were reserved
+     */
+    public boolean tryAcquire(long bytes) {
+        if (bytes > capacity) {
+            throw new IllegalArgumentException("Reservation of " + bytes + " exceeds budget of " + capacity);
+        }
+        while (true) {
+            long current = inFlight.get();
+            if (current + bytes > capacity) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + bytes)) {
+                return true;
+            }
+        }
+    }
+
+    public void release(long bytes) {
+        inFlight.addAndGet(-bytes);
+    }
+
+    public long getCapacity() {
+        return capacity;
+    }
+
+    public long getInFlight() {
+        return inFlight.get();
+    }
+}
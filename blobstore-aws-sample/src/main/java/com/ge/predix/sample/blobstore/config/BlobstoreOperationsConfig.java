@@ -0,0 +1,59 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.config;
+
+import com.ge.predix.sample.blobstore.repository.AsyncBlobstoreOperations;
+import com.ge.predix.sample.blobstore.repository.BlobstoreOperations;
+import com.ge.predix.sample.blobstore.repository.SyncBlobstoreOperations;
+import com.ge.predix.sample.blobstore.spi.BlobStoreBackend;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Selects the implementation behind the asynchronous endpoints with blobstore.service.mode:
+ * "async" runs Object Store calls on the async executor, "sync" runs them on the request thread.
+ */
+@Configuration
+public class BlobstoreOperationsConfig {
+    Log log = LogFactory.getLog(BlobstoreOperationsConfig.class);
+
+    @Value("${blobstore.service.mode:async}")
+    private String mode;
+
+    @Autowired
+    private BlobStoreBackend objectStoreService;
+
+    @Autowired
+    private ExecutorService asyncExecutor;
+
+    @Bean
+    public BlobstoreOperations blobstoreOperations() {
+        log.info("blobstoreOperations(): mode = " + mode);
+        if ("sync".equalsIgnoreCase(mode)) {
+            return new SyncBlobstoreOperations(objectStoreService);
+        }
+        if ("async".equalsIgnoreCase(mode)) {
+            return new AsyncBlobstoreOperations(objectStoreService, asyncExecutor);
+        }
+        throw new IllegalArgumentException("Unknown blobstore.service.mode: " + mode);
+    }
+}
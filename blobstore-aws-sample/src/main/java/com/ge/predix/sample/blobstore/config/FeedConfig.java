@@ -0,0 +1,102 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.config;
+
+import com.ge.predix.sample.blobstore.feed.ChangeFeed;
+import com.ge.predix.sample.blobstore.meta.BlobMetadataService;
+import com.ge.predix.sample.blobstore.spi.BlobStoreBackend;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Builds the change feed when enabled, appends the changes made through the metadata service
+ * and scans the Object Store periodically for the rest.
+ */
+@Configuration
+@EnableConfigurationProperties({FeedProperties.class})
+@ConditionalOnProperty(prefix = "blobstore.feed", name = "enabled")
+public class FeedConfig {
+
+    Log log = LogFactory.getLog(FeedConfig.class);
+
+    @Autowired
+    private FeedProperties feedProperties;
+
+    @Autowired
+    private BlobStoreBackend objectStoreService;
+
+    @Autowired
+    private BlobMetadataService blobMetadataService;
+
+    @Autowired
+    private ExecutorService transferExecutor;
+
+    @Bean
+    public ChangeFeed changeFeed() {
+        ChangeFeed feed = new ChangeFeed(feedProperties.getRetainedEvents());
+        blobMetadataService.addListener(feed);
+        return feed;
+    }
+
+    @Bean(destroyMethod = "shutdownNow")
+    public ScheduledExecutorService feedScanScheduler() {
+        final ChangeFeed feed = changeFeed();
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    feed.scan(objectStoreService, transferExecutor, feedProperties.getScanParallelism(),
+                            feedProperties.getPageSize());
+                } catch (Exception e) {
+                    // Keep the schedule, the next scan diffs against the last good snapshot
+                    log.error("feedScanScheduler(): Scan failed : " + e.getMessage());
+                }
+            }
+        }, 0, feedProperties.getScanIntervalMinutes(), TimeUnit.MINUTES);
+        return scheduler;
+    }
+
+    @Bean
+    public PublicMetrics feedMetrics() {
+        final ChangeFeed feed = changeFeed();
+        return new PublicMetrics() {
+            @Override
+            public Collection<Metric<?>> metrics() {
+                Collection<Metric<?>> metrics = new ArrayList<>();
+                metrics.add(new Metric<Long>("blobstore.feed.sequence", feed.lastSequence()));
+                metrics.add(new Metric<Long>("blobstore.feed.snapshot.size", (long) feed.getSnapshotSize()));
+                metrics.add(new Metric<Long>("blobstore.feed.snapshot.bytes", feed.getSnapshotMemoryBytes()));
+                metrics.add(new Metric<Long>("blobstore.feed.scan.millis", feed.getLastScanDurationMillis()));
+                return metrics;
+            }
+        };
+    }
+}
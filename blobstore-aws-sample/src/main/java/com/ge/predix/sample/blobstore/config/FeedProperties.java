@@ -0,0 +1,103 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Settings of the change feed behind /v1/blobs/changes.
+ */
+@ConfigurationProperties(prefix = "blobstore.feed", locations = "classpath:application.yml")
+public class FeedProperties {
+
+    /**
+     * Records changes and scans the Object Store for changes made elsewhere
+     */
+    private boolean enabled = false;
+
+    /**
+     * Events kept for readers, a reader further behind has to resynchronize
+     */
+    private int retainedEvents = 100000;
+
+    /**
+     * Minutes between the end of one scan and the start of the next
+     */
+    private long scanIntervalMinutes = 15;
+
+    /**
+     * Key ranges of the Object Store listed at once while scanning
+     */
+    private int scanParallelism = 8;
+
+    /**
+     * Keys requested per listing call while scanning
+     */
+    private int pageSize = 1000;
+
+    /**
+     * Most events returned by one read of the feed
+     */
+    private int maxPageEvents = 1000;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getRetainedEvents() {
+        return retainedEvents;
+    }
+
+    public void setRetainedEvents(int retainedEvents) {
+        this.retainedEvents = retainedEvents;
+    }
+
+    public long getScanIntervalMinutes() {
+        return scanIntervalMinutes;
+    }
+
+    public void setScanIntervalMinutes(long scanIntervalMinutes) {
+        this.scanIntervalMinutes = scanIntervalMinutes;
+    }
+
+    public int getScanParallelism() {
+        return scanParallelism;
+    }
+
+    public void setScanParallelism(int scanParallelism) {
+        this.scanParallelism = scanParallelism;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public void setPageSize(int pageSize) {
+        this.pageSize = pageSize;
+    }
+
+    public int getMaxPageEvents() {
+        return maxPageEvents;
+    }
+
+    public void setMaxPageEvents(int maxPageEvents) {
+        this.maxPageEvents = maxPageEvents;
+    }
+}
@@ -0,0 +1,104 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Settings of the in memory metadata index behind /v1/blobs/search.
+ */
+@ConfigurationProperties(prefix = "blobstore.index", locations = "classpath:application.yml")
+public class IndexProperties {
+
+    /**
+     * Builds the index at startup and serves searches from it
+     */
+    private boolean enabled = false;
+
+    /**
+     * Key ranges of the Object Store listed at once while scanning
+     */
+    private int scanParallelism = 8;
+
+    /**
+     * Keys requested per listing call while scanning
+     */
+    private int pageSize = 1000;
+
+    /**
+     * Minutes between the end of one scan and the start of the next, which reconciles the index
+     * with changes not made through this instance
+     */
+    private long reconcileIntervalMinutes = 60;
+
+    /**
+     * Largest page a search returns
+     */
+    private int maxResults = 1000;
+
+    /**
+     * Index entries a search examines before returning a short page with a cursor
+     */
+    private int maxScanned = 100000;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getScanParallelism() {
+        return scanParallelism;
+    }
+
+    public void setScanParallelism(int scanParallelism) {
+        this.scanParallelism = scanParallelism;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public void setPageSize(int pageSize) {
+        this.pageSize = pageSize;
+    }
+
+    public long getReconcileIntervalMinutes() {
+        return reconcileIntervalMinutes;
+    }
+
+    public void setReconcileIntervalMinutes(long reconcileIntervalMinutes) {
+        this.reconcileIntervalMinutes = reconcileIntervalMinutes;
+    }
+
+    public int getMaxResults() {
+        return maxResults;
+    }
+
+    public void setMaxResults(int maxResults) {
+        this.maxResults = maxResults;
+    }
+
+    public int getMaxScanned() {
+        return maxScanned;
+    }
+
+    public void setMaxScanned(int maxScanned) {
+        this.maxScanned = maxScanned;
+    }
+}
@@ -0,0 +1,145 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Write-behind mode: uploads are acknowledged once journaled on local disk and copied to the
+ * Object Store in the background.
+ */
+@ConfigurationProperties(prefix = "blobstore.journal", locations = "classpath:application.yml")
+public class JournalProperties {
+
+    /**
+     * Turns write-behind on or off
+     */
+    private boolean enabled = false;
+
+    /**
+     * Directory of the journal segments
+     */
+    private String directory = "blobstore-journal";
+
+    /**
+     * Size at which a new segment file is started
+     */
+    private long segmentBytes = 64L * 1024 * 1024;
+
+    /**
+     * Bytes the journal may take up, uploads wait for space beyond that
+     */
+    private long maxBytes = 4L * 1024 * 1024 * 1024;
+
+    /**
+     * Force uploads to the storage device before acknowledging them
+     */
+    private boolean fsync = true;
+
+    /**
+     * How long an upload waits for space before it is written through to the Object Store
+     */
+    private long waitMillis = 1000;
+
+    /**
+     * Uploads copied to the Object Store at the same time
+     */
+    private int uploadThreads = 4;
+
+    /**
+     * Delay before a failed copy is retried
+     */
+    private long retryDelayMillis = 5000;
+
+    /**
+     * Largest upload journaled, larger ones are written through. Kept below the 5 MB at which uploads become multipart, so
+     * journaled uploads are copied with a single PUT and keep the MD5 ETag they were
+     * acknowledged with
+     */
+    private long maxObjectBytes = 5242879;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public String getDirectory() {
+        return directory;
+    }
+
+    public void setDirectory(String directory) {
+        this.directory = directory;
+    }
+
+    public long getSegmentBytes() {
+        return segmentBytes;
+    }
+
+    public void setSegmentBytes(long segmentBytes) {
+        this.segmentBytes = segmentBytes;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    public boolean isFsync() {
+        return fsync;
+    }
+
+    public void setFsync(boolean fsync) {
+        this.fsync = fsync;
+    }
+
+    public long getWaitMillis() {
+        return waitMillis;
+    }
+
+    public void setWaitMillis(long waitMillis) {
+        this.waitMillis = waitMillis;
+    }
+
+    public int getUploadThreads() {
+        return uploadThreads;
+    }
+
+    public void setUploadThreads(int uploadThreads) {
+        this.uploadThreads = uploadThreads;
+    }
+
+    public long getRetryDelayMillis() {
+        return retryDelayMillis;
+    }
+
+    public void setRetryDelayMillis(long retryDelayMillis) {
+        this.retryDelayMillis = retryDelayMillis;
+    }
+
+    public long getMaxObjectBytes() {
+        return maxObjectBytes;
+    }
+
+    public void setMaxObjectBytes(long maxObjectBytes) {
+        this.maxObjectBytes = maxObjectBytes;
+    }
+}
@@ -0,0 +1,45 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.config;
+
+import com.ge.predix.sample.blobstore.routing.KeyLayout;
+import com.ge.predix.sample.blobstore.routing.KeyLayoutBackend;
+import com.ge.predix.sample.blobstore.spi.BlobStoreBackend;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Puts the configured KeyLayout in front of the backend.
+ */
+public class KeyLayoutDecorator {
+
+    private final KeyLayout layout;
+
+    private final ExecutorService executor;
+
+    public KeyLayoutDecorator(KeyLayout layout, ExecutorService executor) {
+        this.layout = layout;
+        this.executor = executor;
+    }
+
+    public KeyLayout getLayout() {
+        return layout;
+    }
+
+    public BlobStoreBackend decorate(BlobStoreBackend backend) {
+        return new KeyLayoutBackend(backend, layout, executor);
+    }
+}
@@ -0,0 +1,53 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Key layout used to spread sequential ids, such as timestamped device uploads, over several
+ * key ranges of the bucket.
+ */
+@ConfigurationProperties(prefix = "blobstore.layout", locations = "classpath:application.yml")
+public class KeyLayoutProperties {
+
+    /**
+     * Stores Blobs under a hashed prefix of their id, Blobs stored without it can still be read
+     * and deleted but are no longer listed
+     */
+    private boolean enabled = false;
+
+    /**
+     * Number of hashed prefixes, every listing page sends at least one LIST to each of them
+     */
+    private int partitions = 16;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getPartitions() {
+        return partitions;
+    }
+
+    public void setPartitions(int partitions) {
+        this.partitions = partitions;
+    }
+}
@@ -0,0 +1,68 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.config;
+
+import com.ge.predix.sample.blobstore.listing.ListingCache;
+import com.ge.predix.sample.blobstore.meta.BlobMetadataService;
+import com.ge.predix.sample.blobstore.spi.BlobStoreBackend;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.ArrayList;
+import java.util.Collection;
+
+/**
+ * Provides the listing cache behind paged listings and publishes its hit rate on /metrics.
+ */
+@Configuration
+@EnableConfigurationProperties({ListingProperties.class})
+public class ListingConfig {
+
+    @Autowired
+    private ListingProperties listingProperties;
+
+    @Autowired
+    private BlobStoreBackend objectStoreService;
+
+    @Autowired
+    private BlobMetadataService blobMetadataService;
+
+    @Bean
+    public ListingCache listingCache() {
+        ListingCache cache = new ListingCache(objectStoreService, listingProperties.getCacheTtlMillis(), listingProperties.getCacheMaxEntries());
+        blobMetadataService.addListener(cache);
+        return cache;
+    }
+
+    @Bean
+    public PublicMetrics listingMetrics() {
+        final ListingCache cache = listingCache();
+        return new PublicMetrics() {
+            @Override
+            public Collection<Metric<?>> metrics() {
+                Collection<Metric<?>> metrics = new ArrayList<>();
+                metrics.add(new Metric<Long>("blobstore.listing.cache.hits", cache.getHits()));
+                metrics.add(new Metric<Long>("blobstore.listing.cache.misses", cache.getMisses()));
+                metrics.add(new Metric<Long>("blobstore.listing.cache.size", (long) cache.size()));
+                return metrics;
+            }
+        };
+    }
+}
@@ -15,9 +15,15 @@
  *******************************************************************************/
 package com.ge.predix.sample.blobstore.config;
 
+import com.amazonaws.ClientConfiguration;
 import com.amazonaws.auth.BasicAWSCredentials;
 import com.amazonaws.services.s3.AmazonS3Client;
+import com.ge.predix.sample.blobstore.fs.FileSystemBackend;
 import com.ge.predix.sample.blobstore.repository.BlobstoreService;
+import com.ge.predix.sample.blobstore.resilience.ResiliencePolicy;
+import com.ge.predix.sample.blobstore.io.ContentTypeDetector;
+import com.ge.predix.sample.blobstore.transfer.ObjectStreamManager;
+import com.ge.predix.sample.blobstore.spi.BlobStoreBackend;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -26,8 +32,11 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Profile;
 
+import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutorService;
 
 @Configuration
 @Profile("default")
@@ -38,12 +47,74 @@ public class LocalConfig {
     @Autowired
     private BlobstoreProperties objectStoreProperties;
 
+    @Autowired
+    private ResiliencePolicy resiliencePolicy;
+
+    @Autowired
+    private TransferProperties transferProperties;
+
+    @Autowired
+    private ExecutorService requestExecutor;
+
+    @Autowired
+    private ObjectStreamManager objectStreamManager;
+
+    @Autowired
+    private ContentTypeDetector contentTypeDetector;
+
+    @Autowired(required = false)
+    private ShardedBackends shardedBackends;
+
+    @Autowired(required = false)
+    private JournalDecorator journalDecorator;
+
+    @Autowired(required = false)
+    private TierDecorator tierDecorator;
+
+    @Autowired(required = false)
+    private KeyLayoutDecorator keyLayoutDecorator;
+
+    @Autowired(required = false)
+    private CoalescingDecorator coalescingDecorator;
+
     @Bean
-    public BlobstoreService objectStoreService() {
+    public BlobStoreBackend objectStoreService() {
+        BlobStoreBackend backend = createBackend();
+        if (journalDecorator != null) {
+            backend = journalDecorator.decorate(backend);
+        }
+        if (tierDecorator != null) {
+            backend = tierDecorator.decorate(backend);
+        }
+        if (keyLayoutDecorator != null) {
+            backend = keyLayoutDecorator.decorate(backend);
+        }
+        return coalescingDecorator != null ? coalescingDecorator.decorate(backend) : backend;
+    }
+
+    private BlobStoreBackend createBackend() {
+        if (shardedBackends != null) {
+            return shardedBackends.create();
+        }
+        if ("filesystem".equalsIgnoreCase(objectStoreProperties.getBackend())) {
+            log.info("objectStoreService(): filesystem backend at " + objectStoreProperties.getFilesystemRoot());
+            try {
+                return new FileSystemBackend(Paths.get(objectStoreProperties.getFilesystemRoot()),
+                        objectStoreProperties.isFilesystemFsync());
+            } catch (IOException e) {
+                log.error("objectStoreService(): Couldnt create the filesystem backend. Exception = " + e.getMessage());
+                throw new RuntimeException("Blobstore filesystem root is invalid", e);
+            }
+        }
         log.info("objectStoreService(): " + objectStoreProperties.getAccessKey()
                 + objectStoreProperties.getSecretKey() + ", " + objectStoreProperties.getBucket());
 
-        AmazonS3Client s3Client = new AmazonS3Client(new BasicAWSCredentials(objectStoreProperties.getAccessKey(), objectStoreProperties.getSecretKey()));
+        // Retries are handled by the ResiliencePolicy
+        ClientConfiguration config = new ClientConfiguration();
+        config.setMaxErrorRetry(0);
+        config.setMaxConnections(transferProperties.getMaxConnections());
+
+        AmazonS3Client s3Client = new AmazonS3Client(new BasicAWSCredentials(objectStoreProperties.getAccessKey(), objectStoreProperties.getSecretKey()), config);
         s3Client.setEndpoint(objectStoreProperties.getUrl());
 
         try {
@@ -52,7 +123,12 @@ public class LocalConfig {
             String urlWithoutCredentials = url.getProtocol() + "://" + url.getHost();
 
             // Return BlobstoreService
-            return new BlobstoreService(s3Client, objectStoreProperties.getBucket(), urlWithoutCredentials);
+            BlobstoreService blobstoreService = new BlobstoreService(s3Client, objectStoreProperties.getBucket(), urlWithoutCredentials);
+            blobstoreService.setResiliencePolicy(resiliencePolicy);
+            blobstoreService.setTransferExecutor(requestExecutor, transferProperties.getMaxParallelParts());
+            blobstoreService.setObjectStreamManager(objectStreamManager);
+            blobstoreService.setContentTypeDetector(contentTypeDetector);
+            return blobstoreService;
         } catch (MalformedURLException e) {
             log.error("create(): Couldnt parse the URL provided by VCAP_SERVICES. Exception = " + e.getMessage());
             throw new RuntimeException("Blobstore URL is Invalid", e);
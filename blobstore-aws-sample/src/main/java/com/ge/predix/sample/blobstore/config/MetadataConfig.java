@@ -0,0 +1,49 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.config;
+
+import com.ge.predix.sample.blobstore.meta.BlobMetadataService;
+import com.ge.predix.sample.blobstore.meta.MetadataCache;
+import com.ge.predix.sample.blobstore.spi.BlobStoreBackend;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Provides the metadata reads behind the meta endpoints. Batches fan out on the transfer executor.
+ */
+@Configuration
+@EnableConfigurationProperties({MetadataProperties.class})
+public class MetadataConfig {
+
+    @Autowired
+    private MetadataProperties metadataProperties;
+
+    @Autowired
+    private BlobStoreBackend objectStoreService;
+
+    @Autowired
+    private ExecutorService transferExecutor;
+
+    @Bean
+    public BlobMetadataService blobMetadataService() {
+        MetadataCache cache = new MetadataCache(metadataProperties.getCacheTtlMillis(), metadataProperties.getCacheMaxEntries());
+        return new BlobMetadataService(objectStoreService, transferExecutor, metadataProperties.getMaxConcurrency(), cache);
+    }
+}
@@ -0,0 +1,145 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Timeouts, retries and hedging applied to calls against the Object Store.
+ */
+@ConfigurationProperties(prefix = "blobstore.resilience", locations = "classpath:application.yml")
+public class ResilienceProperties {
+
+    /**
+     * Timeout applied to operations without an entry in operationTimeoutMillis
+     */
+    private int defaultTimeoutMillis = 30000;
+
+    /**
+     * Per-operation timeouts keyed by operation name (get, head, list, delete, put, uploadPart, ...)
+     */
+    private Map<String, Integer> operationTimeoutMillis = new HashMap<>();
+
+    /**
+     * Total attempts for an idempotent call, including the first one
+     */
+    private int maxAttempts = 4;
+
+    /**
+     * Smallest delay between attempts
+     */
+    private long baseBackoffMillis = 50;
+
+    /**
+     * Largest delay between attempts
+     */
+    private long maxBackoffMillis = 5000;
+
+    /**
+     * Send a second GET when the first has not answered after the hedge quantile latency
+     */
+    private boolean hedgeEnabled = true;
+
+    /**
+     * Latency quantile after which a hedged request is sent
+     */
+    private double hedgeQuantile = 0.95;
+
+    /**
+     * Lower bound on the hedge delay, avoids hedging everything when the store is fast
+     */
+    private long hedgeMinDelayMillis = 20;
+
+    /**
+     * Samples needed before hedging starts
+     */
+    private int hedgeMinSamples = 50;
+
+    public int getDefaultTimeoutMillis() {
+        return defaultTimeoutMillis;
+    }
+
+    public void setDefaultTimeoutMillis(int defaultTimeoutMillis) {
+        this.defaultTimeoutMillis = defaultTimeoutMillis;
+    }
+
+    public Map<String, Integer> getOperationTimeoutMillis() {
+        return operationTimeoutMillis;
+    }
+
+    public void setOperationTimeoutMillis(Map<String, Integer> operationTimeoutMillis) {
+        this.operationTimeoutMillis = operationTimeoutMillis;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public void setMaxAttempts(int maxAttempts) {
+        this.maxAttempts = maxAttempts;
+    }
+
+    public long getBaseBackoffMillis() {
+        return baseBackoffMillis;
+    }
+
+    public void setBaseBackoffMillis(long baseBackoffMillis) {
+        this.baseBackoffMillis = baseBackoffMillis;
+    }
+
+    public long getMaxBackoffMillis() {
+        return maxBackoffMillis;
+    }
+
+    public void setMaxBackoffMillis(long maxBackoffMillis) {
+        this.maxBackoffMillis = maxBackoffMillis;
+    }
+
+    public boolean isHedgeEnabled() {
+        return hedgeEnabled;
+    }
+
+    public void setHedgeEnabled(boolean hedgeEnabled) {
+        this.hedgeEnabled = hedgeEnabled;
+    }
+
+    public double getHedgeQuantile() {
+        return hedgeQuantile;
+    }
+
+    public void setHedgeQuantile(double hedgeQuantile) {
+        this.hedgeQuantile = hedgeQuantile;
+    }
+
+    public long getHedgeMinDelayMillis() {
+        return hedgeMinDelayMillis;
+    }
+
+    public void setHedgeMinDelayMillis(long hedgeMinDelayMillis) {
+        this.hedgeMinDelayMillis = hedgeMinDelayMillis;
+    }
+
+    public int getHedgeMinSamples() {
+        return hedgeMinSamples;
+    }
+
+    public void setHedgeMinSamples(int hedgeMinSamples) {
+        this.hedgeMinSamples = hedgeMinSamples;
+    }
+}
@@ -0,0 +1,137 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.config;
+
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.services.s3.AmazonS3Client;
+import com.ge.predix.sample.blobstore.io.ContentTypeDetector;
+import com.ge.predix.sample.blobstore.repository.BlobstoreService;
+import com.ge.predix.sample.blobstore.resilience.ResiliencePolicy;
+import com.ge.predix.sample.blobstore.routing.KeyLayout;
+import com.ge.predix.sample.blobstore.routing.RoutingBackend;
+import com.ge.predix.sample.blobstore.routing.ShardStats;
+import com.ge.predix.sample.blobstore.spi.BlobStoreBackend;
+import com.ge.predix.sample.blobstore.transfer.ObjectStreamManager;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Provides the shards behind the RoutingBackend, one S3 client and connection pool per bucket,
+ * and publishes per shard request counts on /metrics.
+ */
+@Configuration
+@EnableConfigurationProperties({RoutingProperties.class})
+@ConditionalOnProperty(prefix = "blobstore.routing", name = "enabled")
+public class RoutingConfig {
+    Log log = LogFactory.getLog(RoutingConfig.class);
+
+    @Autowired
+    private RoutingProperties routingProperties;
+
+    @Autowired(required = false)
+    private KeyLayoutDecorator keyLayoutDecorator;
+
+    @Autowired
+    private ResiliencePolicy resiliencePolicy;
+
+    @Autowired
+    private TransferProperties transferProperties;
+
+    @Autowired
+    private ExecutorService requestExecutor;
+
+    @Autowired
+    private ObjectStreamManager objectStreamManager;
+
+    @Autowired
+    private ContentTypeDetector contentTypeDetector;
+
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService routingExecutor() {
+        return Executors.newFixedThreadPool(Math.max(4, routingProperties.getShards().size() * 4));
+    }
+
+    @Bean
+    public ShardedBackends shardedBackends() {
+        KeyLayout layout = keyLayoutDecorator != null ? keyLayoutDecorator.getLayout() : null;
+        return new ShardedBackends(routingProperties, routingExecutor(), layout) {
+            @Override
+            protected BlobStoreBackend createShard(RoutingProperties.Shard shard) {
+                // Retries are handled by the ResiliencePolicy
+                ClientConfiguration config = new ClientConfiguration();
+                config.setMaxErrorRetry(0);
+                config.setMaxConnections(shard.getMaxConnections());
+                config.setConnectionTimeout(shard.getConnectionTimeoutMillis());
+                config.setSocketTimeout(shard.getSocketTimeoutMillis());
+
+                AmazonS3Client s3Client = new AmazonS3Client(new BasicAWSCredentials(shard.getAccessKey(), shard.getSecretKey()), config);
+                s3Client.setEndpoint(shard.getUrl());
+
+                try {
+                    // Remove the Credentials from the Object Store URL
+                    URL url = new URL(shard.getUrl());
+                    String urlWithoutCredentials = url.getProtocol() + "://" + url.getHost();
+
+                    BlobstoreService blobstoreService = new BlobstoreService(s3Client, shard.getBucket(), urlWithoutCredentials);
+                    blobstoreService.setResiliencePolicy(resiliencePolicy);
+                    blobstoreService.setTransferExecutor(requestExecutor, transferProperties.getMaxParallelParts());
+                    blobstoreService.setObjectStreamManager(objectStreamManager);
+                    blobstoreService.setContentTypeDetector(contentTypeDetector);
+                    return blobstoreService;
+                } catch (MalformedURLException e) {
+                    log.error("createShard(): Couldnt parse the URL of shard " + shard.getName() + ". Exception = " + e.getMessage());
+                    throw new RuntimeException("Shard URL is Invalid", e);
+                }
+            }
+        };
+    }
+
+    @Bean
+    public PublicMetrics routingMetrics() {
+        final ShardedBackends shardedBackends = shardedBackends();
+        return new PublicMetrics() {
+            @Override
+            public Collection<Metric<?>> metrics() {
+                Collection<Metric<?>> metrics = new ArrayList<>();
+                RoutingBackend backend = shardedBackends.getBackend();
+                if (backend != null) {
+                    for (ShardStats stats : backend.getStats()) {
+                        String prefix = "blobstore.routing." + stats.getName();
+                        metrics.add(new Metric<Long>(prefix + ".requests", stats.getRequests()));
+                        metrics.add(new Metric<Long>(prefix + ".failures", stats.getFailures()));
+                        metrics.add(new Metric<Long>(prefix + ".millis", stats.getTotalMillis()));
+                    }
+                }
+                return metrics;
+            }
+        };
+    }
+}
@@ -0,0 +1,175 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Buckets and endpoints Blobs are spread over once a single bucket runs into its request rate
+ * limits. Each shard gets its own client and connection pool.
+ */
+@ConfigurationProperties(prefix = "blobstore.routing", locations = "classpath:application.yml")
+public class RoutingProperties {
+
+    /**
+     * Turns routing on, the single configured bucket is used when off
+     */
+    private boolean enabled = false;
+
+    /**
+     * Points each shard gets on the hash ring, more points spread keys more evenly
+     */
+    private int virtualNodes = 128;
+
+    /**
+     * Buckets keys are spread over, the order does not matter to the hash ring
+     */
+    private List<Shard> shards = new ArrayList<>();
+
+    /**
+     * Key prefixes pinned to a shard by name, the longest matching prefix wins
+     */
+    private Map<String, String> prefixRules = new LinkedHashMap<>();
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getVirtualNodes() {
+        return virtualNodes;
+    }
+
+    public void setVirtualNodes(int virtualNodes) {
+        this.virtualNodes = virtualNodes;
+    }
+
+    public List<Shard> getShards() {
+        return shards;
+    }
+
+    public void setShards(List<Shard> shards) {
+        this.shards = shards;
+    }
+
+    public Map<String, String> getPrefixRules() {
+        return prefixRules;
+    }
+
+    public void setPrefixRules(Map<String, String> prefixRules) {
+        this.prefixRules = prefixRules;
+    }
+
+    public static class Shard {
+
+        /**
+         * Name used by prefix rules and metrics, and the shard's place on the hash ring
+         */
+        private String name;
+
+        private String bucket;
+
+        /**
+         * Endpoint including the credentials, as in blobstore.url
+         */
+        private String url;
+
+        private String accessKey;
+
+        private String secretKey;
+
+        /**
+         * Size of this shard's HTTP connection pool
+         */
+        private int maxConnections = 50;
+
+        private int connectionTimeoutMillis = 10000;
+
+        private int socketTimeoutMillis = 50000;
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public String getBucket() {
+            return bucket;
+        }
+
+        public void setBucket(String bucket) {
+            this.bucket = bucket;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        public void setUrl(String url) {
+            this.url = url;
+        }
+
+        public String getAccessKey() {
+            return accessKey;
+        }
+
+        public void setAccessKey(String accessKey) {
+            this.accessKey = accessKey;
+        }
+
+        public String getSecretKey() {
+            return secretKey;
+        }
+
+        public void setSecretKey(String secretKey) {
+            this.secretKey = secretKey;
+        }
+
+        public int getMaxConnections() {
+            return maxConnections;
+        }
+
+        public void setMaxConnections(int maxConnections) {
+            this.maxConnections = maxConnections;
+        }
+
+        public int getConnectionTimeoutMillis() {
+            return connectionTimeoutMillis;
+        }
+
+        public void setConnectionTimeoutMillis(int connectionTimeoutMillis) {
+            this.connectionTimeoutMillis = connectionTimeoutMillis;
+        }
+
+        public int getSocketTimeoutMillis() {
+            return socketTimeoutMillis;
+        }
+
+        public void setSocketTimeoutMillis(int socketTimeoutMillis) {
+            this.socketTimeoutMillis = socketTimeoutMillis;
+        }
+    }
+}
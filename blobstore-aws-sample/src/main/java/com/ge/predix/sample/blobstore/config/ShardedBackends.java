@@ -0,0 +1,88 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.config;
+
+import com.ge.predix.sample.blobstore.routing.KeyLayout;
+import com.ge.predix.sample.blobstore.routing.KeyRouter;
+import com.ge.predix.sample.blobstore.routing.RoutingBackend;
+import com.ge.predix.sample.blobstore.spi.BlobStoreBackend;
+import com.ge.predix.sample.blobstore.write.ConditionalWrites;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Builds the RoutingBackend over the configured shards. Subclasses create the client of a
+ * single shard. With a key layout in front of the routing, keys are routed on their ids.
+ * Staging keys of conditional writes are routed like the key they are staged for, so moving
+ * them into place stays on one shard.
+ */
+public abstract class ShardedBackends {
+
+    Log log = LogFactory.getLog(ShardedBackends.class);
+
+    private final RoutingProperties routingProperties;
+
+    private final ExecutorService executor;
+
+    private final KeyLayout layout;
+
+    private static final KeyRouter.KeyMapping STAGING_TARGET = new KeyRouter.KeyMapping() {
+        @Override
+        public String routingKey(String key) {
+            return ConditionalWrites.targetOf(key);
+        }
+    };
+
+    private volatile RoutingBackend backend;
+
+    /**
+     * @param layout layout of the keys given to the RoutingBackend, null if there is none
+     */
+    public ShardedBackends(RoutingProperties routingProperties, ExecutorService executor, KeyLayout layout) {
+        this.routingProperties = routingProperties;
+        this.executor = executor;
+        this.layout = layout;
+    }
+
+    public synchronized RoutingBackend create() {
+        if (backend == null) {
+            List<String> names = new ArrayList<>();
+            List<BlobStoreBackend> shards = new ArrayList<>();
+            for (RoutingProperties.Shard shard : routingProperties.getShards()) {
+                log.info("create(): shard " + shard.getName() + " on bucket " + shard.getBucket());
+                names.add(shard.getName());
+                shards.add(createShard(shard));
+            }
+            KeyRouter router = new KeyRouter(names, routingProperties.getPrefixRules(), routingProperties.getVirtualNodes(),
+                    layout, STAGING_TARGET);
+            backend = new RoutingBackend(router, shards, executor);
+        }
+        return backend;
+    }
+
+    /**
+     * @return the RoutingBackend, null until {@link #create()} has been called
+     */
+    public RoutingBackend getBackend() {
+        return backend;
+    }
+
+    protected abstract BlobStoreBackend createShard(RoutingProperties.Shard shard);
+}
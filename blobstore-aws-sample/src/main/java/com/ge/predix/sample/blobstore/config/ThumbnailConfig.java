@@ -0,0 +1,69 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.config;
+
+import com.ge.predix.sample.blobstore.io.ContentTypeDetector;
+import com.ge.predix.sample.blobstore.meta.BlobMetadataService;
+import com.ge.predix.sample.blobstore.spi.BlobStoreBackend;
+import com.ge.predix.sample.blobstore.thumb.ThumbnailService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Provides thumbnail generation on its own small pool, so image decoding never competes with
+ * transfers for threads, and makes thumbnails of images as they are written.
+ */
+@Configuration
+@EnableConfigurationProperties({ThumbnailProperties.class})
+@ConditionalOnProperty(prefix = "blobstore.thumbnail", name = "enabled")
+public class ThumbnailConfig {
+
+    @Autowired
+    private ThumbnailProperties thumbnailProperties;
+
+    @Autowired
+    private BlobStoreBackend objectStoreService;
+
+    @Autowired
+    private BlobMetadataService blobMetadataService;
+
+    @Autowired
+    private ContentTypeDetector contentTypeDetector;
+
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService thumbnailExecutor() {
+        return new ThreadPoolExecutor(thumbnailProperties.getWorkers(), thumbnailProperties.getWorkers(),
+                0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(thumbnailProperties.getQueueSize()));
+    }
+
+    @Bean
+    public ThumbnailService thumbnailService() {
+        ThumbnailService service = new ThumbnailService(objectStoreService, thumbnailExecutor(),
+                thumbnailProperties.getMaxEdge(), thumbnailProperties.getQuality(), thumbnailProperties.getMaxSourceBytes(),
+                thumbnailProperties.getKeyPrefix(), thumbnailProperties.isGenerateOnUpload(), thumbnailProperties.getWaitMillis(),
+                contentTypeDetector);
+        blobMetadataService.addListener(service);
+        return service;
+    }
+}
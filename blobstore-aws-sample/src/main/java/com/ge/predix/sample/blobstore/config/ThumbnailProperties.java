@@ -0,0 +1,155 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Settings of the thumbnails behind /v1/blob/{id}/thumb.
+ */
+@ConfigurationProperties(prefix = "blobstore.thumbnail", locations = "classpath:application.yml")
+public class ThumbnailProperties {
+
+    /**
+     * Turns thumbnails on or off
+     */
+    private boolean enabled = false;
+
+    /**
+     * Make thumbnails as images are uploaded, otherwise on first request
+     */
+    private boolean generateOnUpload = false;
+
+    /**
+     * Longest side of a thumbnail in pixels
+     */
+    private int maxEdge = 256;
+
+    /**
+     * JPEG quality between 0 and 1
+     */
+    private float quality = 0.8f;
+
+    /**
+     * Images larger than this get no thumbnail
+     */
+    private long maxSourceBytes = 50L * 1024 * 1024;
+
+    /**
+     * Threads decoding and encoding images
+     */
+    private int workers = 2;
+
+    /**
+     * Thumbnails waiting for a worker before new ones are refused
+     */
+    private int queueSize = 64;
+
+    /**
+     * How long a request waits for its thumbnail to be generated before answering 503
+     */
+    private long waitMillis = 10000;
+
+    /**
+     * Prepended to the keys thumbnails are stored under
+     */
+    private String keyPrefix = ".thumbnails/";
+
+    /**
+     * Max-age of thumbnails requested without a version
+     */
+    private long cacheSeconds = 86400;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean isGenerateOnUpload() {
+        return generateOnUpload;
+    }
+
+    public void setGenerateOnUpload(boolean generateOnUpload) {
+        this.generateOnUpload = generateOnUpload;
+    }
+
+    public int getMaxEdge() {
+        return maxEdge;
+    }
+
+    public void setMaxEdge(int maxEdge) {
+        this.maxEdge = maxEdge;
+    }
+
+    public float getQuality() {
+        return quality;
+    }
+
+    public void setQuality(float quality) {
+        this.quality = quality;
+    }
+
+    public long getMaxSourceBytes() {
+        return maxSourceBytes;
+    }
+
+    public void setMaxSourceBytes(long maxSourceBytes) {
+        this.maxSourceBytes = maxSourceBytes;
+    }
+
+    public int getWorkers() {
+        return workers;
+    }
+
+    public void setWorkers(int workers) {
+        this.workers = workers;
+    }
+
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    public void setQueueSize(int queueSize) {
+        this.queueSize = queueSize;
+    }
+
+    public long getWaitMillis() {
+        return waitMillis;
+    }
+
+    public void setWaitMillis(long waitMillis) {
+        this.waitMillis = waitMillis;
+    }
+
+    public String getKeyPrefix() {
+        return keyPrefix;
+    }
+
+    public void setKeyPrefix(String keyPrefix) {
+        this.keyPrefix = keyPrefix;
+    }
+
+    public long getCacheSeconds() {
+        return cacheSeconds;
+    }
+
+    public void setCacheSeconds(long cacheSeconds) {
+        this.cacheSeconds = cacheSeconds;
+    }
+}
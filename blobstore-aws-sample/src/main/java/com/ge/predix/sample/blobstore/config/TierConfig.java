@@ -0,0 +1,104 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.config;
+
+import com.ge.predix.sample.blobstore.tier.TieredBackend;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Provides the local tier, the pool copying it to the Object Store and its periodic demotion,
+ * and publishes its hit rate and backlog on /metrics.
+ */
+@Configuration
+@EnableConfigurationProperties({TierProperties.class})
+@ConditionalOnProperty(prefix = "blobstore.tier", name = "enabled")
+public class TierConfig {
+
+    Log log = LogFactory.getLog(TierConfig.class);
+
+    @Autowired
+    private TierProperties tierProperties;
+
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService tierUploadExecutor() {
+        return Executors.newFixedThreadPool(tierProperties.getUploadThreads());
+    }
+
+    @Bean
+    public TierDecorator tierDecorator() {
+        return new TierDecorator(tierProperties, tierUploadExecutor());
+    }
+
+    @Bean(destroyMethod = "shutdownNow")
+    public ScheduledExecutorService tierDemoteScheduler() {
+        final TierDecorator decorator = tierDecorator();
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                TieredBackend backend = decorator.getBackend();
+                if (backend == null) {
+                    return;
+                }
+                try {
+                    backend.demote();
+                } catch (Exception e) {
+                    // Keep the schedule, the next run retries
+                    log.error("tierDemoteScheduler(): Demotion failed : " + e.getMessage());
+                }
+            }
+        }, tierProperties.getDemoteIntervalSeconds(), tierProperties.getDemoteIntervalSeconds(), TimeUnit.SECONDS);
+        return scheduler;
+    }
+
+    @Bean
+    public PublicMetrics tierMetrics() {
+        final TierDecorator decorator = tierDecorator();
+        return new PublicMetrics() {
+            @Override
+            public Collection<Metric<?>> metrics() {
+                Collection<Metric<?>> metrics = new ArrayList<>();
+                TieredBackend backend = decorator.getBackend();
+                if (backend != null) {
+                    metrics.add(new Metric<Long>("blobstore.tier.bytes", backend.getBytes()));
+                    metrics.add(new Metric<Long>("blobstore.tier.size", (long) backend.size()));
+                    metrics.add(new Metric<Long>("blobstore.tier.unsynced", (long) backend.getUnsynced()));
+                    metrics.add(new Metric<Long>("blobstore.tier.hits", backend.getHits()));
+                    metrics.add(new Metric<Long>("blobstore.tier.misses", backend.getMisses()));
+                    metrics.add(new Metric<Long>("blobstore.tier.uploads", backend.getUploads()));
+                    metrics.add(new Metric<Long>("blobstore.tier.upload.failures", backend.getUploadFailures()));
+                    metrics.add(new Metric<Long>("blobstore.tier.demotions", backend.getDemotions()));
+                }
+                return metrics;
+            }
+        };
+    }
+}
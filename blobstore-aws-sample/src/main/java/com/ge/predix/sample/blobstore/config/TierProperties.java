@@ -0,0 +1,142 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Local disk tier that keeps recently written Blobs in front of the Object Store.
+ */
+@ConfigurationProperties(prefix = "blobstore.tier", locations = "classpath:application.yml")
+public class TierProperties {
+
+    /**
+     * Turns the local tier on or off
+     */
+    private boolean enabled = false;
+
+    /**
+     * Directory of the local tier, ideally on an SSD
+     */
+    private String root = "blobstore-hot";
+
+    /**
+     * Force local copies to the storage device before acknowledging uploads
+     */
+    private boolean fsync = true;
+
+    /**
+     * local acknowledges uploads once on the local tier, remote once in the Object Store too
+     */
+    private String acknowledge = "local";
+
+    /**
+     * Size the local tier is kept under
+     */
+    private long capacityBytes = 10L * 1024 * 1024 * 1024;
+
+    /**
+     * Larger Blobs go straight to the Object Store
+     */
+    private long maxObjectBytes = 256L * 1024 * 1024;
+
+    /**
+     * Age after which Blobs are demoted to the Object Store only
+     */
+    private int hotHours = 24;
+
+    /**
+     * Threads copying local copies to the Object Store
+     */
+    private int uploadThreads = 4;
+
+    /**
+     * Delay between demotion runs
+     */
+    private int demoteIntervalSeconds = 60;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public String getRoot() {
+        return root;
+    }
+
+    public void setRoot(String root) {
+        this.root = root;
+    }
+
+    public boolean isFsync() {
+        return fsync;
+    }
+
+    public void setFsync(boolean fsync) {
+        this.fsync = fsync;
+    }
+
+    public String getAcknowledge() {
+        return acknowledge;
+    }
+
+    public void setAcknowledge(String acknowledge) {
+        this.acknowledge = acknowledge;
+    }
+
+    public long getCapacityBytes() {
+        return capacityBytes;
+    }
+
+    public void setCapacityBytes(long capacityBytes) {
+        this.capacityBytes = capacityBytes;
+    }
+
+    public long getMaxObjectBytes() {
+        return maxObjectBytes;
+    }
+
+    public void setMaxObjectBytes(long maxObjectBytes) {
+        this.maxObjectBytes = maxObjectBytes;
+    }
+
+    public int getHotHours() {
+        return hotHours;
+    }
+
+    public void setHotHours(int hotHours) {
+        this.hotHours = hotHours;
+    }
+
+    public int getUploadThreads() {
+        return uploadThreads;
+    }
+
+    public void setUploadThreads(int uploadThreads) {
+        this.uploadThreads = uploadThreads;
+    }
+
+    public int getDemoteIntervalSeconds() {
+        return demoteIntervalSeconds;
+    }
+
+    public void setDemoteIntervalSeconds(int demoteIntervalSeconds) {
+        this.demoteIntervalSeconds = demoteIntervalSeconds;
+    }
+}
@@ -0,0 +1,82 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.config;
+
+import com.ge.predix.sample.blobstore.meta.BlobMetadataService;
+import com.ge.predix.sample.blobstore.spi.BlobStoreBackend;
+import com.ge.predix.sample.blobstore.write.ConditionalWrites;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.ArrayList;
+import java.util.Collection;
+
+/**
+ * Provides the per key serialization of uploads and publishes its contention on /metrics.
+ */
+@Configuration
+@EnableConfigurationProperties({WriteProperties.class})
+public class WriteConfig {
+
+    @Autowired
+    private WriteProperties writeProperties;
+
+    @Autowired
+    private BlobMetadataService blobMetadataService;
+
+    @Autowired
+    private BlobStoreBackend objectStoreService;
+
+    @Autowired(required = false)
+    private JournalDecorator journalDecorator;
+
+    @Autowired(required = false)
+    private TierDecorator tierDecorator;
+
+    /**
+     * Writes are not staged behind the journal or the local tier, moving a staged Blob would
+     * wait for its upload to the Object Store and the write would no longer be acknowledged
+     * from local disk
+     */
+    @Bean
+    public ConditionalWrites conditionalWrites() {
+        long maxStagedBytes = journalDecorator != null || tierDecorator != null ? 0 : writeProperties.getMaxStagedBytes();
+        return new ConditionalWrites(blobMetadataService, objectStoreService, writeProperties.getLockStripes(),
+                writeProperties.getLockWaitMillis(), maxStagedBytes);
+    }
+
+    @Bean
+    public PublicMetrics writeMetrics() {
+        final ConditionalWrites writes = conditionalWrites();
+        return new PublicMetrics() {
+            @Override
+            public Collection<Metric<?>> metrics() {
+                Collection<Metric<?>> metrics = new ArrayList<>();
+                metrics.add(new Metric<Long>("blobstore.write.completed", writes.getCompleted()));
+                metrics.add(new Metric<Long>("blobstore.write.staged", writes.getStaged()));
+                metrics.add(new Metric<Long>("blobstore.write.contended", writes.getContended()));
+                metrics.add(new Metric<Long>("blobstore.write.conflicts", writes.getConflicts()));
+                metrics.add(new Metric<Long>("blobstore.write.precondition.failed", writes.getPreconditionsFailed()));
+                metrics.add(new Metric<Long>("blobstore.write.lock.wait.millis", writes.getLockWaitMillis()));
+                return metrics;
+            }
+        };
+    }
+}
@@ -0,0 +1,68 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Serialization and preconditions of Blob writes.
+ */
+@ConfigurationProperties(prefix = "blobstore.write", locations = "classpath:application.yml")
+public class WriteProperties {
+
+    /**
+     * Locks keys are hashed onto, rounded up to a power of two
+     */
+    private int lockStripes = 1024;
+
+    /**
+     * Time a write waits for another write of the same key before it is rejected with 409,
+     * 0 rejects concurrent writes of a key outright
+     */
+    private long lockWaitMillis = 30000;
+
+    /**
+     * Largest conditional upload that is staged under a temporary key and moved into place, so
+     * its key is only locked for the check and the move. Larger uploads keep their key locked
+     * while they upload, moving them takes a multipart copy or is not supported by the Object
+     * Store. Unconditional uploads are never staged. 0 stages no upload.
+     */
+    private long maxStagedBytes = 5L * 1024 * 1024 * 1024;
+
+    public int getLockStripes() {
+        return lockStripes;
+    }
+
+    public void setLockStripes(int lockStripes) {
+        this.lockStripes = lockStripes;
+    }
+
+    public long getLockWaitMillis() {
+        return lockWaitMillis;
+    }
+
+    public void setLockWaitMillis(long lockWaitMillis) {
+        this.lockWaitMillis = lockWaitMillis;
+    }
+
+    public long getMaxStagedBytes() {
+        return maxStagedBytes;
+    }
+
+    public void setMaxStagedBytes(long maxStagedBytes) {
+        this.maxStagedBytes = maxStagedBytes;
+    }
+}
@@ -42,6 +42,11 @@ public class BlobstoreServiceConnectorCreator extends AbstractServiceConnectorCr
      * setting storage provider as S3
      */
     public static String STORAGE_PROVIDER = "s3";
+
+    /**
+     * Size of the HTTP connection pool, optional
+     */
+    private static String maxConnections = System.getenv("BLOBSTORE_MAX_CONNECTIONS");
     Log log = LogFactory.getLog(BlobstoreServiceConnectorCreator.class);
 
     /**
@@ -66,6 +71,11 @@ public class BlobstoreServiceConnectorCreator extends AbstractServiceConnectorCr
         log.info("create() invoked with serviceInfo? = " + (serviceInfo == null));
      ClientConfiguration config = new ClientConfiguration();
         config.setProtocol(Protocol.HTTPS);
+        // Retries are handled by the ResiliencePolicy
+        config.setMaxErrorRetry(0);
+        if (maxConnections != null && !maxConnections.isEmpty()) {
+            config.setMaxConnections(Integer.parseInt(maxConnections));
+        }
 
         BasicAWSCredentials creds = new BasicAWSCredentials(serviceInfo.getObjectStoreAccessKey(), serviceInfo.getObjectStoreSecretKey());
         AmazonS3Client s3Client = new AmazonS3Client(creds, config);
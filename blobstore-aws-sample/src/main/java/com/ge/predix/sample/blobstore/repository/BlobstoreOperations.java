@@ -0,0 +1,69 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.repository;
+
+import com.ge.predix.sample.blobstore.spi.BlobContent;
+import com.ge.predix.sample.blobstore.spi.BlobInfo;
+import com.ge.predix.sample.blobstore.spi.BlobPage;
+import com.ge.predix.sample.blobstore.spi.ByteRange;
+import org.springframework.util.concurrent.ListenableFuture;
+
+import java.io.InputStream;
+
+/**
+ * Non-blocking view of the Object Store. Every call returns immediately with a future
+ * that completes once the Object Store has answered.
+ */
+public interface BlobstoreOperations {
+
+    /**
+     * Adds a new Blob to the binded bucket
+     *
+     * @param key         name of the Blob
+     * @param content     content of the Blob, closed once the upload is done
+     * @param length      length of the content, or -1 if unknown
+     * @param contentType content type supplied by the client, may be null
+     * @return ListenableFuture completing once the upload is complete
+     */
+    ListenableFuture<BlobInfo> put(String key, InputStream content, long length, String contentType);
+
+    /**
+     * Gets the Blob from the binded bucket
+     *
+     * @param key   name of the Blob
+     * @param range optional range, null for the whole Blob
+     * @return ListenableFuture of the Blob content
+     */
+    ListenableFuture<BlobContent> get(String key, ByteRange range);
+
+    /**
+     * Gets a page of the available Blobs in the binded bucket
+     *
+     * @param prefix  only Blobs whose key starts with this prefix, may be null
+     * @param marker  key to continue after, may be null
+     * @param maxKeys maximum number of Blobs to return
+     * @return ListenableFuture of the Blobs
+     */
+    ListenableFuture<BlobPage> list(String prefix, String marker, int maxKeys);
+
+    /**
+     * Deletes the Blob from the binded bucket
+     *
+     * @param key name of the Blob
+     * @return ListenableFuture completing once the Blob is removed
+     */
+    ListenableFuture<Void> delete(String key);
+}
@@ -15,27 +15,51 @@
  *******************************************************************************/
 package com.ge.predix.sample.blobstore.repository;
 
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.HttpMethod;
 import com.amazonaws.services.s3.AmazonS3Client;
 import com.amazonaws.services.s3.model.*;
+import com.ge.predix.sample.blobstore.io.ContentTypeDetector;
+import com.ge.predix.sample.blobstore.resilience.ResiliencePolicy;
+import com.ge.predix.sample.blobstore.spi.BlobContent;
+import com.ge.predix.sample.blobstore.spi.BlobInfo;
+import com.ge.predix.sample.blobstore.spi.BlobNotFoundException;
+import com.ge.predix.sample.blobstore.spi.BlobPage;
+import com.ge.predix.sample.blobstore.spi.BlobRequestSigning;
+import com.ge.predix.sample.blobstore.spi.BlobStoreBackend;
+import com.ge.predix.sample.blobstore.spi.ByteRange;
+import com.ge.predix.sample.blobstore.spi.SignedRequest;
+import com.ge.predix.sample.blobstore.transfer.ManagedObjectStream;
+import com.ge.predix.sample.blobstore.transfer.ObjectStreamManager;
+import com.ge.predix.sample.blobstore.write.PreconditionFailedException;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.URLConnection;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 
 /**
  * This is Core Object Store Service Class. Has methods for operating on the Object Store.
+ * Implements the common {@link BlobStoreBackend} SPI on top of S3, and signs requests so clients
+ * can transfer directly with S3.
  *
  * @since Feb 2015
  */
-public class BlobstoreService {
+public class BlobstoreService implements BlobStoreBackend, BlobRequestSigning {
 
     Log log = LogFactory.getLog(BlobstoreService.class);
 
@@ -59,8 +83,69 @@ public class BlobstoreService {
      */
     private boolean enableSSE;
 
+    /**
+     * Timeouts, retries and hedging for calls to the BlobStore
+     */
+    private ResiliencePolicy resilience = ResiliencePolicy.defaults();
+
+    /**
+     * Runs part uploads in parallel, parts are uploaded on the calling thread when null
+     */
+    private ExecutorService transferExecutor;
+
+    /**
+     * Parts of one upload that may be in flight at once
+     */
+    private int maxParallelParts = 1;
+
+    /**
+     * Decides whether closing a partially read object drains or aborts its connection
+     */
+    private ObjectStreamManager objectStreamManager = new ObjectStreamManager(ObjectStreamManager.DEFAULT_DRAIN_THRESHOLD);
+
+    /**
+     * Gives uploads without a specific content type one
+     */
+    private ContentTypeDetector contentTypeDetector = new ContentTypeDetector(ContentTypeDetector.DEFAULT_PEEK_BYTES,
+            ContentTypeDetector.DEFAULT_MAX_CACHED_EXTENSIONS);
+
     public static final String APPLICATION_OCTET_STREAM = "application/octet-stream";
 
+    /**
+     * Size of each part of a multipart upload
+     */
+    public static final int PART_SIZE = 50 * 1024 * 1024;
+
+    /**
+     * Objects smaller than this are uploaded with a single PUT
+     */
+    public static final int MIN_MULTIPART_SIZE = 5 * 1024 * 1024;
+
+    /**
+     * Largest object S3 copies with a single CopyObject request
+     */
+    public static final long MAX_SINGLE_COPY_SIZE = 5L * 1024 * 1024 * 1024;
+
+    /**
+     * Size of each range of a multipart copy
+     */
+    public static final long COPY_PART_SIZE = 512L * 1024 * 1024;
+
+    /**
+     * Initial size of the buffer a part is read into
+     */
+    private static final int INITIAL_PART_BUFFER = 64 * 1024;
+
+    /**
+     * Releases the connection of a GET that is no longer needed
+     */
+    private static final ResiliencePolicy.Discard<S3Object> ABORT = new ResiliencePolicy.Discard<S3Object>() {
+        @Override
+        public void discard(S3Object object) {
+            object.getObjectContent().abort();
+        }
+    };
+
     public BlobstoreService(AmazonS3Client s3Client, String bucket) {
         this.s3Client = s3Client;
         this.bucket = bucket;
@@ -80,6 +165,33 @@ public class BlobstoreService {
         this.enableSSE = enableSSE;
     }
 
+    /**
+     * Heap one upload may hold in part buffers, the parts in flight plus the part being read.
+     *
+     * @param maxParallelParts parts of one upload that may be in flight at once
+     * @return long bytes
+     */
+    public static long uploadBufferBytes(int maxParallelParts) {
+        return (long) PART_SIZE * (Math.max(1, maxParallelParts) + 1);
+    }
+
+    public void setResiliencePolicy(ResiliencePolicy resilience) {
+        this.resilience = resilience;
+    }
+
+    public void setTransferExecutor(ExecutorService transferExecutor, int maxParallelParts) {
+        this.transferExecutor = transferExecutor;
+        this.maxParallelParts = Math.max(1, maxParallelParts);
+    }
+
+    public void setObjectStreamManager(ObjectStreamManager objectStreamManager) {
+        this.objectStreamManager = objectStreamManager;
+    }
+
+    public void setContentTypeDetector(ContentTypeDetector contentTypeDetector) {
+        this.contentTypeDetector = contentTypeDetector;
+    }
+
 
     /**
      * Adds a new Blob to the binded bucket in the Object Store
@@ -92,120 +204,203 @@ public class BlobstoreService {
             log.error("put(): Empty file provided");
             throw new Exception("File is null");
         }
-        InputStream is = obj.getObjectContent();
-
-        List<PartETag> partETags = new ArrayList<>();
-
-        InitiateMultipartUploadRequest initRequest = new InitiateMultipartUploadRequest(bucket, obj.getKey());
-        InitiateMultipartUploadResult initResponse = s3Client.initiateMultipartUpload(initRequest);
         try {
+            put(obj.getKey(), obj.getObjectContent(), -1, null);
+        } finally {
+            obj.close();
+        }
+    }
 
-            int i = 1;
-            int currentPartSize = 0;
-            ByteArrayOutputStream tempBuffer = new ByteArrayOutputStream();
-            int byteValue;
-            while ((byteValue = is.read()) != -1) {
-                tempBuffer.write(byteValue);
-                currentPartSize = tempBuffer.size();
-                if (currentPartSize == (50 * 1024 * 1024)) //make this a const
-                {
-                    byte[] b = tempBuffer.toByteArray();
-                    ByteArrayInputStream byteStream = new ByteArrayInputStream(b);
-
-                    UploadPartRequest uploadPartRequest = new UploadPartRequest()
-                            .withBucketName(bucket).withKey(obj.getKey())
-                            .withUploadId(initResponse.getUploadId()).withPartNumber(i++)
-                            .withInputStream(byteStream)
-                            .withPartSize(currentPartSize);
-                    partETags.add(s3Client.uploadPart(uploadPartRequest).getPartETag());
-
-                    tempBuffer.reset();
-                }
+    @Override
+    public BlobInfo put(final String key, InputStream is, long length, String contentType) throws Exception {
+        try {
+            byte[] part = readPart(is);
+            if (part.length < MIN_MULTIPART_SIZE) {
+                checkLength(key, length, part.length);
+                return putSingle(key, part, contentType);
             }
-            log.info("currentPartSize: " + currentPartSize);
+
             ObjectMetadata objectMetadata = new ObjectMetadata();
-            objectMetadata.setContentLength(currentPartSize);
+            objectMetadata.setContentType(resolveContentType(key, contentType, part));
             if (enableSSE) {
                 objectMetadata.setSSEAlgorithm(ObjectMetadata.AES_256_SERVER_SIDE_ENCRYPTION);
             }
-            obj.setObjectMetadata(objectMetadata);
-
-            if (i == 1 && currentPartSize < (5 * 1024 * 1024)) // make this a const
-            {
-                s3Client.abortMultipartUpload(new AbortMultipartUploadRequest(
-                        bucket, obj.getKey(), initResponse.getUploadId()
-                ));
-
-                byte[] b = tempBuffer.toByteArray();
-                ByteArrayInputStream byteStream = new ByteArrayInputStream(b);
-                objectMetadata.setContentType(getContentType(b));
-                if (enableSSE) {
-                    objectMetadata.setSSEAlgorithm(ObjectMetadata.AES_256_SERVER_SIDE_ENCRYPTION);
+            final InitiateMultipartUploadRequest initRequest = new InitiateMultipartUploadRequest(bucket, key, objectMetadata);
+            InitiateMultipartUploadResult initResponse = resilience.executeOnce("initiateMultipartUpload",
+                    new Callable<InitiateMultipartUploadResult>() {
+                        @Override
+                        public InitiateMultipartUploadResult call() {
+                            return s3Client.initiateMultipartUpload(resilience.withTimeout("initiateMultipartUpload", initRequest));
+                        }
+                    });
+            final String uploadId = initResponse.getUploadId();
+
+            List<Future<PartETag>> pending = new ArrayList<>();
+            try {
+                final List<PartETag> partETags = new ArrayList<>();
+                int partNumber = 1;
+                long size = 0;
+                do {
+                    if (pending.size() == maxParallelParts) {
+                        partETags.add(awaitPart(pending.remove(0)));
+                    }
+                    pending.add(submitPart(key, uploadId, partNumber++, part));
+                    size += part.length;
+                    part = part.length == PART_SIZE ? readPart(is) : new byte[0];
+                } while (part.length > 0);
+                while (!pending.isEmpty()) {
+                    partETags.add(awaitPart(pending.remove(0)));
                 }
-                obj.setObjectMetadata(objectMetadata);
-
-                PutObjectRequest putObjectRequest = new PutObjectRequest(bucket, obj.getKey(), byteStream, obj.getObjectMetadata());
-                s3Client.putObject(putObjectRequest);
-
-                ObjectMetadata meta = s3Client.getObjectMetadata(bucket, obj.getKey());
-                Map<String, Object> headers = meta.getRawMetadata();
-                for (Map.Entry<String, Object> entry : headers.entrySet()) {
-                    log.info("Object Metadata -- " + entry.getKey() + ": " + entry.getValue().toString());
+                checkLength(key, length, size);
+
+                CompleteMultipartUploadResult result = resilience.executeOnce("completeMultipartUpload", new Callable<CompleteMultipartUploadResult>() {
+                    @Override
+                    public CompleteMultipartUploadResult call() {
+                        CompleteMultipartUploadRequest completeMultipartUploadRequest = new CompleteMultipartUploadRequest()
+                                .withBucketName(bucket)
+                                .withPartETags(partETags)
+                                .withUploadId(uploadId)
+                                .withKey(key);
+                        return s3Client.completeMultipartUpload(resilience.withTimeout("completeMultipartUpload", completeMultipartUploadRequest));
+                    }
+                });
+                return new BlobInfo(key, size, result.getETag(), objectMetadata.getContentType(), System.currentTimeMillis());
+            } catch (Exception e) {
+                log.error("put(): Exception occurred in put(): " + e.getMessage());
+                for (Future<PartETag> future : pending) {
+                    future.cancel(true);
                 }
+                abortQuietly(key, uploadId);
+                throw e;
+            }
+        } finally {
+            is.close();
+        }
+    }
 
-                return;
+    private void checkLength(String key, long expected, long actual) throws IOException {
+        if (expected >= 0 && expected != actual) {
+            throw new IOException("put(): Expected " + expected + " bytes for " + key + " but received " + actual);
+        }
+    }
+
+    /**
+     * Starts the upload of a part on the transfer executor, or uploads it right away without one
+     */
+    private Future<PartETag> submitPart(final String key, final String uploadId, final int partNumber, final byte[] part)
+            throws Exception {
+        Callable<PartETag> upload = new Callable<PartETag>() {
+            @Override
+            public PartETag call() throws Exception {
+                return uploadPart(key, uploadId, partNumber, part);
             }
+        };
+        return submit(upload);
+    }
 
-            if (currentPartSize > 0 && currentPartSize <= (50 * 1024 * 1024)) // make this a const
-            {
-                byte[] b = tempBuffer.toByteArray();
-                ByteArrayInputStream byteStream = new ByteArrayInputStream(b);
+    private Future<PartETag> submit(Callable<PartETag> part) {
+        if (transferExecutor == null || maxParallelParts == 1) {
+            FutureTask<PartETag> task = new FutureTask<>(part);
+            task.run();
+            return task;
+        }
+        return transferExecutor.submit(part);
+    }
 
-                log.info("currentPartSize: " + currentPartSize);
-                log.info("byteArray: " + b);
+    private PartETag awaitPart(Future<PartETag> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof Exception ? (Exception) cause : e;
+        }
+    }
 
+    /**
+     * Uploads one part of a multipart upload, retrying the part on failure
+     */
+    private PartETag uploadPart(final String key, final String uploadId, final int partNumber, final byte[] part)
+            throws Exception {
+        return resilience.execute("uploadPart", new Callable<PartETag>() {
+            @Override
+            public PartETag call() {
                 UploadPartRequest uploadPartRequest = new UploadPartRequest()
-                        .withBucketName(bucket).withKey(obj.getKey())
-                        .withUploadId(initResponse.getUploadId()).withPartNumber(i)
-                        .withInputStream(byteStream)
-                        .withPartSize(currentPartSize);
-                partETags.add(s3Client.uploadPart(uploadPartRequest).getPartETag());
+                        .withBucketName(bucket).withKey(key)
+                        .withUploadId(uploadId).withPartNumber(partNumber)
+                        .withInputStream(new ByteArrayInputStream(part))
+                        .withPartSize(part.length);
+                return s3Client.uploadPart(resilience.withTimeout("uploadPart", uploadPartRequest)).getPartETag();
             }
+        });
+    }
 
+    /**
+     * Uploads an object small enough for a single PUT
+     */
+    private BlobInfo putSingle(final String key, final byte[] b, String contentType) throws Exception {
+        final ObjectMetadata objectMetadata = new ObjectMetadata();
+        objectMetadata.setContentLength(b.length);
+        objectMetadata.setContentType(resolveContentType(key, contentType, b));
+        if (enableSSE) {
+            objectMetadata.setSSEAlgorithm(ObjectMetadata.AES_256_SERVER_SIDE_ENCRYPTION);
+        }
 
-            CompleteMultipartUploadRequest completeMultipartUploadRequest = new CompleteMultipartUploadRequest()
-                    .withBucketName(bucket)
-                    .withPartETags(partETags)
-                    .withUploadId(initResponse.getUploadId())
-                    .withKey(obj.getKey());
+        resilience.execute("put", new Callable<PutObjectResult>() {
+            @Override
+            public PutObjectResult call() {
+                PutObjectRequest putObjectRequest = new PutObjectRequest(bucket, key, new ByteArrayInputStream(b), objectMetadata);
+                return s3Client.putObject(resilience.withTimeout("put", putObjectRequest));
+            }
+        });
 
-            s3Client.completeMultipartUpload(completeMultipartUploadRequest);
-        } catch (Exception e) {
-            log.error("put(): Exception occurred in put(): " + e.getMessage());
-            s3Client.abortMultipartUpload(new AbortMultipartUploadRequest(
-                    bucket, obj.getKey(), initResponse.getUploadId()
-            ));
-            throw e;
-        } finally {
-            is.close();
-            obj.close();
+        ObjectMetadata meta = resilience.execute("head", new Callable<ObjectMetadata>() {
+            @Override
+            public ObjectMetadata call() {
+                return s3Client.getObjectMetadata(resilience.withTimeout("head", new GetObjectMetadataRequest(bucket, key)));
+            }
+        });
+        Map<String, Object> headers = meta.getRawMetadata();
+        for (Map.Entry<String, Object> entry : headers.entrySet()) {
+            log.info("Object Metadata -- " + entry.getKey() + ": " + entry.getValue().toString());
         }
+        return toBlobInfo(key, meta);
     }
 
-    private String getContentType(byte[] b) {
-        String contentType;
-        try {
-            contentType = URLConnection.guessContentTypeFromStream(new ByteArrayInputStream(b));
-        } catch (IOException e) {
-            if (log.isDebugEnabled()) {
-                log.debug("unable to determine content type", e);
+    /**
+     * Reads up to PART_SIZE bytes, growing the buffer as data arrives so small uploads stay small.
+     *
+     * @return byte[] the bytes read, shorter than PART_SIZE only at the end of the stream
+     */
+    private byte[] readPart(InputStream is) throws IOException {
+        byte[] buffer = new byte[INITIAL_PART_BUFFER];
+        int length = 0;
+        int read;
+        while ((read = is.read(buffer, length, buffer.length - length)) != -1) {
+            length += read;
+            if (length == buffer.length) {
+                if (length == PART_SIZE) {
+                    break;
+                }
+                buffer = Arrays.copyOf(buffer, Math.min(PART_SIZE, buffer.length * 2));
             }
-            return APPLICATION_OCTET_STREAM;
         }
-        if (log.isDebugEnabled()) {
-            log.debug("content type inferred is"+contentType);
+        return length == buffer.length ? buffer : Arrays.copyOf(buffer, length);
+    }
+
+    private void abortQuietly(String key, String uploadId) {
+        try {
+            s3Client.abortMultipartUpload(new AbortMultipartUploadRequest(bucket, key, uploadId));
+        } catch (Exception e) {
+            log.error("put(): Unable to abort multipart upload " + uploadId + " : " + e.getMessage());
         }
-        return contentType;
+    }
+
+    /**
+     * Uses the content type supplied by the client unless it is missing or generic, otherwise
+     * detects it from the name and the first bytes already read
+     */
+    private String resolveContentType(String key, String contentType, byte[] b) {
+        return contentTypeDetector.detect(key, contentType, b, b.length);
     }
 
     /**
@@ -214,42 +409,213 @@ public class BlobstoreService {
      * @param fileName String
      * @throws Exception
      */
-    public InputStream get(String fileName, String range) throws Exception {
+    public InputStream get(final String fileName, String range) throws Exception {
+        try {
+            return get(fileName, ByteRange.parse(range)).getStream();
+        } catch (IllegalArgumentException e) {
+            throw new Exception(e.getMessage(), e);
+        }
+    }
 
-        if (range != null && !range.isEmpty()) {
-            String[] r = range.split(":");
-            if (r.length != 2) {
-                throw new Exception("Invalid range format");
-            }
+    @Override
+    public BlobContent get(final String key, final ByteRange range) throws Exception {
+        try {
+            S3Object object = resilience.executeHedged("get", new Callable<S3Object>() {
+                @Override
+                public S3Object call() {
+                    GetObjectRequest getObjectRequest = new GetObjectRequest(bucket, key);
+                    if (range != null) {
+                        getObjectRequest.setRange(range.getStart(), range.getEnd());
+                    }
+                    return s3Client.getObject(resilience.withTimeout("get", getObjectRequest));
+                }
+            }, ABORT);
+
+            ObjectMetadata meta = object.getObjectMetadata();
+            BlobInfo info = new BlobInfo(key, range != null ? meta.getInstanceLength() : meta.getContentLength(),
+                    meta.getETag(), meta.getContentType(), toMillis(meta.getLastModified()));
+            final ManagedObjectStream stream = objectStreamManager.manage(object.getObjectContent(), meta.getContentLength());
+            return new BlobContent(info, stream, meta.getContentLength()) {
+                @Override
+                public void abort() {
+                    // Drop the connection rather than draining the rest of the object
+                    stream.abort();
+                }
+            };
 
-            try {
-                long start = Long.parseLong(r[0]);
-                long end = Long.parseLong(r[1]);
+        } catch (AmazonServiceException e) {
+            throw notFound(key, e);
+        } catch (Exception e) {
+            log.error("Exception Occurred in get(): " + e.getMessage());
+            throw e;
+        }
+    }
+
+    @Override
+    public BlobInfo head(final String key) throws Exception {
+        return toBlobInfo(key, headMetadata(key));
+    }
 
-                GetObjectRequest rangeObjectRequest = new GetObjectRequest(bucket, fileName);
-                rangeObjectRequest.setRange(start, end);
-                S3Object objectPortion = s3Client.getObject(rangeObjectRequest);
+    private ObjectMetadata headMetadata(final String key) throws Exception {
+        try {
+            return resilience.execute("head", new Callable<ObjectMetadata>() {
+                @Override
+                public ObjectMetadata call() {
+                    return s3Client.getObjectMetadata(resilience.withTimeout("head", new GetObjectMetadataRequest(bucket, key)));
+                }
+            });
+        } catch (AmazonServiceException e) {
+            throw notFound(key, e);
+        }
+    }
 
-                InputStream objectData = objectPortion.getObjectContent();
+    /**
+     * Copies a Blob within the binded bucket. Objects up to 5 GB are copied with CopyObject, larger
+     * ones with a multipart upload whose parts are copied from ranges of the source with
+     * UploadPartCopy. The copy is pinned to the ETag of the source so a concurrent overwrite
+     * fails the copy instead of mixing two versions.
+     */
+    @Override
+    public BlobInfo copy(String sourceKey, String targetKey) throws Exception {
+        return copy(sourceKey, headMetadata(sourceKey), targetKey);
+    }
 
-                return objectData;
+    private BlobInfo copy(final String sourceKey, ObjectMetadata source, final String targetKey) throws Exception {
+        try {
+            final String sourceETag = source.getETag();
+            // Metadata is replaced on copy, carry over the headers the source was stored with
+            final ObjectMetadata objectMetadata = new ObjectMetadata();
+            objectMetadata.setContentType(source.getContentType());
+            objectMetadata.setContentEncoding(source.getContentEncoding());
+            objectMetadata.setContentDisposition(source.getContentDisposition());
+            objectMetadata.setContentLanguage(source.getContentLanguage());
+            objectMetadata.setCacheControl(source.getCacheControl());
+            if (source.getHttpExpiresDate() != null) {
+                objectMetadata.setHttpExpiresDate(source.getHttpExpiresDate());
+            }
+            objectMetadata.setUserMetadata(source.getUserMetadata());
+            if (enableSSE) {
+                objectMetadata.setSSEAlgorithm(ObjectMetadata.AES_256_SERVER_SIDE_ENCRYPTION);
+            }
 
-            } catch (NumberFormatException e) {
-                throw new Exception("Invalid range specified ", e);
+            long size = source.getContentLength();
+            if (size <= MAX_SINGLE_COPY_SIZE) {
+                CopyObjectResult result = resilience.execute("copy", new Callable<CopyObjectResult>() {
+                    @Override
+                    public CopyObjectResult call() {
+                        CopyObjectRequest copyObjectRequest = new CopyObjectRequest(bucket, sourceKey, bucket, targetKey)
+                                .withNewObjectMetadata(objectMetadata)
+                                .withMatchingETagConstraint(sourceETag);
+                        return s3Client.copyObject(resilience.withTimeout("copy", copyObjectRequest));
+                    }
+                });
+                if (result == null) {
+                    // The source changed between the HEAD and the copy
+                    throw new IllegalStateException("copy(): " + sourceKey + " was modified during the copy");
+                }
+                if (log.isDebugEnabled())
+                    log.debug("copy(): Successfully copied " + sourceKey + " to " + targetKey);
+                return new BlobInfo(targetKey, size, result.getETag(), objectMetadata.getContentType(),
+                        toMillis(result.getLastModifiedDate()));
             }
-        } else {
-            try {
-                S3Object object = s3Client.getObject(new GetObjectRequest(bucket, fileName));
-                InputStream objectData = object.getObjectContent();
+            return copyMultipart(sourceKey, targetKey, sourceETag, size, objectMetadata);
+        } catch (Exception e) {
+            log.error("copy(): Exception Occurred in copy(): " + e.getMessage());
+            throw e;
+        }
+    }
 
-                return objectData;
+    private BlobInfo copyMultipart(final String sourceKey, final String targetKey, final String sourceETag, long size,
+                                   ObjectMetadata objectMetadata) throws Exception {
+        final InitiateMultipartUploadRequest initRequest = new InitiateMultipartUploadRequest(bucket, targetKey, objectMetadata);
+        InitiateMultipartUploadResult initResponse = resilience.executeOnce("initiateMultipartUpload",
+                new Callable<InitiateMultipartUploadResult>() {
+                    @Override
+                    public InitiateMultipartUploadResult call() {
+                        return s3Client.initiateMultipartUpload(resilience.withTimeout("initiateMultipartUpload", initRequest));
+                    }
+                });
+        final String uploadId = initResponse.getUploadId();
+
+        List<Future<PartETag>> pending = new ArrayList<>();
+        try {
+            final List<PartETag> partETags = new ArrayList<>();
+            int partNumber = 1;
+            for (long offset = 0; offset < size; offset += COPY_PART_SIZE) {
+                if (pending.size() == maxParallelParts) {
+                    partETags.add(awaitPart(pending.remove(0)));
+                }
+                final int number = partNumber++;
+                final long firstByte = offset;
+                final long lastByte = Math.min(offset + COPY_PART_SIZE, size) - 1;
+                pending.add(submit(new Callable<PartETag>() {
+                    @Override
+                    public PartETag call() throws Exception {
+                        return resilience.execute("copyPart", new Callable<PartETag>() {
+                            @Override
+                            public PartETag call() {
+                                CopyPartRequest copyPartRequest = new CopyPartRequest()
+                                        .withSourceBucketName(bucket).withSourceKey(sourceKey)
+                                        .withDestinationBucketName(bucket).withDestinationKey(targetKey)
+                                        .withUploadId(uploadId).withPartNumber(number)
+                                        .withFirstByte(firstByte).withLastByte(lastByte)
+                                        .withMatchingETagConstraint(sourceETag);
+                                CopyPartResult result = s3Client.copyPart(resilience.withTimeout("copyPart", copyPartRequest));
+                                if (result == null) {
+                                    throw new IllegalStateException("copy(): " + sourceKey + " was modified during the copy");
+                                }
+                                return result.getPartETag();
+                            }
+                        });
+                    }
+                }));
+            }
+            while (!pending.isEmpty()) {
+                partETags.add(awaitPart(pending.remove(0)));
+            }
 
-            } catch (Exception e) {
-                log.error("Exception Occurred in get(): " + e.getMessage());
-                throw e;
+            CompleteMultipartUploadResult result = resilience.executeOnce("completeMultipartUpload", new Callable<CompleteMultipartUploadResult>() {
+                @Override
+                public CompleteMultipartUploadResult call() {
+                    CompleteMultipartUploadRequest completeMultipartUploadRequest = new CompleteMultipartUploadRequest()
+                            .withBucketName(bucket)
+                            .withPartETags(partETags)
+                            .withUploadId(uploadId)
+                            .withKey(targetKey);
+                    return s3Client.completeMultipartUpload(resilience.withTimeout("completeMultipartUpload", completeMultipartUploadRequest));
+                }
+            });
+            if (log.isDebugEnabled())
+                log.debug("copy(): Successfully copied " + sourceKey + " to " + targetKey + " in " + partETags.size() + " parts");
+            return new BlobInfo(targetKey, size, result.getETag(), objectMetadata.getContentType(), System.currentTimeMillis());
+        } catch (Exception e) {
+            for (Future<PartETag> future : pending) {
+                future.cancel(true);
             }
+            abortQuietly(targetKey, uploadId);
+            throw e;
         }
+    }
 
+    /**
+     * Copies the Blob and deletes the source, S3 has no rename. The source is only deleted while
+     * it still has the ETag that was copied, a source overwritten during the move is kept.
+     *
+     * @throws PreconditionFailedException if the source changed after it was copied
+     */
+    @Override
+    public BlobInfo move(String sourceKey, String targetKey) throws Exception {
+        if (sourceKey.equals(targetKey)) {
+            return head(sourceKey);
+        }
+        ObjectMetadata source = headMetadata(sourceKey);
+        BlobInfo info = copy(sourceKey, source, targetKey);
+        if (!source.getETag().equals(headMetadata(sourceKey).getETag())) {
+            log.warn("move(): " + sourceKey + " was overwritten while it was moved to " + targetKey + ", keeping it");
+            throw new PreconditionFailedException(sourceKey);
+        }
+        delete(sourceKey);
+        return info;
     }
 
 //    public AccessControlList getObjectACL()
@@ -259,24 +625,45 @@ public class BlobstoreService {
      *
      * @return List<BlobFile> List of Blobs
      */
-    public List<String> get() {
+    public List<String> get() throws Exception {
         List<String> objs = new ArrayList<>();
+        for (BlobInfo info : list(null, null, 1000).getBlobs()) {
+            objs.add(info.getKey());
+        }
+        return objs;
+    }
+
+    @Override
+    public BlobPage list(final String prefix, final String marker, final int maxKeys) throws Exception {
         try {
             // Get the List from BlobStore
-            ObjectListing objectList = s3Client.listObjects(bucket);
+            ObjectListing objectList = resilience.execute("list", new Callable<ObjectListing>() {
+                @Override
+                public ObjectListing call() {
+                    ListObjectsRequest listObjectsRequest = new ListObjectsRequest()
+                            .withBucketName(bucket)
+                            .withPrefix(prefix)
+                            .withMarker(marker)
+                            .withMaxKeys(maxKeys);
+                    return s3Client.listObjects(resilience.withTimeout("list", listObjectsRequest));
+                }
+            });
 
+            List<BlobInfo> blobs = new ArrayList<>();
             for (S3ObjectSummary objectSummary :
                     objectList.getObjectSummaries()) {
 
-                objs.add(objectSummary.getKey());
+                blobs.add(new BlobInfo(objectSummary.getKey(), objectSummary.getSize(), objectSummary.getETag(), null,
+                        toMillis(objectSummary.getLastModified())));
             }
+            // S3 only returns a next marker for delimited listings, continue after the last key otherwise
+            String nextMarker = objectList.isTruncated() && !blobs.isEmpty() ? blobs.get(blobs.size() - 1).getKey() : null;
+            return new BlobPage(blobs, nextMarker);
 
         } catch (Exception e) {
-            log.error("Exception occurred in get(): " + e.getMessage());
+            log.error("Exception occurred in list(): " + e.getMessage());
             throw e;
         }
-
-        return objs;
     }
 
 
@@ -285,9 +672,16 @@ public class BlobstoreService {
      *
      * @param fileName String of file to be removed
      */
-    public void delete(String fileName) {
+    @Override
+    public void delete(final String fileName) throws Exception {
         try {
-            s3Client.deleteObject(bucket, fileName);
+            resilience.execute("delete", new Callable<Void>() {
+                @Override
+                public Void call() {
+                    s3Client.deleteObject(resilience.withTimeout("delete", new DeleteObjectRequest(bucket, fileName)));
+                    return null;
+                }
+            });
             if (log.isDebugEnabled())
                 log.debug("delete(): Successfully deleted the file = " + fileName);
         } catch (Exception e) {
@@ -295,4 +689,120 @@ public class BlobstoreService {
             throw e;
         }
     }
+
+    @Override
+    public SignedRequest signGet(String key, long expiresInSeconds) {
+        return sign(new GeneratePresignedUrlRequest(bucket, key, HttpMethod.GET), HttpMethod.GET,
+                new LinkedHashMap<String, String>(), expiresInSeconds);
+    }
+
+    @Override
+    public SignedRequest signPut(String key, String contentType, long expiresInSeconds) {
+        GeneratePresignedUrlRequest request = new GeneratePresignedUrlRequest(bucket, key, HttpMethod.PUT);
+        Map<String, String> headers = new LinkedHashMap<>();
+        if (contentType != null) {
+            request.setContentType(contentType);
+            headers.put("Content-Type", contentType);
+        }
+        if (enableSSE) {
+            request.setSSEAlgorithm(ObjectMetadata.AES_256_SERVER_SIDE_ENCRYPTION);
+            headers.put("x-amz-server-side-encryption", ObjectMetadata.AES_256_SERVER_SIDE_ENCRYPTION);
+        }
+        return sign(request, HttpMethod.PUT, headers, expiresInSeconds);
+    }
+
+    @Override
+    public String initiateMultipartUpload(String key, String contentType) throws Exception {
+        ObjectMetadata objectMetadata = new ObjectMetadata();
+        if (contentType != null) {
+            objectMetadata.setContentType(contentType);
+        }
+        if (enableSSE) {
+            objectMetadata.setSSEAlgorithm(ObjectMetadata.AES_256_SERVER_SIDE_ENCRYPTION);
+        }
+        final InitiateMultipartUploadRequest initRequest = new InitiateMultipartUploadRequest(bucket, key, objectMetadata);
+        InitiateMultipartUploadResult initResponse = resilience.executeOnce("initiateMultipartUpload",
+                new Callable<InitiateMultipartUploadResult>() {
+                    @Override
+                    public InitiateMultipartUploadResult call() {
+                        return s3Client.initiateMultipartUpload(resilience.withTimeout("initiateMultipartUpload", initRequest));
+                    }
+                });
+        if (log.isDebugEnabled())
+            log.debug("initiateMultipartUpload(): Started upload " + initResponse.getUploadId() + " for " + key);
+        return initResponse.getUploadId();
+    }
+
+    @Override
+    public SignedRequest signUploadPart(String key, String uploadId, int partNumber, long expiresInSeconds) {
+        GeneratePresignedUrlRequest request = new GeneratePresignedUrlRequest(bucket, key, HttpMethod.PUT);
+        request.addRequestParameter("uploadId", uploadId);
+        request.addRequestParameter("partNumber", Integer.toString(partNumber));
+        return sign(request, HttpMethod.PUT, new LinkedHashMap<String, String>(), expiresInSeconds);
+    }
+
+    @Override
+    public BlobInfo completeMultipartUpload(final String key, final String uploadId, SortedMap<Integer, String> partETags)
+            throws Exception {
+        final List<PartETag> parts = new ArrayList<>();
+        for (Map.Entry<Integer, String> entry : partETags.entrySet()) {
+            parts.add(new PartETag(entry.getKey(), entry.getValue()));
+        }
+        resilience.executeOnce("completeMultipartUpload", new Callable<CompleteMultipartUploadResult>() {
+            @Override
+            public CompleteMultipartUploadResult call() {
+                CompleteMultipartUploadRequest completeMultipartUploadRequest = new CompleteMultipartUploadRequest()
+                        .withBucketName(bucket)
+                        .withPartETags(parts)
+                        .withUploadId(uploadId)
+                        .withKey(key);
+                return s3Client.completeMultipartUpload(resilience.withTimeout("completeMultipartUpload", completeMultipartUploadRequest));
+            }
+        });
+        // The size of the Blob is only known to S3
+        return head(key);
+    }
+
+    @Override
+    public void abortMultipartUpload(final String key, final String uploadId) throws Exception {
+        resilience.execute("abortMultipartUpload", new Callable<Void>() {
+            @Override
+            public Void call() {
+                s3Client.abortMultipartUpload(resilience.withTimeout("abortMultipartUpload",
+                        new AbortMultipartUploadRequest(bucket, key, uploadId)));
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Signs the request locally, no call is made to S3
+     */
+    private SignedRequest sign(GeneratePresignedUrlRequest request, HttpMethod method, Map<String, String> headers,
+                               long expiresInSeconds) {
+        Date expiration = new Date(System.currentTimeMillis() + expiresInSeconds * 1000);
+        request.setExpiration(expiration);
+        return new SignedRequest(method.name(), s3Client.generatePresignedUrl(request).toString(), headers,
+                expiration.getTime());
+    }
+
+    private BlobInfo toBlobInfo(String key, ObjectMetadata meta) {
+        return new BlobInfo(key, meta.getContentLength(), meta.getETag(), meta.getContentType(),
+                toMillis(meta.getLastModified()));
+    }
+
+    private static long toMillis(Date date) {
+        return date != null ? date.getTime() : 0;
+    }
+
+    /**
+     * Maps a 404 from the Object Store to the SPI's not found exception
+     */
+    private Exception notFound(String key, AmazonServiceException e) {
+        if (e.getStatusCode() == 404) {
+            return new BlobNotFoundException(key, e);
+        }
+        log.error("Exception Occurred for " + key + ": " + e.getMessage());
+        return e;
+    }
 }
@@ -0,0 +1,83 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.repository;
+
+import com.ge.predix.sample.blobstore.spi.BlobContent;
+import com.ge.predix.sample.blobstore.spi.BlobInfo;
+import com.ge.predix.sample.blobstore.spi.BlobPage;
+import com.ge.predix.sample.blobstore.spi.BlobStoreBackend;
+import com.ge.predix.sample.blobstore.spi.ByteRange;
+import org.springframework.util.concurrent.ListenableFuture;
+import org.springframework.util.concurrent.SettableListenableFuture;
+
+import java.io.InputStream;
+
+/**
+ * Runs each call on the calling thread and returns an already completed future.
+ */
+public class SyncBlobstoreOperations implements BlobstoreOperations {
+
+    private final BlobStoreBackend backend;
+
+    public SyncBlobstoreOperations(BlobStoreBackend backend) {
+        this.backend = backend;
+    }
+
+    @Override
+    public ListenableFuture<BlobInfo> put(String key, InputStream content, long length, String contentType) {
+        SettableListenableFuture<BlobInfo> future = new SettableListenableFuture<>();
+        try {
+            future.set(backend.put(key, content, length, contentType));
+        } catch (Exception e) {
+            future.setException(e);
+        }
+        return future;
+    }
+
+    @Override
+    public ListenableFuture<BlobContent> get(String key, ByteRange range) {
+        SettableListenableFuture<BlobContent> future = new SettableListenableFuture<>();
+        try {
+            future.set(backend.get(key, range));
+        } catch (Exception e) {
+            future.setException(e);
+        }
+        return future;
+    }
+
+    @Override
+    public ListenableFuture<BlobPage> list(String prefix, String marker, int maxKeys) {
+        SettableListenableFuture<BlobPage> future = new SettableListenableFuture<>();
+        try {
+            future.set(backend.list(prefix, marker, maxKeys));
+        } catch (Exception e) {
+            future.setException(e);
+        }
+        return future;
+    }
+
+    @Override
+    public ListenableFuture<Void> delete(String key) {
+        SettableListenableFuture<Void> future = new SettableListenableFuture<>();
+        try {
+            backend.delete(key);
+            future.set(null);
+        } catch (Exception e) {
+            future.setException(e);
+        }
+        return future;
+    }
+}
@@ -0,0 +1,46 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.resilience;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Decorrelated jitter backoff: each delay is drawn uniformly between the base delay and
+ * three times the previous delay, capped at the maximum.
+ */
+public class Backoff {
+
+    private final long baseMillis;
+
+    private final long maxMillis;
+
+    public Backoff(long baseMillis, long maxMillis) {
+        this.baseMillis = Math.max(1, baseMillis);
+        this.maxMillis = Math.max(this.baseMillis, maxMillis);
+    }
+
+    /**
+     * @param previousMillis previous delay, or 0 before the first retry
+     * @return long next delay in milliseconds
+     */
+    public long next(long previousMillis) {
+        long upper = Math.min(maxMillis, Math.max(baseMillis, previousMillis * 3));
+        if (upper <= baseMillis) {
+            return baseMillis;
+        }
+        return ThreadLocalRandom.current().nextLong(baseMillis, upper + 1);
+    }
+}
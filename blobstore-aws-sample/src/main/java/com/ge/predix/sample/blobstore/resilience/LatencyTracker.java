@@ -0,0 +1,73 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.resilience;
+
+import java.util.Arrays;
+
+/**
+ * Keeps a sliding window of recent latencies and answers quantile queries over it.
+ */
+public class LatencyTracker {
+
+    /**
+     * Quantiles are recomputed after this many new samples
+     */
+    private static final int REFRESH_INTERVAL = 32;
+
+    private final long[] samples;
+
+    private final double quantile;
+
+    private int next;
+
+    private int count;
+
+    private int sinceRefresh;
+
+    private long cachedQuantile = -1;
+
+    public LatencyTracker(int window, double quantile) {
+        this.samples = new long[window];
+        this.quantile = quantile;
+    }
+
+    public synchronized void record(long millis) {
+        samples[next] = millis;
+        next = (next + 1) % samples.length;
+        if (count < samples.length) {
+            count++;
+        }
+        sinceRefresh++;
+    }
+
+    /**
+     * @param minSamples number of samples required before an estimate is given
+     * @return long configured quantile in milliseconds, or -1 if there are not enough samples
+     */
+    public synchronized long quantile(int minSamples) {
+        if (count < minSamples) {
+            return -1;
+        }
+        if (cachedQuantile < 0 || sinceRefresh >= REFRESH_INTERVAL) {
+            long[] sorted = Arrays.copyOf(samples, count);
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(quantile * count) - 1;
+            cachedQuantile = sorted[Math.max(0, Math.min(count - 1, index))];
+            sinceRefresh = 0;
+        }
+        return cachedQuantile;
+    }
+}
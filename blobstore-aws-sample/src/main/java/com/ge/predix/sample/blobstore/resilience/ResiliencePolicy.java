@@ -0,0 +1,373 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.resilience;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.AmazonWebServiceRequest;
+import com.ge.predix.sample.blobstore.config.ResilienceProperties;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Applies timeouts, retries with decorrelated jitter backoff and hedging to Object Store calls.
+ * Only idempotent calls should be passed to {@link #execute} and {@link #executeHedged}, others
+ * go through {@link #executeOnce}.
+ */
+public class ResiliencePolicy implements PublicMetrics {
+
+    Log log = LogFactory.getLog(ResiliencePolicy.class);
+
+    private static final int LATENCY_WINDOW = 1024;
+
+    private final ResilienceProperties properties;
+
+    /**
+     * Runs hedged requests, hedging is off when null
+     */
+    private final ExecutorService executor;
+
+    private final Backoff backoff;
+
+    private final ConcurrentMap<String, LatencyTracker> latencies = new ConcurrentHashMap<>();
+
+    private final AtomicLong retries = new AtomicLong();
+
+    private final AtomicLong failures = new AtomicLong();
+
+    private final AtomicLong timeouts = new AtomicLong();
+
+    private final AtomicLong hedgedCalls = new AtomicLong();
+
+    private final AtomicLong hedges = new AtomicLong();
+
+    private final AtomicLong hedgeWins = new AtomicLong();
+
+    public ResiliencePolicy(ResilienceProperties properties, ExecutorService executor) {
+        this.properties = properties;
+        this.executor = executor;
+        this.backoff = new Backoff(properties.getBaseBackoffMillis(), properties.getMaxBackoffMillis());
+    }
+
+    /**
+     * Policy with default retries and timeouts and no hedging
+     *
+     * @return ResiliencePolicy
+     */
+    public static ResiliencePolicy defaults() {
+        return new ResiliencePolicy(new ResilienceProperties(), null);
+    }
+
+    /**
+     * Sets the timeout configured for the operation on the request.
+     *
+     * @param operation name of the operation
+     * @param request   request to be sent
+     * @return the same request
+     */
+    public <R extends AmazonWebServiceRequest> R withTimeout(String operation, R request) {
+        request.setSdkRequestTimeout(timeoutMillis(operation));
+        return request;
+    }
+
+    private int timeoutMillis(String operation) {
+        Integer timeout = properties.getOperationTimeoutMillis().get(operation);
+        return timeout != null ? timeout : properties.getDefaultTimeoutMillis();
+    }
+
+    /**
+     * Runs an idempotent call, retrying retryable failures.
+     *
+     * @param operation name of the operation, used for latency tracking
+     * @param call      call against the Object Store
+     * @return T result of the call
+     * @throws Exception the last failure once all attempts are used up
+     */
+    public <T> T execute(String operation, Callable<T> call) throws Exception {
+        return retry(operation, timed(operation, call));
+    }
+
+    /**
+     * Runs a call that must not be repeated, such as starting or completing a multipart upload,
+     * exactly once. A retry after a lost response could start a second upload or complete one
+     * that has already completed.
+     *
+     * @param operation name of the operation, used for latency tracking
+     * @param call      call against the Object Store
+     * @return T result of the call
+     * @throws Exception the failure of the call
+     */
+    public <T> T executeOnce(String operation, Callable<T> call) throws Exception {
+        try {
+            return timed(operation, call).call();
+        } catch (Exception e) {
+            if (isTimeout(e)) {
+                timeouts.incrementAndGet();
+            }
+            failures.incrementAndGet();
+            throw e;
+        }
+    }
+
+    /**
+     * Runs an idempotent call with retries. If the call has not completed after the configured
+     * latency quantile, a second identical call is sent and whichever answers first is used.
+     *
+     * @param operation name of the operation, used for latency tracking
+     * @param call      call against the Object Store
+     * @param discard   releases the result of the call that lost the race
+     * @return T result of the call
+     * @throws Exception the last failure once all attempts are used up
+     */
+    public <T> T executeHedged(final String operation, final Callable<T> call, final Discard<T> discard)
+            throws Exception {
+        if (!properties.isHedgeEnabled() || executor == null) {
+            return execute(operation, call);
+        }
+        return retry(operation, new Callable<T>() {
+            @Override
+            public T call() throws Exception {
+                return hedge(operation, timed(operation, call), discard);
+            }
+        });
+    }
+
+    private <T> T retry(String operation, Callable<T> call) throws Exception {
+        long delay = 0;
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return call.call();
+            } catch (Exception e) {
+                if (isTimeout(e)) {
+                    timeouts.incrementAndGet();
+                }
+                if (attempt >= properties.getMaxAttempts() || !isRetryable(e)) {
+                    failures.incrementAndGet();
+                    throw e;
+                }
+                delay = backoff.next(delay);
+                retries.incrementAndGet();
+                log.warn(operation + "(): attempt " + attempt + " failed, retrying in " + delay + "ms : " + e.getMessage());
+                Thread.sleep(delay);
+            }
+        }
+    }
+
+    /**
+     * Races the call against a delayed second call. Waiting is bounded by the operation timeout
+     * so a saturated executor that never starts the calls fails the attempt instead of blocking
+     * the caller indefinitely.
+     */
+    private <T> T hedge(String operation, final Callable<T> call, final Discard<T> discard) throws Exception {
+        long delay = tracker(operation).quantile(properties.getHedgeMinSamples());
+        if (delay < 0) {
+            return call.call();
+        }
+        delay = Math.max(delay, properties.getHedgeMinDelayMillis());
+        hedgedCalls.incrementAndGet();
+
+        // The first call to succeed claims the race, a later success releases its own result
+        final AtomicBoolean claimed = new AtomicBoolean();
+        Callable<T> racer = new Callable<T>() {
+            @Override
+            public T call() throws Exception {
+                T result = call.call();
+                if (!claimed.compareAndSet(false, true)) {
+                    discard.discard(result);
+                    throw new CancellationException("Lost the race to the other request");
+                }
+                return result;
+            }
+        };
+
+        long timeout = timeoutMillis(operation);
+        CompletionService<T> completion = new ExecutorCompletionService<>(executor);
+        Future<T> primary = completion.submit(racer);
+        Future<T> hedge = null;
+        try {
+            Future<T> first = completion.poll(delay, TimeUnit.MILLISECONDS);
+            if (first == null) {
+                hedges.incrementAndGet();
+                hedge = completion.submit(racer);
+                first = completion.poll(timeout, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    throw abandon(operation, timeout, primary, hedge, claimed, discard);
+                }
+            }
+
+            try {
+                T result = first.get();
+                if (first == hedge) {
+                    hedgeWins.incrementAndGet();
+                }
+                return result;
+            } catch (ExecutionException e) {
+                if (hedge == null) {
+                    throw unwrap(e);
+                }
+            }
+
+            Future<T> second = completion.poll(timeout, TimeUnit.MILLISECONDS);
+            if (second == null) {
+                throw abandon(operation, timeout, primary, hedge, claimed, discard);
+            }
+            try {
+                T result = second.get();
+                if (second == hedge) {
+                    hedgeWins.incrementAndGet();
+                }
+                return result;
+            } catch (ExecutionException e) {
+                throw unwrap(e);
+            }
+        } catch (InterruptedException e) {
+            // Nobody will read the result any more, release whichever call already won
+            if (!claimed.compareAndSet(false, true)) {
+                discardIfDone(primary, discard);
+                discardIfDone(hedge, discard);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Gives up on both calls of a race, releasing a result that arrives too late
+     */
+    private <T> TimeoutException abandon(String operation, long timeout, Future<T> primary, Future<T> hedge,
+                                         AtomicBoolean claimed, Discard<T> discard) {
+        if (!claimed.compareAndSet(false, true)) {
+            discardIfDone(primary, discard);
+            discardIfDone(hedge, discard);
+        }
+        primary.cancel(true);
+        if (hedge != null) {
+            hedge.cancel(true);
+        }
+        return new TimeoutException(operation + "(): no hedged request completed within " + timeout + "ms");
+    }
+
+    private <T> void discardIfDone(Future<T> future, Discard<T> discard) {
+        if (future == null || !future.isDone()) {
+            return;
+        }
+        try {
+            discard.discard(future.get());
+        } catch (Exception e) {
+            if (log.isDebugEnabled())
+                log.debug("discardIfDone(): request ended with " + e.getMessage());
+        }
+    }
+
+    private <T> Callable<T> timed(final String operation, final Callable<T> call) {
+        return new Callable<T>() {
+            @Override
+            public T call() throws Exception {
+                long start = System.nanoTime();
+                T result = call.call();
+                tracker(operation).record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                return result;
+            }
+        };
+    }
+
+    private LatencyTracker tracker(String operation) {
+        LatencyTracker tracker = latencies.get(operation);
+        if (tracker == null) {
+            LatencyTracker created = new LatencyTracker(LATENCY_WINDOW, properties.getHedgeQuantile());
+            tracker = latencies.putIfAbsent(operation, created);
+            if (tracker == null) {
+                tracker = created;
+            }
+        }
+        return tracker;
+    }
+
+    private boolean isRetryable(Exception e) {
+        if (e instanceof AmazonServiceException) {
+            AmazonServiceException ase = (AmazonServiceException) e;
+            return ase.getStatusCode() >= 500 || ase.getStatusCode() == 429
+                    || "RequestTimeout".equals(ase.getErrorCode()) || "SlowDown".equals(ase.getErrorCode());
+        }
+        if (e instanceof AmazonClientException) {
+            return ((AmazonClientException) e).isRetryable();
+        }
+        return e instanceof IOException;
+    }
+
+    private boolean isTimeout(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t.getClass().getSimpleName().endsWith("TimeoutException")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Exception unwrap(ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        return cause instanceof Exception ? (Exception) cause : e;
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        Collection<Metric<?>> metrics = new ArrayList<>();
+        metrics.add(new Metric<Long>("blobstore.resilience.retries", retries.get()));
+        metrics.add(new Metric<Long>("blobstore.resilience.failures", failures.get()));
+        metrics.add(new Metric<Long>("blobstore.resilience.timeouts", timeouts.get()));
+        metrics.add(new Metric<Long>("blobstore.resilience.hedge.calls", hedgedCalls.get()));
+        metrics.add(new Metric<Long>("blobstore.resilience.hedge.sent", hedges.get()));
+        metrics.add(new Metric<Long>("blobstore.resilience.hedge.wins", hedgeWins.get()));
+        long calls = hedgedCalls.get();
+        long sent = hedges.get();
+        metrics.add(new Metric<Double>("blobstore.resilience.hedge.rate", calls == 0 ? 0.0 : (double) sent / calls));
+        metrics.add(new Metric<Double>("blobstore.resilience.hedge.winRate", sent == 0 ? 0.0 : (double) hedgeWins.get() / sent));
+        for (Map.Entry<String, LatencyTracker> entry : latencies.entrySet()) {
+            metrics.add(new Metric<Long>("blobstore.resilience.latency." + entry.getKey() + ".quantile",
+                    entry.getValue().quantile(1)));
+        }
+        return metrics;
+    }
+
+    /**
+     * Releases the result of a request that is no longer needed
+     */
+    public interface Discard<T> {
+        void discard(T result);
+    }
+}
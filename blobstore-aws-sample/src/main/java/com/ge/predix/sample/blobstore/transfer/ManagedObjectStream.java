@@ -0,0 +1,169 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.transfer;
+
+import com.amazonaws.services.s3.model.S3ObjectInputStream;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+
+/**
+ * Content of an S3 object that tracks how much of it has been consumed. On close the remainder
+ * is drained when small, so the connection returns to the pool, and the connection is aborted
+ * when large. A stream is only closed after it has returned -1, S3ObjectInputStream aborts the
+ * connection when closed before it has seen the end. Created by {@link ObjectStreamManager}.
+ */
+public class ManagedObjectStream extends FilterInputStream {
+
+    private static final Log log = LogFactory.getLog(ManagedObjectStream.class);
+
+    private static final int DRAIN_BUFFER_SIZE = 8 * 1024;
+
+    private final S3ObjectInputStream stream;
+
+    private final long contentLength;
+
+    private final ObjectStreamManager manager;
+
+    private long consumed;
+
+    private boolean eof;
+
+    private boolean closed;
+
+    ManagedObjectStream(S3ObjectInputStream stream, long contentLength, ObjectStreamManager manager) {
+        super(stream);
+        this.stream = stream;
+        this.contentLength = contentLength;
+        this.manager = manager;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if (b == -1) {
+            eof = true;
+        } else {
+            consumed++;
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int n = super.read(b, off, len);
+        if (n == -1) {
+            eof = true;
+        } else {
+            consumed += n;
+        }
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = super.skip(n);
+        consumed += skipped;
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    /**
+     * @return long bytes read so far
+     */
+    public long getConsumed() {
+        return consumed;
+    }
+
+    /**
+     * @return long bytes left to read, or -1 if the length of the content is unknown
+     */
+    public long getRemaining() {
+        if (eof) {
+            return 0;
+        }
+        return contentLength < 0 ? -1 : Math.max(0, contentLength - consumed);
+    }
+
+    /**
+     * Drops the connection without reading the rest of the content
+     */
+    public synchronized void abort() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        long remaining = getRemaining();
+        stream.abort();
+        manager.aborted(remaining);
+        if (log.isDebugEnabled())
+            log.debug("abort(): Aborted after " + consumed + " of " + contentLength + " bytes");
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        long remaining = getRemaining();
+        if (eof) {
+            closed = true;
+            manager.completed();
+            stream.close();
+        } else if (remaining < 0 || remaining > manager.getDrainThresholdBytes()) {
+            abort();
+        } else {
+            drain();
+        }
+    }
+
+    /**
+     * Reads the small remainder up to the end of the stream so the connection can be reused,
+     * a stream read to its length has yet to return -1
+     */
+    private void drain() throws IOException {
+        long drained = 0;
+        try {
+            byte[] buffer = new byte[DRAIN_BUFFER_SIZE];
+            int n;
+            while ((n = stream.read(buffer)) != -1) {
+                drained += n;
+                if (drained > manager.getDrainThresholdBytes()) {
+                    // Longer than announced, stop paying for it
+                    abort();
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            abort();
+            return;
+        }
+        closed = true;
+        eof = true;
+        if (drained == 0) {
+            manager.completed();
+        } else {
+            manager.drained(drained);
+        }
+        stream.close();
+    }
+}
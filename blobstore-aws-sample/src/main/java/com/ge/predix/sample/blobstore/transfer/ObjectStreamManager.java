@@ -0,0 +1,98 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.transfer;
+
+import com.amazonaws.services.s3.model.S3ObjectInputStream;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides how the connection behind an S3 object stream is released when the stream is closed.
+ * Closing an S3ObjectInputStream that has not returned -1 yet aborts its connection, even when
+ * nothing but the end of the stream is left, so the next request pays for a new connection.
+ * Streams with up to drainThresholdBytes left are read to their end before they are closed, so
+ * the connection goes back to the pool. Streams with more left are aborted, draining them would
+ * mean downloading what nobody reads.
+ */
+public class ObjectStreamManager implements PublicMetrics {
+
+    /**
+     * Default remainder up to which a stream is drained rather than aborted
+     */
+    public static final long DEFAULT_DRAIN_THRESHOLD = 128 * 1024;
+
+    private final long drainThresholdBytes;
+
+    private final AtomicLong completed = new AtomicLong();
+
+    private final AtomicLong drained = new AtomicLong();
+
+    private final AtomicLong aborted = new AtomicLong();
+
+    private final AtomicLong drainedBytes = new AtomicLong();
+
+    private final AtomicLong abandonedBytes = new AtomicLong();
+
+    public ObjectStreamManager(long drainThresholdBytes) {
+        this.drainThresholdBytes = drainThresholdBytes;
+    }
+
+    /**
+     * Wraps the content of an object so that closing it releases the connection appropriately
+     *
+     * @param stream        content of the object
+     * @param contentLength bytes the stream delivers, or -1 if unknown
+     * @return ManagedObjectStream to hand to the caller in place of the stream
+     */
+    public ManagedObjectStream manage(S3ObjectInputStream stream, long contentLength) {
+        return new ManagedObjectStream(stream, contentLength, this);
+    }
+
+    long getDrainThresholdBytes() {
+        return drainThresholdBytes;
+    }
+
+    void completed() {
+        completed.incrementAndGet();
+    }
+
+    void drained(long bytes) {
+        drained.incrementAndGet();
+        drainedBytes.addAndGet(bytes);
+    }
+
+    void aborted(long remainingBytes) {
+        aborted.incrementAndGet();
+        if (remainingBytes > 0) {
+            abandonedBytes.addAndGet(remainingBytes);
+        }
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        Collection<Metric<?>> metrics = new ArrayList<>();
+        metrics.add(new Metric<Long>("blobstore.stream.completed", completed.get()));
+        metrics.add(new Metric<Long>("blobstore.stream.drained", drained.get()));
+        metrics.add(new Metric<Long>("blobstore.stream.aborted", aborted.get()));
+        metrics.add(new Metric<Long>("blobstore.stream.drainedBytes", drainedBytes.get()));
+        metrics.add(new Metric<Long>("blobstore.stream.abandonedBytes", abandonedBytes.get()));
+        return metrics;
+    }
+}
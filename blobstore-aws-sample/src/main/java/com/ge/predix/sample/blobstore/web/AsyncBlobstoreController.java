@@ -0,0 +1,268 @@
+package com.ge.predix.sample.blobstore.web;
+
+import com.ge.predix.sample.blobstore.io.ContentTypeDetector;
+import com.ge.predix.sample.blobstore.meta.BlobMetadataService;
+import com.ge.predix.sample.blobstore.repository.BlobstoreOperations;
+import com.ge.predix.sample.blobstore.spi.BlobContent;
+import com.ge.predix.sample.blobstore.spi.BlobInfo;
+import com.ge.predix.sample.blobstore.spi.BlobNotFoundException;
+import com.ge.predix.sample.blobstore.spi.BlobPage;
+import com.ge.predix.sample.blobstore.spi.ByteRange;
+import com.ge.predix.sample.blobstore.spi.InvalidBlobKeyException;
+import com.ge.predix.sample.blobstore.spi.RangeNotSatisfiableException;
+import com.ge.predix.sample.blobstore.write.ConditionalWrites;
+import com.ge.predix.sample.blobstore.write.InvalidConditionException;
+import com.ge.predix.sample.blobstore.write.PreconditionFailedException;
+import com.ge.predix.sample.blobstore.write.WriteCondition;
+import com.ge.predix.sample.blobstore.write.WriteConflictException;
+import com.wordnik.swagger.annotations.Api;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.InputStreamResource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.concurrent.ListenableFutureCallback;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Asynchronous variant of the {@link BlobstoreController} endpoints. The request thread is
+ * released as soon as the call to the Object Store has been started.
+ */
+@RestController
+@RequestMapping("/v1/async")
+@Api(value = "/v1/async", description = "Asynchronous Blobstore operations")
+public class AsyncBlobstoreController {
+
+    Log log = LogFactory.getLog(AsyncBlobstoreController.class);
+
+    @Autowired
+    BlobstoreOperations blobstoreOperations;
+
+    @Autowired
+    BlobMetadataService metadataService;
+
+    @Autowired
+    ContentTypeDetector contentTypeDetector;
+
+    @Autowired
+    ConditionalWrites conditionalWrites;
+
+    /**
+     * Delete a Blob File from the Object Store. The delete holds the lock of the name on this
+     * instance like a write.
+     *
+     * @param id name of the Blob to be deleted
+     * @param ifMatch ETags one of which the current Blob must have, * for any existing Blob
+     * @return DeferredResult completed once the Blob is removed
+     * @throws Exception
+     */
+    @RequestMapping(value = "/blob/{id:.+}", method = RequestMethod.DELETE)
+    public DeferredResult<ResponseEntity<InputStreamResource>> deleteFile(@PathVariable(value = "id") final String id,
+                                                                          @RequestHeader(value = "If-Match", required = false) String ifMatch)
+            throws Exception {
+        final DeferredResult<ResponseEntity<InputStreamResource>> result = new DeferredResult<>();
+        final ConditionalWrites.Permit permit = conditionalWrites.acquire(id, WriteCondition.fromHeaders(ifMatch, null));
+        try {
+            blobstoreOperations.delete(id).addCallback(new ListenableFutureCallback<Void>() {
+                @Override
+                public void onSuccess(Void ignored) {
+                    log.info(id + " deleted from ObjectStore.");
+                    metadataService.deleted(id);
+                    permit.release(null);
+                    result.setResult(new ResponseEntity<InputStreamResource>(HttpStatus.NO_CONTENT));
+                }
+
+                @Override
+                public void onFailure(Throwable t) {
+                    permit.release(null);
+                    log.error("deleteFile(): Exception occurred : " + t.getMessage());
+                    result.setErrorResult(t);
+                }
+            });
+        } catch (RuntimeException e) {
+            permit.release(null);
+            throw e;
+        }
+        return result;
+    }
+
+    /**
+     * Get a Blob File from the Object Store
+     *
+     * @param id    name of the Blob to be download
+     * @param range optional range of the form start:end
+     * @return DeferredResult completed once the Object Store has answered
+     */
+    @RequestMapping(value = "/blob/{id:.+}", method = RequestMethod.GET)
+    public DeferredResult<ResponseEntity<InputStreamResource>> getFile(@PathVariable(value = "id") final String id,
+                                                                       @RequestParam(value = "range", required = false) String range) {
+        final DeferredResult<ResponseEntity<InputStreamResource>> result = new DeferredResult<>();
+        blobstoreOperations.get(id, ByteRange.parse(range)).addCallback(new ListenableFutureCallback<BlobContent>() {
+            @Override
+            public void onSuccess(BlobContent content) {
+                HttpHeaders respHeaders = new HttpHeaders();
+                respHeaders.setContentDispositionFormData("attachment", id);
+                respHeaders.setContentLength(content.getContentLength());
+                if (!result.setResult(new ResponseEntity<InputStreamResource>(new InputStreamResource(content.getStream()), respHeaders, HttpStatus.OK))) {
+                    // The request has already timed out, nobody will read the content
+                    closeQuietly(content);
+                }
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                log.error("getFile(): Exception occurred : " + t.getMessage());
+                result.setErrorResult(t);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Handles uploading the BlobFile to the Object Store. Uploads are staged and the name is
+     * only locked on this instance while the staged Blob is moved into place.
+     *
+     * @param file to be uploaded
+     * @param ifMatch ETags one of which the current Blob must have, * for any existing Blob
+     * @param ifNoneMatch * to only create the Blob if it does not exist yet
+     * @return DeferredResult completed once the upload is complete
+     * @throws Exception
+     */
+    @RequestMapping(value = "/blob", method = RequestMethod.POST)
+    public DeferredResult<ResponseEntity<InputStreamResource>> handleFileUpload(@RequestParam("file") final MultipartFile file,
+                                                                                @RequestHeader(value = "If-Match", required = false) String ifMatch,
+                                                                                @RequestHeader(value = "If-None-Match", required = false) String ifNoneMatch)
+            throws Exception {
+        final DeferredResult<ResponseEntity<InputStreamResource>> result = new DeferredResult<>();
+        InputStream content = contentTypeDetector.markable(file.getInputStream());
+        String contentType = contentTypeDetector.detect(file.getOriginalFilename(), file.getContentType(), content);
+        final ConditionalWrites.Write write = conditionalWrites.begin(file.getOriginalFilename(),
+                WriteCondition.fromHeaders(ifMatch, ifNoneMatch), file.getSize());
+        try {
+            blobstoreOperations.put(write.getKey(), content, file.getSize(), contentType)
+                    .addCallback(new ListenableFutureCallback<BlobInfo>() {
+                @Override
+                public void onSuccess(BlobInfo info) {
+                    try {
+                        write.commit(info);
+                    } catch (Exception e) {
+                        log.error("handleFileUpload(): Exception occurred : " + e.getMessage());
+                        result.setErrorResult(e);
+                        return;
+                    }
+                    log.info(file.getOriginalFilename() + " put to ObjectStore.");
+                    result.setResult(new ResponseEntity<InputStreamResource>(HttpStatus.OK));
+                }
+
+                @Override
+                public void onFailure(Throwable t) {
+                    write.abort();
+                    log.error("handleFileUpload(): Exception occurred : " + t.getMessage());
+                    result.setErrorResult(t);
+                }
+            });
+        } catch (RuntimeException e) {
+            write.abort();
+            throw e;
+        }
+        return result;
+    }
+
+    /**
+     * Lists the Blobs in the binded bucket
+     *
+     * @return DeferredResult with the Blob names
+     */
+    @RequestMapping(value = "/blobs", method = RequestMethod.GET)
+    public DeferredResult<List<String>> listFiles() {
+        final DeferredResult<List<String>> result = new DeferredResult<>();
+        blobstoreOperations.list(null, null, 1000).addCallback(new ListenableFutureCallback<BlobPage>() {
+            @Override
+            public void onSuccess(BlobPage page) {
+                List<String> names = new ArrayList<>();
+                for (BlobInfo info : page.getBlobs()) {
+                    names.add(info.getKey());
+                }
+                result.setResult(names);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                log.error("listFiles(): Exception occurred : " + t.getMessage());
+                result.setErrorResult(t);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Maps a missing Blob to 404
+     */
+    @ExceptionHandler(BlobNotFoundException.class)
+    public ResponseEntity<InputStreamResource> handleNotFound(BlobNotFoundException e) {
+        log.info("Blob not found : " + e.getKey());
+        return new ResponseEntity<InputStreamResource>(HttpStatus.NOT_FOUND);
+    }
+
+    /**
+     * Maps a range starting beyond the end of the Blob to 416
+     */
+    @ExceptionHandler(RangeNotSatisfiableException.class)
+    public ResponseEntity<InputStreamResource> handleRangeNotSatisfiable(RangeNotSatisfiableException e) {
+        log.info("Range not satisfiable : " + e.getKey());
+        return new ResponseEntity<InputStreamResource>(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE);
+    }
+
+    /**
+     * Maps a key that cannot name a Blob to 400
+     */
+    @ExceptionHandler(InvalidBlobKeyException.class)
+    public ResponseEntity<InputStreamResource> handleInvalidKey(InvalidBlobKeyException e) {
+        log.info("Invalid key : " + e.getMessage());
+        return new ResponseEntity<InputStreamResource>(HttpStatus.BAD_REQUEST);
+    }
+
+    /**
+     * Maps a failed If-Match or If-None-Match to 412
+     */
+    @ExceptionHandler(PreconditionFailedException.class)
+    public ResponseEntity<InputStreamResource> handlePreconditionFailed(PreconditionFailedException e) {
+        log.info("Precondition failed : " + e.getKey());
+        return new ResponseEntity<InputStreamResource>(HttpStatus.PRECONDITION_FAILED);
+    }
+
+    /**
+     * Maps an If-Match or If-None-Match naming no ETag to 400
+     */
+    @ExceptionHandler(InvalidConditionException.class)
+    public ResponseEntity<InputStreamResource> handleInvalidCondition(InvalidConditionException e) {
+        log.info("Invalid condition : " + e.getHeader());
+        return new ResponseEntity<InputStreamResource>(HttpStatus.BAD_REQUEST);
+    }
+
+    /**
+     * Maps a write rejected because the same key is being written to 409
+     */
+    @ExceptionHandler(WriteConflictException.class)
+    public ResponseEntity<InputStreamResource> handleWriteConflict(WriteConflictException e) {
+        log.info("Write conflict : " + e.getKey());
+        return new ResponseEntity<InputStreamResource>(HttpStatus.CONFLICT);
+    }
+
+    private void closeQuietly(BlobContent content) {
+        try {
+            content.close();
+        } catch (IOException e) {
+            log.warn("closeQuietly(): " + e.getMessage());
+        }
+    }
+}
@@ -1,18 +1,56 @@
 package com.ge.predix.sample.blobstore.web;
 
-import com.amazonaws.services.s3.model.S3Object;
-import com.ge.predix.sample.blobstore.repository.BlobstoreService;
+import com.ge.predix.sample.blobstore.archive.ArchiveExtractor;
+import com.ge.predix.sample.blobstore.archive.ArchiveFormat;
+import com.ge.predix.sample.blobstore.archive.ArchiveRequest;
+import com.ge.predix.sample.blobstore.archive.ArchiveStreamer;
+import com.ge.predix.sample.blobstore.archive.ExtractionManifest;
+import com.ge.predix.sample.blobstore.feed.ChangeFeed;
+import com.ge.predix.sample.blobstore.feed.ChangeFeedPage;
+import com.ge.predix.sample.blobstore.index.IndexPage;
+import com.ge.predix.sample.blobstore.index.IndexQuery;
+import com.ge.predix.sample.blobstore.index.MetadataIndex;
+import com.ge.predix.sample.blobstore.io.ContentTypeDetector;
+import com.ge.predix.sample.blobstore.io.DownloadWriter;
+import com.ge.predix.sample.blobstore.listing.ListingCache;
+import com.ge.predix.sample.blobstore.meta.BlobMetadataService;
+import com.ge.predix.sample.blobstore.meta.MetadataBatch;
+import com.ge.predix.sample.blobstore.spi.BlobContent;
+import com.ge.predix.sample.blobstore.spi.BlobInfo;
+import com.ge.predix.sample.blobstore.spi.BlobNotFoundException;
+import com.ge.predix.sample.blobstore.spi.BlobPage;
+import com.ge.predix.sample.blobstore.spi.BlobStoreBackend;
+import com.ge.predix.sample.blobstore.spi.ByteRange;
+import com.ge.predix.sample.blobstore.spi.InvalidBlobKeyException;
+import com.ge.predix.sample.blobstore.spi.RangeNotSatisfiableException;
+import com.ge.predix.sample.blobstore.thumb.Thumbnail;
+import com.ge.predix.sample.blobstore.thumb.ThumbnailService;
+import com.ge.predix.sample.blobstore.write.ConditionalWrites;
+import com.ge.predix.sample.blobstore.write.InvalidConditionException;
+import com.ge.predix.sample.blobstore.write.PreconditionFailedException;
+import com.ge.predix.sample.blobstore.write.WriteCondition;
+import com.ge.predix.sample.blobstore.write.WriteConflictException;
 import com.wordnik.swagger.annotations.Api;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.InputStreamResource;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
+
 /**
  * Primary Controller for the BlobStore Demo app
  *
@@ -26,20 +64,76 @@ public class BlobstoreController {
     Log log = LogFactory.getLog(BlobstoreController.class);
 
     @Autowired
-    BlobstoreService objectStoreService;
+    BlobStoreBackend objectStoreService;
+
+    @Autowired
+    DownloadWriter downloadWriter;
+
+    @Autowired
+    ContentTypeDetector contentTypeDetector;
+
+    @Autowired
+    ConditionalWrites conditionalWrites;
+
+    @Autowired
+    BlobMetadataService metadataService;
+
+    @Autowired
+    ListingCache listingCache;
+
+    @Autowired
+    ArchiveStreamer archiveStreamer;
+
+    @Autowired
+    ArchiveExtractor archiveExtractor;
+
+    @Autowired(required = false)
+    MetadataIndex metadataIndex;
+
+    @Autowired(required = false)
+    ChangeFeed changeFeed;
+
+    @Autowired(required = false)
+    ThumbnailService thumbnailService;
+
+    @Value("${blobstore.metadata.maxBatchSize:1000}")
+    private int maxBatchSize;
+
+    @Value("${blobstore.archive.listPageSize:1000}")
+    private int archiveListPageSize;
+
+    @Value("${blobstore.listing.maxPageSize:1000}")
+    private int maxListPageSize;
+
+    @Value("${blobstore.feed.maxPageEvents:1000}")
+    private int maxPageEvents;
+
+    @Value("${blobstore.thumbnail.cacheSeconds:86400}")
+    private long thumbnailCacheSeconds;
 
     /**
-     * Delete a Blob File from the database and Object Store
+     * Delete a Blob File from the database and Object Store. The delete holds the lock of the
+     * name on this instance like a write.
      *
      * @param id name of the Blob to be deleted
+     * @param ifMatch ETags one of which the current Blob must have, * for any existing Blob
      * @return String view name to be rendered
      */
     @RequestMapping(value = "/blob/{id:.+}", method = RequestMethod.DELETE)
-    public ResponseEntity<InputStreamResource> deleteFile(@PathVariable(value="id") String id) {
+    public ResponseEntity<InputStreamResource> deleteFile(@PathVariable(value="id") final String id,
+                                                          @RequestHeader(value = "If-Match", required = false) String ifMatch)
+            throws Exception {
 
         if (id != null) {
             try {
-                objectStoreService.delete(id);
+                conditionalWrites.write(id, WriteCondition.fromHeaders(ifMatch, null), new Callable<BlobInfo>() {
+                    @Override
+                    public BlobInfo call() throws Exception {
+                        objectStoreService.delete(id);
+                        metadataService.deleted(id);
+                        return null;
+                    }
+                });
                 log.info(id + " deleted from ObjectStore.");
             } catch (Exception e) {
                 log.error("deleteFile(): Exception occurred : " + e.getMessage());
@@ -51,70 +145,463 @@ public class BlobstoreController {
     }
 
     /**
-     * Get a Blob File from the Object Store
+     * Get a Blob File from the Object Store. The content is streamed straight to the response
+     * with its Content-Length, the Object Store connection is dropped if the client goes away.
      *
      * @param id name of the Blob to be download
-     * @return String view name to be rendered
+     * @param response to write the Blob to
      * @throws Exception
      */
     @RequestMapping(value = "/blob/{id:.+}", method = RequestMethod.GET)
-    public ResponseEntity<InputStreamResource> getFile(@PathVariable(value = "id") String id,
-                                                       @RequestParam(value = "range", required = false) String range)
+    public void getFile(@PathVariable(value = "id") String id,
+                        @RequestParam(value = "range", required = false) String range,
+                        HttpServletResponse response)
             throws Exception {
 
         log.info("Get file : " + id);
-        if (id != null) {
-            try {
-                HttpHeaders respHeaders = new HttpHeaders();
+        try {
+            BlobContent content = objectStoreService.get(id, ByteRange.parse(range));
 
-                    log.info("Get the file : " + id);
+            HttpHeaders respHeaders = new HttpHeaders();
+            respHeaders.setContentDispositionFormData("attachment", id);
+            response.setHeader(HttpHeaders.CONTENT_DISPOSITION, respHeaders.getFirst(HttpHeaders.CONTENT_DISPOSITION));
+            response.setContentType(MediaType.APPLICATION_OCTET_STREAM_VALUE);
+            if (content.getContentLength() >= 0) {
+                response.setHeader(HttpHeaders.CONTENT_LENGTH, Long.toString(content.getContentLength()));
+            }
 
-                    if (id != null) {
-                        respHeaders.setContentDispositionFormData("attachment", id);
-                        InputStreamResource isr = new InputStreamResource(objectStoreService.get(id, range));
-                        return new ResponseEntity<InputStreamResource>(isr, respHeaders, HttpStatus.OK);
-                    } else {
-                        throw new Exception("Unable to find BlobFile in the repo.");
-                    }
+            long written = downloadWriter.write(content, response.getOutputStream());
+            if (log.isDebugEnabled())
+                log.debug("getFile(): Sent " + written + " bytes of " + id);
+        } catch (Exception e) {
+            log.error("getFile(): Exception occurred : " + e.getMessage());
+            throw e;
+        }
+    }
+
+    /**
+     * Get the metadata of a Blob without its content
+     *
+     * @param id name of the Blob
+     * @return BlobInfo size, ETag and content type of the Blob
+     * @throws Exception
+     */
+    @RequestMapping(value = "/blob/{id:.+}/meta", method = RequestMethod.GET)
+    public ResponseEntity<BlobInfo> getMeta(@PathVariable(value = "id") String id) throws Exception {
+        return new ResponseEntity<BlobInfo>(metadataService.head(id), HttpStatus.OK);
+    }
 
+    /**
+     * Get a small JPEG preview of an image Blob, generated on first request if it was not made
+     * on upload. Requests carrying the ETag of the image as v may be cached for good, since a
+     * new version of the image gets a new URL.
+     *
+     * @param id      name of the image Blob
+     * @param version ETag of the image the caller knows of
+     * @return JPEG thumbnail, 304 if the caller has it, 415 if the Blob is no supported image,
+     * 503 if it could not be generated in time, 501 if thumbnails are disabled
+     * @throws Exception
+     */
+    @RequestMapping(value = "/blob/{id:.+}/thumb", method = RequestMethod.GET)
+    public ResponseEntity<byte[]> getThumbnail(@PathVariable(value = "id") String id,
+                                               @RequestParam(value = "v", required = false) String version,
+                                               @RequestHeader(value = "If-None-Match", required = false) String ifNoneMatch)
+            throws Exception {
+        if (thumbnailService == null) {
+            return new ResponseEntity<byte[]>(HttpStatus.NOT_IMPLEMENTED);
+        }
+        BlobInfo source = metadataService.head(id);
+        if (!thumbnailService.supports(source)) {
+            return new ResponseEntity<byte[]>(HttpStatus.UNSUPPORTED_MEDIA_TYPE);
+        }
+        HttpHeaders headers = new HttpHeaders();
+        headers.setETag("\"" + thumbnailService.eTagOf(source) + "\"");
+        boolean versioned = version != null && version.equals(source.getETag());
+        headers.setCacheControl("public, max-age=" + (versioned ? 31536000 : thumbnailCacheSeconds));
+        if (headers.getETag().equals(ifNoneMatch)) {
+            return new ResponseEntity<byte[]>(headers, HttpStatus.NOT_MODIFIED);
+        }
+        try {
+            Thumbnail thumbnail = thumbnailService.get(source);
+            headers.setContentType(MediaType.IMAGE_JPEG);
+            headers.setContentLength(thumbnail.getData().length);
+            return new ResponseEntity<byte[]>(thumbnail.getData(), headers, HttpStatus.OK);
+        } catch (TimeoutException | RejectedExecutionException e) {
+            log.info("getThumbnail(): Thumbnail of " + id + " not ready");
+            headers = new HttpHeaders();
+            headers.set(HttpHeaders.RETRY_AFTER, "1");
+            return new ResponseEntity<byte[]>(headers, HttpStatus.SERVICE_UNAVAILABLE);
+        }
+    }
 
-            } catch (Exception e) {
-                log.error("getFile(): Exception occurred : " + e.getMessage());
-                throw e;
-            }
+    /**
+     * Get the metadata of many Blobs at once. The Object Store is asked concurrently so the
+     * batch takes about as long as a single request.
+     *
+     * @param keys names of the Blobs
+     * @return MetadataBatch metadata found, keys missing and keys that failed
+     * @throws Exception
+     */
+    @RequestMapping(value = "/blobs/meta", method = RequestMethod.POST)
+    public ResponseEntity<MetadataBatch> getMetaBatch(@RequestBody List<String> keys) throws Exception {
+        if (keys.size() > maxBatchSize) {
+            log.info("getMetaBatch(): Rejected batch of " + keys.size() + " keys");
+            return new ResponseEntity<MetadataBatch>(HttpStatus.BAD_REQUEST);
         }
+        return new ResponseEntity<MetadataBatch>(metadataService.headAll(keys), HttpStatus.OK);
+    }
 
+    /**
+     * List one page of Blobs. Pages are served from a short-lived cache, so paging through a
+     * large store costs one listing call per page rather than a full listing per view.
+     *
+     * @param prefix keys starting with it
+     * @param marker nextMarker of the previous page
+     * @param limit  Blobs per page
+     * @return BlobPage Blobs in key order and the marker of the next page
+     * @throws Exception
+     */
+    @RequestMapping(value = "/blobs", method = RequestMethod.GET)
+    public ResponseEntity<BlobPage> listPage(@RequestParam(value = "prefix", required = false) String prefix,
+                                             @RequestParam(value = "marker", required = false) String marker,
+                                             @RequestParam(value = "limit", required = false, defaultValue = "100") int limit)
+            throws Exception {
+        BlobPage page = listingCache.list(prefix, marker, Math.max(1, Math.min(limit, maxListPageSize)));
+        return new ResponseEntity<BlobPage>(page, HttpStatus.OK);
+    }
 
-        // Default to 200, when input is missing
-        return new ResponseEntity<InputStreamResource>(HttpStatus.OK);
+    /**
+     * Search Blobs by key prefix, content type, size and modification time, answered from the
+     * in memory metadata index without listing the Object Store
+     *
+     * @param prefix         keys starting with it
+     * @param contentType    content types starting with it, e.g. image/
+     * @param minSize        smallest size in bytes, inclusive
+     * @param maxSize        largest size in bytes, inclusive
+     * @param modifiedAfter  epoch millis, inclusive
+     * @param modifiedBefore epoch millis, exclusive
+     * @param sort           key, size or lastModified
+     * @param order          asc or desc
+     * @param limit          Blobs per page
+     * @param cursor         nextCursor of the previous page
+     * @return IndexPage matching Blobs and the cursor of the next page, 501 if the index is
+     * disabled, 503 while it is first being built
+     */
+    @RequestMapping(value = "/blobs/search", method = RequestMethod.GET)
+    public ResponseEntity<IndexPage> search(@RequestParam(value = "prefix", required = false, defaultValue = "") String prefix,
+                                            @RequestParam(value = "contentType", required = false) String contentType,
+                                            @RequestParam(value = "minSize", required = false, defaultValue = "0") long minSize,
+                                            @RequestParam(value = "maxSize", required = false, defaultValue = "9223372036854775807") long maxSize,
+                                            @RequestParam(value = "modifiedAfter", required = false, defaultValue = "0") long modifiedAfter,
+                                            @RequestParam(value = "modifiedBefore", required = false, defaultValue = "9223372036854775807") long modifiedBefore,
+                                            @RequestParam(value = "sort", required = false, defaultValue = "key") String sort,
+                                            @RequestParam(value = "order", required = false, defaultValue = "asc") String order,
+                                            @RequestParam(value = "limit", required = false, defaultValue = "100") int limit,
+                                            @RequestParam(value = "cursor", required = false) String cursor) throws Exception {
+        if (metadataIndex == null) {
+            return new ResponseEntity<IndexPage>(HttpStatus.NOT_IMPLEMENTED);
+        }
+        if (!metadataIndex.isReady()) {
+            return new ResponseEntity<IndexPage>(HttpStatus.SERVICE_UNAVAILABLE);
+        }
+        IndexQuery query = new IndexQuery();
+        query.setPrefix(prefix);
+        query.setContentType(contentType);
+        query.setMinSize(minSize);
+        query.setMaxSize(maxSize);
+        query.setModifiedAfter(modifiedAfter);
+        query.setModifiedBefore(modifiedBefore);
+        query.setDescending("desc".equalsIgnoreCase(order));
+        query.setLimit(limit);
+        query.setCursor(cursor);
+        try {
+            query.setSort(IndexQuery.Sort.parse(sort));
+            return new ResponseEntity<IndexPage>(metadataIndex.search(query), HttpStatus.OK);
+        } catch (IllegalArgumentException e) {
+            log.info("search(): Rejected query : " + e.getMessage());
+            return new ResponseEntity<IndexPage>(HttpStatus.BAD_REQUEST);
+        }
     }
 
     /**
-     * Handles uploading the BlobFile to the Object Store.
+     * Read the changes to the Object Store after a sequence number. Pass the lastSequence of
+     * each page to the next call and start over from a full listing when the feedId changes or
+     * missed is set.
+     *
+     * @param after sequence of the last event already read, 0 for the oldest kept
+     * @param limit most events to return
+     * @return ChangeFeedPage added, changed and removed Blobs in order, 501 if the feed is disabled
+     */
+    @RequestMapping(value = "/blobs/changes", method = RequestMethod.GET)
+    public ResponseEntity<ChangeFeedPage> changes(@RequestParam(value = "after", required = false, defaultValue = "0") long after,
+                                                  @RequestParam(value = "limit", required = false, defaultValue = "1000") int limit) {
+        if (changeFeed == null) {
+            return new ResponseEntity<ChangeFeedPage>(HttpStatus.NOT_IMPLEMENTED);
+        }
+        return new ResponseEntity<ChangeFeedPage>(changeFeed.read(after, Math.max(1, Math.min(limit, maxPageEvents))), HttpStatus.OK);
+    }
+
+    /**
+     * Upload a tar or tar.gz and store every file in it as its own Blob. The request body is
+     * the archive itself, it is decompressed and extracted as it arrives and nothing is written
+     * to local disk.
+     *
+     * @param prefix prepended to the path of each file to form its key
+     * @param request carrying the archive as its body
+     * @return ExtractionManifest key, size and ETag of each stored file, 400 if the archive
+     * could not be read to its end
+     * @throws Exception
+     */
+    @RequestMapping(value = "/blob/extract", method = RequestMethod.POST)
+    public ResponseEntity<ExtractionManifest> extractUpload(@RequestParam(value = "prefix", required = false, defaultValue = "") String prefix,
+                                                            HttpServletRequest request) throws Exception {
+        try {
+            // Entries are reported to the metadata listeners as they are written
+            ExtractionManifest manifest = archiveExtractor.extract(request.getInputStream(), prefix);
+            log.info("Extracted " + manifest.getStoredCount() + " of " + manifest.getEntries().size() + " files to ObjectStore.");
+            return new ResponseEntity<ExtractionManifest>(manifest, manifest.isComplete() ? HttpStatus.OK : HttpStatus.BAD_REQUEST);
+        } catch (Exception e) {
+            log.error("extractUpload(): Exception occurred : " + e.getMessage());
+            throw e;
+        }
+    }
+
+    /**
+     * Download many Blobs as a single zip or tar. The archive is streamed as it is built, the
+     * next Blobs are read from the Object Store while the current one is written out. Keys that
+     * do not exist are left out.
+     *
+     * @param request the keys or the prefix of the Blobs, the format and the file name
+     * @param response to write the archive to
+     * @throws Exception
+     */
+    @RequestMapping(value = "/blobs/archive", method = RequestMethod.POST)
+    public void getArchive(@RequestBody ArchiveRequest request, HttpServletResponse response) throws Exception {
+        List<String> keys = request.getKeys();
+        boolean byPrefix = keys == null || keys.isEmpty();
+        if (byPrefix && request.getPrefix() == null) {
+            response.sendError(HttpStatus.BAD_REQUEST.value(), "Either keys or prefix is required");
+            return;
+        }
+        if (!byPrefix && keys.size() > archiveStreamer.getMaxEntries()) {
+            response.sendError(HttpStatus.BAD_REQUEST.value(), "At most " + archiveStreamer.getMaxEntries() + " keys per archive");
+            return;
+        }
+        ArchiveFormat format;
+        try {
+            format = ArchiveFormat.parse(request.getFormat());
+        } catch (IllegalArgumentException e) {
+            response.sendError(HttpStatus.BAD_REQUEST.value(), e.getMessage());
+            return;
+        }
+
+        log.info("Get archive : " + (byPrefix ? "prefix " + request.getPrefix() : keys.size() + " keys"));
+        try {
+            HttpHeaders respHeaders = new HttpHeaders();
+            respHeaders.setContentDispositionFormData("attachment", request.getName() + "." + format.getExtension());
+            response.setHeader(HttpHeaders.CONTENT_DISPOSITION, respHeaders.getFirst(HttpHeaders.CONTENT_DISPOSITION));
+            response.setContentType(format.getContentType());
+
+            long written = byPrefix
+                    ? archiveStreamer.writePrefix(request.getPrefix(), archiveListPageSize, format, response.getOutputStream())
+                    : archiveStreamer.write(keys, format, response.getOutputStream());
+            if (log.isDebugEnabled())
+                log.debug("getArchive(): Sent " + written + " bytes of content");
+        } catch (Exception e) {
+            log.error("getArchive(): Exception occurred : " + e.getMessage());
+            throw e;
+        }
+    }
+
+    /**
+     * Copies a Blob within the Object Store. The content is copied by the Object Store and does
+     * not pass through this application. The target is written like an upload, under its lock
+     * and its If-Match or If-None-Match condition.
+     *
+     * @param id          name of the Blob to copy
+     * @param target      name of the copy
+     * @param ifMatch     ETags one of which the current target must have, * for any existing Blob
+     * @param ifNoneMatch * to only create the target if it does not exist yet
+     * @return BlobInfo of the copy
+     * @throws Exception
+     */
+    @RequestMapping(value = "/blob/{id:.+}/copy", method = RequestMethod.POST)
+    public ResponseEntity<BlobInfo> copyFile(@PathVariable(value = "id") final String id,
+                                             @RequestParam(value = "target") final String target,
+                                             @RequestHeader(value = "If-Match", required = false) String ifMatch,
+                                             @RequestHeader(value = "If-None-Match", required = false) String ifNoneMatch)
+            throws Exception {
+        try {
+            BlobInfo info = conditionalWrites.write(target, WriteCondition.fromHeaders(ifMatch, ifNoneMatch),
+                    new Callable<BlobInfo>() {
+                @Override
+                public BlobInfo call() throws Exception {
+                    return objectStoreService.copy(id, target);
+                }
+            });
+            log.info(id + " copied to " + target + " in ObjectStore.");
+            return new ResponseEntity<BlobInfo>(info, HttpStatus.OK);
+        } catch (Exception e) {
+            log.error("copyFile(): Exception occurred : " + e.getMessage());
+            throw e;
+        }
+    }
+
+    /**
+     * Moves a Blob to a new name within the Object Store. The target is written like an upload,
+     * under its lock and its If-Match or If-None-Match condition. Answers 412 when the condition
+     * does not hold, or when the source was overwritten during the move, the copy is kept then
+     * and so is the newer source.
+     *
+     * @param id          name of the Blob to move
+     * @param target      new name of the Blob
+     * @param ifMatch     ETags one of which the current target must have, * for any existing Blob
+     * @param ifNoneMatch * to only create the target if it does not exist yet
+     * @return BlobInfo of the Blob under its new name
+     * @throws Exception
+     */
+    @RequestMapping(value = "/blob/{id:.+}/move", method = RequestMethod.POST)
+    public ResponseEntity<BlobInfo> moveFile(@PathVariable(value = "id") final String id,
+                                             @RequestParam(value = "target") final String target,
+                                             @RequestHeader(value = "If-Match", required = false) String ifMatch,
+                                             @RequestHeader(value = "If-None-Match", required = false) String ifNoneMatch)
+            throws Exception {
+        try {
+            BlobInfo info = conditionalWrites.write(target, WriteCondition.fromHeaders(ifMatch, ifNoneMatch),
+                    new Callable<BlobInfo>() {
+                @Override
+                public BlobInfo call() throws Exception {
+                    BlobInfo moved;
+                    try {
+                        moved = objectStoreService.move(id, target);
+                    } catch (PreconditionFailedException e) {
+                        // The source was overwritten during the move and kept, the copy exists
+                        reportCopy(target);
+                        throw e;
+                    }
+                    metadataService.deleted(id);
+                    return moved;
+                }
+            });
+            log.info(id + " moved to " + target + " in ObjectStore.");
+            return new ResponseEntity<BlobInfo>(info, HttpStatus.OK);
+        } catch (Exception e) {
+            log.error("moveFile(): Exception occurred : " + e.getMessage());
+            throw e;
+        }
+    }
+
+    /**
+     * Handles uploading the BlobFile to the Object Store. Concurrent uploads of the same name
+     * on this instance are serialized when they commit.
      *
      * @param file to be uploaded
+     * @param ifMatch ETags one of which the current Blob must have, * for any existing Blob
+     * @param ifNoneMatch * to only create the Blob if it does not exist yet
      * @return String view name to be rendered
      * @throws Exception
      */
     @RequestMapping(value = "/blob", method = RequestMethod.POST)
-    public ResponseEntity<InputStreamResource> handleFileUpload(@RequestParam("file") MultipartFile file) throws Exception {
+    public ResponseEntity<InputStreamResource> handleFileUpload(@RequestParam("file") MultipartFile file,
+                                                                @RequestHeader(value = "If-Match", required = false) String ifMatch,
+                                                                @RequestHeader(value = "If-None-Match", required = false) String ifNoneMatch)
+            throws Exception {
         if (file != null) {
-            S3Object obj = new S3Object();
+            final String filename = file.getOriginalFilename();
             try {
-                obj.setKey(file.getOriginalFilename());
-                obj.setObjectContent(file.getInputStream());
-
-                objectStoreService.put(obj);
-                log.info(file.getOriginalFilename() + " put to ObjectStore.");
+                final InputStream content = contentTypeDetector.markable(file.getInputStream());
+                final String contentType = contentTypeDetector.detect(filename, file.getContentType(), content);
+                final long size = file.getSize();
+                conditionalWrites.write(filename, WriteCondition.fromHeaders(ifMatch, ifNoneMatch), size,
+                        new ConditionalWrites.Upload() {
+                    @Override
+                    public BlobInfo put(String key) throws Exception {
+                        return objectStoreService.put(key, content, size, contentType);
+                    }
+                });
+                log.info(filename + " put to ObjectStore.");
             } catch (Exception e) {
                 log.error("handleFileUpload();: Exception occurred : " + e.getMessage());
                 throw e;
-            } finally {
-                obj.close();
             }
             log.info("handleFileUpload(): Successfully uploaded");
         }
         return new ResponseEntity<InputStreamResource>(HttpStatus.OK);
 
     }
+
+    /**
+     * Best effort, the 412 of the move must not be masked by a failure to read the copy
+     */
+    private void reportCopy(String target) {
+        try {
+            metadataService.written(objectStoreService.head(target));
+        } catch (Exception e) {
+            log.error("reportCopy(): Copy " + target + " not reported : " + e.getMessage());
+        }
+    }
+
+    /**
+     * Maps a missing Blob to 404
+     */
+    @ExceptionHandler(BlobNotFoundException.class)
+    public ResponseEntity<InputStreamResource> handleNotFound(BlobNotFoundException e) {
+        log.info("Blob not found : " + e.getKey());
+        return new ResponseEntity<InputStreamResource>(HttpStatus.NOT_FOUND);
+    }
+
+    /**
+     * Maps a range starting beyond the end of the Blob to 416
+     */
+    @ExceptionHandler(RangeNotSatisfiableException.class)
+    public ResponseEntity<InputStreamResource> handleRangeNotSatisfiable(RangeNotSatisfiableException e) {
+        log.info("Range not satisfiable : " + e.getKey());
+        return new ResponseEntity<InputStreamResource>(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE);
+    }
+
+    /**
+     * Maps a key that cannot name a Blob to 400
+     */
+    @ExceptionHandler(InvalidBlobKeyException.class)
+    public ResponseEntity<InputStreamResource> handleInvalidKey(InvalidBlobKeyException e) {
+        log.info("Invalid key : " + e.getMessage());
+        return new ResponseEntity<InputStreamResource>(HttpStatus.BAD_REQUEST);
+    }
+
+    /**
+     * Maps a failed If-Match or If-None-Match to 412
+     */
+    @ExceptionHandler(PreconditionFailedException.class)
+    public ResponseEntity<InputStreamResource> handlePreconditionFailed(PreconditionFailedException e) {
+        log.info("Precondition failed : " + e.getKey());
+        return new ResponseEntity<InputStreamResource>(HttpStatus.PRECONDITION_FAILED);
+    }
+
+    /**
+     * Maps an operation the Object Store cannot perform, such as a server-side copy of a Blob
+     * above the single copy limit, to 501
+     */
+    @ExceptionHandler(UnsupportedOperationException.class)
+    public ResponseEntity<InputStreamResource> handleUnsupported(UnsupportedOperationException e) {
+        log.info("Not supported : " + e.getMessage());
+        return new ResponseEntity<InputStreamResource>(HttpStatus.NOT_IMPLEMENTED);
+    }
+
+    /**
+     * Maps an If-Match or If-None-Match naming no ETag to 400
+     */
+    @ExceptionHandler(InvalidConditionException.class)
+    public ResponseEntity<InputStreamResource> handleInvalidCondition(InvalidConditionException e) {
+        log.info("Invalid condition : " + e.getHeader());
+        return new ResponseEntity<InputStreamResource>(HttpStatus.BAD_REQUEST);
+    }
+
+    /**
+     * Maps a write rejected because the same key is being written to 409
+     */
+    @ExceptionHandler(WriteConflictException.class)
+    public ResponseEntity<InputStreamResource> handleWriteConflict(WriteConflictException e) {
+        log.info("Write conflict : " + e.getKey());
+        return new ResponseEntity<InputStreamResource>(HttpStatus.CONFLICT);
+    }
 }
@@ -1,16 +1,21 @@
 package com.ge.predix.sample.blobstore.web;
 
-import com.amazonaws.services.s3.model.S3Object;
-import com.ge.predix.sample.blobstore.repository.BlobstoreService;
+import com.ge.predix.sample.blobstore.listing.ListingCache;
+import com.ge.predix.sample.blobstore.spi.BlobInfo;
+import com.ge.predix.sample.blobstore.spi.BlobPage;
+import com.ge.predix.sample.blobstore.thumb.ThumbnailService;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
 
 import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Created by 212071474 on 7/7/16.
@@ -21,11 +26,17 @@ public class IndexController {
     Log log = LogFactory.getLog(IndexController.class);
 
     @Autowired
-    BlobstoreService objectStoreService;
+    ListingCache listingCache;
+
+    @Autowired(required = false)
+    ThumbnailService thumbnailService;
+
+    @Value("${blobstore.listing.uiPageSize:50}")
+    private int pageSize;
 
     /**
-     * Gets invoked for the root URL. Reads the BlobFiles from the Database
-     * and updates the model.
+     * Gets invoked for the root URL. Renders the first page of Blobs, the page loads the
+     * following ones from /rows as it is scrolled.
      *
      * @param model to be updated for the view
      * @return String view name to be rendered
@@ -33,20 +44,58 @@ public class IndexController {
     @RequestMapping(value = "/", method = RequestMethod.GET)
     public String index(Model model) {
         model.addAttribute("message", "Hello Boot!");
+        loadPage(model, null);
+        return "index";
+    }
 
+    /**
+     * Renders the table rows of the page of Blobs following the marker.
+     *
+     * @param marker key of the last Blob already shown
+     * @param model  to be updated for the view
+     * @return String fragment of the index view to be rendered
+     */
+    @RequestMapping(value = "/rows", method = RequestMethod.GET)
+    public String rows(@RequestParam(value = "marker") String marker, Model model) {
+        loadPage(model, marker);
+        return "index :: rows";
+    }
+
+    private void loadPage(Model model, String marker) {
+        List<BlobInfo> images = new ArrayList<>();
+        List<Boolean> thumbnails = new ArrayList<>();
+        String nextMarker = marker;
         try {
-            // Get the data from database
-            log.info("listing buckets");
-            Iterable<String> images = objectStoreService.get();
-            model.addAttribute("images", images);
+            // A page of nothing but stored thumbnails skips past them and lists again
+            do {
+                BlobPage page = listingCache.list(null, nextMarker, pageSize);
+                for (BlobInfo info : page.getBlobs()) {
+                    addImage(info, images, thumbnails);
+                }
+                nextMarker = page.getNextMarker();
+                if (nextMarker != null && thumbnailService != null && thumbnailService.isThumbnail(nextMarker)) {
+                    nextMarker = thumbnailService.markerAfterThumbnails();
+                }
+            } while (images.isEmpty() && nextMarker != null);
         } catch (Exception e) {
-            log.error(e.getMessage());
-            log.error(e);
-            model.addAttribute("images", new ArrayList<S3Object>());
+            log.error("loadPage(): Listing failed : " + e.getMessage());
+            nextMarker = null;
         }
+        model.addAttribute("images", images);
+        model.addAttribute("thumbnails", thumbnails);
+        model.addAttribute("nextMarker", nextMarker);
+        if (log.isDebugEnabled())
+            log.debug("loadPage(): " + images.size() + " Blobs after " + marker);
+    }
 
-        log.info("Model returned =" + model.toString());
-
-        return "index";
+    /**
+     * Lists the Blob unless it is a stored thumbnail, noting whether it can have one
+     */
+    private void addImage(BlobInfo info, List<BlobInfo> images, List<Boolean> thumbnails) {
+        if (thumbnailService != null && thumbnailService.isThumbnail(info.getKey())) {
+            return;
+        }
+        images.add(info);
+        thumbnails.add(thumbnailService != null && thumbnailService.supports(info));
     }
 }
@@ -0,0 +1,274 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.archive;
+
+import com.ge.predix.sample.blobstore.io.ContentTypeDetector;
+import com.ge.predix.sample.blobstore.spi.BlobInfo;
+import com.ge.predix.sample.blobstore.spi.BlobStoreBackend;
+import com.ge.predix.sample.blobstore.write.ConditionalWrites;
+import com.ge.predix.sample.blobstore.write.WriteCondition;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Stores each file of an uploaded tar or tar.gz as its own Blob, in a single pass over the
+ * upload and without writing anything to local disk.
+ * <p/>
+ * Entries up to smallEntryBytes are read into memory and grouped into batches that are put
+ * concurrently on the executor, at most maxConcurrency batches at a time and at most
+ * maxBufferedBytes held in memory. Larger entries are streamed straight from the upload to the
+ * Object Store while the batches already submitted continue.
+ * <p/>
+ * Each entry is put under the lock of its key in {@link ConditionalWrites}, so it is serialized
+ * with other writes of its key and reported to the metadata listeners like a single upload. It
+ * is never staged, a batched put stays a single PUT.
+ */
+public class ArchiveExtractor {
+
+    Log log = LogFactory.getLog(ArchiveExtractor.class);
+
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private final BlobStoreBackend backend;
+
+    private final ConditionalWrites conditionalWrites;
+
+    private final ExecutorService executor;
+
+    private final ContentTypeDetector contentTypeDetector;
+
+    private final int smallEntryBytes;
+
+    private final int batchEntries;
+
+    private final int batchBytes;
+
+    private final int maxBufferedBytes;
+
+    private final int maxConcurrency;
+
+    private final int maxEntries;
+
+    public ArchiveExtractor(BlobStoreBackend backend, ConditionalWrites conditionalWrites, ExecutorService executor,
+                            ContentTypeDetector contentTypeDetector, int smallEntryBytes, int batchEntries,
+                            int batchBytes, int maxBufferedBytes, int maxConcurrency, int maxEntries) {
+        this.backend = backend;
+        this.conditionalWrites = conditionalWrites;
+        this.executor = executor;
+        this.contentTypeDetector = contentTypeDetector;
+        this.maxBufferedBytes = Math.max(1, maxBufferedBytes);
+        this.smallEntryBytes = Math.min(smallEntryBytes, this.maxBufferedBytes);
+        this.batchEntries = Math.max(1, batchEntries);
+        this.batchBytes = batchBytes;
+        this.maxConcurrency = Math.max(1, maxConcurrency);
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Extracts the archive. Failures to store single entries are reported in the manifest, a
+     * malformed or truncated archive stops the extraction and leaves the manifest incomplete.
+     *
+     * @param upload tar or gzip compressed tar, recognised by its first bytes
+     * @param prefix prepended to entry paths to form the Blob keys, may be empty
+     * @return ExtractionManifest the stored entries with their ETags
+     * @throws InterruptedException
+     */
+    public ExtractionManifest extract(InputStream upload, String prefix) throws InterruptedException {
+        ExtractionManifest manifest = new ExtractionManifest();
+        Semaphore bufferedBytes = new Semaphore(maxBufferedBytes);
+        Semaphore slots = new Semaphore(maxConcurrency);
+        List<Future<Void>> batches = new ArrayList<>();
+        Batch batch = new Batch(bufferedBytes, slots);
+        try {
+            TarArchiveInput tar = new TarArchiveInput(decompress(upload));
+            TarArchiveInput.Entry tarEntry;
+            int entries = 0;
+            while ((tarEntry = tar.next()) != null) {
+                String entryName = ArchiveStreamer.entryName(tarEntry.name);
+                if (entryName == null) {
+                    log.warn("extract(): Skipping " + tarEntry.name + ", it is not a safe entry name");
+                    continue;
+                }
+                if (++entries > maxEntries) {
+                    throw new IOException("Archive exceeds " + maxEntries + " entries");
+                }
+                if (tarEntry.size <= smallEntryBytes) {
+                    int size = (int) tarEntry.size;
+                    if (!bufferedBytes.tryAcquire(size)) {
+                        // Memory is only released by submitted batches, never wait while holding some
+                        submit(batch, batches);
+                        batch = new Batch(bufferedBytes, slots);
+                        bufferedBytes.acquire(size);
+                    }
+                    byte[] content = readEntry(tar, size);
+                    String contentType = contentTypeDetector.detect(entryName, null, content, size);
+                    batch.add(manifest.add(tarEntry.name, prefix + entryName, size), content, contentType);
+                    if (batch.isFull()) {
+                        submit(batch, batches);
+                        batch = new Batch(bufferedBytes, slots);
+                    }
+                } else {
+                    // Too large to buffer, streamed from the upload while earlier batches are put
+                    InputStream content = contentTypeDetector.markable(tar);
+                    String contentType = contentTypeDetector.detect(entryName, null, content);
+                    store(manifest.add(tarEntry.name, prefix + entryName, tarEntry.size), content, tarEntry.size, contentType);
+                }
+            }
+            submit(batch, batches);
+            manifest.completed();
+        } catch (IOException | RuntimeException e) {
+            // Malformed archives surface as either, both leave the manifest incomplete
+            log.error("extract(): Exception occurred : " + e);
+            manifest.failed(e.getMessage() != null ? e.getMessage() : e.toString());
+            submit(batch, batches);
+        } finally {
+            awaitAll(batches);
+        }
+        if (log.isDebugEnabled())
+            log.debug("extract(): Stored " + manifest.getStoredCount() + " of " + manifest.getEntries().size() + " entries");
+        return manifest;
+    }
+
+    private InputStream decompress(InputStream upload) throws IOException {
+        InputStream in = new BufferedInputStream(upload, READ_BUFFER_SIZE);
+        in.mark(2);
+        int first = in.read();
+        int second = in.read();
+        in.reset();
+        if (first == 0x1f && second == 0x8b) {
+            return new BufferedInputStream(new GZIPInputStream(in, READ_BUFFER_SIZE), READ_BUFFER_SIZE);
+        }
+        return in;
+    }
+
+    private byte[] readEntry(InputStream tar, int size) throws IOException {
+        byte[] data = new byte[size];
+        int total = 0;
+        int read;
+        while (total < size && (read = tar.read(data, total, size - total)) != -1) {
+            total += read;
+        }
+        return data;
+    }
+
+    private void store(final ExtractionManifest.Entry entry, final InputStream content, final long size,
+                       final String contentType) {
+        try {
+            BlobInfo info = conditionalWrites.write(entry.getKey(), WriteCondition.none(), new Callable<BlobInfo>() {
+                @Override
+                public BlobInfo call() throws Exception {
+                    return backend.put(entry.getKey(), content, size, contentType);
+                }
+            });
+            entry.stored(info);
+        } catch (Exception e) {
+            log.error("store(): Exception occurred for " + entry.getKey() + " : " + e.getMessage());
+            entry.failed(e.getMessage());
+        }
+    }
+
+    private void submit(Batch batch, List<Future<Void>> batches) throws InterruptedException {
+        if (batch.isEmpty()) {
+            return;
+        }
+        batch.slots.acquire();
+        try {
+            batches.add(executor.submit(batch));
+        } catch (RejectedExecutionException e) {
+            // Put on the calling thread, the batch releases its slot when done
+            batch.call();
+        }
+    }
+
+    private void awaitAll(List<Future<Void>> batches) throws InterruptedException {
+        for (Future<Void> future : batches) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                // Batches record failures per entry, anything else is a bug
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+    }
+
+    /**
+     * Buffered entries put one after the other by a single task. The memory and the
+     * concurrency slot it holds are released when it is done.
+     */
+    private class Batch implements Callable<Void> {
+
+        private final Semaphore bufferedBytes;
+
+        private final Semaphore slots;
+
+        private final List<ExtractionManifest.Entry> entries = new ArrayList<>();
+
+        private final List<byte[]> contents = new ArrayList<>();
+
+        private final List<String> contentTypes = new ArrayList<>();
+
+        private int bytes;
+
+        Batch(Semaphore bufferedBytes, Semaphore slots) {
+            this.bufferedBytes = bufferedBytes;
+            this.slots = slots;
+        }
+
+        void add(ExtractionManifest.Entry entry, byte[] content, String contentType) {
+            entries.add(entry);
+            contents.add(content);
+            contentTypes.add(contentType);
+            bytes += content.length;
+        }
+
+        boolean isEmpty() {
+            return entries.isEmpty();
+        }
+
+        boolean isFull() {
+            return entries.size() >= batchEntries || bytes >= batchBytes;
+        }
+
+        @Override
+        public Void call() {
+            try {
+                for (int i = 0; i < entries.size(); i++) {
+                    byte[] content = contents.get(i);
+                    store(entries.get(i), new ByteArrayInputStream(content), content.length, contentTypes.get(i));
+                    contents.set(i, null);
+                }
+            } finally {
+                bufferedBytes.release(bytes);
+                slots.release();
+            }
+            return null;
+        }
+    }
+}
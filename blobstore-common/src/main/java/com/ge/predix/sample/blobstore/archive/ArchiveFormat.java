@@ -0,0 +1,74 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.archive;
+
+import java.io.OutputStream;
+
+/**
+ * Container formats an archive of Blobs can be streamed in.
+ */
+public enum ArchiveFormat {
+
+    ZIP("application/zip", "zip") {
+        @Override
+        ArchiveOutput open(OutputStream out, int compressionLevel) {
+            return new ZipArchiveOutput(out, compressionLevel);
+        }
+    },
+
+    TAR("application/x-tar", "tar") {
+        @Override
+        ArchiveOutput open(OutputStream out, int compressionLevel) {
+            return new TarArchiveOutput(out);
+        }
+    };
+
+    private final String contentType;
+
+    private final String extension;
+
+    ArchiveFormat(String contentType, String extension) {
+        this.contentType = contentType;
+        this.extension = extension;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+
+    abstract ArchiveOutput open(OutputStream out, int compressionLevel);
+
+    /**
+     * @param name format name, case insensitive, null for the default
+     * @return ArchiveFormat zip unless tar is asked for
+     * @throws IllegalArgumentException if the format is not supported
+     */
+    public static ArchiveFormat parse(String name) {
+        if (name == null || name.isEmpty()) {
+            return ZIP;
+        }
+        for (ArchiveFormat format : values()) {
+            if (format.extension.equalsIgnoreCase(name)) {
+                return format;
+            }
+        }
+        throw new IllegalArgumentException("Unsupported archive format: " + name);
+    }
+}
@@ -0,0 +1,41 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.archive;
+
+import java.io.IOException;
+
+/**
+ * Writes entries of one archive format. Entries are written one at a time, in full, between
+ * putEntry and closeEntry.
+ */
+interface ArchiveOutput {
+
+    /**
+     * @param name         path of the entry in the archive
+     * @param size         exact number of bytes that will be written for the entry
+     * @param lastModified modification time in milliseconds since the epoch
+     */
+    void putEntry(String name, long size, long lastModified) throws IOException;
+
+    void write(byte[] b, int off, int len) throws IOException;
+
+    void closeEntry() throws IOException;
+
+    /**
+     * Writes the end of the archive, the underlying stream is left open
+     */
+    void finish() throws IOException;
+}
@@ -0,0 +1,261 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.archive;
+
+import com.ge.predix.sample.blobstore.spi.BlobContent;
+import com.ge.predix.sample.blobstore.spi.BlobInfo;
+import com.ge.predix.sample.blobstore.spi.BlobNotFoundException;
+import com.ge.predix.sample.blobstore.spi.BlobPage;
+import com.ge.predix.sample.blobstore.spi.BlobStoreBackend;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Streams many Blobs to a client as a single zip or tar, without temp files. While one Blob is
+ * written out the next prefetchCount Blobs are read concurrently into bounded chunk queues, so
+ * memory use per archive is capped at about prefetchCount * (chunksPerBlob + 2) * chunkSize
+ * whatever the size of the archive. The first entry is flushed as soon as its header is
+ * written.
+ */
+public class ArchiveStreamer {
+
+    Log log = LogFactory.getLog(ArchiveStreamer.class);
+
+    private final BlobStoreBackend backend;
+
+    private final ExecutorService executor;
+
+    private final int prefetchCount;
+
+    private final int chunkSize;
+
+    private final int chunksPerBlob;
+
+    private final int compressionLevel;
+
+    private final int maxEntries;
+
+    private final long flushIntervalBytes;
+
+    public ArchiveStreamer(BlobStoreBackend backend, ExecutorService executor, int prefetchCount, int chunkSize,
+                           int chunksPerBlob, int compressionLevel, int maxEntries, long flushIntervalBytes) {
+        this.backend = backend;
+        this.executor = executor;
+        this.prefetchCount = Math.max(1, prefetchCount);
+        this.chunkSize = chunkSize;
+        this.chunksPerBlob = chunksPerBlob;
+        this.compressionLevel = compressionLevel;
+        this.maxEntries = maxEntries;
+        this.flushIntervalBytes = flushIntervalBytes;
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * Writes the Blobs to out in the given order. Keys that do not exist are skipped.
+     *
+     * @param keys   names of the Blobs
+     * @param format archive format
+     * @param out    stream to the client, flushed but not closed
+     * @return long number of content bytes archived
+     * @throws IOException if a Blob cannot be read or writing to the client fails, the archive
+     *                     is incomplete in both cases
+     */
+    public long write(final List<String> keys, ArchiveFormat format, OutputStream out) throws IOException {
+        final Iterator<String> iterator = keys.iterator();
+        return write(new KeySource() {
+            @Override
+            public String next() {
+                return iterator.hasNext() ? iterator.next() : null;
+            }
+        }, format, out);
+    }
+
+    /**
+     * Writes all Blobs whose key starts with prefix, listing the keys page by page as the
+     * archive is written.
+     *
+     * @param prefix   key prefix, empty for the whole container
+     * @param pageSize keys requested per listing
+     * @param format   archive format
+     * @param out      stream to the client, flushed but not closed
+     * @return long number of content bytes archived
+     * @throws IOException if listing or reading a Blob fails, there are more than maxEntries
+     *                     Blobs, or writing to the client fails
+     */
+    public long writePrefix(final String prefix, final int pageSize, ArchiveFormat format, OutputStream out) throws IOException {
+        return write(new KeySource() {
+            private Iterator<BlobInfo> page;
+            private String marker;
+            private boolean last;
+
+            @Override
+            public String next() throws Exception {
+                while (page == null || !page.hasNext()) {
+                    if (last) {
+                        return null;
+                    }
+                    BlobPage blobs = backend.list(prefix, marker, pageSize);
+                    page = blobs.getBlobs().iterator();
+                    marker = blobs.getNextMarker();
+                    last = !blobs.isTruncated();
+                }
+                return page.next().getKey();
+            }
+        }, format, out);
+    }
+
+    private long write(KeySource keys, ArchiveFormat format, OutputStream out) throws IOException {
+        ArchiveOutput archive = format.open(out, compressionLevel);
+        Deque<PrefetchedBlob> window = new ArrayDeque<>();
+        PrefetchedBlob current = null;
+        int entries = 0;
+        long written = 0;
+        boolean first = true;
+        boolean completed = false;
+        try {
+            entries = prefetch(keys, window, entries);
+            while ((current = window.poll()) != null) {
+                // Keep the window full while the current Blob is written out
+                entries = prefetch(keys, window, entries);
+                written += writeEntry(current, archive, out, first);
+                first = false;
+            }
+            current = null;
+            archive.finish();
+            out.flush();
+            completed = true;
+        } finally {
+            if (!completed) {
+                log.info("write(): Archive abandoned after " + written + " bytes");
+                if (current != null) {
+                    current.cancel();
+                }
+                for (PrefetchedBlob blob : window) {
+                    blob.cancel();
+                }
+            }
+        }
+        return written;
+    }
+
+    /**
+     * @return int number of entries started so far
+     */
+    private int prefetch(KeySource keys, Deque<PrefetchedBlob> window, int entries) throws IOException {
+        while (window.size() < prefetchCount) {
+            String key;
+            try {
+                key = keys.next();
+            } catch (Exception e) {
+                log.error("prefetch(): Exception occurred : " + e.getMessage());
+                throw new IOException("Listing the Blobs to archive failed", e);
+            }
+            if (key == null) {
+                return entries;
+            }
+            String entryName = entryName(key);
+            if (entryName == null) {
+                log.warn("prefetch(): Skipping " + key + ", it is not a safe entry name");
+                continue;
+            }
+            if (++entries > maxEntries) {
+                throw new IOException("Archive exceeds " + maxEntries + " entries");
+            }
+            PrefetchedBlob blob = new PrefetchedBlob(backend, key, entryName, chunkSize, chunksPerBlob);
+            blob.setFuture(executor.submit(blob));
+            window.add(blob);
+        }
+        return entries;
+    }
+
+    private long writeEntry(PrefetchedBlob blob, ArchiveOutput archive, OutputStream out, boolean first) throws IOException {
+        BlobContent content;
+        try {
+            content = blob.awaitOpened();
+        } catch (BlobNotFoundException e) {
+            log.warn("writeEntry(): Skipping " + blob.getKey() + ", it no longer exists");
+            return 0;
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("Reading " + blob.getKey() + " failed", e);
+        }
+
+        archive.putEntry(blob.getEntryName(), content.getContentLength(), content.getInfo().getLastModified());
+        if (first) {
+            out.flush();
+        }
+        long written = 0;
+        long unflushed = 0;
+        PrefetchedBlob.Chunk chunk;
+        while ((chunk = blob.take()) != PrefetchedBlob.END) {
+            archive.write(chunk.data, 0, chunk.length);
+            blob.recycle(chunk);
+            written += chunk.length;
+            unflushed += chunk.length;
+            if (unflushed >= flushIntervalBytes) {
+                out.flush();
+                unflushed = 0;
+            }
+        }
+        if (blob.getFailure() != null) {
+            throw new IOException("Reading " + blob.getKey() + " failed after " + written + " bytes", blob.getFailure());
+        }
+        archive.closeEntry();
+        if (log.isDebugEnabled())
+            log.debug("writeEntry(): Archived " + blob.getKey() + ", " + written + " bytes");
+        return written;
+    }
+
+    /**
+     * Keys become entry paths relative to the archive root, and extracted entry paths become
+     * keys, with empty and "." segments dropped. Paths that would escape the root are left out.
+     */
+    static String entryName(String key) {
+        StringBuilder name = new StringBuilder();
+        for (String segment : key.split("/")) {
+            if ("..".equals(segment)) {
+                return null;
+            }
+            if (segment.isEmpty() || ".".equals(segment)) {
+                continue;
+            }
+            if (name.length() > 0) {
+                name.append('/');
+            }
+            name.append(segment);
+        }
+        return name.length() > 0 ? name.toString() : null;
+    }
+
+    /**
+     * Supplies the keys to archive one at a time, null once there are no more.
+     */
+    private interface KeySource {
+        String next() throws Exception;
+    }
+}
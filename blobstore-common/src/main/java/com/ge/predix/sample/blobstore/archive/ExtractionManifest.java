@@ -0,0 +1,140 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.archive;
+
+import com.ge.predix.sample.blobstore.spi.BlobInfo;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Outcome of extracting an uploaded archive, one entry per file in archive order.
+ */
+public class ExtractionManifest {
+
+    private final List<Entry> entries = new ArrayList<>();
+
+    private boolean complete;
+
+    /**
+     * Why the archive could not be read to its end, null when it was
+     */
+    private String error;
+
+    Entry add(String name, String key, long size) {
+        Entry entry = new Entry(name, key, size);
+        entries.add(entry);
+        return entry;
+    }
+
+    void completed() {
+        this.complete = true;
+    }
+
+    void failed(String error) {
+        this.error = error;
+    }
+
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * @return boolean true if the whole archive was read, entries may still have failed to store
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public int getStoredCount() {
+        int stored = 0;
+        for (Entry entry : entries) {
+            if (entry.isStored()) {
+                stored++;
+            }
+        }
+        return stored;
+    }
+
+    public int getFailedCount() {
+        return entries.size() - getStoredCount();
+    }
+
+    public static class Entry {
+
+        private final String name;
+
+        private final String key;
+
+        private final long size;
+
+        private volatile boolean stored;
+
+        private volatile String eTag;
+
+        private volatile String contentType;
+
+        private volatile String error;
+
+        Entry(String name, String key, long size) {
+            this.name = name;
+            this.key = key;
+            this.size = size;
+        }
+
+        void stored(BlobInfo info) {
+            this.eTag = info.getETag();
+            this.contentType = info.getContentType();
+            this.stored = true;
+        }
+
+        void failed(String error) {
+            this.error = error;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public boolean isStored() {
+            return stored;
+        }
+
+        public String getETag() {
+            return eTag;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        public String getError() {
+            return error;
+        }
+    }
+}
@@ -0,0 +1,203 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.archive;
+
+import com.ge.predix.sample.blobstore.spi.BlobContent;
+import com.ge.predix.sample.blobstore.spi.BlobStoreBackend;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+
+/**
+ * Reads one Blob ahead of the archive writer into a bounded queue of chunks. The reader blocks
+ * once the queue is full, so a Blob never holds more than maxChunks + 2 chunks in memory.
+ * Chunks are handed back through recycle and reused by the reader.
+ */
+class PrefetchedBlob implements Callable<Void> {
+
+    Log log = LogFactory.getLog(PrefetchedBlob.class);
+
+    /**
+     * Marks the end of the content, check getFailure once it is taken
+     */
+    static final Chunk END = new Chunk(new byte[0], 0);
+
+    private final BlobStoreBackend backend;
+
+    private final String key;
+
+    private final String entryName;
+
+    private final int chunkSize;
+
+    private final BlockingQueue<Chunk> filled;
+
+    private final BlockingQueue<byte[]> free;
+
+    private final CountDownLatch opened = new CountDownLatch(1);
+
+    private volatile BlobContent content;
+
+    private volatile Exception failure;
+
+    private volatile boolean cancelled;
+
+    private Future<Void> future;
+
+    PrefetchedBlob(BlobStoreBackend backend, String key, String entryName, int chunkSize, int maxChunks) {
+        this.backend = backend;
+        this.key = key;
+        this.entryName = entryName;
+        this.chunkSize = chunkSize;
+        this.filled = new ArrayBlockingQueue<>(Math.max(1, maxChunks));
+        this.free = new ArrayBlockingQueue<>(Math.max(1, maxChunks));
+    }
+
+    void setFuture(Future<Void> future) {
+        this.future = future;
+    }
+
+    String getKey() {
+        return key;
+    }
+
+    String getEntryName() {
+        return entryName;
+    }
+
+    Exception getFailure() {
+        return failure;
+    }
+
+    @Override
+    public Void call() {
+        BlobContent opening = null;
+        boolean completed = false;
+        try {
+            opening = backend.get(key, null);
+            content = opening;
+            opened.countDown();
+            InputStream in = opening.getStream();
+            int read;
+            do {
+                byte[] buffer = free.poll();
+                if (buffer == null) {
+                    buffer = new byte[chunkSize];
+                }
+                read = readFully(in, buffer);
+                if (read > 0) {
+                    filled.put(new Chunk(buffer, read));
+                }
+            } while (read == chunkSize);
+            completed = true;
+        } catch (Exception e) {
+            failure = e;
+        } finally {
+            opened.countDown();
+            if (opening != null) {
+                release(opening, completed);
+            }
+            if (!cancelled) {
+                try {
+                    filled.put(END);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Waits until the Blob has been opened.
+     *
+     * @return BlobContent whose info and length describe the entry, its stream belongs to the reader
+     * @throws Exception the failure to open the Blob, e.g. BlobNotFoundException
+     */
+    BlobContent awaitOpened() throws Exception {
+        opened.await();
+        if (content == null) {
+            throw failure != null ? failure : new IllegalStateException("Reading " + key + " did not start");
+        }
+        return content;
+    }
+
+    Chunk take() throws IOException {
+        try {
+            return filled.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for " + key);
+        }
+    }
+
+    void recycle(Chunk chunk) {
+        free.offer(chunk.data);
+    }
+
+    /**
+     * Stops reading and releases the content, used once the archive is abandoned.
+     */
+    void cancel() {
+        cancelled = true;
+        if (future != null) {
+            future.cancel(true);
+        }
+    }
+
+    private void release(BlobContent opened, boolean completed) {
+        try {
+            if (completed) {
+                opened.close();
+            } else {
+                if (log.isDebugEnabled())
+                    log.debug("call(): Aborting " + key);
+                opened.abort();
+            }
+        } catch (IOException e) {
+            log.warn("release(): " + e.getMessage());
+        }
+    }
+
+    private static int readFully(InputStream in, byte[] buffer) throws IOException {
+        int total = 0;
+        int read;
+        while (total < buffer.length && (read = in.read(buffer, total, buffer.length - total)) != -1) {
+            total += read;
+        }
+        return total;
+    }
+
+    static class Chunk {
+
+        final byte[] data;
+
+        final int length;
+
+        Chunk(byte[] data, int length) {
+            this.data = data;
+            this.length = length;
+        }
+    }
+}
@@ -0,0 +1,300 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.archive;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reads the regular file entries of a ustar, pax or GNU tar stream in a single pass. After next
+ * returns an entry, this stream reads that entry's content and ends with it. Directories, links
+ * and other special entries are skipped.
+ */
+class TarArchiveInput extends InputStream {
+
+    private static final int BLOCK_SIZE = 512;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final InputStream in;
+
+    private final byte[] header = new byte[BLOCK_SIZE];
+
+    private long remaining;
+
+    private long padding;
+
+    TarArchiveInput(InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * Skips what is left of the current entry and reads up to the next regular file.
+     *
+     * @return Entry the next file, null at the end of the archive
+     * @throws IOException if the stream is not a tar archive or ends early
+     */
+    Entry next() throws IOException {
+        skipFully(remaining + padding);
+        remaining = 0;
+        padding = 0;
+
+        String longName = null;
+        Long paxSize = null;
+        while (true) {
+            if (!readHeader()) {
+                return null;
+            }
+            String name = longName != null ? longName : headerName();
+            long size = paxSize != null ? paxSize : headerSize();
+            byte type = header[156];
+            long dataPadding = (BLOCK_SIZE - size % BLOCK_SIZE) % BLOCK_SIZE;
+
+            if (type == 'x' || type == 'L') {
+                // Extended headers describe the entry that follows them
+                byte[] data = readData(size, dataPadding);
+                if (type == 'L') {
+                    longName = trimNul(new String(data, UTF_8));
+                } else {
+                    Map<String, String> records = paxRecords(data);
+                    String path = records.get("path");
+                    longName = path != null ? path : longName;
+                    String paxSizeValue = records.get("size");
+                    paxSize = paxSizeValue != null ? paxSize(paxSizeValue) : paxSize;
+                }
+                continue;
+            }
+            if (type == '0' || type == 0 || type == '7') {
+                remaining = size;
+                padding = dataPadding;
+                return new Entry(name, size, octal(136, 12) * 1000);
+            }
+            // Directories, links, devices and global headers carry no file content to extract
+            skipFully(size + dataPadding);
+            longName = null;
+            paxSize = null;
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (remaining <= 0) {
+            return -1;
+        }
+        int b = in.read();
+        if (b == -1) {
+            throw new EOFException("Archive ends within an entry");
+        }
+        remaining--;
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (remaining <= 0) {
+            return -1;
+        }
+        int read = in.read(b, off, (int) Math.min(len, remaining));
+        if (read == -1) {
+            throw new EOFException("Archive ends within an entry");
+        }
+        remaining -= read;
+        return read;
+    }
+
+    /**
+     * The underlying stream belongs to the caller, entries are released through next
+     */
+    @Override
+    public void close() {
+    }
+
+    private boolean readHeader() throws IOException {
+        int total = 0;
+        int read;
+        while (total < BLOCK_SIZE && (read = in.read(header, total, BLOCK_SIZE - total)) != -1) {
+            total += read;
+        }
+        if (total == 0) {
+            return false;
+        }
+        if (total < BLOCK_SIZE) {
+            throw new EOFException("Archive ends within a header");
+        }
+        long checksum = 0;
+        boolean empty = true;
+        for (int i = 0; i < BLOCK_SIZE; i++) {
+            int b = header[i] & 0xff;
+            empty &= b == 0;
+            checksum += i >= 148 && i < 156 ? ' ' : b;
+        }
+        if (empty) {
+            // The end of the archive is marked by empty blocks
+            return false;
+        }
+        if (checksum != octal(148, 8)) {
+            throw new IOException("Not a tar archive or corrupt header");
+        }
+        return true;
+    }
+
+    private String headerName() {
+        String name = string(0, 100);
+        if (string(257, 5).equals("ustar")) {
+            String prefix = string(345, 155);
+            if (!prefix.isEmpty()) {
+                name = prefix + "/" + name;
+            }
+        }
+        return name;
+    }
+
+    private long headerSize() {
+        if ((header[124] & 0x80) != 0) {
+            // Base-256 encoding used by GNU tar for sizes beyond the octal field
+            long size = 0;
+            for (int i = 125; i < 136; i++) {
+                size = (size << 8) | (header[i] & 0xff);
+            }
+            return size;
+        }
+        return octal(124, 12);
+    }
+
+    private long octal(int offset, int length) {
+        long value = 0;
+        int i = offset;
+        int end = offset + length;
+        while (i < end && header[i] == ' ') {
+            i++;
+        }
+        for (; i < end && header[i] >= '0' && header[i] <= '7'; i++) {
+            value = (value << 3) + (header[i] - '0');
+        }
+        return value;
+    }
+
+    private String string(int offset, int length) {
+        int end = offset;
+        while (end < offset + length && header[end] != 0) {
+            end++;
+        }
+        return new String(header, offset, end - offset, UTF_8);
+    }
+
+    private byte[] readData(long size, long dataPadding) throws IOException {
+        if (size > 1024 * 1024) {
+            throw new IOException("Extended header of " + size + " bytes");
+        }
+        byte[] data = new byte[(int) size];
+        int total = 0;
+        int read;
+        while (total < data.length && (read = in.read(data, total, data.length - total)) != -1) {
+            total += read;
+        }
+        if (total < data.length) {
+            throw new EOFException("Archive ends within an extended header");
+        }
+        skipFully(dataPadding);
+        return data;
+    }
+
+    private void skipFully(long count) throws IOException {
+        byte[] buffer = null;
+        while (count > 0) {
+            long skipped = in.skip(count);
+            if (skipped <= 0) {
+                if (buffer == null) {
+                    buffer = new byte[BLOCK_SIZE];
+                }
+                int read = in.read(buffer, 0, (int) Math.min(buffer.length, count));
+                if (read == -1) {
+                    throw new EOFException("Archive ends within an entry");
+                }
+                skipped = read;
+            }
+            count -= skipped;
+        }
+    }
+
+    private static String trimNul(String value) {
+        int end = value.indexOf('\0');
+        return end >= 0 ? value.substring(0, end) : value;
+    }
+
+    /**
+     * Parses pax records of the form "length key=value\n". The length counts the bytes of the
+     * whole record, values may contain newlines so records are split by their length only.
+     * Later records for a key override earlier ones.
+     */
+    static Map<String, String> paxRecords(byte[] data) throws IOException {
+        Map<String, String> records = new HashMap<>();
+        int offset = 0;
+        while (offset < data.length && data[offset] != 0) {
+            int space = offset;
+            long length = 0;
+            while (space < data.length && data[space] >= '0' && data[space] <= '9' && length <= data.length) {
+                length = length * 10 + (data[space] - '0');
+                space++;
+            }
+            long end = offset + length;
+            if (space == offset || space >= data.length || data[space] != ' ' || end > data.length
+                    || end <= space + 1 || data[(int) end - 1] != '\n') {
+                throw new IOException("Malformed pax record at offset " + offset);
+            }
+            String record = new String(data, space + 1, (int) end - space - 2, UTF_8);
+            int equals = record.indexOf('=');
+            if (equals <= 0) {
+                throw new IOException("Malformed pax record at offset " + offset);
+            }
+            records.put(record.substring(0, equals), record.substring(equals + 1));
+            offset = (int) end;
+        }
+        return records;
+    }
+
+    private static long paxSize(String value) throws IOException {
+        long size;
+        try {
+            size = Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid pax size: " + value);
+        }
+        if (size < 0) {
+            throw new IOException("Invalid pax size: " + value);
+        }
+        return size;
+    }
+
+    static class Entry {
+
+        final String name;
+
+        final long size;
+
+        final long lastModified;
+
+        Entry(String name, long size, long lastModified) {
+            this.name = name;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+    }
+}
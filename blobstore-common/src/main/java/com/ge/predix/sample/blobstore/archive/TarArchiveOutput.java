@@ -0,0 +1,174 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.archive;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * POSIX ustar output. Names longer than the ustar fields allow, non ASCII names and entries
+ * of 8 GB or more are described by a pax extended header ahead of the entry.
+ */
+class TarArchiveOutput implements ArchiveOutput {
+
+    private static final int BLOCK_SIZE = 512;
+
+    private static final int NAME_LENGTH = 100;
+
+    /**
+     * Largest size the 11 octal digits of the ustar size field can hold
+     */
+    private static final long MAX_USTAR_SIZE = 077777777777L;
+
+    private static final byte[] EMPTY_BLOCK = new byte[BLOCK_SIZE];
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final Charset US_ASCII = Charset.forName("US-ASCII");
+
+    private final OutputStream out;
+
+    private final byte[] header = new byte[BLOCK_SIZE];
+
+    private long remaining;
+
+    private long entrySize;
+
+    TarArchiveOutput(OutputStream out) {
+        this.out = out;
+    }
+
+    @Override
+    public void putEntry(String name, long size, long lastModified) throws IOException {
+        long mtime = Math.max(0, lastModified / 1000);
+        byte[] nameBytes = name.getBytes(UTF_8);
+        boolean asciiName = nameBytes.length == name.length();
+        if (nameBytes.length > NAME_LENGTH || !asciiName || size > MAX_USTAR_SIZE) {
+            StringBuilder records = new StringBuilder();
+            if (nameBytes.length > NAME_LENGTH || !asciiName) {
+                records.append(paxRecord("path", name));
+            }
+            if (size > MAX_USTAR_SIZE) {
+                records.append(paxRecord("size", String.valueOf(size)));
+            }
+            byte[] pax = records.toString().getBytes(UTF_8);
+            writeHeader(asciiPrefix("PaxHeader/" + name), pax.length, mtime, (byte) 'x');
+            out.write(pax);
+            pad(pax.length);
+        }
+        writeHeader(asciiPrefix(name), Math.min(size, MAX_USTAR_SIZE), mtime, (byte) '0');
+        remaining = size;
+        entrySize = size;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (len > remaining) {
+            throw new IOException("Entry exceeds its declared size of " + entrySize + " bytes");
+        }
+        out.write(b, off, len);
+        remaining -= len;
+    }
+
+    @Override
+    public void closeEntry() throws IOException {
+        if (remaining != 0) {
+            throw new IOException("Entry is " + remaining + " bytes short of its declared size of " + entrySize + " bytes");
+        }
+        pad(entrySize);
+    }
+
+    @Override
+    public void finish() throws IOException {
+        // The end of the archive is marked by two empty blocks
+        out.write(EMPTY_BLOCK);
+        out.write(EMPTY_BLOCK);
+    }
+
+    private void writeHeader(byte[] name, long size, long mtime, byte type) throws IOException {
+        Arrays.fill(header, (byte) 0);
+        System.arraycopy(name, 0, header, 0, name.length);
+        octal(0644, 100, 8);
+        octal(0, 108, 8);
+        octal(0, 116, 8);
+        octal(size, 124, 12);
+        octal(mtime, 136, 12);
+        header[156] = type;
+        ascii("ustar", 257);
+        ascii("00", 263);
+
+        // The checksum is computed with its own field filled with spaces
+        Arrays.fill(header, 148, 156, (byte) ' ');
+        long checksum = 0;
+        for (byte b : header) {
+            checksum += b & 0xff;
+        }
+        octal(checksum, 148, 7);
+        header[155] = ' ';
+        out.write(header);
+    }
+
+    /**
+     * Writes value as zero padded octal digits followed by a NUL, filling length bytes.
+     */
+    private void octal(long value, int offset, int length) {
+        String digits = Long.toOctalString(value);
+        int padding = length - 1 - digits.length();
+        for (int i = 0; i < padding; i++) {
+            header[offset + i] = '0';
+        }
+        ascii(digits, offset + padding);
+        header[offset + length - 1] = 0;
+    }
+
+    private void ascii(String value, int offset) {
+        byte[] bytes = value.getBytes(US_ASCII);
+        System.arraycopy(bytes, 0, header, offset, bytes.length);
+    }
+
+    private void pad(long written) throws IOException {
+        int tail = (int) (written % BLOCK_SIZE);
+        if (tail != 0) {
+            out.write(EMPTY_BLOCK, 0, BLOCK_SIZE - tail);
+        }
+    }
+
+    /**
+     * The ustar name field, the full name is carried by the pax header when it does not fit.
+     */
+    private static byte[] asciiPrefix(String name) {
+        StringBuilder ascii = new StringBuilder();
+        for (int i = 0; i < name.length() && ascii.length() < NAME_LENGTH; i++) {
+            char c = name.charAt(i);
+            ascii.append(c < 0x80 ? c : '_');
+        }
+        return ascii.toString().getBytes(US_ASCII);
+    }
+
+    /**
+     * A pax record is "length key=value\n", where length counts the whole record including itself.
+     */
+    private static String paxRecord(String key, String value) {
+        int body = (" " + key + "=" + value + "\n").getBytes(UTF_8).length;
+        int length = body + String.valueOf(body).length();
+        if (String.valueOf(length).length() != String.valueOf(body).length()) {
+            length++;
+        }
+        return length + " " + key + "=" + value + "\n";
+    }
+}
@@ -0,0 +1,59 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.archive;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Zip output with data descriptors, so entries can be written without knowing their CRC upfront.
+ * Entries and archives over 4 GB get Zip64 extensions from ZipOutputStream.
+ */
+class ZipArchiveOutput implements ArchiveOutput {
+
+    private final ZipOutputStream zip;
+
+    ZipArchiveOutput(OutputStream out, int compressionLevel) {
+        this.zip = new ZipOutputStream(out);
+        this.zip.setLevel(compressionLevel);
+    }
+
+    @Override
+    public void putEntry(String name, long size, long lastModified) throws IOException {
+        ZipEntry entry = new ZipEntry(name);
+        if (lastModified > 0) {
+            entry.setTime(lastModified);
+        }
+        zip.putNextEntry(entry);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        zip.write(b, off, len);
+    }
+
+    @Override
+    public void closeEntry() throws IOException {
+        zip.closeEntry();
+    }
+
+    @Override
+    public void finish() throws IOException {
+        zip.finish();
+    }
+}
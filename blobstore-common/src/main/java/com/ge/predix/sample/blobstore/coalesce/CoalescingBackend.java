@@ -0,0 +1,328 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.coalesce;
+
+import com.ge.predix.sample.blobstore.spi.BlobContent;
+import com.ge.predix.sample.blobstore.spi.BlobInfo;
+import com.ge.predix.sample.blobstore.spi.BlobPage;
+import com.ge.predix.sample.blobstore.spi.BlobRequestSigning;
+import com.ge.predix.sample.blobstore.spi.BlobStoreBackend;
+import com.ge.predix.sample.blobstore.spi.ByteRange;
+import com.ge.predix.sample.blobstore.spi.SignedRequest;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Coalesces concurrent reads of the same key and range into a single upstream read, e.g. when
+ * hundreds of devices fetch a newly published firmware at once.
+ * <p/>
+ * The first request opens the upstream read and hands it to the pump executor; requests
+ * arriving while it runs join it and read the same bytes, see {@link Flight}. A request
+ * arriving after the read finished starts a new one. Writes, copies, moves and deletes of a key
+ * stop new requests from joining the reads of it already running, so reads started after a
+ * write see the new content.
+ * <p/>
+ * At most maxFlights upstream reads are shared at a time, further requests for other keys read
+ * upstream on their own. Readers that would need more than maxSpillBytes spilled across all
+ * flights are detached and continue with an upstream read of their own.
+ */
+public class CoalescingBackend implements BlobStoreBackend, BlobRequestSigning {
+
+    Log log = LogFactory.getLog(CoalescingBackend.class);
+
+    private final BlobStoreBackend delegate;
+
+    private final ExecutorService pumpExecutor;
+
+    private final Path spillDirectory;
+
+    private final int ringBytes;
+
+    private final int maxFlights;
+
+    private final long maxSpillBytes;
+
+    private final AtomicInteger running = new AtomicInteger();
+
+    private final AtomicLong spillInUse = new AtomicLong();
+
+    private final ConcurrentMap<String, Flight> flights = new ConcurrentHashMap<>();
+
+    private final AtomicLong upstreamReads = new AtomicLong();
+
+    private final AtomicLong coalescedReads = new AtomicLong();
+
+    private final AtomicLong spilledBytes = new AtomicLong();
+
+    private final AtomicLong uncoalescedReads = new AtomicLong();
+
+    private final AtomicLong detachedReads = new AtomicLong();
+
+    /**
+     * @param delegate       backend the upstream reads go to
+     * @param pumpExecutor   runs one task per upstream read, copying it into its ring
+     * @param spillDirectory directory of the spill files of readers that fall behind
+     * @param ringBytes      bytes of a read kept in memory
+     * @param maxFlights     upstream reads shared at a time, at most the threads of the pump executor
+     * @param maxSpillBytes  bytes all spill files may hold together
+     */
+    public CoalescingBackend(BlobStoreBackend delegate, ExecutorService pumpExecutor, Path spillDirectory, int ringBytes,
+                             int maxFlights, long maxSpillBytes) throws IOException {
+        this.delegate = delegate;
+        this.pumpExecutor = pumpExecutor;
+        this.spillDirectory = Files.createDirectories(spillDirectory);
+        this.ringBytes = ringBytes;
+        this.maxFlights = maxFlights;
+        this.maxSpillBytes = maxSpillBytes;
+    }
+
+    @Override
+    public BlobContent get(String key, ByteRange range) throws Exception {
+        String id = range == null ? key : key + '\n' + range;
+        while (true) {
+            Flight flight = flights.get(id);
+            if (flight == null) {
+                Flight started = flight(key, range);
+                started.join();
+                flight = flights.putIfAbsent(id, started);
+                if (flight == null) {
+                    if (running.incrementAndGet() > maxFlights) {
+                        running.decrementAndGet();
+                        flights.remove(id, started);
+                        started.close();
+                        uncoalescedReads.incrementAndGet();
+                        return delegate.get(key, range);
+                    }
+                    start(id, started, range);
+                    return started.content();
+                }
+            }
+            if (flight.join()) {
+                coalescedReads.incrementAndGet();
+                return flight.content();
+            }
+            // Finished or abandoned, make room for a new one
+            flights.remove(id, flight);
+        }
+    }
+
+    @Override
+    public BlobInfo put(String key, InputStream content, long length, String contentType) throws Exception {
+        try {
+            return delegate.put(key, content, length, contentType);
+        } finally {
+            invalidate(key);
+        }
+    }
+
+    @Override
+    public BlobInfo head(String key) throws Exception {
+        return delegate.head(key);
+    }
+
+    @Override
+    public BlobPage list(String prefix, String marker, int maxKeys) throws Exception {
+        return delegate.list(prefix, marker, maxKeys);
+    }
+
+    @Override
+    public BlobInfo copy(String sourceKey, String targetKey) throws Exception {
+        try {
+            return delegate.copy(sourceKey, targetKey);
+        } finally {
+            invalidate(targetKey);
+        }
+    }
+
+    @Override
+    public BlobInfo move(String sourceKey, String targetKey) throws Exception {
+        try {
+            return delegate.move(sourceKey, targetKey);
+        } finally {
+            invalidate(sourceKey);
+            invalidate(targetKey);
+        }
+    }
+
+    @Override
+    public void delete(String key) throws Exception {
+        try {
+            delegate.delete(key);
+        } finally {
+            invalidate(key);
+        }
+    }
+
+    @Override
+    public SignedRequest signGet(String key, long expiresInSeconds) throws Exception {
+        return signing().signGet(key, expiresInSeconds);
+    }
+
+    @Override
+    public SignedRequest signPut(String key, String contentType, long expiresInSeconds) throws Exception {
+        return signing().signPut(key, contentType, expiresInSeconds);
+    }
+
+    @Override
+    public String initiateMultipartUpload(String key, String contentType) throws Exception {
+        return signing().initiateMultipartUpload(key, contentType);
+    }
+
+    @Override
+    public SignedRequest signUploadPart(String key, String uploadId, int partNumber, long expiresInSeconds) throws Exception {
+        return signing().signUploadPart(key, uploadId, partNumber, expiresInSeconds);
+    }
+
+    @Override
+    public BlobInfo completeMultipartUpload(String key, String uploadId, SortedMap<Integer, String> partETags) throws Exception {
+        try {
+            return signing().completeMultipartUpload(key, uploadId, partETags);
+        } finally {
+            invalidate(key);
+        }
+    }
+
+    @Override
+    public void abortMultipartUpload(String key, String uploadId) throws Exception {
+        signing().abortMultipartUpload(key, uploadId);
+    }
+
+    /**
+     * @return reads that went upstream
+     */
+    public long getUpstreamReads() {
+        return upstreamReads.get();
+    }
+
+    /**
+     * @return reads served by joining a running upstream read
+     */
+    public long getCoalescedReads() {
+        return coalescedReads.get();
+    }
+
+    /**
+     * @return bytes written to spill files for readers behind their ring
+     */
+    public long getSpilledBytes() {
+        return spilledBytes.get();
+    }
+
+    /**
+     * @return reads that went upstream on their own because maxFlights reads were shared already
+     */
+    public long getUncoalescedReads() {
+        return uncoalescedReads.get();
+    }
+
+    /**
+     * @return readers that continued with a read of their own because the spill budget was used up
+     */
+    public long getDetachedReads() {
+        return detachedReads.get();
+    }
+
+    public int getActiveFlights() {
+        return flights.size();
+    }
+
+    /**
+     * @return a flight whose detached readers continue with a ranged read from their offset
+     */
+    private Flight flight(final String key, final ByteRange range) {
+        return new Flight(key, spillDirectory, ringBytes, spillInUse, maxSpillBytes, new Flight.Source() {
+            @Override
+            public BlobContent open(long offset, long length) throws Exception {
+                long start = (range == null ? 0 : range.getStart()) + offset;
+                long end;
+                if (length >= 0) {
+                    end = start + length - 1;
+                } else {
+                    end = range == null ? Long.MAX_VALUE : range.getEnd();
+                }
+                return delegate.get(key, new ByteRange(start, Math.max(start, end)));
+            }
+        });
+    }
+
+    /**
+     * Opens the upstream read in the caller's thread, so its failure reaches every joined request,
+     * and pumps it on the executor
+     */
+    private void start(final String id, final Flight flight, ByteRange range) {
+        upstreamReads.incrementAndGet();
+        BlobContent content;
+        try {
+            content = delegate.get(flight.getKey(), range);
+        } catch (Exception e) {
+            running.decrementAndGet();
+            flights.remove(id, flight);
+            flight.openFailed(e);
+            return;
+        }
+        flight.opened(content);
+        try {
+            pumpExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        flight.pump();
+                    } finally {
+                        running.decrementAndGet();
+                        flights.remove(id, flight);
+                        spilledBytes.addAndGet(flight.getSpilled());
+                        detachedReads.addAndGet(flight.getDetached());
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Pumping on the request thread would leave every joined request waiting on its client
+            log.error("start(): Couldnt pump " + flight.getKey() + " : " + e.getMessage());
+            running.decrementAndGet();
+            flights.remove(id, flight);
+            flight.pumpFailed(e);
+        }
+    }
+
+    private void invalidate(String key) {
+        for (Map.Entry<String, Flight> entry : flights.entrySet()) {
+            if (entry.getValue().getKey().equals(key)) {
+                entry.getValue().close();
+                flights.remove(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    private BlobRequestSigning signing() {
+        if (!(delegate instanceof BlobRequestSigning)) {
+            throw new UnsupportedOperationException("The configured backend does not support signed requests");
+        }
+        return (BlobRequestSigning) delegate;
+    }
+}
@@ -0,0 +1,548 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.coalesce;
+
+import com.ge.predix.sample.blobstore.spi.BlobContent;
+import com.ge.predix.sample.blobstore.spi.BlobInfo;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One upstream read of a key and range, shared by every request that joins it while it runs.
+ * <p/>
+ * The content passes through a ring buffer of ringBytes and the upstream read never waits for
+ * readers. Bytes about to be overwritten that a reader still needs are appended to a spill
+ * file first, so readers that fall behind the ring continue from disk; bytes every reader is
+ * past are dropped. Spill files share a budget: when it is used up, readers that would need
+ * more spilled bytes are detached and continue with an upstream read of their own from where
+ * they are. Requests can join until the first byte is dropped. The spill file is removed once
+ * the flight is done and its last reader has left. When every reader leaves early the upstream
+ * read is aborted.
+ */
+class Flight {
+
+    /**
+     * Opens an upstream read of the rest of the flight, for readers that are detached
+     */
+    interface Source {
+
+        /**
+         * @param offset offset into the flight to read from
+         * @param length bytes left from the offset, -1 if unknown
+         */
+        BlobContent open(long offset, long length) throws Exception;
+    }
+
+    private final String key;
+
+    private final Path spillDirectory;
+
+    private final int ringBytes;
+
+    private final AtomicLong spillBudgetUsed;
+
+    private final long maxSpillBytes;
+
+    private final Source source;
+
+    private BlobContent upstream;
+
+    private BlobInfo info;
+
+    private long contentLength;
+
+    private Exception openFailure;
+
+    private byte[] ring;
+
+    /**
+     * Bytes received from upstream so far
+     */
+    private long produced;
+
+    /**
+     * Bytes evicted from the ring, the ring holds [evicted, produced)
+     */
+    private long evicted;
+
+    /**
+     * Bytes written to the spill file, counted against the shared budget until it is removed
+     */
+    private long spilled;
+
+    private boolean released;
+
+    private FileChannel spill;
+
+    private boolean done;
+
+    private Exception failure;
+
+    /**
+     * Requests joined and not yet left, including ones that have no Reader yet
+     */
+    private int readers;
+
+    private final List<Reader> active = new ArrayList<>();
+
+    private int detached;
+
+    /**
+     * Whether bytes were evicted without being spilled, so that a reader starting now would
+     * miss them
+     */
+    private boolean dropped;
+
+    private boolean joinable = true;
+
+    private boolean aborted;
+
+    /**
+     * @param spillBudgetUsed spilled bytes of all flights, shared with them
+     * @param maxSpillBytes   bytes all flights may spill together
+     * @param source          opens the reads of detached readers
+     */
+    Flight(String key, Path spillDirectory, int ringBytes, AtomicLong spillBudgetUsed, long maxSpillBytes,
+           Source source) {
+        this.key = key;
+        this.spillDirectory = spillDirectory;
+        this.ringBytes = ringBytes;
+        this.spillBudgetUsed = spillBudgetUsed;
+        this.maxSpillBytes = maxSpillBytes;
+        this.source = source;
+    }
+
+    String getKey() {
+        return key;
+    }
+
+    /**
+     * @return false if the flight is finished, abandoned or past its start, and a new one has
+     * to be started
+     */
+    synchronized boolean join() {
+        if (!joinable) {
+            return false;
+        }
+        readers++;
+        return true;
+    }
+
+    /**
+     * Stops new requests from joining, e.g. because the key has been written meanwhile
+     */
+    synchronized void close() {
+        joinable = false;
+    }
+
+    synchronized void opened(BlobContent content) {
+        upstream = content;
+        info = content.getInfo();
+        contentLength = content.getContentLength();
+        ring = new byte[(int) (contentLength >= 0 ? Math.max(1, Math.min(ringBytes, contentLength)) : ringBytes)];
+        notifyAll();
+    }
+
+    synchronized void openFailed(Exception e) {
+        openFailure = e;
+        joinable = false;
+        done = true;
+        notifyAll();
+    }
+
+    /**
+     * Fails an opened flight that cannot be pumped, aborting its upstream read
+     */
+    void pumpFailed(Exception e) {
+        try {
+            upstream.abort();
+        } catch (IOException ignored) {
+            // Failing anyway
+        }
+        finish(e);
+    }
+
+    /**
+     * Waits for the upstream read to open and returns a reader of this flight. Every joined
+     * request calls this once and leaves the flight when it closes the content.
+     *
+     * @throws Exception the exception that failed the upstream read
+     */
+    BlobContent content() throws Exception {
+        final Reader reader = new Reader();
+        synchronized (this) {
+            while (info == null && openFailure == null) {
+                wait();
+            }
+            if (openFailure != null) {
+                leave(null);
+                throw openFailure;
+            }
+            if (dropped) {
+                // The start is gone, read it upstream
+                reader.detached = true;
+                detached++;
+            }
+            active.add(reader);
+        }
+        return new BlobContent(info, reader, contentLength) {
+            @Override
+            public void abort() throws IOException {
+                reader.abort();
+            }
+        };
+    }
+
+    /**
+     * Reads the upstream content into the ring until it ends, fails or every reader has left
+     */
+    void pump() {
+        Exception error = null;
+        try {
+            InputStream in = upstream.getStream();
+            byte[] buffer = new byte[Math.min(64 * 1024, ring.length)];
+            int read;
+            while (!isAborted() && (read = in.read(buffer)) != -1) {
+                append(buffer, read);
+            }
+        } catch (Exception e) {
+            error = e;
+        }
+        try {
+            if (error != null || isAborted()) {
+                upstream.abort();
+            } else {
+                upstream.close();
+            }
+        } catch (IOException e) {
+            // Content is complete or already failed
+        }
+        finish(error);
+    }
+
+    synchronized long getSpilled() {
+        return spilled;
+    }
+
+    synchronized int getDetached() {
+        return detached;
+    }
+
+    private synchronized boolean isAborted() {
+        return aborted;
+    }
+
+    private synchronized void append(byte[] buffer, int length) throws IOException {
+        long end = produced + length - ring.length;
+        if (end > evicted) {
+            evict(end);
+        }
+        int offset = 0;
+        while (offset < length) {
+            int index = (int) (produced % ring.length);
+            int n = Math.min(length - offset, ring.length - index);
+            System.arraycopy(buffer, offset, ring, index, n);
+            produced += n;
+            offset += n;
+        }
+        notifyAll();
+    }
+
+    /**
+     * Evicts [evicted, end) from the ring, spilling the part an attached reader still needs,
+     * the caller holds the monitor
+     */
+    private void evict(long end) throws IOException {
+        long from = Math.max(evicted, slowestOffset());
+        if (from < end) {
+            long n = end - from;
+            if (spillBudgetUsed.addAndGet(n) > maxSpillBytes) {
+                spillBudgetUsed.addAndGet(-n);
+                detachBefore(end);
+            } else {
+                spill(from, end);
+                spilled += n;
+            }
+        }
+        if (from > evicted) {
+            drop();
+        }
+        evicted = end;
+    }
+
+    /**
+     * @return offset of the slowest attached reader, 0 while a joined request has no reader yet
+     */
+    private long slowestOffset() {
+        if (readers > active.size()) {
+            return 0;
+        }
+        long slowest = Long.MAX_VALUE;
+        for (Reader reader : active) {
+            if (!reader.detached) {
+                slowest = Math.min(slowest, reader.offset);
+            }
+        }
+        return slowest;
+    }
+
+    /**
+     * Leaves the readers still needing bytes before the offset to their own upstream reads
+     */
+    private void detachBefore(long offset) {
+        drop();
+        for (Reader reader : active) {
+            if (!reader.detached && reader.offset < offset) {
+                reader.detached = true;
+                detached++;
+            }
+        }
+        abortIfUnread();
+    }
+
+    private void drop() {
+        // A request joining now would miss the start
+        dropped = true;
+        joinable = false;
+    }
+
+    private void spill(long from, long end) throws IOException {
+        if (spill == null) {
+            Path file = Files.createTempFile(spillDirectory, "flight-", ".spill");
+            spill = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE);
+        }
+        long position = from;
+        while (position < end) {
+            int index = (int) (position % ring.length);
+            int n = (int) Math.min(end - position, ring.length - index);
+            ByteBuffer bb = ByteBuffer.wrap(ring, index, n);
+            long at = position;
+            while (bb.hasRemaining()) {
+                at += spill.write(bb, at);
+            }
+            position += n;
+        }
+    }
+
+    private synchronized void finish(Exception error) {
+        done = true;
+        failure = error;
+        joinable = false;
+        notifyAll();
+        release();
+    }
+
+    /**
+     * @param reader the reader leaving, null for a request that left before it got one
+     */
+    private synchronized void leave(Reader reader) {
+        readers--;
+        if (reader != null) {
+            active.remove(reader);
+        }
+        if (readers == 0) {
+            joinable = false;
+            release();
+        }
+        abortIfUnread();
+    }
+
+    /**
+     * Aborts the upstream read once no reader is attached to it, the caller holds the monitor
+     */
+    private void abortIfUnread() {
+        if (done || readers > active.size()) {
+            return;
+        }
+        for (Reader reader : active) {
+            if (!reader.detached) {
+                return;
+            }
+        }
+        joinable = false;
+        aborted = true;
+    }
+
+    /**
+     * Drops the ring and the spill file once the flight is done and nobody reads it, the caller
+     * holds the monitor
+     */
+    private void release() {
+        if (!done || readers > 0 || released) {
+            return;
+        }
+        released = true;
+        ring = null;
+        if (spill != null) {
+            try {
+                spill.close();
+            } catch (IOException e) {
+                // Deleted on close, nothing left to do
+            }
+            spill = null;
+        }
+        spillBudgetUsed.addAndGet(-spilled);
+    }
+
+    /**
+     * Reads the flight from its own offset, from the ring when the bytes are still there and
+     * from the spill file otherwise, or from an upstream read of its own once detached
+     */
+    private class Reader extends InputStream {
+
+        /**
+         * Guarded by the flight
+         */
+        private long offset;
+
+        /**
+         * Guarded by the flight
+         */
+        private boolean detached;
+
+        private BlobContent own;
+
+        private boolean closed;
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) == -1 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (closed) {
+                throw new IOException("Stream closed");
+            }
+            if (len == 0) {
+                return 0;
+            }
+            FileChannel channel;
+            long at;
+            int n;
+            synchronized (Flight.this) {
+                if (!detached) {
+                    try {
+                        while (offset >= produced && !done && !detached) {
+                            Flight.this.wait();
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IOException("Interrupted while waiting for " + key, e);
+                    }
+                }
+                if (detached) {
+                    channel = null;
+                    at = offset;
+                    n = 0;
+                } else {
+                    if (offset >= produced) {
+                        if (failure != null) {
+                            throw new IOException("Upstream read of " + key + " failed", failure);
+                        }
+                        return -1;
+                    }
+                    if (offset >= evicted) {
+                        n = (int) Math.min(len, produced - offset);
+                        int copied = 0;
+                        while (copied < n) {
+                            int index = (int) ((offset + copied) % ring.length);
+                            int chunk = Math.min(n - copied, ring.length - index);
+                            System.arraycopy(ring, index, b, off + copied, chunk);
+                            copied += chunk;
+                        }
+                        offset += n;
+                        return n;
+                    }
+                    channel = spill;
+                    at = offset;
+                    n = (int) Math.min(len, evicted - offset);
+                }
+            }
+            if (channel == null) {
+                return readOwn(b, off, len, at);
+            }
+            // Spilled bytes never change, read them without holding up the flight
+            int read = channel.read(ByteBuffer.wrap(b, off, n), at);
+            if (read > 0) {
+                synchronized (Flight.this) {
+                    offset += read;
+                }
+            }
+            return read;
+        }
+
+        private int readOwn(byte[] b, int off, int len, long at) throws IOException {
+            if (own == null) {
+                try {
+                    own = source.open(at, contentLength >= 0 ? contentLength - at : -1);
+                } catch (IOException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw new IOException("Couldnt reopen " + key + " at " + at, e);
+                }
+                String eTag = own.getInfo() != null ? own.getInfo().getETag() : null;
+                if (info.getETag() != null && !info.getETag().equals(eTag)) {
+                    throw new IOException(key + " changed while it was read");
+                }
+            }
+            int read = own.getStream().read(b, off, len);
+            if (read > 0) {
+                synchronized (Flight.this) {
+                    offset += read;
+                }
+            }
+            return read;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!closed) {
+                closed = true;
+                try {
+                    if (own != null) {
+                        own.close();
+                    }
+                } finally {
+                    leave(this);
+                }
+            }
+        }
+
+        void abort() throws IOException {
+            if (!closed) {
+                closed = true;
+                try {
+                    if (own != null) {
+                        own.abort();
+                    }
+                } finally {
+                    leave(this);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.feed;
+
+import com.ge.predix.sample.blobstore.spi.BlobInfo;
+
+/**
+ * One change to a Blob in the Object Store.
+ */
+public class ChangeEvent {
+
+    public enum Type {
+        ADDED, CHANGED, REMOVED
+    }
+
+    private final long sequence;
+
+    private final Type type;
+
+    private final String key;
+
+    private final long size;
+
+    private final String eTag;
+
+    private final long lastModified;
+
+    /**
+     * True when the change was made through this instance, false when a scan found it
+     */
+    private final boolean local;
+
+    ChangeEvent(long sequence, Type type, String key, BlobInfo info, boolean local) {
+        this.sequence = sequence;
+        this.type = type;
+        this.key = key;
+        this.size = info != null ? info.getSize() : 0;
+        this.eTag = info != null ? info.getETag() : null;
+        this.lastModified = info != null ? info.getLastModified() : 0;
+        this.local = local;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * @return size after the change, 0 for removals
+     */
+    public long getSize() {
+        return size;
+    }
+
+    public String getETag() {
+        return eTag;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    public boolean isLocal() {
+        return local;
+    }
+
+    @Override
+    public String toString() {
+        return type + " " + key + " #" + sequence;
+    }
+}
@@ -0,0 +1,292 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.feed;
+
+import com.ge.predix.sample.blobstore.listing.KeySnapshot;
+import com.ge.predix.sample.blobstore.listing.ParallelListing;
+import com.ge.predix.sample.blobstore.spi.BlobChangeListener;
+import com.ge.predix.sample.blobstore.spi.BlobInfo;
+import com.ge.predix.sample.blobstore.spi.BlobStoreBackend;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Feed of the changes to the Object Store, read by sequence number or followed through
+ * subscribers.
+ * <p/>
+ * Writes and deletes made through this instance are appended as they happen. Changes made
+ * elsewhere are found by a scan, which lists the store in parallel into a {@link KeySnapshot}
+ * and diffs it against the previous one. Changes a scan finds that were already appended
+ * locally are not appended again. The last {@code capacity} events are kept in memory, a
+ * reader falling further behind is told it missed events.
+ * <p/>
+ * The feed starts empty with the first scan as its baseline and a new feed id on each start.
+ */
+public class ChangeFeed implements BlobChangeListener {
+
+    Log log = LogFactory.getLog(ChangeFeed.class);
+
+    /**
+     * Receives each event as it is appended, on the thread that appends it, and must not block
+     */
+    public interface Subscriber {
+
+        void changed(ChangeEvent event);
+    }
+
+    private final String feedId = UUID.randomUUID().toString();
+
+    private final ChangeEvent[] ring;
+
+    /**
+     * Sequence of the next event, guarded by the ring
+     */
+    private long nextSequence = 1;
+
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+
+    /**
+     * Latest local change per key, so a scan does not repeat it. Cleared by the first scan that
+     * started after the change.
+     */
+    private final ConcurrentHashMap<String, LocalChange> localChanges = new ConcurrentHashMap<>();
+
+    private final Object scanLock = new Object();
+
+    private volatile KeySnapshot snapshot;
+
+    private volatile long lastScanMillis;
+
+    private volatile long lastScanDurationMillis;
+
+    /**
+     * @param capacity events kept for readers
+     */
+    public ChangeFeed(int capacity) {
+        this.ring = new ChangeEvent[capacity];
+    }
+
+    public void addSubscriber(Subscriber subscriber) {
+        subscribers.add(subscriber);
+    }
+
+    @Override
+    public void written(BlobInfo info) {
+        LocalChange previous = localChanges.get(info.getKey());
+        boolean existed = previous != null ? previous.info != null : snapshotContains(info.getKey());
+        long sequence = append(existed ? ChangeEvent.Type.CHANGED : ChangeEvent.Type.ADDED, info.getKey(), info, true);
+        localChanges.put(info.getKey(), new LocalChange(info, sequence));
+    }
+
+    @Override
+    public void deleted(String key) {
+        long sequence = append(ChangeEvent.Type.REMOVED, key, null, true);
+        localChanges.put(key, new LocalChange(null, sequence));
+    }
+
+    /**
+     * Lists the Object Store and appends what changed since the previous scan. The first scan
+     * only sets the baseline. Scans do not overlap, a second caller waits for the first.
+     *
+     * @param backend     store to list
+     * @param executor    runs the shard listings
+     * @param parallelism shards listed at once
+     * @param pageSize    keys requested per listing call
+     * @return number of events appended
+     * @throws Exception the first listing failure, the previous snapshot is kept
+     */
+    public int scan(BlobStoreBackend backend, ExecutorService executor, int parallelism, int pageSize) throws Exception {
+        synchronized (scanLock) {
+            long start = System.currentTimeMillis();
+            long startSequence = lastSequence();
+            final KeySnapshot.Builder[] shards = new KeySnapshot.Builder[ParallelListing.SHARDS];
+            for (int i = 0; i < shards.length; i++) {
+                shards[i] = new KeySnapshot.Builder();
+            }
+            try {
+                ParallelListing.list(backend, executor, parallelism, pageSize, new ParallelListing.Visitor() {
+                    @Override
+                    public void visit(int shard, BlobInfo info) {
+                        shards[shard].add(info.getKey(), info.getSize(), info.getETag(), info.getLastModified());
+                    }
+                });
+            } catch (Exception e) {
+                log.error("scan(): Listing failed, snapshot left as it was : " + e.getMessage());
+                throw e;
+            }
+            KeySnapshot.Builder builder = new KeySnapshot.Builder();
+            for (int i = 0; i < shards.length; i++) {
+                builder.addAll(shards[i].build());
+                shards[i] = null;
+            }
+            KeySnapshot fresh = builder.build();
+
+            int appended = 0;
+            KeySnapshot previous = snapshot;
+            if (previous != null) {
+                final int[] count = new int[1];
+                KeySnapshot.diff(previous, fresh, new KeySnapshot.DiffListener() {
+                    @Override
+                    public void added(BlobInfo after) {
+                        if (!appendedLocally(after.getKey(), after)) {
+                            append(ChangeEvent.Type.ADDED, after.getKey(), after, false);
+                            count[0]++;
+                        }
+                    }
+
+                    @Override
+                    public void removed(BlobInfo before) {
+                        if (!appendedLocally(before.getKey(), null)) {
+                            append(ChangeEvent.Type.REMOVED, before.getKey(), null, false);
+                            count[0]++;
+                        }
+                    }
+
+                    @Override
+                    public void changed(BlobInfo before, BlobInfo after) {
+                        if (!appendedLocally(after.getKey(), after)) {
+                            append(ChangeEvent.Type.CHANGED, after.getKey(), after, false);
+                            count[0]++;
+                        }
+                    }
+                });
+                appended = count[0];
+            }
+            snapshot = fresh;
+            for (Iterator<LocalChange> it = localChanges.values().iterator(); it.hasNext(); ) {
+                if (it.next().sequence <= startSequence) {
+                    it.remove();
+                }
+            }
+            lastScanMillis = System.currentTimeMillis();
+            lastScanDurationMillis = lastScanMillis - start;
+            log.info("scan(): Snapshot of " + fresh.size() + " Blobs in " + fresh.getMemoryBytes() + " bytes, "
+                    + appended + " changes found in " + lastScanDurationMillis + " ms");
+            return appended;
+        }
+    }
+
+    /**
+     * @param after sequence of the last event already read, 0 to read from the oldest kept
+     * @param limit most events to return
+     * @return ChangeFeedPage events following the given sequence
+     */
+    public ChangeFeedPage read(long after, int limit) {
+        synchronized (ring) {
+            long oldest = Math.max(1, nextSequence - ring.length);
+            boolean missed = after + 1 < oldest;
+            long from = Math.max(after + 1, oldest);
+            List<ChangeEvent> events = new ArrayList<>();
+            for (long sequence = from; sequence < nextSequence && events.size() < limit; sequence++) {
+                events.add(ring[(int) ((sequence - 1) % ring.length)]);
+            }
+            long last = events.isEmpty() ? Math.max(after, from - 1) : events.get(events.size() - 1).getSequence();
+            return new ChangeFeedPage(feedId, events, last, missed);
+        }
+    }
+
+    public String getFeedId() {
+        return feedId;
+    }
+
+    public long lastSequence() {
+        synchronized (ring) {
+            return nextSequence - 1;
+        }
+    }
+
+    /**
+     * @return Blobs in the last snapshot, 0 before the first scan
+     */
+    public int getSnapshotSize() {
+        KeySnapshot current = snapshot;
+        return current != null ? current.size() : 0;
+    }
+
+    public long getSnapshotMemoryBytes() {
+        KeySnapshot current = snapshot;
+        return current != null ? current.getMemoryBytes() : 0;
+    }
+
+    public long getLastScanMillis() {
+        return lastScanMillis;
+    }
+
+    public long getLastScanDurationMillis() {
+        return lastScanDurationMillis;
+    }
+
+    private long append(ChangeEvent.Type type, String key, BlobInfo info, boolean local) {
+        ChangeEvent event;
+        synchronized (ring) {
+            event = new ChangeEvent(nextSequence, type, key, info, local);
+            ring[(int) ((nextSequence - 1) % ring.length)] = event;
+            nextSequence++;
+        }
+        for (Subscriber subscriber : subscribers) {
+            try {
+                subscriber.changed(event);
+            } catch (RuntimeException e) {
+                log.error("append(): Subscriber failed on " + event + " : " + e.getMessage());
+            }
+        }
+        return event.getSequence();
+    }
+
+    /**
+     * @param state what the scan found, null if the key is gone
+     * @return true if the latest local change already left the key in that state
+     */
+    private boolean appendedLocally(String key, BlobInfo state) {
+        LocalChange change = localChanges.get(key);
+        if (change == null || (change.info == null) != (state == null)) {
+            return false;
+        }
+        if (state == null) {
+            return true;
+        }
+        return change.info.getSize() == state.getSize()
+                && (change.info.getETag() == null || state.getETag() == null || change.info.getETag().equals(state.getETag()));
+    }
+
+    private boolean snapshotContains(String key) {
+        KeySnapshot current = snapshot;
+        return current != null && current.contains(key);
+    }
+
+    private static class LocalChange {
+
+        /**
+         * State after the change, null for a delete
+         */
+        final BlobInfo info;
+
+        final long sequence;
+
+        LocalChange(BlobInfo info, long sequence) {
+            this.info = info;
+            this.sequence = sequence;
+        }
+    }
+}
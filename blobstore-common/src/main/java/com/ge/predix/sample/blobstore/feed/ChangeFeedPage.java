@@ -0,0 +1,65 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.feed;
+
+import java.util.List;
+
+/**
+ * Changes following a sequence number.
+ */
+public class ChangeFeedPage {
+
+    /**
+     * Identifies this run of the feed, sequence numbers of another run mean nothing here
+     */
+    private final String feedId;
+
+    private final List<ChangeEvent> events;
+
+    /**
+     * Sequence to pass for the next page
+     */
+    private final long lastSequence;
+
+    /**
+     * True when changes after the requested sequence were already dropped, the reader has to
+     * resynchronize from a full listing
+     */
+    private final boolean missed;
+
+    public ChangeFeedPage(String feedId, List<ChangeEvent> events, long lastSequence, boolean missed) {
+        this.feedId = feedId;
+        this.events = events;
+        this.lastSequence = lastSequence;
+        this.missed = missed;
+    }
+
+    public String getFeedId() {
+        return feedId;
+    }
+
+    public List<ChangeEvent> getEvents() {
+        return events;
+    }
+
+    public long getLastSequence() {
+        return lastSequence;
+    }
+
+    public boolean isMissed() {
+        return missed;
+    }
+}
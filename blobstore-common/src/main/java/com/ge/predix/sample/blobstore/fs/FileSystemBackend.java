@@ -0,0 +1,458 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.fs;
+
+import com.ge.predix.sample.blobstore.spi.BlobContent;
+import com.ge.predix.sample.blobstore.spi.BlobInfo;
+import com.ge.predix.sample.blobstore.spi.BlobNotFoundException;
+import com.ge.predix.sample.blobstore.spi.BlobPage;
+import com.ge.predix.sample.blobstore.spi.BlobStoreBackend;
+import com.ge.predix.sample.blobstore.spi.ByteRange;
+import com.ge.predix.sample.blobstore.spi.InvalidBlobKeyException;
+import com.ge.predix.sample.blobstore.spi.RangeNotSatisfiableException;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Stores Blobs as files on a local file system. Used as an on-prem edge store and as an
+ * Object Store stand-in for offline benchmarks.
+ * <p/>
+ * Layout below the root directory:
+ * <ul>
+ * <li>data/ - one file per Blob, keys containing '/' map to sub directories</li>
+ * <li>meta/ - one properties file per Blob with its content type and ETag</li>
+ * <li>tmp/ - uploads in progress</li>
+ * </ul>
+ * Uploads are written to tmp/ and renamed into place atomically, so readers never see a
+ * partially written Blob. The metadata file is written after the rename and records the identity
+ * of the data file it describes, so a reader that catches a write between the two steps notices
+ * the mismatch instead of pairing new content with an old ETag. Reads are served through
+ * memory-mapped windows.
+ */
+public class FileSystemBackend implements BlobStoreBackend {
+
+    Log log = LogFactory.getLog(FileSystemBackend.class);
+
+    private static final String CONTENT_TYPE = "contentType";
+
+    private static final String ETAG = "eTag";
+
+    private static final String FILE_KEY = "fileKey";
+
+    private static final String META_SUFFIX = ".properties";
+
+    /**
+     * Times a read retries when the metadata belongs to another version of the data file
+     */
+    private static final int META_ATTEMPTS = 3;
+
+    /**
+     * Size of the buffer used to copy uploads to disk
+     */
+    private static final int COPY_BUFFER_SIZE = 256 * 1024;
+
+    /**
+     * Size of the memory-mapped window used for reads
+     */
+    private static final int MAP_WINDOW_SIZE = 64 * 1024 * 1024;
+
+    private final Path data;
+
+    private final Path meta;
+
+    private final Path tmp;
+
+    /**
+     * Force uploads to the storage device before acknowledging them
+     */
+    private final boolean fsync;
+
+    public FileSystemBackend(Path root, boolean fsync) throws IOException {
+        this.data = Files.createDirectories(root.resolve("data")).toRealPath();
+        this.meta = Files.createDirectories(root.resolve("meta")).toRealPath();
+        this.tmp = Files.createDirectories(root.resolve("tmp")).toRealPath();
+        this.fsync = fsync;
+    }
+
+    @Override
+    public BlobInfo put(String key, InputStream content, long length, String contentType) throws Exception {
+        Path target = resolve(data, key);
+        Path temp = Files.createTempFile(tmp, "put-", ".tmp");
+        try {
+            MessageDigest md5 = md5();
+            long size = 0;
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                byte[] buffer = new byte[COPY_BUFFER_SIZE];
+                int read;
+                while ((read = content.read(buffer)) != -1) {
+                    md5.update(buffer, 0, read);
+                    ByteBuffer bb = ByteBuffer.wrap(buffer, 0, read);
+                    while (bb.hasRemaining()) {
+                        channel.write(bb);
+                    }
+                    size += read;
+                }
+                if (fsync) {
+                    channel.force(true);
+                }
+            }
+            if (length >= 0 && size != length) {
+                throw new IOException("put(): Expected " + length + " bytes for " + key + " but received " + size);
+            }
+
+            String eTag = toHex(md5.digest());
+            String fileKey = fileKey(Files.readAttributes(temp, BasicFileAttributes.class));
+            Files.createDirectories(target.getParent());
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+            writeMeta(key, contentType, eTag, fileKey);
+
+            if (log.isDebugEnabled())
+                log.debug("put(): Successfully added the file = " + key + ", eTag = " + eTag + ", size = " + size);
+            return new BlobInfo(key, size, eTag, contentType, Files.getLastModifiedTime(target).toMillis());
+        } finally {
+            Files.deleteIfExists(temp);
+            content.close();
+        }
+    }
+
+    /**
+     * Opens the data file first and describes the Blob from the opened file, so the returned
+     * metadata, size and content all belong to the same version even if the key is overwritten
+     * concurrently.
+     */
+    @Override
+    public BlobContent get(String key, ByteRange range) throws Exception {
+        Path file = resolve(data, key);
+        for (int attempt = 1; ; attempt++) {
+            BasicFileAttributes before = attributes(key, file);
+            FileChannel channel;
+            try {
+                channel = FileChannel.open(file, StandardOpenOption.READ);
+            } catch (NoSuchFileException e) {
+                throw new BlobNotFoundException(key, e);
+            }
+            boolean opened = false;
+            try {
+                BasicFileAttributes after = attributes(key, file);
+                // The same file before and after the open is the file the channel reads
+                if (!equal(fileKey(before), fileKey(after)) && attempt < META_ATTEMPTS) {
+                    continue;
+                }
+                Properties properties = readMeta(key, fileKey(after));
+                if (properties == null && attempt < META_ATTEMPTS) {
+                    continue;
+                }
+                BlobInfo info = toInfo(key, channel.size(), after, properties);
+
+                long start = 0;
+                long length = info.getSize();
+                if (range != null) {
+                    if (range.getStart() >= info.getSize()) {
+                        throw new RangeNotSatisfiableException(key, range);
+                    }
+                    start = range.getStart();
+                    length = Math.min(range.getEnd(), info.getSize() - 1) - start + 1;
+                }
+                opened = true;
+                return new BlobContent(info, new MappedInputStream(channel, start, length, MAP_WINDOW_SIZE), length);
+            } finally {
+                if (!opened) {
+                    channel.close();
+                }
+            }
+        }
+    }
+
+    @Override
+    public BlobInfo head(String key) throws Exception {
+        Path file = resolve(data, key);
+        for (int attempt = 1; ; attempt++) {
+            BasicFileAttributes attributes = attributes(key, file);
+            Properties properties = readMeta(key, fileKey(attributes));
+            if (properties != null || attempt == META_ATTEMPTS) {
+                return toInfo(key, attributes.size(), attributes, properties);
+            }
+        }
+    }
+
+    /**
+     * Lists Blobs in key order. Directories are visited in key order and those entirely before
+     * the marker or outside the prefix are not opened, so a page costs about the page size plus
+     * the directories on the path to the marker rather than a walk of every stored Blob.
+     */
+    @Override
+    public BlobPage list(String prefix, String marker, int maxKeys) throws Exception {
+        List<BlobInfo> blobs = new ArrayList<>(Math.min(maxKeys, 1000));
+        boolean truncated = list(data, "", prefix, marker, maxKeys, blobs);
+        String nextMarker = truncated && !blobs.isEmpty() ? blobs.get(blobs.size() - 1).getKey() : null;
+        return new BlobPage(blobs, nextMarker);
+    }
+
+    /**
+     * Adds the Blobs below a directory to the page, returns true once a key past a full page is
+     * found. Keys deleted while listing are skipped without ending the listing.
+     */
+    private boolean list(Path directory, String base, String prefix, String marker, int maxKeys,
+                         List<BlobInfo> blobs) throws Exception {
+        List<String> names = new ArrayList<>();
+        try (DirectoryStream<Path> children = Files.newDirectoryStream(directory)) {
+            for (Path child : children) {
+                String name = child.getFileName().toString();
+                // A trailing '/' sorts directories where their keys sort
+                names.add(Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS) ? name + "/" : name);
+            }
+        } catch (NoSuchFileException e) {
+            // Removed while listing
+            return false;
+        }
+        Collections.sort(names);
+
+        for (String name : names) {
+            String key = base + name;
+            if (name.endsWith("/")) {
+                if (prefix != null && !key.startsWith(prefix) && !prefix.startsWith(key)) {
+                    continue;
+                }
+                if (marker != null && marker.compareTo(key) > 0 && !marker.startsWith(key)) {
+                    continue;
+                }
+                if (list(directory.resolve(name.substring(0, name.length() - 1)), key, prefix, marker, maxKeys, blobs)) {
+                    return true;
+                }
+            } else {
+                if (prefix != null && !key.startsWith(prefix)) {
+                    continue;
+                }
+                if (marker != null && key.compareTo(marker) <= 0) {
+                    continue;
+                }
+                if (blobs.size() >= maxKeys) {
+                    return true;
+                }
+                try {
+                    blobs.add(head(key));
+                } catch (BlobNotFoundException e) {
+                    // Deleted while listing
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Copies the file to tmp/ and renames it into place, readers never see a partial copy
+     */
+    @Override
+    public BlobInfo copy(String sourceKey, String targetKey) throws Exception {
+        Path source = resolve(data, sourceKey);
+        Path target = resolve(data, targetKey);
+        if (source.equals(target)) {
+            return head(sourceKey);
+        }
+        BlobInfo info = head(sourceKey);
+        Path temp = Files.createTempFile(tmp, "copy-", ".tmp");
+        try {
+            try {
+                Files.copy(source, temp, StandardCopyOption.REPLACE_EXISTING);
+            } catch (NoSuchFileException e) {
+                throw new BlobNotFoundException(sourceKey, e);
+            }
+            if (fsync) {
+                try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                    channel.force(true);
+                }
+            }
+            String fileKey = fileKey(Files.readAttributes(temp, BasicFileAttributes.class));
+            Files.createDirectories(target.getParent());
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+            writeMeta(targetKey, info.getContentType(), info.getETag(), fileKey);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        if (log.isDebugEnabled())
+            log.debug("copy(): Successfully copied " + sourceKey + " to " + targetKey);
+        return head(targetKey);
+    }
+
+    /**
+     * Renames the file in place, no content is copied
+     */
+    @Override
+    public BlobInfo move(String sourceKey, String targetKey) throws Exception {
+        Path source = resolve(data, sourceKey);
+        Path target = resolve(data, targetKey);
+        if (source.equals(target)) {
+            return head(sourceKey);
+        }
+        BlobInfo info = head(sourceKey);
+        Files.createDirectories(target.getParent());
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (NoSuchFileException e) {
+            throw new BlobNotFoundException(sourceKey, e);
+        }
+        // The rename keeps the identity of the data file
+        String fileKey = fileKey(Files.readAttributes(target, BasicFileAttributes.class));
+        writeMeta(targetKey, info.getContentType(), info.getETag(), fileKey);
+        Files.deleteIfExists(resolve(meta, sourceKey + META_SUFFIX));
+        if (log.isDebugEnabled())
+            log.debug("move(): Successfully moved " + sourceKey + " to " + targetKey);
+        return head(targetKey);
+    }
+
+    @Override
+    public void delete(String key) throws Exception {
+        Files.deleteIfExists(resolve(data, key));
+        Files.deleteIfExists(resolve(meta, key + META_SUFFIX));
+        if (log.isDebugEnabled())
+            log.debug("delete(): Successfully deleted the file = " + key);
+    }
+
+    /**
+     * Maps a key to a path below the given directory, rejecting keys that escape it
+     */
+    private Path resolve(Path base, String key) {
+        if (key == null || key.isEmpty()) {
+            throw new InvalidBlobKeyException(key, "Key must not be empty");
+        }
+        Path path = base.resolve(key).normalize();
+        if (!path.startsWith(base) || path.equals(base)) {
+            throw new InvalidBlobKeyException(key, "Invalid key: " + key);
+        }
+        return path;
+    }
+
+    private BasicFileAttributes attributes(String key, Path file) throws BlobNotFoundException, IOException {
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            throw new BlobNotFoundException(key, e);
+        }
+        if (!attributes.isRegularFile()) {
+            throw new BlobNotFoundException(key);
+        }
+        return attributes;
+    }
+
+    /**
+     * Metadata that could not be matched to the data file is reported as unknown
+     */
+    private static BlobInfo toInfo(String key, long size, BasicFileAttributes attributes, Properties properties) {
+        if (properties == null) {
+            properties = new Properties();
+        }
+        return new BlobInfo(key, size, properties.getProperty(ETAG), properties.getProperty(CONTENT_TYPE),
+                attributes.lastModifiedTime().toMillis());
+    }
+
+    /**
+     * Identity of a data file that survives the rename into place, null where the file system
+     * does not provide one
+     */
+    private static String fileKey(BasicFileAttributes attributes) {
+        Object fileKey = attributes.fileKey();
+        return fileKey == null ? null : fileKey.toString();
+    }
+
+    private static boolean equal(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    private void writeMeta(String key, String contentType, String eTag, String fileKey) throws IOException {
+        Properties properties = new Properties();
+        if (contentType != null) {
+            properties.setProperty(CONTENT_TYPE, contentType);
+        }
+        if (eTag != null) {
+            properties.setProperty(ETAG, eTag);
+        }
+        if (fileKey != null) {
+            properties.setProperty(FILE_KEY, fileKey);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        properties.store(out, null);
+
+        Path target = resolve(meta, key + META_SUFFIX);
+        Path temp = Files.createTempFile(tmp, "meta-", ".tmp");
+        try {
+            Files.write(temp, out.toByteArray());
+            Files.createDirectories(target.getParent());
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Reads the metadata of the data file with the given identity. Returns null when it was
+     * written for another version of the Blob, i.e. a write of the key has renamed its data into
+     * place but not yet written its metadata.
+     */
+    private Properties readMeta(String key, String fileKey) throws IOException {
+        Properties properties = new Properties();
+        try {
+            byte[] bytes = Files.readAllBytes(resolve(meta, key + META_SUFFIX));
+            properties.load(new ByteArrayInputStream(bytes));
+        } catch (NoSuchFileException e) {
+            // Blob written by another process, metadata is unknown
+            return properties;
+        }
+        String written = properties.getProperty(FILE_KEY);
+        if (written != null && fileKey != null && !written.equals(fileKey)) {
+            return null;
+        }
+        return properties;
+    }
+
+    private static MessageDigest md5() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 is not available", e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        char[] hex = "0123456789abcdef".toCharArray();
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(hex[(b >> 4) & 0xf]).append(hex[b & 0xf]);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,120 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.fs;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads a region of a file through memory-mapped windows. Only one window is mapped at a time
+ * so files larger than 2 GB and large ranges are read without holding the whole region mapped.
+ * Closing the stream closes the channel.
+ */
+class MappedInputStream extends InputStream {
+
+    private final FileChannel channel;
+
+    private final int windowSize;
+
+    /**
+     * Offset of the first byte not mapped yet
+     */
+    private long position;
+
+    /**
+     * Offset after the last byte to read
+     */
+    private final long end;
+
+    private MappedByteBuffer window;
+
+    MappedInputStream(FileChannel channel, long start, long length, int windowSize) {
+        this.channel = channel;
+        this.position = start;
+        this.end = start + length;
+        this.windowSize = windowSize;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!ensureWindow()) {
+            return -1;
+        }
+        return window.get() & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!ensureWindow()) {
+            return -1;
+        }
+        int n = Math.min(len, window.remaining());
+        window.get(b, off, n);
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        if (n <= 0) {
+            return 0;
+        }
+        long skipped = Math.min(n, remaining());
+        long inWindow = window == null ? 0 : window.remaining();
+        if (skipped == 0) {
+            return 0;
+        }
+        if (skipped <= inWindow) {
+            window.position(window.position() + (int) skipped);
+        } else {
+            position += skipped - inWindow;
+            window = null;
+        }
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        return (int) Math.min(Integer.MAX_VALUE, remaining());
+    }
+
+    @Override
+    public void close() throws IOException {
+        window = null;
+        channel.close();
+    }
+
+    private long remaining() {
+        return (window == null ? 0 : window.remaining()) + (end - position);
+    }
+
+    private boolean ensureWindow() throws IOException {
+        if (window != null && window.hasRemaining()) {
+            return true;
+        }
+        if (position >= end) {
+            return false;
+        }
+        long size = Math.min(windowSize, end - position);
+        window = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+        position += size;
+        return true;
+    }
+}
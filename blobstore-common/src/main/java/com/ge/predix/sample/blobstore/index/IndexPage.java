@@ -0,0 +1,47 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.index;
+
+import com.ge.predix.sample.blobstore.spi.BlobInfo;
+
+import java.util.List;
+
+/**
+ * One page of search results.
+ */
+public class IndexPage {
+
+    private final List<BlobInfo> blobs;
+
+    /**
+     * Cursor to pass for the next page, null on the last page. A page may hold fewer than the
+     * requested number of Blobs and still have a next page when few entries match.
+     */
+    private final String nextCursor;
+
+    public IndexPage(List<BlobInfo> blobs, String nextCursor) {
+        this.blobs = blobs;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<BlobInfo> getBlobs() {
+        return blobs;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+}
@@ -0,0 +1,154 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.index;
+
+/**
+ * Filters, order and page of a search over the metadata index. Unset filters match everything.
+ */
+public class IndexQuery {
+
+    public enum Sort {
+        KEY, SIZE, LAST_MODIFIED;
+
+        /**
+         * @param name key, size or lastModified, case insensitive, null for key
+         * @throws IllegalArgumentException if the order is not supported
+         */
+        public static Sort parse(String name) {
+            if (name == null || name.isEmpty()) {
+                return KEY;
+            }
+            for (Sort sort : values()) {
+                if (sort.name().replace("_", "").equalsIgnoreCase(name)) {
+                    return sort;
+                }
+            }
+            throw new IllegalArgumentException("Unsupported sort: " + name);
+        }
+    }
+
+    private String prefix = "";
+
+    /**
+     * Matches content types starting with it, e.g. image/ for all images
+     */
+    private String contentType;
+
+    private long minSize = 0;
+
+    private long maxSize = Long.MAX_VALUE;
+
+    /**
+     * Inclusive lower bound on the modification time, in milliseconds since the epoch
+     */
+    private long modifiedAfter = Long.MIN_VALUE;
+
+    /**
+     * Exclusive upper bound on the modification time, in milliseconds since the epoch
+     */
+    private long modifiedBefore = Long.MAX_VALUE;
+
+    private Sort sort = Sort.KEY;
+
+    private boolean descending;
+
+    private int limit = 100;
+
+    /**
+     * Position to continue after, the nextCursor of the previous page
+     */
+    private String cursor;
+
+    public String getPrefix() {
+        return prefix;
+    }
+
+    public void setPrefix(String prefix) {
+        this.prefix = prefix != null ? prefix : "";
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public void setContentType(String contentType) {
+        this.contentType = contentType;
+    }
+
+    public long getMinSize() {
+        return minSize;
+    }
+
+    public void setMinSize(long minSize) {
+        this.minSize = minSize;
+    }
+
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    public void setMaxSize(long maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    public long getModifiedAfter() {
+        return modifiedAfter;
+    }
+
+    public void setModifiedAfter(long modifiedAfter) {
+        this.modifiedAfter = modifiedAfter;
+    }
+
+    public long getModifiedBefore() {
+        return modifiedBefore;
+    }
+
+    public void setModifiedBefore(long modifiedBefore) {
+        this.modifiedBefore = modifiedBefore;
+    }
+
+    public Sort getSort() {
+        return sort;
+    }
+
+    public void setSort(Sort sort) {
+        this.sort = sort;
+    }
+
+    public boolean isDescending() {
+        return descending;
+    }
+
+    public void setDescending(boolean descending) {
+        this.descending = descending;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public void setLimit(int limit) {
+        this.limit = limit;
+    }
+
+    public String getCursor() {
+        return cursor;
+    }
+
+    public void setCursor(String cursor) {
+        this.cursor = cursor;
+    }
+}
@@ -0,0 +1,389 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.index;
+
+import com.ge.predix.sample.blobstore.io.ContentTypeDetector;
+import com.ge.predix.sample.blobstore.listing.ParallelListing;
+import com.ge.predix.sample.blobstore.spi.BlobChangeListener;
+import com.ge.predix.sample.blobstore.spi.BlobInfo;
+import com.ge.predix.sample.blobstore.spi.BlobStoreBackend;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In memory index of Blob metadata, sorted by key, by size and by modification time, so
+ * filtered and sorted searches read only the range they need.
+ * <p/>
+ * The index is filled by a scan of the Object Store and kept current by the writes and deletes
+ * made through this instance. Rescanning reconciles it with the store: entries neither seen by
+ * the scan nor written while it ran are dropped. A Blob deleted through this instance while a
+ * scan lists it may linger until the next scan.
+ * <p/>
+ * Listings carry no content type. A scanned Blob keeps the type it was written with as long as
+ * its ETag is unchanged, otherwise it is typed by its key extension when a ContentTypeDetector
+ * is set, and left untyped if the extension is unknown. Untyped Blobs never match a content
+ * type filter.
+ */
+public class MetadataIndex implements BlobChangeListener {
+
+    Log log = LogFactory.getLog(MetadataIndex.class);
+
+    private static final Comparator<Entry> BY_SIZE = new Comparator<Entry>() {
+        @Override
+        public int compare(Entry a, Entry b) {
+            int c = Long.compare(a.info.getSize(), b.info.getSize());
+            return c != 0 ? c : a.info.getKey().compareTo(b.info.getKey());
+        }
+    };
+
+    private static final Comparator<Entry> BY_LAST_MODIFIED = new Comparator<Entry>() {
+        @Override
+        public int compare(Entry a, Entry b) {
+            int c = Long.compare(a.info.getLastModified(), b.info.getLastModified());
+            return c != 0 ? c : a.info.getKey().compareTo(b.info.getKey());
+        }
+    };
+
+    private final ConcurrentSkipListMap<String, Entry> byKey = new ConcurrentSkipListMap<>();
+
+    private final ConcurrentSkipListSet<Entry> bySize = new ConcurrentSkipListSet<>(BY_SIZE);
+
+    private final ConcurrentSkipListSet<Entry> byLastModified = new ConcurrentSkipListSet<>(BY_LAST_MODIFIED);
+
+    /**
+     * Serializes updates so the three orderings stay consistent, searches do not take it
+     */
+    private final Object updateLock = new Object();
+
+    private final AtomicLong generation = new AtomicLong();
+
+    private final int maxResults;
+
+    private final int maxScanned;
+
+    private volatile ContentTypeDetector contentTypeDetector;
+
+    private volatile boolean ready;
+
+    private volatile long lastScanMillis;
+
+    private volatile long lastScanDurationMillis;
+
+    /**
+     * @param maxResults largest page a search returns
+     * @param maxScanned entries a search looks at before it returns a short page with a cursor
+     */
+    public MetadataIndex(int maxResults, int maxScanned) {
+        this.maxResults = maxResults;
+        this.maxScanned = maxScanned;
+    }
+
+    /**
+     * @param contentTypeDetector types scanned Blobs by their key extension, null to leave them untyped
+     */
+    public void setContentTypeDetector(ContentTypeDetector contentTypeDetector) {
+        this.contentTypeDetector = contentTypeDetector;
+    }
+
+    @Override
+    public void written(BlobInfo info) {
+        update(info, generation.get(), false);
+    }
+
+    @Override
+    public void deleted(String key) {
+        synchronized (updateLock) {
+            Entry old = byKey.remove(key);
+            if (old != null) {
+                bySize.remove(old);
+                byLastModified.remove(old);
+            }
+        }
+    }
+
+    /**
+     * Lists the whole Object Store into the index and drops entries the listing no longer has.
+     * Nothing is dropped if the listing fails.
+     *
+     * @param backend     store to list
+     * @param executor    runs the shard listings
+     * @param parallelism shards listed at once
+     * @param pageSize    keys requested per listing
+     * @throws Exception the first listing failure
+     */
+    public void scan(BlobStoreBackend backend, ExecutorService executor, int parallelism, int pageSize) throws Exception {
+        long start = System.currentTimeMillis();
+        final long scanGeneration = generation.incrementAndGet();
+        long listed;
+        try {
+            listed = ParallelListing.list(backend, executor, parallelism, pageSize, new ParallelListing.Visitor() {
+                @Override
+                public void visit(int shard, BlobInfo info) {
+                    update(info, scanGeneration, true);
+                }
+            });
+        } catch (Exception e) {
+            log.error("scan(): Listing failed, index left as it was : " + e.getMessage());
+            throw e;
+        }
+
+        int dropped = 0;
+        synchronized (updateLock) {
+            for (Iterator<Entry> it = byKey.values().iterator(); it.hasNext(); ) {
+                Entry entry = it.next();
+                if (entry.generation < scanGeneration) {
+                    it.remove();
+                    bySize.remove(entry);
+                    byLastModified.remove(entry);
+                    dropped++;
+                }
+            }
+        }
+        lastScanMillis = System.currentTimeMillis();
+        lastScanDurationMillis = lastScanMillis - start;
+        ready = true;
+        log.info("scan(): Indexed " + listed + " Blobs in " + lastScanDurationMillis + " ms, dropped " + dropped);
+    }
+
+    /**
+     * @return IndexPage matching Blobs in the requested order, at most maxResults of them
+     */
+    public IndexPage search(IndexQuery query) {
+        int limit = Math.max(1, Math.min(query.getLimit(), maxResults));
+        List<BlobInfo> blobs = new ArrayList<>();
+        Iterator<Entry> candidates = candidates(query);
+        Entry last = null;
+        int scanned = 0;
+        while (candidates.hasNext()) {
+            if (blobs.size() == limit || scanned == maxScanned) {
+                return new IndexPage(blobs, cursorOf(last, query.getSort()));
+            }
+            Entry entry = candidates.next();
+            scanned++;
+            last = entry;
+            if (matches(entry.info, query)) {
+                blobs.add(entry.info);
+            }
+        }
+        return new IndexPage(blobs, null);
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public int size() {
+        return byKey.size();
+    }
+
+    public long getLastScanMillis() {
+        return lastScanMillis;
+    }
+
+    public long getLastScanDurationMillis() {
+        return lastScanDurationMillis;
+    }
+
+    private void update(BlobInfo info, long entryGeneration, boolean scanned) {
+        synchronized (updateLock) {
+            Entry old = byKey.get(info.getKey());
+            if (scanned && old != null && old.generation == entryGeneration
+                    && old.info.getLastModified() > info.getLastModified()) {
+                // Written through this instance after the listing was taken
+                return;
+            }
+            if (scanned && info.getContentType() == null) {
+                info = typed(info, old);
+            }
+            Entry entry = new Entry(info, entryGeneration);
+            if (old != null) {
+                bySize.remove(old);
+                byLastModified.remove(old);
+            }
+            byKey.put(info.getKey(), entry);
+            bySize.add(entry);
+            byLastModified.add(entry);
+        }
+    }
+
+    /**
+     * Listed Blob with the content type of the entry it replaces if the ETag is unchanged, else
+     * the one its key extension stands for
+     */
+    private BlobInfo typed(BlobInfo info, Entry old) {
+        String contentType = null;
+        if (old != null && old.info.getContentType() != null && info.getETag() != null
+                && info.getETag().equals(old.info.getETag())) {
+            contentType = old.info.getContentType();
+        } else if (contentTypeDetector != null) {
+            contentType = contentTypeDetector.fromName(info.getKey());
+        }
+        if (contentType == null) {
+            return info;
+        }
+        return new BlobInfo(info.getKey(), info.getSize(), info.getETag(), contentType, info.getLastModified());
+    }
+
+    /**
+     * Entries from the first that can match the query on, in the requested order
+     */
+    private Iterator<Entry> candidates(IndexQuery query) {
+        String cursor = query.getCursor();
+        boolean descending = query.isDescending();
+        switch (query.getSort()) {
+            case SIZE:
+                // Probes carry an empty key, which sorts before every entry with the same value
+                return range(bySize, cursor, descending, probe(query.getMinSize(), 0),
+                        query.getMaxSize() == Long.MAX_VALUE ? null : probe(query.getMaxSize() + 1, 0));
+            case LAST_MODIFIED:
+                return range(byLastModified, cursor, descending, probe(0, query.getModifiedAfter()),
+                        probe(0, query.getModifiedBefore()));
+            default:
+                String low = query.getPrefix();
+                String high = prefixEnd(low);
+                boolean lowInclusive = true;
+                if (cursor != null) {
+                    if (!descending && cursor.compareTo(low) >= 0) {
+                        low = cursor;
+                        lowInclusive = false;
+                    } else if (descending && (high == null || cursor.compareTo(high) < 0)) {
+                        high = cursor;
+                    }
+                }
+                if (high != null && low.compareTo(high) >= 0) {
+                    return Collections.<Entry>emptyList().iterator();
+                }
+                NavigableMap<String, Entry> keys = high != null ? byKey.subMap(low, lowInclusive, high, false)
+                        : byKey.tailMap(low, lowInclusive);
+                return (descending ? keys.descendingMap() : keys).values().iterator();
+        }
+    }
+
+    /**
+     * Entries in [low, high) past the cursor, high null for no upper bound. Bounds are narrowed
+     * before taking the view because views reject keys outside their range.
+     */
+    private Iterator<Entry> range(NavigableSet<Entry> set, String cursor, boolean descending, Entry low,
+                                  Entry high) {
+        Comparator<? super Entry> order = set.comparator();
+        boolean lowInclusive = true;
+        if (cursor != null) {
+            Entry position = parseCursor(cursor, set == bySize);
+            if (!descending && order.compare(position, low) >= 0) {
+                low = position;
+                lowInclusive = false;
+            } else if (descending && (high == null || order.compare(position, high) < 0)) {
+                high = position;
+            }
+        }
+        if (high != null && order.compare(low, high) >= 0) {
+            return Collections.<Entry>emptyList().iterator();
+        }
+        NavigableSet<Entry> range = high != null ? set.subSet(low, lowInclusive, high, false)
+                : set.tailSet(low, lowInclusive);
+        return (descending ? range.descendingSet() : range).iterator();
+    }
+
+    private static boolean matches(BlobInfo info, IndexQuery query) {
+        if (!info.getKey().startsWith(query.getPrefix())) {
+            return false;
+        }
+        if (info.getSize() < query.getMinSize() || info.getSize() > query.getMaxSize()) {
+            return false;
+        }
+        if (info.getLastModified() < query.getModifiedAfter() || info.getLastModified() >= query.getModifiedBefore()) {
+            return false;
+        }
+        if (query.getContentType() != null && !query.getContentType().isEmpty()) {
+            return info.getContentType() != null && info.getContentType().startsWith(query.getContentType());
+        }
+        return true;
+    }
+
+    private static Entry probe(long size, long lastModified) {
+        return new Entry(new BlobInfo("", size, null, null, lastModified), 0);
+    }
+
+    /**
+     * Cursors are the key for key order, otherwise the sort value and the key
+     */
+    private static String cursorOf(Entry entry, IndexQuery.Sort sort) {
+        switch (sort) {
+            case SIZE:
+                return entry.info.getSize() + ":" + entry.info.getKey();
+            case LAST_MODIFIED:
+                return entry.info.getLastModified() + ":" + entry.info.getKey();
+            default:
+                return entry.info.getKey();
+        }
+    }
+
+    private static Entry parseCursor(String cursor, boolean bySize) {
+        int colon = cursor.indexOf(':');
+        if (colon < 0) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor);
+        }
+        long value;
+        try {
+            value = Long.parseLong(cursor.substring(0, colon));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor);
+        }
+        String key = cursor.substring(colon + 1);
+        return new Entry(new BlobInfo(key, bySize ? value : 0, null, null, bySize ? 0 : value), 0);
+    }
+
+    /**
+     * Smallest string greater than every string starting with prefix, null if there is none or
+     * the prefix is empty
+     */
+    private static String prefixEnd(String prefix) {
+        for (int i = prefix.length() - 1; i >= 0; i--) {
+            char c = prefix.charAt(i);
+            if (c != Character.MAX_VALUE) {
+                return prefix.substring(0, i) + (char) (c + 1);
+            }
+        }
+        return null;
+    }
+
+    private static class Entry {
+
+        final BlobInfo info;
+
+        /**
+         * Scan generation the entry was last confirmed or written in
+         */
+        final long generation;
+
+        Entry(BlobInfo info, long generation) {
+            this.info = info;
+            this.generation = generation;
+        }
+    }
+}
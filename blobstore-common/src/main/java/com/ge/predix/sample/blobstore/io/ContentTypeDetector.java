@@ -0,0 +1,319 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.io;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.FileNameMap;
+import java.net.URLConnection;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Works out the content type of an upload from the first bytes of its stream, its file name and
+ * the type supplied by the client. Only peekBytes are looked at, through mark and reset, so the
+ * upload is never buffered as a whole and objects of any size get a type.
+ * <p/>
+ * A specific type supplied by the client is kept. Otherwise the magic bytes decide, except for
+ * container formats such as zip or xml where the extension is more precise (docx, jar, svg).
+ * Extension lookups are cached.
+ */
+public class ContentTypeDetector {
+
+    Log log = LogFactory.getLog(ContentTypeDetector.class);
+
+    public static final String APPLICATION_OCTET_STREAM = "application/octet-stream";
+
+    public static final int DEFAULT_PEEK_BYTES = 4096;
+
+    public static final int DEFAULT_MAX_CACHED_EXTENSIONS = 1024;
+
+    private static final Charset US_ASCII = Charset.forName("US-ASCII");
+
+    /**
+     * Marks for "no type for this extension" in the cache, which does not accept nulls
+     */
+    private static final String UNKNOWN = "";
+
+    private static final Map<String, String> EXTENSIONS = new HashMap<>();
+
+    static {
+        EXTENSIONS.put("json", "application/json");
+        EXTENSIONS.put("js", "application/javascript");
+        EXTENSIONS.put("css", "text/css");
+        EXTENSIONS.put("csv", "text/csv");
+        EXTENSIONS.put("svg", "image/svg+xml");
+        EXTENSIONS.put("webp", "image/webp");
+        EXTENSIONS.put("mp4", "video/mp4");
+        EXTENSIONS.put("mov", "video/quicktime");
+        EXTENSIONS.put("webm", "video/webm");
+        EXTENSIONS.put("ogg", "audio/ogg");
+        EXTENSIONS.put("flac", "audio/flac");
+        EXTENSIONS.put("mp3", "audio/mpeg");
+        EXTENSIONS.put("wav", "audio/wav");
+        EXTENSIONS.put("gz", "application/gzip");
+        EXTENSIONS.put("tgz", "application/gzip");
+        EXTENSIONS.put("bz2", "application/x-bzip2");
+        EXTENSIONS.put("7z", "application/x-7z-compressed");
+        EXTENSIONS.put("tar", "application/x-tar");
+        EXTENSIONS.put("jar", "application/java-archive");
+        EXTENSIONS.put("docx", "application/vnd.openxmlformats-officedocument.wordprocessingml.document");
+        EXTENSIONS.put("xlsx", "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet");
+        EXTENSIONS.put("pptx", "application/vnd.openxmlformats-officedocument.presentationml.presentation");
+        EXTENSIONS.put("parquet", "application/vnd.apache.parquet");
+        EXTENSIONS.put("yml", "application/x-yaml");
+        EXTENSIONS.put("yaml", "application/x-yaml");
+        EXTENSIONS.put("md", "text/markdown");
+        EXTENSIONS.put("log", "text/plain");
+    }
+
+    private final int peekBytes;
+
+    private final int maxCachedExtensions;
+
+    private final FileNameMap fileNameMap = URLConnection.getFileNameMap();
+
+    private final ConcurrentMap<String, String> extensionCache = new ConcurrentHashMap<>();
+
+    public ContentTypeDetector(int peekBytes, int maxCachedExtensions) {
+        // The tar magic sits at offset 257
+        this.peekBytes = Math.max(512, peekBytes);
+        this.maxCachedExtensions = maxCachedExtensions;
+    }
+
+    /**
+     * @param in stream to be uploaded
+     * @return InputStream in itself if it supports mark, otherwise in wrapped so that it does
+     */
+    public InputStream markable(InputStream in) {
+        return in.markSupported() ? in : new BufferedInputStream(in, peekBytes);
+    }
+
+    /**
+     * Detects the content type from the head of the stream, which is reset afterwards.
+     *
+     * @param name     file name or key, for its extension, may be null
+     * @param declared type supplied by the client, may be null
+     * @param in       stream supporting mark, see markable
+     * @return String the content type, application/octet-stream if nothing is known
+     * @throws IOException if peeking at the stream fails
+     */
+    public String detect(String name, String declared, InputStream in) throws IOException {
+        if (isSpecific(declared)) {
+            return declared;
+        }
+        byte[] head = new byte[peekBytes];
+        in.mark(peekBytes);
+        int length = 0;
+        try {
+            int read;
+            while (length < head.length && (read = in.read(head, length, head.length - length)) != -1) {
+                length += read;
+            }
+        } finally {
+            in.reset();
+        }
+        return detect(name, declared, head, length);
+    }
+
+    /**
+     * Detects the content type from content that has already been read.
+     *
+     * @param name     file name or key, for its extension, may be null
+     * @param declared type supplied by the client, may be null
+     * @param head     first bytes of the content
+     * @param length   number of valid bytes in head
+     * @return String the content type, application/octet-stream if nothing is known
+     */
+    public String detect(String name, String declared, byte[] head, int length) {
+        if (isSpecific(declared)) {
+            return declared;
+        }
+        String magic = fromMagic(head, Math.min(length, peekBytes));
+        String extension = fromExtension(name);
+        String contentType;
+        if (magic == null) {
+            contentType = extension != null ? extension : APPLICATION_OCTET_STREAM;
+        } else if (extension != null && isContainer(magic)) {
+            contentType = extension;
+        } else {
+            contentType = magic;
+        }
+        if (log.isDebugEnabled())
+            log.debug("detect(): " + name + " is " + contentType + " (magic " + magic + ", extension " + extension + ")");
+        return contentType;
+    }
+
+    /**
+     * @param name file name or key
+     * @return String the content type its extension stands for, null if unknown
+     */
+    public String fromName(String name) {
+        return fromExtension(name);
+    }
+
+    private static boolean isSpecific(String contentType) {
+        return contentType != null && !contentType.isEmpty()
+                && !APPLICATION_OCTET_STREAM.equals(contentType) && !"binary/octet-stream".equals(contentType);
+    }
+
+    /**
+     * Formats other, more specific, formats are built on
+     */
+    private static boolean isContainer(String contentType) {
+        return "application/zip".equals(contentType) || "application/xml".equals(contentType)
+                || "text/plain".equals(contentType) || "application/gzip".equals(contentType);
+    }
+
+    private String fromExtension(String name) {
+        if (name == null) {
+            return null;
+        }
+        int dot = name.lastIndexOf('.');
+        if (dot < 0 || dot < name.lastIndexOf('/') || dot == name.length() - 1) {
+            return null;
+        }
+        String extension = name.substring(dot + 1).toLowerCase(Locale.ROOT);
+        String contentType = extensionCache.get(extension);
+        if (contentType == null) {
+            contentType = EXTENSIONS.get(extension);
+            if (contentType == null) {
+                contentType = fileNameMap.getContentTypeFor("file." + extension);
+            }
+            if (contentType == null) {
+                contentType = UNKNOWN;
+            }
+            // Extensions come from clients, only so many of them are remembered
+            if (extensionCache.size() < maxCachedExtensions) {
+                extensionCache.putIfAbsent(extension, contentType);
+            }
+        }
+        return contentType.isEmpty() ? null : contentType;
+    }
+
+    private static String fromMagic(byte[] b, int length) {
+        if (startsWith(b, length, 0, 0x89, 'P', 'N', 'G', 0x0d, 0x0a, 0x1a, 0x0a)) {
+            return "image/png";
+        }
+        if (startsWith(b, length, 0, 0xff, 0xd8, 0xff)) {
+            return "image/jpeg";
+        }
+        if (startsWith(b, length, 0, 'G', 'I', 'F', '8')) {
+            return "image/gif";
+        }
+        if (startsWith(b, length, 0, 'I', 'I', '*', 0) || startsWith(b, length, 0, 'M', 'M', 0, '*')) {
+            return "image/tiff";
+        }
+        if (startsWith(b, length, 0, 'B', 'M') && length >= 14) {
+            return "image/bmp";
+        }
+        if (startsWith(b, length, 0, 'R', 'I', 'F', 'F')) {
+            if (startsWith(b, length, 8, 'W', 'E', 'B', 'P')) {
+                return "image/webp";
+            }
+            if (startsWith(b, length, 8, 'W', 'A', 'V', 'E')) {
+                return "audio/wav";
+            }
+            if (startsWith(b, length, 8, 'A', 'V', 'I', ' ')) {
+                return "video/x-msvideo";
+            }
+        }
+        if (startsWith(b, length, 4, 'f', 't', 'y', 'p')) {
+            return startsWith(b, length, 8, 'q', 't') ? "video/quicktime" : "video/mp4";
+        }
+        if (startsWith(b, length, 0, 'I', 'D', '3') || startsWith(b, length, 0, 0xff, 0xfb)) {
+            return "audio/mpeg";
+        }
+        if (startsWith(b, length, 0, 'O', 'g', 'g', 'S')) {
+            return "audio/ogg";
+        }
+        if (startsWith(b, length, 0, 'f', 'L', 'a', 'C')) {
+            return "audio/flac";
+        }
+        if (startsWith(b, length, 0, '%', 'P', 'D', 'F', '-')) {
+            return "application/pdf";
+        }
+        if (startsWith(b, length, 0, 'P', 'K', 3, 4) || startsWith(b, length, 0, 'P', 'K', 5, 6)) {
+            return "application/zip";
+        }
+        if (startsWith(b, length, 0, 0x1f, 0x8b)) {
+            return "application/gzip";
+        }
+        if (startsWith(b, length, 0, 'B', 'Z', 'h')) {
+            return "application/x-bzip2";
+        }
+        if (startsWith(b, length, 0, '7', 'z', 0xbc, 0xaf, 0x27, 0x1c)) {
+            return "application/x-7z-compressed";
+        }
+        if (startsWith(b, length, 257, 'u', 's', 't', 'a', 'r')) {
+            return "application/x-tar";
+        }
+        if (startsWith(b, length, 0, 0xca, 0xfe, 0xba, 0xbe)) {
+            return "application/java-vm";
+        }
+        if (startsWith(b, length, 0, 0x7f, 'E', 'L', 'F')) {
+            return "application/x-executable";
+        }
+        return fromText(b, length);
+    }
+
+    /**
+     * Markup is recognised by its first tag, other printable content is plain text.
+     */
+    private static String fromText(byte[] b, int length) {
+        int start = 0;
+        if (startsWith(b, length, 0, 0xef, 0xbb, 0xbf)) {
+            start = 3;
+        }
+        for (int i = start; i < length; i++) {
+            int c = b[i] & 0xff;
+            if (c < 0x20 && c != '\t' && c != '\n' && c != '\r' && c != '\f') {
+                return null;
+            }
+        }
+        if (length == start) {
+            return null;
+        }
+        String text = new String(b, start, Math.min(length - start, 256), US_ASCII).trim().toLowerCase(Locale.ROOT);
+        if (text.startsWith("<?xml")) {
+            return "application/xml";
+        }
+        if (text.startsWith("<!doctype html") || text.startsWith("<html") || text.startsWith("<head")) {
+            return "text/html";
+        }
+        return "text/plain";
+    }
+
+    private static boolean startsWith(byte[] b, int length, int offset, int... magic) {
+        if (length < offset + magic.length) {
+            return false;
+        }
+        for (int i = 0; i < magic.length; i++) {
+            if ((b[offset + i] & 0xff) != magic[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
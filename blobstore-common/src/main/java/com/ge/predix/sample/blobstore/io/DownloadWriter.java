@@ -0,0 +1,109 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.io;
+
+import com.ge.predix.sample.blobstore.spi.BlobContent;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Copies Blob content to a client with large pooled buffers. Output is flushed every
+ * flushIntervalBytes rather than after every buffer, and the content is aborted instead of
+ * drained as soon as writing to the client fails.
+ */
+public class DownloadWriter {
+
+    Log log = LogFactory.getLog(DownloadWriter.class);
+
+    private final int bufferSize;
+
+    private final long flushIntervalBytes;
+
+    /**
+     * Idle buffers, buffers beyond its capacity are left to the garbage collector
+     */
+    private final BlockingQueue<byte[]> buffers;
+
+    public DownloadWriter(int bufferSize, long flushIntervalBytes, int maxPooledBuffers) {
+        this.bufferSize = bufferSize;
+        this.flushIntervalBytes = flushIntervalBytes;
+        this.buffers = new ArrayBlockingQueue<>(Math.max(1, maxPooledBuffers));
+    }
+
+    /**
+     * Writes the content to out and closes the content.
+     *
+     * @param content content to write
+     * @param out     stream to the client, flushed but not closed
+     * @return long number of bytes written
+     * @throws IOException if reading the content or writing to the client fails, the content
+     *                     is aborted in both cases
+     */
+    public long write(BlobContent content, OutputStream out) throws IOException {
+        byte[] buffer = acquire();
+        long written = 0;
+        long unflushed = 0;
+        boolean completed = false;
+        try {
+            InputStream in = content.getStream();
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+                written += read;
+                unflushed += read;
+                if (unflushed >= flushIntervalBytes) {
+                    out.flush();
+                    unflushed = 0;
+                }
+            }
+            out.flush();
+            completed = true;
+        } finally {
+            release(buffer);
+            if (completed) {
+                content.close();
+            } else {
+                if (log.isDebugEnabled())
+                    log.debug("write(): Aborting " + content.getInfo().getKey() + " after " + written + " bytes");
+                abortQuietly(content);
+            }
+        }
+        return written;
+    }
+
+    private byte[] acquire() {
+        byte[] buffer = buffers.poll();
+        return buffer != null ? buffer : new byte[bufferSize];
+    }
+
+    private void release(byte[] buffer) {
+        buffers.offer(buffer);
+    }
+
+    private void abortQuietly(BlobContent content) {
+        try {
+            content.abort();
+        } catch (IOException e) {
+            log.warn("abortQuietly(): " + e.getMessage());
+        }
+    }
+}
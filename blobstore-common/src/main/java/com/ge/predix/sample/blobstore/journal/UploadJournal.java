@@ -0,0 +1,618 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.journal;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of uploads on local disk, split into segment files.
+ * <p/>
+ * Each record is a header with the key, content type, length and time of the upload, followed
+ * by the content and a trailer holding its MD5 and a CRC32 of header and content. Space for a
+ * record is allocated and its header written under a lock, the content is then written
+ * concurrently with other uploads and forced to disk before {@link #append} returns. Deletes
+ * are journaled as records without content, so a replay does not bring back an upload that was
+ * deleted or overwritten in the meantime.
+ * <p/>
+ * Segments are removed oldest first once every record in them is complete, which keeps a
+ * delete record at least as long as the uploads it cancels. The journal is bounded by
+ * maxBytes, appends wait for space and give up once their wait is over.
+ */
+public class UploadJournal {
+
+    Log log = LogFactory.getLog(UploadJournal.class);
+
+    private static final int MAGIC = 0x424a4e4c;
+
+    private static final byte PUT = 1;
+
+    private static final byte DELETE = 2;
+
+    /**
+     * MD5 of the content followed by the CRC32 of header and content
+     */
+    private static final int TRAILER_SIZE = 16 + 4;
+
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    private static final int COPY_BUFFER_SIZE = 256 * 1024;
+
+    private final Path directory;
+
+    private final long segmentBytes;
+
+    private final long maxBytes;
+
+    private final boolean fsync;
+
+    /**
+     * Guards the segment list, the current segment and the byte count, and is waited on for space
+     */
+    private final Object lock = new Object();
+
+    /**
+     * Live segments, oldest first
+     */
+    private final Deque<Segment> segments = new ArrayDeque<>();
+
+    private Segment current;
+
+    private long bytes;
+
+    private long nextSegment;
+
+    /**
+     * @param directory    directory of the segment files
+     * @param segmentBytes size at which a new segment is started
+     * @param maxBytes     bytes the live segments may take up
+     * @param fsync        force records to the storage device before acknowledging them
+     */
+    public UploadJournal(Path directory, long segmentBytes, long maxBytes, boolean fsync) throws IOException {
+        this.directory = Files.createDirectories(directory).toRealPath();
+        this.segmentBytes = segmentBytes;
+        this.maxBytes = maxBytes;
+        this.fsync = fsync;
+    }
+
+    /**
+     * Reads the segments left by a previous run and starts a new segment for appends.
+     *
+     * @return uploads that were neither overwritten nor deleted afterwards, in journal order
+     */
+    public List<Record> open() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+            for (Path file : stream) {
+                files.add(file);
+            }
+        }
+        Collections.sort(files);
+
+        Map<String, Record> live = new LinkedHashMap<>();
+        List<Record> superseded = new ArrayList<>();
+        synchronized (lock) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                long number = Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+                Segment segment = new Segment(file);
+                segment.allocated = Files.size(file);
+                segment.sealed = true;
+                segments.add(segment);
+                bytes += segment.allocated;
+                nextSegment = Math.max(nextSegment, number + 1);
+
+                for (Record record : scan(segment)) {
+                    Record previous = live.remove(record.key);
+                    if (previous != null) {
+                        superseded.add(previous);
+                    }
+                    if (record.delete) {
+                        superseded.add(record);
+                    } else {
+                        live.put(record.key, record);
+                    }
+                }
+            }
+            roll();
+        }
+        for (Record record : superseded) {
+            complete(record);
+        }
+        log.info("open(): " + files.size() + " segments with " + live.size() + " pending uploads, " + bytes + " bytes");
+        return new ArrayList<>(live.values());
+    }
+
+    /**
+     * Appends an upload and forces it to disk.
+     *
+     * @param waitMillis how long to wait for space in the journal
+     * @return the record, null if the journal stayed full for the whole wait
+     */
+    public Record append(String key, InputStream content, long length, String contentType, long waitMillis) throws Exception {
+        long timestamp = System.currentTimeMillis();
+        byte[] header = header(PUT, key, contentType, length, timestamp);
+        long size = header.length + length + TRAILER_SIZE;
+        Record record = allocate(key, contentType, length, timestamp, false, header, size, waitMillis);
+        if (record == null) {
+            return null;
+        }
+        try {
+            writeContent(record, header, content);
+            return record;
+        } catch (Exception e) {
+            complete(record);
+            throw e;
+        }
+    }
+
+    /**
+     * Appends a delete of the key, so earlier uploads of it are not replayed. Deletes are never
+     * refused for lack of space.
+     */
+    public void appendDelete(String key) throws Exception {
+        long timestamp = System.currentTimeMillis();
+        byte[] header = header(DELETE, key, null, 0, timestamp);
+        Record record = allocate(key, null, 0, timestamp, true, header, header.length + TRAILER_SIZE, -1);
+        try {
+            writeContent(record, header, new ByteArrayInputStream(new byte[0]));
+        } finally {
+            complete(record);
+        }
+    }
+
+    /**
+     * Opens the content of a record. The stream keeps working if the record completes while it
+     * is being read.
+     *
+     * @throws IOException if the record has been completed and its segment removed
+     */
+    public InputStream openContent(Record record, long start, long length) throws IOException {
+        FileChannel channel = FileChannel.open(record.segment.path, StandardOpenOption.READ);
+        return new RegionInputStream(channel, record.contentOffset + start, length);
+    }
+
+    /**
+     * Marks the record as uploaded or no longer needed, the segments it kept alive may go
+     */
+    public void complete(Record record) {
+        if (!record.completed.compareAndSet(false, true)) {
+            return;
+        }
+        if (record.segment.live.decrementAndGet() == 0) {
+            synchronized (lock) {
+                purge();
+                // An append waiting for space may release the current segment now
+                lock.notifyAll();
+            }
+        }
+    }
+
+    public long getBytes() {
+        synchronized (lock) {
+            return bytes;
+        }
+    }
+
+    public int getSegments() {
+        synchronized (lock) {
+            return segments.size();
+        }
+    }
+
+    private Record allocate(String key, String contentType, long length, long timestamp, boolean delete, byte[] header,
+                            long size, long waitMillis) throws Exception {
+        synchronized (lock) {
+            if (waitMillis >= 0) {
+                if (size > maxBytes) {
+                    return null;
+                }
+                long deadline = System.currentTimeMillis() + waitMillis;
+                while (bytes + size > maxBytes) {
+                    if (current.live.get() == 0 && current.allocated > 0) {
+                        // Only completed records left in the current segment, release it
+                        roll();
+                        continue;
+                    }
+                    long remaining = deadline - System.currentTimeMillis();
+                    if (remaining <= 0) {
+                        return null;
+                    }
+                    lock.wait(remaining);
+                }
+            }
+            if (current.allocated > 0 && current.allocated + size > segmentBytes) {
+                roll();
+            }
+            Segment segment = current;
+            long offset = segment.allocated;
+            segment.allocated += size;
+            bytes += size;
+            segment.live.incrementAndGet();
+            Record record = new Record(key, contentType, length, timestamp, delete, segment, offset + header.length);
+            try {
+                // Headers are written in allocation order, so a replay can walk every record
+                write(segment.channel, ByteBuffer.wrap(header), offset);
+            } catch (IOException e) {
+                complete(record);
+                throw e;
+            }
+            return record;
+        }
+    }
+
+    private void writeContent(Record record, byte[] header, InputStream content) throws IOException {
+        MessageDigest md5 = md5();
+        CRC32 crc = new CRC32();
+        crc.update(header, 0, header.length);
+        FileChannel channel = record.segment.channel;
+        long position = record.contentOffset;
+        long written = 0;
+        try {
+            byte[] buffer = new byte[(int) Math.min(COPY_BUFFER_SIZE, Math.max(record.length, 1))];
+            int read;
+            while (written < record.length && (read = content.read(buffer, 0, (int) Math.min(buffer.length, record.length - written))) != -1) {
+                md5.update(buffer, 0, read);
+                crc.update(buffer, 0, read);
+                write(channel, ByteBuffer.wrap(buffer, 0, read), position);
+                position += read;
+                written += read;
+            }
+            if (written != record.length || (record.length > 0 && content.read() != -1)) {
+                throw new IOException("append(): Expected " + record.length + " bytes for " + record.key + " but received "
+                        + (written == record.length ? "more" : Long.toString(written)));
+            }
+        } finally {
+            content.close();
+        }
+
+        byte[] digest = md5.digest();
+        ByteBuffer trailer = ByteBuffer.allocate(TRAILER_SIZE);
+        trailer.put(digest).putInt((int) crc.getValue()).flip();
+        write(channel, trailer, position);
+        if (fsync) {
+            channel.force(false);
+        }
+        record.eTag = toHex(digest);
+    }
+
+    /**
+     * Reads the valid records of a segment, stopping at the first header that was never written
+     * and skipping records whose content or trailer is incomplete
+     */
+    private List<Record> scan(Segment segment) throws IOException {
+        List<Record> records = new ArrayList<>();
+        FileChannel channel = segment.channel;
+        long size = channel.size();
+        long position = 0;
+        ByteBuffer fixed = ByteBuffer.allocate(4 + 1 + 4);
+        while (position + fixed.capacity() <= size) {
+            fixed.clear();
+            read(channel, fixed, position);
+            fixed.flip();
+            if (fixed.getInt() != MAGIC) {
+                break;
+            }
+            byte type = fixed.get();
+            int keyLength = fixed.getInt();
+            if (keyLength < 0 || position + fixed.capacity() + keyLength + 4 > size) {
+                break;
+            }
+            ByteBuffer rest = ByteBuffer.allocate(keyLength + 4);
+            read(channel, rest, position + fixed.capacity());
+            rest.flip();
+            byte[] keyBytes = new byte[keyLength];
+            rest.get(keyBytes);
+            int typeLength = rest.getInt();
+            long headerLength = fixed.capacity() + keyLength + 4 + Math.max(typeLength, 0) + 8 + 8;
+            if (position + headerLength > size) {
+                break;
+            }
+            ByteBuffer tail = ByteBuffer.allocate((int) (headerLength - fixed.capacity() - keyLength - 4));
+            read(channel, tail, position + fixed.capacity() + keyLength + 4);
+            tail.flip();
+            String contentType = null;
+            if (typeLength >= 0) {
+                byte[] typeBytes = new byte[typeLength];
+                tail.get(typeBytes);
+                contentType = new String(typeBytes, StandardCharsets.UTF_8);
+            }
+            long length = tail.getLong();
+            long timestamp = tail.getLong();
+            long end = position + headerLength + length + TRAILER_SIZE;
+            if (length < 0 || end > size) {
+                break;
+            }
+
+            Record record = new Record(new String(keyBytes, StandardCharsets.UTF_8), contentType, length, timestamp,
+                    type == DELETE, segment, position + headerLength);
+            segment.live.incrementAndGet();
+            if (verify(channel, position, headerLength, record)) {
+                records.add(record);
+            } else {
+                log.warn("scan(): Skipping incomplete record of " + record.key + " in " + segment.path);
+                complete(record);
+            }
+            position = end;
+        }
+        return records;
+    }
+
+    private boolean verify(FileChannel channel, long position, long headerLength, Record record) throws IOException {
+        CRC32 crc = new CRC32();
+        MessageDigest md5 = md5();
+        ByteBuffer buffer = ByteBuffer.allocate(COPY_BUFFER_SIZE);
+        long offset = position;
+        long end = record.contentOffset + record.length;
+        while (offset < end) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), end - offset));
+            read(channel, buffer, offset);
+            crc.update(buffer.array(), 0, buffer.limit());
+            if (offset + buffer.limit() > record.contentOffset) {
+                int skip = (int) Math.max(0, record.contentOffset - offset);
+                md5.update(buffer.array(), skip, buffer.limit() - skip);
+            }
+            offset += buffer.limit();
+        }
+        ByteBuffer trailer = ByteBuffer.allocate(TRAILER_SIZE);
+        read(channel, trailer, end);
+        trailer.flip();
+        byte[] digest = new byte[16];
+        trailer.get(digest);
+        if (trailer.getInt() != (int) crc.getValue()) {
+            return false;
+        }
+        record.eTag = toHex(digest);
+        return true;
+    }
+
+    /**
+     * Seals the current segment and starts a new one, the caller holds the lock
+     */
+    private void roll() throws IOException {
+        if (current != null) {
+            current.sealed = true;
+        }
+        Path file = directory.resolve(String.format("%016d%s", nextSegment, SEGMENT_SUFFIX));
+        nextSegment++;
+        current = new Segment(file);
+        segments.add(current);
+        purge();
+    }
+
+    /**
+     * Removes completed segments from the oldest on, the caller holds the lock
+     */
+    private void purge() {
+        boolean freed = false;
+        while (!segments.isEmpty()) {
+            Segment oldest = segments.peekFirst();
+            if (!oldest.sealed || oldest.live.get() > 0) {
+                break;
+            }
+            segments.removeFirst();
+            bytes -= oldest.allocated;
+            freed = true;
+            try {
+                oldest.channel.close();
+                Files.deleteIfExists(oldest.path);
+            } catch (IOException e) {
+                log.error("purge(): Couldnt remove segment " + oldest.path + ". Exception = " + e.getMessage());
+            }
+        }
+        if (freed) {
+            lock.notifyAll();
+        }
+    }
+
+    private static byte[] header(byte type, String key, String contentType, long length, long timestamp) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        byte[] typeBytes = contentType == null ? null : contentType.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer header = ByteBuffer.allocate(4 + 1 + 4 + keyBytes.length + 4 + (typeBytes == null ? 0 : typeBytes.length) + 8 + 8);
+        header.putInt(MAGIC).put(type).putInt(keyBytes.length).put(keyBytes);
+        header.putInt(typeBytes == null ? -1 : typeBytes.length);
+        if (typeBytes != null) {
+            header.put(typeBytes);
+        }
+        header.putLong(length).putLong(timestamp);
+        return header.array();
+    }
+
+    private static void write(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private static void read(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Unexpected end of segment");
+            }
+            position += read;
+        }
+    }
+
+    private static MessageDigest md5() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 is not available", e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        char[] hex = "0123456789abcdef".toCharArray();
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(hex[(b >> 4) & 0xf]).append(hex[b & 0xf]);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Upload or delete written to the journal
+     */
+    public static class Record {
+
+        private final String key;
+
+        private final String contentType;
+
+        private final long length;
+
+        private final long timestamp;
+
+        private final boolean delete;
+
+        private final Segment segment;
+
+        private final long contentOffset;
+
+        private final AtomicBoolean completed = new AtomicBoolean();
+
+        private volatile String eTag;
+
+        Record(String key, String contentType, long length, long timestamp, boolean delete, Segment segment, long contentOffset) {
+            this.key = key;
+            this.contentType = contentType;
+            this.length = length;
+            this.timestamp = timestamp;
+            this.delete = delete;
+            this.segment = segment;
+            this.contentOffset = contentOffset;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        public long getLength() {
+            return length;
+        }
+
+        /**
+         * @return time the upload was journaled
+         */
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        /**
+         * @return MD5 of the content as hex
+         */
+        public String getETag() {
+            return eTag;
+        }
+    }
+
+    private static class Segment {
+
+        final Path path;
+
+        final FileChannel channel;
+
+        /**
+         * Records not completed yet
+         */
+        final AtomicInteger live = new AtomicInteger();
+
+        long allocated;
+
+        volatile boolean sealed;
+
+        Segment(Path path) throws IOException {
+            this.path = path;
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+    }
+
+    /**
+     * Reads a region of a segment with positional reads, closing the stream closes the channel
+     */
+    private static class RegionInputStream extends InputStream {
+
+        private final FileChannel channel;
+
+        private long position;
+
+        private final long end;
+
+        RegionInputStream(FileChannel channel, long start, long length) {
+            this.channel = channel;
+            this.position = start;
+            this.end = start + length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) == -1 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (position >= end) {
+                return -1;
+            }
+            int n = channel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, end - position)), position);
+            if (n < 0) {
+                return -1;
+            }
+            position += n;
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(Integer.MAX_VALUE, end - position);
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,424 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.journal;
+
+import com.ge.predix.sample.blobstore.spi.BlobContent;
+import com.ge.predix.sample.blobstore.spi.BlobInfo;
+import com.ge.predix.sample.blobstore.spi.BlobNotFoundException;
+import com.ge.predix.sample.blobstore.spi.BlobPage;
+import com.ge.predix.sample.blobstore.spi.BlobRequestSigning;
+import com.ge.predix.sample.blobstore.spi.BlobStoreBackend;
+import com.ge.predix.sample.blobstore.spi.ByteRange;
+import com.ge.predix.sample.blobstore.spi.SignedRequest;
+import com.ge.predix.sample.blobstore.write.StripedLocks;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Acknowledges uploads once they are in the {@link UploadJournal} and copies them to the
+ * Object Store in the background, at most as many at a time as the uploader has threads.
+ * <p/>
+ * Until its upload is done a Blob is read, listed and HEADed from the journal. Only the latest
+ * upload of a key is copied, a newer one supersedes those still waiting. Deletes, copies onto
+ * the key and signed uploads cancel the waiting upload and are journaled, so a replay after a
+ * restart does not bring it back. Failed uploads are retried after retryDelayMillis.
+ * <p/>
+ * When the journal stays full for waitMillis, or the length of an upload is unknown, the upload
+ * is written through to the Object Store, so clients slow down to its pace instead of failing.
+ * Uploads larger than maxObjectBytes are written through as well: kept below the size at which
+ * the Object Store client switches to multipart uploads, every journaled upload is copied with
+ * a single PUT and the MD5 ETag it is acknowledged with stays the ETag of the Blob.
+ * <p/>
+ * Journal appends and the pending upload of a key change together under a short lock, so the
+ * journal replays in the order the uploads were acknowledged. The Object Store writes and
+ * deletes of a key are ordered by a second lock, an older upload never lands after a newer one.
+ */
+public class WriteBehindBackend implements BlobStoreBackend, BlobRequestSigning {
+
+    Log log = LogFactory.getLog(WriteBehindBackend.class);
+
+    private final BlobStoreBackend delegate;
+
+    private final UploadJournal journal;
+
+    private final ScheduledExecutorService uploader;
+
+    private final long waitMillis;
+
+    private final long retryDelayMillis;
+
+    private final long maxObjectBytes;
+
+    /**
+     * Latest journaled upload of each key not yet in the Object Store
+     */
+    private final ConcurrentNavigableMap<String, UploadJournal.Record> pending = new ConcurrentSkipListMap<>();
+
+    /**
+     * Guards the journal appends and the pending upload of a key
+     */
+    private final StripedLocks locks = new StripedLocks(256);
+
+    /**
+     * Orders the Object Store writes and deletes of a key, taken before locks when both are held
+     */
+    private final StripedLocks remoteLocks = new StripedLocks(256);
+
+    private final AtomicLong journaled = new AtomicLong();
+
+    private final AtomicLong uploaded = new AtomicLong();
+
+    private final AtomicLong uploadFailures = new AtomicLong();
+
+    private final AtomicLong writeThroughs = new AtomicLong();
+
+    /**
+     * @param delegate         Object Store the uploads are copied to
+     * @param journal          journal the uploads are acknowledged from
+     * @param uploader         runs the copies, its thread count bounds them
+     * @param waitMillis       how long an upload waits for space in the journal
+     * @param retryDelayMillis delay before a failed copy is retried
+     * @param maxObjectBytes   larger uploads are written through
+     */
+    public WriteBehindBackend(BlobStoreBackend delegate, UploadJournal journal, ScheduledExecutorService uploader,
+                              long waitMillis, long retryDelayMillis, long maxObjectBytes) {
+        this.delegate = delegate;
+        this.journal = journal;
+        this.uploader = uploader;
+        this.waitMillis = waitMillis;
+        this.retryDelayMillis = retryDelayMillis;
+        this.maxObjectBytes = maxObjectBytes;
+    }
+
+    /**
+     * Replays the journal and queues the uploads a previous run did not finish
+     */
+    public void start() throws IOException {
+        for (UploadJournal.Record record : journal.open()) {
+            pending.put(record.getKey(), record);
+            schedule(record, 0);
+        }
+    }
+
+    @Override
+    public BlobInfo put(String key, InputStream content, long length, String contentType) throws Exception {
+        UploadJournal.Record record = null;
+        if (length >= 0 && length <= maxObjectBytes) {
+            locks.lock(key);
+            try {
+                record = journal.append(key, content, length, contentType, waitMillis);
+                if (record != null) {
+                    // The upload this one supersedes completes its record when it finds itself replaced
+                    pending.put(key, record);
+                }
+            } finally {
+                locks.unlock(key);
+            }
+        }
+        if (record == null) {
+            writeThroughs.incrementAndGet();
+            remoteLocks.lock(key);
+            try {
+                cancelLocked(key);
+                return delegate.put(key, content, length, contentType);
+            } finally {
+                remoteLocks.unlock(key);
+            }
+        }
+        journaled.incrementAndGet();
+        schedule(record, 0);
+        return toInfo(record);
+    }
+
+    @Override
+    public BlobContent get(String key, ByteRange range) throws Exception {
+        UploadJournal.Record record = pending.get(key);
+        if (record != null) {
+            long start = 0;
+            long length = record.getLength();
+            if (range != null) {
+                if (range.getStart() >= record.getLength()) {
+                    throw new IllegalArgumentException("Range " + range + " starts beyond the end of " + key);
+                }
+                start = range.getStart();
+                length = Math.min(range.getEnd(), record.getLength() - 1) - start + 1;
+            }
+            try {
+                return new BlobContent(toInfo(record), journal.openContent(record, start, length), length);
+            } catch (IOException e) {
+                // Uploaded and removed from the journal meanwhile
+            }
+        }
+        return delegate.get(key, range);
+    }
+
+    @Override
+    public BlobInfo head(String key) throws Exception {
+        UploadJournal.Record record = pending.get(key);
+        return record != null ? toInfo(record) : delegate.head(key);
+    }
+
+    /**
+     * Lists the Object Store, adding the uploads still in the journal
+     */
+    @Override
+    public BlobPage list(String prefix, String marker, int maxKeys) throws Exception {
+        BlobPage page = delegate.list(prefix, marker, maxKeys);
+        String from = marker;
+        if (prefix != null && (from == null || from.compareTo(prefix) < 0)) {
+            from = prefix;
+        }
+        ConcurrentNavigableMap<String, UploadJournal.Record> waiting = from == null ? pending : pending.tailMap(from, !from.equals(marker));
+        if (waiting.isEmpty()) {
+            return page;
+        }
+
+        TreeMap<String, BlobInfo> merged = new TreeMap<>();
+        for (BlobInfo info : page.getBlobs()) {
+            merged.put(info.getKey(), info);
+        }
+        int added = 0;
+        boolean moreWaiting = false;
+        for (UploadJournal.Record record : waiting.values()) {
+            if (prefix != null && !record.getKey().startsWith(prefix)) {
+                break;
+            }
+            if (added == maxKeys) {
+                moreWaiting = true;
+                break;
+            }
+            merged.put(record.getKey(), toInfo(record));
+            added++;
+        }
+        List<BlobInfo> blobs = new ArrayList<>(Math.min(maxKeys, merged.size()));
+        for (BlobInfo info : merged.values()) {
+            if (blobs.size() == maxKeys) {
+                break;
+            }
+            blobs.add(info);
+        }
+        boolean more = page.isTruncated() || merged.size() > maxKeys || moreWaiting;
+        String nextMarker = more && !blobs.isEmpty() ? blobs.get(blobs.size() - 1).getKey() : null;
+        return new BlobPage(blobs, nextMarker);
+    }
+
+    @Override
+    public BlobInfo copy(String sourceKey, String targetKey) throws Exception {
+        flush(sourceKey);
+        remoteLocks.lock(targetKey);
+        try {
+            cancelLocked(targetKey);
+            return delegate.copy(sourceKey, targetKey);
+        } finally {
+            remoteLocks.unlock(targetKey);
+        }
+    }
+
+    @Override
+    public BlobInfo move(String sourceKey, String targetKey) throws Exception {
+        BlobInfo info = copy(sourceKey, targetKey);
+        delete(sourceKey);
+        return info;
+    }
+
+    @Override
+    public void delete(String key) throws Exception {
+        remoteLocks.lock(key);
+        try {
+            cancelLocked(key);
+            delegate.delete(key);
+        } finally {
+            remoteLocks.unlock(key);
+        }
+    }
+
+    @Override
+    public SignedRequest signGet(String key, long expiresInSeconds) throws Exception {
+        flush(key);
+        return signing().signGet(key, expiresInSeconds);
+    }
+
+    @Override
+    public SignedRequest signPut(String key, String contentType, long expiresInSeconds) throws Exception {
+        cancelLocked(key);
+        return signing().signPut(key, contentType, expiresInSeconds);
+    }
+
+    @Override
+    public String initiateMultipartUpload(String key, String contentType) throws Exception {
+        cancelLocked(key);
+        return signing().initiateMultipartUpload(key, contentType);
+    }
+
+    @Override
+    public SignedRequest signUploadPart(String key, String uploadId, int partNumber, long expiresInSeconds) throws Exception {
+        return signing().signUploadPart(key, uploadId, partNumber, expiresInSeconds);
+    }
+
+    @Override
+    public BlobInfo completeMultipartUpload(String key, String uploadId, SortedMap<Integer, String> partETags) throws Exception {
+        cancelLocked(key);
+        return signing().completeMultipartUpload(key, uploadId, partETags);
+    }
+
+    @Override
+    public void abortMultipartUpload(String key, String uploadId) throws Exception {
+        signing().abortMultipartUpload(key, uploadId);
+    }
+
+    /**
+     * @return uploads acknowledged but not yet in the Object Store
+     */
+    public int getQueueDepth() {
+        return pending.size();
+    }
+
+    /**
+     * @return age of the oldest upload not yet in the Object Store, 0 when there is none
+     */
+    public long getDrainLagMillis() {
+        long oldest = Long.MAX_VALUE;
+        for (UploadJournal.Record record : pending.values()) {
+            oldest = Math.min(oldest, record.getTimestamp());
+        }
+        return oldest == Long.MAX_VALUE ? 0 : Math.max(0, System.currentTimeMillis() - oldest);
+    }
+
+    public long getJournalBytes() {
+        return journal.getBytes();
+    }
+
+    public long getJournaled() {
+        return journaled.get();
+    }
+
+    public long getUploaded() {
+        return uploaded.get();
+    }
+
+    public long getUploadFailures() {
+        return uploadFailures.get();
+    }
+
+    public long getWriteThroughs() {
+        return writeThroughs.get();
+    }
+
+    private void schedule(final UploadJournal.Record record, long delayMillis) {
+        try {
+            uploader.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        upload(record);
+                    } catch (Exception e) {
+                        log.error("upload(): Couldnt copy " + record.getKey() + " to the Object Store, retrying in "
+                                + retryDelayMillis + " ms. Exception = " + e.getMessage());
+                        schedule(record, retryDelayMillis);
+                    }
+                }
+            }, delayMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // Shutting down, the journal replays the upload on the next start
+            log.warn("schedule(): Upload of " + record.getKey() + " left in the journal");
+        }
+    }
+
+    /**
+     * Copies the record to the Object Store unless a newer upload, a delete or a write-through
+     * replaced it meanwhile
+     */
+    private void upload(UploadJournal.Record record) throws Exception {
+        String key = record.getKey();
+        remoteLocks.lock(key);
+        try {
+            if (pending.get(key) != record) {
+                journal.complete(record);
+                return;
+            }
+            try (InputStream content = journal.openContent(record, 0, record.getLength())) {
+                delegate.put(key, content, record.getLength(), record.getContentType());
+            } catch (Exception e) {
+                uploadFailures.incrementAndGet();
+                throw e;
+            }
+            locks.lock(key);
+            try {
+                pending.remove(key, record);
+            } finally {
+                locks.unlock(key);
+            }
+            journal.complete(record);
+            uploaded.incrementAndGet();
+        } finally {
+            remoteLocks.unlock(key);
+        }
+    }
+
+    /**
+     * Copies the waiting upload of the key now, before the key is read from the Object Store
+     */
+    private void flush(String key) throws Exception {
+        UploadJournal.Record record = pending.get(key);
+        if (record != null) {
+            upload(record);
+        }
+    }
+
+    /**
+     * Drops the waiting upload of a key about to be written or deleted in the Object Store, the
+     * caller holds the lock of the key
+     */
+    private void cancel(String key) throws Exception {
+        if (pending.remove(key) != null) {
+            // Its record is completed by its own upload task
+            journal.appendDelete(key);
+        }
+    }
+
+    private void cancelLocked(String key) throws Exception {
+        locks.lock(key);
+        try {
+            cancel(key);
+        } finally {
+            locks.unlock(key);
+        }
+    }
+
+    private BlobRequestSigning signing() {
+        if (!(delegate instanceof BlobRequestSigning)) {
+            throw new UnsupportedOperationException("The configured backend does not support signed requests");
+        }
+        return (BlobRequestSigning) delegate;
+    }
+
+    private static BlobInfo toInfo(UploadJournal.Record record) {
+        return new BlobInfo(record.getKey(), record.getLength(), record.getETag(), record.getContentType(), record.getTimestamp());
+    }
+}
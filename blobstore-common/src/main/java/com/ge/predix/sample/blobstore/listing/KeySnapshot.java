@@ -0,0 +1,505 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.listing;
+
+import com.ge.predix.sample.blobstore.spi.BlobInfo;
+import com.ge.predix.sample.blobstore.spi.BlobPage;
+import com.ge.predix.sample.blobstore.spi.BlobStoreBackend;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Immutable, compact listing of Blob keys with their sizes, ETags and modification times, meant for
+ * listings too large to hold as Strings or BlobInfos, e.g. a full bucket listed for
+ * reconciliation.
+ * <p/>
+ * Keys are held in UTF-8 byte order, the order S3 lists in. They are front coded in blocks of
+ * {@value #BLOCK_KEYS}: the first key of a block is stored whole, every other key as the length
+ * of the prefix it shares with the key before it plus the remaining bytes. Blocks are packed into
+ * {@value #PAGE_BYTES} byte pages, sizes and times live in primitive arrays. Sorted listings share
+ * long prefixes, so a key typically costs a few bytes plus 16 for its size and time, against
+ * well over a hundred as a String in a List. ETags follow their key in the block, hex ETags such
+ * as MD5s packed into their raw bytes.
+ */
+public final class KeySnapshot {
+
+    static final int BLOCK_KEYS = 16;
+
+    static final int PAGE_BYTES = 1024 * 1024;
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /**
+     * Receives the differences found by {@link #diff(KeySnapshot, KeySnapshot, DiffListener)}.
+     * The BlobInfos carry key, size, ETag and modification time.
+     */
+    public interface DiffListener {
+
+        void added(BlobInfo after);
+
+        void removed(BlobInfo before);
+
+        void changed(BlobInfo before, BlobInfo after);
+    }
+
+    private final byte[][] pages;
+
+    /**
+     * Page index in the high and offset in the low 32 bits of each block's first byte
+     */
+    private final long[] blockStarts;
+
+    private final long[] sizes;
+
+    private final long[] lastModified;
+
+    private final int count;
+
+    private KeySnapshot(byte[][] pages, long[] blockStarts, long[] sizes, long[] lastModified, int count) {
+        this.pages = pages;
+        this.blockStarts = blockStarts;
+        this.sizes = sizes;
+        this.lastModified = lastModified;
+        this.count = count;
+    }
+
+    /**
+     * Lists every Blob under the prefix into a snapshot, one page in memory at a time.
+     *
+     * @param backend  store to list
+     * @param prefix   keys starting with it, null or empty for all
+     * @param pageSize keys requested per listing call
+     * @return KeySnapshot of the listing
+     * @throws Exception when a listing call fails
+     */
+    public static KeySnapshot capture(BlobStoreBackend backend, String prefix, int pageSize) throws Exception {
+        Builder builder = new Builder();
+        String marker = null;
+        do {
+            BlobPage page = backend.list(prefix, marker, pageSize);
+            for (BlobInfo info : page.getBlobs()) {
+                builder.add(info.getKey(), info.getSize(), info.getETag(), info.getLastModified());
+            }
+            marker = page.getNextMarker();
+        } while (marker != null);
+        return builder.build();
+    }
+
+    /**
+     * Walks both snapshots in step and reports the keys only one of them has and the keys whose
+     * size, ETag or modification time differs. Keys and ETags are compared as bytes, only the
+     * entries reported are decoded.
+     *
+     * @return number of differences reported
+     */
+    public static int diff(KeySnapshot before, KeySnapshot after, DiffListener listener) {
+        Cursor b = before.cursor();
+        Cursor a = after.cursor();
+        boolean hasBefore = b.next();
+        boolean hasAfter = a.next();
+        int differences = 0;
+        while (hasBefore || hasAfter) {
+            int c = !hasBefore ? 1 : !hasAfter ? -1 : compare(b.key, b.keyLength, a.key, a.keyLength);
+            if (c < 0) {
+                listener.removed(b.toBlobInfo());
+                differences++;
+                hasBefore = b.next();
+            } else if (c > 0) {
+                listener.added(a.toBlobInfo());
+                differences++;
+                hasAfter = a.next();
+            } else {
+                if (b.getSize() != a.getSize() || b.getLastModified() != a.getLastModified() || !b.sameETag(a)) {
+                    listener.changed(b.toBlobInfo(), a.toBlobInfo());
+                    differences++;
+                }
+                hasBefore = b.next();
+                hasAfter = a.next();
+            }
+        }
+        return differences;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /**
+     * @return approximate heap held by the snapshot, in bytes
+     */
+    public long getMemoryBytes() {
+        long bytes = 8L * blockStarts.length + 8L * sizes.length + 8L * lastModified.length;
+        for (byte[] page : pages) {
+            bytes += page.length;
+        }
+        return bytes;
+    }
+
+    public boolean contains(String key) {
+        Cursor cursor = cursor();
+        cursor.seek(key);
+        return cursor.next() && cursor.getKey().equals(key);
+    }
+
+    /**
+     * @return Cursor positioned before the first key
+     */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * Reads the snapshot in key order. A cursor reuses its key buffer, so moving through the
+     * snapshot allocates nothing until a key is asked for as a String.
+     */
+    public final class Cursor {
+
+        private int index = -1;
+
+        private byte[] key = new byte[256];
+
+        private int keyLength;
+
+        private byte[] page;
+
+        private int position;
+
+        /**
+         * Where the current ETag sits in the page, its length and whether it is packed hex
+         */
+        private int eTagPosition;
+
+        private int eTagLength;
+
+        private boolean eTagHex;
+
+        /**
+         * Set by seek when the cursor already holds the key the next call must return
+         */
+        private boolean pending;
+
+        private Cursor() {
+        }
+
+        /**
+         * @return true if the cursor moved to another key, false at the end of the snapshot
+         */
+        public boolean next() {
+            if (pending) {
+                pending = false;
+                return true;
+            }
+            if (index + 1 >= count) {
+                index = count;
+                return false;
+            }
+            index++;
+            if (index % BLOCK_KEYS == 0) {
+                long start = blockStarts[index / BLOCK_KEYS];
+                page = pages[(int) (start >>> 32)];
+                position = (int) start;
+            }
+            int shared = readVarInt();
+            int suffix = readVarInt();
+            if (shared + suffix > key.length) {
+                key = Arrays.copyOf(key, Math.max(shared + suffix, key.length * 2));
+            }
+            System.arraycopy(page, position, key, shared, suffix);
+            position += suffix;
+            keyLength = shared + suffix;
+            int eTagHeader = readVarInt();
+            eTagLength = eTagHeader >>> 1;
+            eTagHex = (eTagHeader & 1) != 0;
+            eTagPosition = position;
+            position += eTagLength;
+            return true;
+        }
+
+        /**
+         * Positions the cursor before the first key not less than the given one, so that
+         * {@link #next()} moves to it.
+         */
+        public void seek(String target) {
+            byte[] bytes = target.getBytes(StandardCharsets.UTF_8);
+            // Last block whose first key is not greater than the target
+            int low = 0;
+            int high = blockStarts.length - 1;
+            while (low < high) {
+                int mid = (low + high + 1) >>> 1;
+                long start = blockStarts[mid];
+                byte[] midPage = pages[(int) (start >>> 32)];
+                int offset = (int) start;
+                // The first key of a block is stored whole: a zero shared length, its length, its bytes
+                offset++;
+                int length = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = midPage[offset++];
+                    length |= (b & 0x7f) << shift;
+                    shift += 7;
+                } while (b < 0);
+                if (compare(midPage, offset, length, bytes, 0, bytes.length) <= 0) {
+                    low = mid;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            index = low * BLOCK_KEYS - 1;
+            pending = false;
+            while (next()) {
+                if (compare(key, keyLength, bytes, bytes.length) >= 0) {
+                    pending = true;
+                    return;
+                }
+            }
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public String getKey() {
+            return new String(key, 0, keyLength, StandardCharsets.UTF_8);
+        }
+
+        public long getSize() {
+            return sizes[index];
+        }
+
+        public long getLastModified() {
+            return lastModified[index];
+        }
+
+        /**
+         * @return ETag of the current key, null if it was listed without one
+         */
+        public String getETag() {
+            if (eTagLength == 0) {
+                return null;
+            }
+            if (!eTagHex) {
+                return new String(page, eTagPosition, eTagLength, StandardCharsets.UTF_8);
+            }
+            char[] hex = new char[eTagLength * 2];
+            for (int i = 0; i < eTagLength; i++) {
+                hex[2 * i] = HEX[(page[eTagPosition + i] >> 4) & 0xf];
+                hex[2 * i + 1] = HEX[page[eTagPosition + i] & 0xf];
+            }
+            return new String(hex);
+        }
+
+        BlobInfo toBlobInfo() {
+            return new BlobInfo(getKey(), getSize(), getETag(), null, getLastModified());
+        }
+
+        boolean sameETag(Cursor other) {
+            return eTagHex == other.eTagHex
+                    && compare(page, eTagPosition, eTagLength, other.page, other.eTagPosition, other.eTagLength) == 0;
+        }
+
+        private int readVarInt() {
+            int value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = page[position++];
+                value |= (b & 0x7f) << shift;
+                shift += 7;
+            } while (b < 0);
+            return value;
+        }
+    }
+
+    /**
+     * Builds a snapshot from keys added in ascending UTF-8 byte order.
+     */
+    public static class Builder {
+
+        private final List<byte[]> pages = new ArrayList<>();
+
+        private byte[] page = new byte[0];
+
+        private int pageUsed;
+
+        private long[] blockStarts = new long[64];
+
+        private int blocks;
+
+        private long[] sizes = new long[1024];
+
+        private long[] lastModified = new long[1024];
+
+        private int count;
+
+        private byte[] previous = new byte[0];
+
+        /**
+         * The block being filled, copied into a page once complete so blocks never span pages
+         */
+        private byte[] block = new byte[4096];
+
+        private int blockUsed;
+
+        /**
+         * @throws IllegalArgumentException if the key is not greater than the one added before it
+         */
+        public Builder add(String key, long size, String eTag, long modified) {
+            byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+            if (count > 0 && compare(previous, previous.length, bytes, bytes.length) >= 0) {
+                throw new IllegalArgumentException("Keys out of order: " + key);
+            }
+            if (count % BLOCK_KEYS == 0) {
+                flushBlock();
+            }
+            int shared = 0;
+            if (count % BLOCK_KEYS != 0) {
+                int max = Math.min(previous.length, bytes.length);
+                while (shared < max && previous[shared] == bytes[shared]) {
+                    shared++;
+                }
+            }
+            ensureBlock(10 + bytes.length - shared);
+            writeVarInt(shared);
+            writeVarInt(bytes.length - shared);
+            System.arraycopy(bytes, shared, block, blockUsed, bytes.length - shared);
+            blockUsed += bytes.length - shared;
+            writeETag(eTag);
+
+            if (count == sizes.length) {
+                sizes = Arrays.copyOf(sizes, count * 2);
+                lastModified = Arrays.copyOf(lastModified, count * 2);
+            }
+            sizes[count] = size;
+            lastModified[count] = modified;
+            count++;
+            previous = bytes;
+            return this;
+        }
+
+        /**
+         * Adds every entry of the snapshot, whose keys must all follow the ones added so far
+         */
+        public Builder addAll(KeySnapshot snapshot) {
+            Cursor cursor = snapshot.cursor();
+            while (cursor.next()) {
+                add(cursor.getKey(), cursor.getSize(), cursor.getETag(), cursor.getLastModified());
+            }
+            return this;
+        }
+
+        public KeySnapshot build() {
+            flushBlock();
+            if (pageUsed < page.length) {
+                page = Arrays.copyOf(page, pageUsed);
+                pages.set(pages.size() - 1, page);
+            }
+            return new KeySnapshot(pages.toArray(new byte[pages.size()][]), Arrays.copyOf(blockStarts, blocks),
+                    Arrays.copyOf(sizes, count), Arrays.copyOf(lastModified, count), count);
+        }
+
+        private void flushBlock() {
+            if (blockUsed == 0) {
+                return;
+            }
+            if (page.length - pageUsed < blockUsed) {
+                page = new byte[Math.max(PAGE_BYTES, blockUsed)];
+                pageUsed = 0;
+                pages.add(page);
+            }
+            if (blocks == blockStarts.length) {
+                blockStarts = Arrays.copyOf(blockStarts, blocks * 2);
+            }
+            blockStarts[blocks++] = ((long) (pages.size() - 1) << 32) | pageUsed;
+            System.arraycopy(block, 0, page, pageUsed, blockUsed);
+            pageUsed += blockUsed;
+            blockUsed = 0;
+        }
+
+        /**
+         * Lower case hex of even length is stored as its bytes, anything else as UTF-8. The
+         * header holds the stored length and a flag for the hex form.
+         */
+        private void writeETag(String eTag) {
+            if (eTag == null || eTag.isEmpty()) {
+                ensureBlock(1);
+                writeVarInt(0);
+                return;
+            }
+            if (isHex(eTag)) {
+                ensureBlock(5 + eTag.length() / 2);
+                writeVarInt((eTag.length() / 2) << 1 | 1);
+                for (int i = 0; i < eTag.length(); i += 2) {
+                    block[blockUsed++] = (byte) (Character.digit(eTag.charAt(i), 16) << 4 | Character.digit(eTag.charAt(i + 1), 16));
+                }
+            } else {
+                byte[] bytes = eTag.getBytes(StandardCharsets.UTF_8);
+                ensureBlock(5 + bytes.length);
+                writeVarInt(bytes.length << 1);
+                System.arraycopy(bytes, 0, block, blockUsed, bytes.length);
+                blockUsed += bytes.length;
+            }
+        }
+
+        private static boolean isHex(String value) {
+            if (value.length() % 2 != 0) {
+                return false;
+            }
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void ensureBlock(int bytes) {
+            if (block.length - blockUsed < bytes) {
+                block = Arrays.copyOf(block, Math.max(block.length * 2, blockUsed + bytes));
+            }
+        }
+
+        private void writeVarInt(int value) {
+            while ((value & ~0x7f) != 0) {
+                block[blockUsed++] = (byte) ((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            block[blockUsed++] = (byte) value;
+        }
+    }
+
+    private static int compare(byte[] a, int aLength, byte[] b, int bLength) {
+        return compare(a, 0, aLength, b, 0, bLength);
+    }
+
+    /**
+     * Unsigned byte comparison, which for UTF-8 is code point order
+     */
+    private static int compare(byte[] a, int aOffset, int aLength, byte[] b, int bOffset, int bLength) {
+        int length = Math.min(aLength, bLength);
+        for (int i = 0; i < length; i++) {
+            int c = (a[aOffset + i] & 0xff) - (b[bOffset + i] & 0xff);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return aLength - bLength;
+    }
+}
@@ -0,0 +1,126 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.listing;
+
+import com.ge.predix.sample.blobstore.spi.BlobChangeListener;
+import com.ge.predix.sample.blobstore.spi.BlobInfo;
+import com.ge.predix.sample.blobstore.spi.BlobPage;
+import com.ge.predix.sample.blobstore.spi.BlobStoreBackend;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Short-lived cache of listing pages, so repeated page views cost one listing call per page
+ * per ttlMillis however large the store is. Pages expire so changes made by other instances show
+ * up within that time; any change made through this instance drops every cached page, since a
+ * single write can shift the contents of all pages after it.
+ */
+public class ListingCache implements BlobChangeListener {
+
+    private final BlobStoreBackend backend;
+
+    private final long ttlMillis;
+
+    private final int maxEntries;
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    public ListingCache(BlobStoreBackend backend, long ttlMillis, int maxEntries) {
+        this.backend = backend;
+        this.ttlMillis = ttlMillis;
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Same as {@link BlobStoreBackend#list(String, String, int)}, answered from the cache when
+     * the page was listed less than ttlMillis ago
+     */
+    public BlobPage list(String prefix, String marker, int maxKeys) throws Exception {
+        String key = (prefix != null ? prefix : "") + '\u0000' + (marker != null ? marker : "") + '\u0000' + maxKeys;
+        Entry entry = entries.get(key);
+        if (entry != null && entry.expiresAt > System.currentTimeMillis()) {
+            hits.incrementAndGet();
+            return entry.page;
+        }
+        misses.incrementAndGet();
+        BlobPage page = backend.list(prefix, marker, maxKeys);
+        put(key, page);
+        return page;
+    }
+
+    @Override
+    public void written(BlobInfo info) {
+        entries.clear();
+    }
+
+    @Override
+    public void deleted(String key) {
+        entries.clear();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    private void put(String key, BlobPage page) {
+        if (ttlMillis <= 0) {
+            return;
+        }
+        if (entries.size() >= maxEntries) {
+            evictExpired();
+            if (entries.size() >= maxEntries) {
+                return;
+            }
+        }
+        entries.put(key, new Entry(page, System.currentTimeMillis() + ttlMillis));
+    }
+
+    private void evictExpired() {
+        long now = System.currentTimeMillis();
+        for (Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator(); it.hasNext(); ) {
+            if (it.next().getValue().expiresAt <= now) {
+                it.remove();
+            }
+        }
+    }
+
+    private static class Entry {
+
+        final BlobPage page;
+
+        final long expiresAt;
+
+        Entry(BlobPage page, long expiresAt) {
+            this.page = page;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
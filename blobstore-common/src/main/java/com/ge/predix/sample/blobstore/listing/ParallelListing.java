@@ -0,0 +1,112 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.listing;
+
+import com.ge.predix.sample.blobstore.spi.BlobInfo;
+import com.ge.predix.sample.blobstore.spi.BlobPage;
+import com.ge.predix.sample.blobstore.spi.BlobStoreBackend;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lists a whole Object Store with several listing calls in flight. The key space is cut into
+ * {@value #SHARDS} shards that need no knowledge of the keys: one per leading ASCII character
+ * and one for every key starting beyond ASCII. Shards are in key order and each shard is listed
+ * start to end by a single thread, so a visitor can keep per shard state without locking.
+ */
+public final class ParallelListing {
+
+    public static final int SHARDS = 129;
+
+    private static final int ASCII = 128;
+
+    /**
+     * Receives every Blob listed, with the shard it belongs to
+     */
+    public interface Visitor {
+
+        void visit(int shard, BlobInfo info) throws Exception;
+    }
+
+    private ParallelListing() {
+    }
+
+    /**
+     * @param backend     store to list
+     * @param executor    runs the shard listings
+     * @param parallelism shards listed at once
+     * @param pageSize    keys requested per listing call
+     * @param visitor     called for each Blob, from the listing threads
+     * @return number of Blobs listed
+     * @throws Exception the first failure of a listing call or of the visitor, the other
+     *                   listings are cancelled
+     */
+    public static long list(final BlobStoreBackend backend, ExecutorService executor, int parallelism,
+                            final int pageSize, final Visitor visitor) throws Exception {
+        final AtomicInteger nextShard = new AtomicInteger();
+        final AtomicLong listed = new AtomicLong();
+        List<Future<Void>> workers = new ArrayList<>();
+        for (int w = 0; w < Math.max(1, parallelism); w++) {
+            workers.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    int shard;
+                    while ((shard = nextShard.getAndIncrement()) < SHARDS) {
+                        listed.addAndGet(listShard(backend, shard, pageSize, visitor));
+                    }
+                    return null;
+                }
+            }));
+        }
+        try {
+            for (Future<Void> worker : workers) {
+                worker.get();
+            }
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        } finally {
+            for (Future<Void> worker : workers) {
+                worker.cancel(true);
+            }
+        }
+        return listed.get();
+    }
+
+    private static long listShard(BlobStoreBackend backend, int shard, int pageSize, Visitor visitor) throws Exception {
+        long listed = 0;
+        // The last shard lists from the last ASCII character on and skips the keys starting with it
+        String prefix = shard < ASCII ? String.valueOf((char) shard) : "";
+        String marker = shard < ASCII ? null : String.valueOf((char) (ASCII - 1));
+        do {
+            BlobPage page = backend.list(prefix, marker, pageSize);
+            for (BlobInfo info : page.getBlobs()) {
+                if (shard < ASCII || info.getKey().charAt(0) >= ASCII) {
+                    visitor.visit(shard, info);
+                    listed++;
+                }
+            }
+            marker = page.getNextMarker();
+        } while (marker != null);
+        return listed;
+    }
+}
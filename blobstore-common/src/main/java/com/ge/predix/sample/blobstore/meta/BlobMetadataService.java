@@ -0,0 +1,213 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.meta;
+
+import com.ge.predix.sample.blobstore.spi.BlobChangeListener;
+import com.ge.predix.sample.blobstore.spi.BlobInfo;
+import com.ge.predix.sample.blobstore.spi.BlobNotFoundException;
+import com.ge.predix.sample.blobstore.spi.BlobStoreBackend;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reads Blob metadata for single keys and for batches. A batch is fanned out over at most
+ * maxConcurrency HEAD requests in flight, so a batch no larger than that costs about one round
+ * trip. Results are served from the cache when present.
+ * <p/>
+ * Changes made through this instance are reported here, they refresh the cache and are passed
+ * on to the registered listeners.
+ */
+public class BlobMetadataService {
+
+    Log log = LogFactory.getLog(BlobMetadataService.class);
+
+    private final BlobStoreBackend backend;
+
+    private final ExecutorService executor;
+
+    private final int maxConcurrency;
+
+    private final MetadataCache cache;
+
+    private final List<BlobChangeListener> listeners = new CopyOnWriteArrayList<>();
+
+    public BlobMetadataService(BlobStoreBackend backend, ExecutorService executor, int maxConcurrency, MetadataCache cache) {
+        this.backend = backend;
+        this.executor = executor;
+        this.maxConcurrency = Math.max(1, maxConcurrency);
+        this.cache = cache;
+    }
+
+    /**
+     * @param key name of the Blob
+     * @return BlobInfo metadata of the Blob
+     * @throws BlobNotFoundException if there is no Blob with that key
+     * @throws Exception
+     */
+    public BlobInfo head(String key) throws Exception {
+        BlobInfo info = cache.get(key);
+        if (info == null) {
+            info = backend.head(key);
+            cache.put(info);
+        }
+        return info;
+    }
+
+    /**
+     * @return BlobInfo cached for the key, null if there is none
+     */
+    public BlobInfo cached(String key) {
+        return cache.get(key);
+    }
+
+    /**
+     * Reads the metadata from the Object Store, bypassing and refreshing the cache.
+     *
+     * @throws BlobNotFoundException if there is no Blob with that key
+     * @throws Exception
+     */
+    public BlobInfo headFresh(String key) throws Exception {
+        BlobInfo info = backend.head(key);
+        cache.put(info);
+        return info;
+    }
+
+    /**
+     * Reads the metadata of all keys. Failures are reported per key, they do not fail the batch.
+     *
+     * @param keys names of the Blobs, duplicates are read once
+     * @return MetadataBatch results in the order of the keys
+     * @throws InterruptedException
+     */
+    public MetadataBatch headAll(List<String> keys) throws InterruptedException {
+        final List<String> unique = new ArrayList<>(new LinkedHashSet<>(keys));
+        final Object[] results = new Object[unique.size()];
+        final AtomicInteger next = new AtomicInteger();
+
+        // Keys served by the cache are resolved here, the rest is left to the workers
+        int uncached = 0;
+        for (int i = 0; i < unique.size(); i++) {
+            results[i] = cache.get(unique.get(i));
+            if (results[i] == null) {
+                uncached++;
+            }
+        }
+
+        List<Future<Void>> workers = new ArrayList<>();
+        int workerCount = Math.min(maxConcurrency, uncached);
+        for (int w = 0; w < workerCount; w++) {
+            workers.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    int i;
+                    while ((i = next.getAndIncrement()) < results.length) {
+                        if (results[i] == null) {
+                            results[i] = headQuietly(unique.get(i));
+                        }
+                    }
+                    return null;
+                }
+            }));
+        }
+        try {
+            for (Future<Void> worker : workers) {
+                worker.get();
+            }
+        } catch (ExecutionException e) {
+            // Workers catch per key failures, anything else is a bug
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            for (Future<Void> worker : workers) {
+                worker.cancel(true);
+            }
+        }
+
+        MetadataBatch batch = new MetadataBatch();
+        for (int i = 0; i < results.length; i++) {
+            Object result = results[i];
+            if (result instanceof BlobInfo) {
+                batch.found((BlobInfo) result);
+            } else if (result instanceof BlobNotFoundException) {
+                batch.missing(unique.get(i));
+            } else {
+                batch.failed(unique.get(i), result == null ? "Not read" : ((Exception) result).getMessage());
+            }
+        }
+        return batch;
+    }
+
+    /**
+     * Drops the cached metadata of a Blob after it has been changed through this instance
+     */
+    public void invalidate(String key) {
+        cache.invalidate(key);
+    }
+
+    public void addListener(BlobChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Records a Blob written through this instance
+     */
+    public void written(BlobInfo info) {
+        cache.invalidate(info.getKey());
+        for (BlobChangeListener listener : listeners) {
+            try {
+                listener.written(info);
+            } catch (RuntimeException e) {
+                log.error("written(): Listener failed for " + info.getKey() + " : " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Records a Blob deleted through this instance
+     */
+    public void deleted(String key) {
+        cache.invalidate(key);
+        for (BlobChangeListener listener : listeners) {
+            try {
+                listener.deleted(key);
+            } catch (RuntimeException e) {
+                log.error("deleted(): Listener failed for " + key + " : " + e.getMessage());
+            }
+        }
+    }
+
+    private Object headQuietly(String key) {
+        try {
+            BlobInfo info = backend.head(key);
+            cache.put(info);
+            return info;
+        } catch (BlobNotFoundException e) {
+            return e;
+        } catch (Exception e) {
+            log.error("headAll(): Exception occurred for " + key + " : " + e.getMessage());
+            return e;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.meta;
+
+import com.ge.predix.sample.blobstore.spi.BlobInfo;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Metadata of a batch of Blobs, with the keys that do not exist and those that could not be read.
+ */
+public class MetadataBatch {
+
+    private final Map<String, BlobInfo> blobs = new LinkedHashMap<>();
+
+    private final List<String> missing = new ArrayList<>();
+
+    private final Map<String, String> errors = new LinkedHashMap<>();
+
+    void found(BlobInfo info) {
+        blobs.put(info.getKey(), info);
+    }
+
+    void missing(String key) {
+        missing.add(key);
+    }
+
+    void failed(String key, String message) {
+        errors.put(key, message);
+    }
+
+    public Map<String, BlobInfo> getBlobs() {
+        return blobs;
+    }
+
+    public List<String> getMissing() {
+        return missing;
+    }
+
+    public Map<String, String> getErrors() {
+        return errors;
+    }
+}
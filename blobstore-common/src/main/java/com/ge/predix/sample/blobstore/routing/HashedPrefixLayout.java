@@ -0,0 +1,78 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.routing;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Stores each Blob under a short hex prefix taken from the hash of its id, e.g. "3f/" + id.
+ * Sequential ids land in different partitions, and the id is recovered by stripping the prefix.
+ */
+public class HashedPrefixLayout implements KeyLayout {
+
+    private final int partitions;
+
+    private final int width;
+
+    private final List<String> prefixes;
+
+    /**
+     * @param partitions number of prefixes ids are spread over
+     */
+    public HashedPrefixLayout(int partitions) {
+        if (partitions < 1) {
+            throw new IllegalArgumentException("At least one partition is required");
+        }
+        this.partitions = partitions;
+        this.width = Math.max(1, Integer.toHexString(partitions - 1).length());
+        List<String> list = new ArrayList<>(partitions);
+        for (int i = 0; i < partitions; i++) {
+            list.add(prefix(i));
+        }
+        this.prefixes = Collections.unmodifiableList(list);
+    }
+
+    @Override
+    public String physicalKey(String id) {
+        int partition = (int) ((KeyRouter.keyHash(id) >>> 1) % partitions);
+        return prefixes.get(partition) + id;
+    }
+
+    @Override
+    public String logicalKey(String key) {
+        if (key.length() <= width || key.charAt(width) != '/') {
+            return null;
+        }
+        String id = key.substring(width + 1);
+        // Reject keys whose prefix is not the one their id hashes to
+        return physicalKey(id).equals(key) ? id : null;
+    }
+
+    @Override
+    public List<String> partitions() {
+        return prefixes;
+    }
+
+    private String prefix(int partition) {
+        StringBuilder hex = new StringBuilder(Integer.toHexString(partition));
+        while (hex.length() < width) {
+            hex.insert(0, '0');
+        }
+        return hex.append('/').toString();
+    }
+}
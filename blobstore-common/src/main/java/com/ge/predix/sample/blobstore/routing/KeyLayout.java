@@ -0,0 +1,41 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.routing;
+
+import java.util.List;
+
+/**
+ * Reversible mapping between the id of a Blob, as seen by clients, and the key it is stored
+ * under. Layouts spread ids that sort together, such as timestamped file names, over several
+ * key ranges so the object store can split them into separate partitions.
+ */
+public interface KeyLayout {
+
+    /**
+     * @return key the Blob with the given id is stored under
+     */
+    String physicalKey(String id);
+
+    /**
+     * @return id of the Blob stored under the key, null if the key is not part of this layout
+     */
+    String logicalKey(String key);
+
+    /**
+     * @return key prefixes that together hold every Blob of the layout, in key order
+     */
+    List<String> partitions();
+}
@@ -0,0 +1,318 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.routing;
+
+import com.ge.predix.sample.blobstore.spi.BlobContent;
+import com.ge.predix.sample.blobstore.spi.BlobInfo;
+import com.ge.predix.sample.blobstore.spi.BlobNotFoundException;
+import com.ge.predix.sample.blobstore.spi.BlobPage;
+import com.ge.predix.sample.blobstore.spi.BlobRequestSigning;
+import com.ge.predix.sample.blobstore.spi.BlobStoreBackend;
+import com.ge.predix.sample.blobstore.spi.ByteRange;
+import com.ge.predix.sample.blobstore.spi.SignedRequest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Stores Blobs under the keys of a {@link KeyLayout} while clients, listings and everything
+ * built on top of the backend keep seeing the original ids.
+ * <p/>
+ * Listings ask every partition of the layout concurrently for a share of the page and merge
+ * them in id order, reading further from a partition only when its share runs out first, so a
+ * page costs at least one LIST request per partition.
+ * <p/>
+ * Blobs written before the layout was turned on stay under their ids. Reads, copies and moves
+ * fall back to the id when nothing is stored under the layout key, and deletes remove both, so
+ * those Blobs stay reachable until they are rewritten. They are not listed. Ids that are
+ * themselves keys of the layout have no fallback, it would reach another Blob.
+ * <p/>
+ * Over a {@link RoutingBackend} the {@link KeyRouter} has to be given the layout, so keys are
+ * routed on their ids and prefix rules keep matching.
+ */
+public class KeyLayoutBackend implements BlobStoreBackend, BlobRequestSigning {
+
+    private final BlobStoreBackend delegate;
+
+    private final KeyLayout layout;
+
+    private final ExecutorService executor;
+
+    /**
+     * @param delegate backend the Blobs are stored in
+     * @param layout   mapping from ids to stored keys
+     * @param executor runs the per partition listings
+     */
+    public KeyLayoutBackend(BlobStoreBackend delegate, KeyLayout layout, ExecutorService executor) {
+        this.delegate = delegate;
+        this.layout = layout;
+        this.executor = executor;
+    }
+
+    @Override
+    public BlobInfo put(String key, InputStream content, long length, String contentType) throws Exception {
+        return toLogical(key, delegate.put(layout.physicalKey(key), content, length, contentType));
+    }
+
+    @Override
+    public BlobContent get(String key, ByteRange range) throws Exception {
+        BlobContent found;
+        try {
+            found = delegate.get(layout.physicalKey(key), range);
+        } catch (BlobNotFoundException e) {
+            if (!hasLegacyKey(key)) {
+                throw e;
+            }
+            found = delegate.get(key, range);
+        }
+        final BlobContent content = found;
+        return new BlobContent(toLogical(key, content.getInfo()), content.getStream(), content.getContentLength()) {
+            @Override
+            public void close() throws IOException {
+                content.close();
+            }
+
+            @Override
+            public void abort() throws IOException {
+                content.abort();
+            }
+        };
+    }
+
+    @Override
+    public BlobInfo head(String key) throws Exception {
+        try {
+            return toLogical(key, delegate.head(layout.physicalKey(key)));
+        } catch (BlobNotFoundException e) {
+            if (!hasLegacyKey(key)) {
+                throw e;
+            }
+            return toLogical(key, delegate.head(key));
+        }
+    }
+
+    /**
+     * Each partition is first asked for about twice its even share of the page, a partition
+     * whose share is used up before the page is full is read further on its own. Ids come out
+     * of the merge in order, so every partition has been read up to the last id of the page and
+     * that id is the cursor of each of them.
+     */
+    @Override
+    public BlobPage list(final String prefix, final String marker, final int maxKeys) throws Exception {
+        List<String> partitions = layout.partitions();
+        final int share = Math.min(maxKeys, 2 * maxKeys / partitions.size() + 1);
+        List<Cursor> cursors = new ArrayList<>();
+        List<Future<BlobPage>> futures = new ArrayList<>();
+        for (String partition : partitions) {
+            final Cursor cursor = new Cursor(partition + (prefix == null ? "" : prefix), share);
+            cursors.add(cursor);
+            final String after = marker == null ? null : partition + marker;
+            futures.add(executor.submit(new Callable<BlobPage>() {
+                @Override
+                public BlobPage call() throws Exception {
+                    return cursor.read(after);
+                }
+            }));
+        }
+        for (int i = 0; i < cursors.size(); i++) {
+            try {
+                cursors.get(i).fill(futures.get(i).get());
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+            }
+        }
+
+        List<BlobInfo> blobs = new ArrayList<>();
+        while (blobs.size() < maxKeys) {
+            Cursor next = null;
+            for (Cursor cursor : cursors) {
+                BlobInfo head = cursor.peek();
+                if (head != null && (next == null || head.getKey().compareTo(next.peek().getKey()) < 0)) {
+                    next = cursor;
+                }
+            }
+            if (next == null) {
+                break;
+            }
+            blobs.add(next.poll());
+        }
+
+        boolean more = false;
+        for (Cursor cursor : cursors) {
+            more |= cursor.hasMore();
+        }
+        String nextMarker = more && !blobs.isEmpty() ? blobs.get(blobs.size() - 1).getKey() : null;
+        return new BlobPage(blobs, nextMarker);
+    }
+
+    @Override
+    public BlobInfo copy(String sourceKey, String targetKey) throws Exception {
+        String target = layout.physicalKey(targetKey);
+        try {
+            return toLogical(targetKey, delegate.copy(layout.physicalKey(sourceKey), target));
+        } catch (BlobNotFoundException e) {
+            if (!hasLegacyKey(sourceKey)) {
+                throw e;
+            }
+            return toLogical(targetKey, delegate.copy(sourceKey, target));
+        }
+    }
+
+    @Override
+    public BlobInfo move(String sourceKey, String targetKey) throws Exception {
+        String target = layout.physicalKey(targetKey);
+        try {
+            return toLogical(targetKey, delegate.move(layout.physicalKey(sourceKey), target));
+        } catch (BlobNotFoundException e) {
+            if (!hasLegacyKey(sourceKey)) {
+                throw e;
+            }
+            return toLogical(targetKey, delegate.move(sourceKey, target));
+        }
+    }
+
+    /**
+     * Deletes the Blob under its layout key and under its id, a Blob left under the id would
+     * be read through the fallback again
+     */
+    @Override
+    public void delete(String key) throws Exception {
+        delegate.delete(layout.physicalKey(key));
+        if (hasLegacyKey(key)) {
+            try {
+                delegate.delete(key);
+            } catch (BlobNotFoundException e) {
+                // Nothing was stored under the id
+            }
+        }
+    }
+
+    @Override
+    public SignedRequest signGet(String key, long expiresInSeconds) throws Exception {
+        return signing().signGet(layout.physicalKey(key), expiresInSeconds);
+    }
+
+    @Override
+    public SignedRequest signPut(String key, String contentType, long expiresInSeconds) throws Exception {
+        return signing().signPut(layout.physicalKey(key), contentType, expiresInSeconds);
+    }
+
+    @Override
+    public String initiateMultipartUpload(String key, String contentType) throws Exception {
+        return signing().initiateMultipartUpload(layout.physicalKey(key), contentType);
+    }
+
+    @Override
+    public SignedRequest signUploadPart(String key, String uploadId, int partNumber, long expiresInSeconds) throws Exception {
+        return signing().signUploadPart(layout.physicalKey(key), uploadId, partNumber, expiresInSeconds);
+    }
+
+    @Override
+    public BlobInfo completeMultipartUpload(String key, String uploadId, SortedMap<Integer, String> partETags) throws Exception {
+        return toLogical(key, signing().completeMultipartUpload(layout.physicalKey(key), uploadId, partETags));
+    }
+
+    @Override
+    public void abortMultipartUpload(String key, String uploadId) throws Exception {
+        signing().abortMultipartUpload(layout.physicalKey(key), uploadId);
+    }
+
+    public KeyLayout getLayout() {
+        return layout;
+    }
+
+    /**
+     * @return true if the id may hold a Blob written before the layout, false if it is a key
+     * of the layout itself
+     */
+    private boolean hasLegacyKey(String id) {
+        return !id.equals(layout.physicalKey(id)) && layout.logicalKey(id) == null;
+    }
+
+    private BlobRequestSigning signing() {
+        if (!(delegate instanceof BlobRequestSigning)) {
+            throw new UnsupportedOperationException("The configured backend does not support signed requests");
+        }
+        return (BlobRequestSigning) delegate;
+    }
+
+    /**
+     * Position of a listing in one partition, with the ids read but not yet merged
+     */
+    private class Cursor {
+
+        private final String prefix;
+
+        private final int share;
+
+        private final Deque<BlobInfo> buffered = new ArrayDeque<>();
+
+        private String nextMarker;
+
+        Cursor(String prefix, int share) {
+            this.prefix = prefix;
+            this.share = share;
+        }
+
+        BlobPage read(String marker) throws Exception {
+            return delegate.list(prefix, marker, share);
+        }
+
+        void fill(BlobPage page) {
+            for (BlobInfo info : page.getBlobs()) {
+                String id = layout.logicalKey(info.getKey());
+                if (id != null) {
+                    buffered.add(toLogical(id, info));
+                }
+            }
+            nextMarker = page.getNextMarker();
+        }
+
+        /**
+         * @return the next id of the partition, reading on if the buffered ones are used up
+         */
+        BlobInfo peek() throws Exception {
+            while (buffered.isEmpty() && nextMarker != null) {
+                fill(read(nextMarker));
+            }
+            return buffered.peek();
+        }
+
+        BlobInfo poll() {
+            return buffered.poll();
+        }
+
+        boolean hasMore() {
+            return !buffered.isEmpty() || nextMarker != null;
+        }
+    }
+
+    private static BlobInfo toLogical(String id, BlobInfo info) {
+        if (info == null) {
+            return null;
+        }
+        return new BlobInfo(id, info.getSize(), info.getETag(), info.getContentType(), info.getLastModified());
+    }
+}
@@ -0,0 +1,185 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.routing;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Maps keys to shards. Prefix rules are checked first, longest prefix winning, and the rest of
+ * the keys are spread by consistent hashing: each shard owns virtualNodes points on a hash ring
+ * and a key belongs to the first point at or after its hash. Adding a shard moves only about
+ * 1/n of the keys.
+ * <p/>
+ * Given the {@link KeyLayout} of a {@link KeyLayoutBackend} in front of the routing, stored
+ * keys are routed on their ids. A {@link KeyMapping} maps keys derived from others to the key
+ * they should be routed with, e.g. staging keys to the key they are staged for so moving them
+ * into place stays on one shard.
+ */
+public class KeyRouter {
+
+    private final List<String> shards;
+
+    /**
+     * Prefix rules, longest prefix first
+     */
+    private final List<Map.Entry<String, Integer>> rules = new ArrayList<>();
+
+    private final long[] ring;
+
+    private final KeyLayout layout;
+
+    private final KeyMapping mapping;
+
+    private final int[] owners;
+
+    /**
+     * @param shards       names of the shards, in the order their backends are given
+     * @param prefixRules  key prefix to shard name
+     * @param virtualNodes points per shard on the hash ring
+     * @throws IllegalArgumentException if there are no shards or a rule names an unknown shard
+     */
+    public KeyRouter(List<String> shards, Map<String, String> prefixRules, int virtualNodes) {
+        this(shards, prefixRules, virtualNodes, null, null);
+    }
+
+    /**
+     * @param layout  layout of the keys routed, null if they are ids already
+     * @param mapping maps ids to the key they are routed with, null to route them as they are
+     */
+    public KeyRouter(List<String> shards, Map<String, String> prefixRules, int virtualNodes, KeyLayout layout,
+                     KeyMapping mapping) {
+        this.layout = layout;
+        this.mapping = mapping;
+        if (shards.isEmpty()) {
+            throw new IllegalArgumentException("At least one shard is required");
+        }
+        this.shards = new ArrayList<>(shards);
+        for (Map.Entry<String, String> rule : prefixRules.entrySet()) {
+            int shard = shards.indexOf(rule.getValue());
+            if (shard < 0) {
+                throw new IllegalArgumentException("Prefix rule " + rule.getKey() + " names unknown shard " + rule.getValue());
+            }
+            rules.add(new AbstractMap.SimpleImmutableEntry<>(rule.getKey(), shard));
+        }
+        Collections.sort(rules, new Comparator<Map.Entry<String, Integer>>() {
+            @Override
+            public int compare(Map.Entry<String, Integer> a, Map.Entry<String, Integer> b) {
+                return b.getKey().length() - a.getKey().length();
+            }
+        });
+
+        int points = shards.size() * Math.max(1, virtualNodes);
+        long[][] ringPoints = new long[points][];
+        int p = 0;
+        for (int shard = 0; shard < shards.size(); shard++) {
+            for (int v = 0; v < Math.max(1, virtualNodes); v++) {
+                ringPoints[p++] = new long[]{pointHash(shards.get(shard) + "#" + v), shard};
+            }
+        }
+        Arrays.sort(ringPoints, new Comparator<long[]>() {
+            @Override
+            public int compare(long[] a, long[] b) {
+                return a[0] != b[0] ? Long.compare(a[0], b[0]) : Long.compare(a[1], b[1]);
+            }
+        });
+        ring = new long[points];
+        owners = new int[points];
+        for (int i = 0; i < points; i++) {
+            ring[i] = ringPoints[i][0];
+            owners[i] = (int) ringPoints[i][1];
+        }
+    }
+
+    /**
+     * @return index of the shard owning the key
+     */
+    public int route(String key) {
+        String id = layout != null ? layout.logicalKey(key) : null;
+        key = id != null ? id : key;
+        if (mapping != null) {
+            key = mapping.routingKey(key);
+        }
+        for (Map.Entry<String, Integer> rule : rules) {
+            if (key.startsWith(rule.getKey())) {
+                return rule.getValue();
+            }
+        }
+        int i = Arrays.binarySearch(ring, keyHash(key));
+        if (i < 0) {
+            i = -i - 1;
+        }
+        return owners[i == ring.length ? 0 : i];
+    }
+
+    public List<String> getShards() {
+        return Collections.unmodifiableList(shards);
+    }
+
+    /**
+     * Maps a key to the key it is routed with.
+     */
+    public interface KeyMapping {
+
+        /**
+         * @param key id of a Blob
+         * @return the key to route it with, the key itself if it needs no mapping
+         */
+        String routingKey(String key);
+    }
+
+    /**
+     * 64 bit FNV-1a over the UTF-16 units of the key, finished with a 64 bit mix so that keys
+     * sharing long prefixes still spread
+     */
+    static long keyHash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            h ^= key.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * Ring points only need to be stable and well spread, MD5 gives both
+     */
+    private static long pointHash(String point) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(point.getBytes(StandardCharsets.UTF_8));
+            long h = 0;
+            for (int i = 0; i < 8; i++) {
+                h = (h << 8) | (digest[i] & 0xff);
+            }
+            return h;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 not available", e);
+        }
+    }
+}
@@ -0,0 +1,341 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.routing;
+
+import com.ge.predix.sample.blobstore.spi.BlobContent;
+import com.ge.predix.sample.blobstore.spi.BlobInfo;
+import com.ge.predix.sample.blobstore.spi.BlobNotFoundException;
+import com.ge.predix.sample.blobstore.spi.BlobPage;
+import com.ge.predix.sample.blobstore.spi.BlobRequestSigning;
+import com.ge.predix.sample.blobstore.spi.BlobStoreBackend;
+import com.ge.predix.sample.blobstore.spi.ByteRange;
+import com.ge.predix.sample.blobstore.spi.SignedRequest;
+import com.ge.predix.sample.blobstore.write.PreconditionFailedException;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Spreads Blobs over several backends, each typically a bucket behind its own client and
+ * connection pool, to get past the request rate limits of a single bucket or endpoint.
+ * <p/>
+ * Single key operations go to the shard the {@link KeyRouter} picks. Copies and moves between
+ * shards stream the Blob across. Listings ask every shard concurrently and merge the pages in
+ * key order. Deletes go to every shard, so Blobs written under an earlier shard layout do not
+ * outlive their key; reads are not retried on other shards, a changed layout needs its keys
+ * copied to their new shards.
+ */
+public class RoutingBackend implements BlobStoreBackend, BlobRequestSigning {
+
+    Log log = LogFactory.getLog(RoutingBackend.class);
+
+    private final KeyRouter router;
+
+    private final List<BlobStoreBackend> shards;
+
+    private final ShardStats[] stats;
+
+    private final ExecutorService executor;
+
+    /**
+     * @param router   picks the shard of each key
+     * @param shards   one backend per shard named by the router, in the same order
+     * @param executor runs the per shard calls of listings and deletes
+     */
+    public RoutingBackend(KeyRouter router, List<BlobStoreBackend> shards, ExecutorService executor) {
+        if (router.getShards().size() != shards.size()) {
+            throw new IllegalArgumentException("Router names " + router.getShards().size() + " shards, "
+                    + shards.size() + " backends given");
+        }
+        this.router = router;
+        this.shards = new ArrayList<>(shards);
+        this.executor = executor;
+        this.stats = new ShardStats[shards.size()];
+        for (int i = 0; i < stats.length; i++) {
+            stats[i] = new ShardStats(router.getShards().get(i));
+        }
+    }
+
+    @Override
+    public BlobInfo put(String key, InputStream content, long length, String contentType) throws Exception {
+        int shard = router.route(key);
+        long start = System.nanoTime();
+        try {
+            return shards.get(shard).put(key, content, length, contentType);
+        } catch (Exception e) {
+            stats[shard].failed(e);
+            throw e;
+        } finally {
+            stats[shard].completed(start);
+        }
+    }
+
+    @Override
+    public BlobContent get(String key, ByteRange range) throws Exception {
+        int shard = router.route(key);
+        long start = System.nanoTime();
+        try {
+            return shards.get(shard).get(key, range);
+        } catch (Exception e) {
+            stats[shard].failed(e);
+            throw e;
+        } finally {
+            stats[shard].completed(start);
+        }
+    }
+
+    @Override
+    public BlobInfo head(String key) throws Exception {
+        int shard = router.route(key);
+        long start = System.nanoTime();
+        try {
+            return shards.get(shard).head(key);
+        } catch (Exception e) {
+            stats[shard].failed(e);
+            throw e;
+        } finally {
+            stats[shard].completed(start);
+        }
+    }
+
+    /**
+     * Asks every shard for the page following the marker and keeps the first maxKeys of the
+     * merged result. A key found on several shards is reported once, from its current shard.
+     */
+    @Override
+    public BlobPage list(final String prefix, final String marker, final int maxKeys) throws Exception {
+        List<BlobPage> pages = fanOut(new ShardCall<BlobPage>() {
+            @Override
+            public BlobPage call(BlobStoreBackend backend) throws Exception {
+                return backend.list(prefix, marker, maxKeys);
+            }
+        });
+        final List<BlobInfo> merged = new ArrayList<>();
+        final List<Integer> origins = new ArrayList<>();
+        boolean truncated = false;
+        for (int shard = 0; shard < pages.size(); shard++) {
+            BlobPage page = pages.get(shard);
+            truncated |= page.isTruncated();
+            for (BlobInfo info : page.getBlobs()) {
+                merged.add(info);
+                origins.add(shard);
+            }
+        }
+        List<Integer> order = new ArrayList<>(merged.size());
+        for (int i = 0; i < merged.size(); i++) {
+            order.add(i);
+        }
+        Collections.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return merged.get(a).getKey().compareTo(merged.get(b).getKey());
+            }
+        });
+
+        List<BlobInfo> blobs = new ArrayList<>(Math.min(maxKeys, merged.size()));
+        int next = 0;
+        while (next < order.size() && blobs.size() < maxKeys) {
+            BlobInfo chosen = merged.get(order.get(next));
+            String key = chosen.getKey();
+            int owner = router.route(key);
+            for (; next < order.size() && merged.get(order.get(next)).getKey().equals(key); next++) {
+                if (origins.get(order.get(next)) == owner) {
+                    chosen = merged.get(order.get(next));
+                }
+            }
+            blobs.add(chosen);
+        }
+        boolean more = truncated || next < order.size();
+        String nextMarker = more && !blobs.isEmpty() ? blobs.get(blobs.size() - 1).getKey() : null;
+        return new BlobPage(blobs, nextMarker);
+    }
+
+    @Override
+    public BlobInfo copy(String sourceKey, String targetKey) throws Exception {
+        int source = router.route(sourceKey);
+        int target = router.route(targetKey);
+        if (source == target) {
+            long start = System.nanoTime();
+            try {
+                return shards.get(source).copy(sourceKey, targetKey);
+            } catch (Exception e) {
+                stats[source].failed(e);
+                throw e;
+            } finally {
+                stats[source].completed(start);
+            }
+        }
+        try (BlobContent content = get(sourceKey, null)) {
+            return put(targetKey, content.getStream(), content.getContentLength(), content.getInfo().getContentType());
+        }
+    }
+
+    @Override
+    public BlobInfo move(String sourceKey, String targetKey) throws Exception {
+        int source = router.route(sourceKey);
+        if (source == router.route(targetKey)) {
+            long start = System.nanoTime();
+            try {
+                return shards.get(source).move(sourceKey, targetKey);
+            } catch (Exception e) {
+                stats[source].failed(e);
+                throw e;
+            } finally {
+                stats[source].completed(start);
+            }
+        }
+        // Streamed across shards, the source is deleted only while it is still the copied version
+        BlobInfo info;
+        String sourceETag;
+        try (BlobContent content = get(sourceKey, null)) {
+            sourceETag = content.getInfo().getETag();
+            info = put(targetKey, content.getStream(), content.getContentLength(), content.getInfo().getContentType());
+        }
+        String eTag = head(sourceKey).getETag();
+        if (sourceETag == null ? eTag != null : !sourceETag.equals(eTag)) {
+            log.warn("move(): " + sourceKey + " was overwritten while it was moved to " + targetKey + ", keeping it");
+            throw new PreconditionFailedException(sourceKey);
+        }
+        delete(sourceKey);
+        return info;
+    }
+
+    @Override
+    public void delete(final String key) throws Exception {
+        fanOut(new ShardCall<Void>() {
+            @Override
+            public Void call(BlobStoreBackend backend) throws Exception {
+                try {
+                    backend.delete(key);
+                } catch (BlobNotFoundException e) {
+                    // Not on this shard
+                }
+                return null;
+            }
+        });
+    }
+
+    @Override
+    public SignedRequest signGet(String key, long expiresInSeconds) throws Exception {
+        return signer(key).signGet(key, expiresInSeconds);
+    }
+
+    @Override
+    public SignedRequest signPut(String key, String contentType, long expiresInSeconds) throws Exception {
+        return signer(key).signPut(key, contentType, expiresInSeconds);
+    }
+
+    @Override
+    public String initiateMultipartUpload(String key, String contentType) throws Exception {
+        return signer(key).initiateMultipartUpload(key, contentType);
+    }
+
+    @Override
+    public SignedRequest signUploadPart(String key, String uploadId, int partNumber, long expiresInSeconds) throws Exception {
+        return signer(key).signUploadPart(key, uploadId, partNumber, expiresInSeconds);
+    }
+
+    @Override
+    public BlobInfo completeMultipartUpload(String key, String uploadId, SortedMap<Integer, String> partETags) throws Exception {
+        return signer(key).completeMultipartUpload(key, uploadId, partETags);
+    }
+
+    @Override
+    public void abortMultipartUpload(String key, String uploadId) throws Exception {
+        signer(key).abortMultipartUpload(key, uploadId);
+    }
+
+    /**
+     * @return counters of each shard, in shard order
+     */
+    public List<ShardStats> getStats() {
+        List<ShardStats> list = new ArrayList<>(stats.length);
+        Collections.addAll(list, stats);
+        return list;
+    }
+
+    public KeyRouter getRouter() {
+        return router;
+    }
+
+    private BlobRequestSigning signer(String key) {
+        BlobStoreBackend backend = shards.get(router.route(key));
+        if (!(backend instanceof BlobRequestSigning)) {
+            throw new UnsupportedOperationException("Shard " + router.getShards().get(router.route(key))
+                    + " does not support signed requests");
+        }
+        return (BlobRequestSigning) backend;
+    }
+
+    private interface ShardCall<T> {
+
+        T call(BlobStoreBackend backend) throws Exception;
+    }
+
+    /**
+     * Runs the call on every shard at once and returns the results in shard order
+     *
+     * @throws Exception the first failure, once every shard has answered
+     */
+    private <T> List<T> fanOut(final ShardCall<T> call) throws Exception {
+        List<Future<T>> futures = new ArrayList<>(shards.size());
+        for (int i = 0; i < shards.size(); i++) {
+            final int shard = i;
+            Callable<T> task = new Callable<T>() {
+                @Override
+                public T call() throws Exception {
+                    long start = System.nanoTime();
+                    try {
+                        return call.call(shards.get(shard));
+                    } catch (Exception e) {
+                        stats[shard].failed(e);
+                        throw e;
+                    } finally {
+                        stats[shard].completed(start);
+                    }
+                }
+            };
+            futures.add(executor.submit(task));
+        }
+        List<T> results = new ArrayList<>(futures.size());
+        Exception failure = null;
+        for (int shard = 0; shard < futures.size(); shard++) {
+            try {
+                results.add(futures.get(shard).get());
+            } catch (ExecutionException e) {
+                log.error("fanOut(): Shard " + stats[shard].getName() + " failed : " + e.getCause().getMessage());
+                if (failure == null) {
+                    failure = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                }
+                results.add(null);
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return results;
+    }
+}
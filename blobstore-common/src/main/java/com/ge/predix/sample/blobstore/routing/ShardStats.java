@@ -0,0 +1,71 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.routing;
+
+import com.ge.predix.sample.blobstore.spi.BlobNotFoundException;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Request counters of one shard.
+ */
+public class ShardStats {
+
+    private final String name;
+
+    private final AtomicLong requests = new AtomicLong();
+
+    private final AtomicLong failures = new AtomicLong();
+
+    private final AtomicLong totalMillis = new AtomicLong();
+
+    public ShardStats(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Counts a request started at startNanos, failed or not
+     */
+    void completed(long startNanos) {
+        requests.incrementAndGet();
+        totalMillis.addAndGet((System.nanoTime() - startNanos) / 1000000);
+    }
+
+    /**
+     * Counts a failure, a missing Blob is an answer rather than a failure
+     */
+    void failed(Exception e) {
+        if (!(e instanceof BlobNotFoundException)) {
+            failures.incrementAndGet();
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getRequests() {
+        return requests.get();
+    }
+
+    public long getFailures() {
+        return failures.get();
+    }
+
+    public long getTotalMillis() {
+        return totalMillis.get();
+    }
+}
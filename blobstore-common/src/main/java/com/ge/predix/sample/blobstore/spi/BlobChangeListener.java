@@ -0,0 +1,28 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.spi;
+
+/**
+ * Told about Blobs written or deleted through this instance, right after the Object Store
+ * has acknowledged the change. Listeners are called on the thread that made the change and
+ * must not block.
+ */
+public interface BlobChangeListener {
+
+    void written(BlobInfo info);
+
+    void deleted(String key);
+}
@@ -0,0 +1,67 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.spi;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Content of a Blob opened for reading, together with its metadata.
+ */
+public class BlobContent implements Closeable {
+
+    private final BlobInfo info;
+
+    private final InputStream stream;
+
+    /**
+     * Number of bytes the stream delivers, the range length for ranged reads
+     */
+    private final long contentLength;
+
+    public BlobContent(BlobInfo info, InputStream stream, long contentLength) {
+        this.info = info;
+        this.stream = stream;
+        this.contentLength = contentLength;
+    }
+
+    public BlobInfo getInfo() {
+        return info;
+    }
+
+    public InputStream getStream() {
+        return stream;
+    }
+
+    public long getContentLength() {
+        return contentLength;
+    }
+
+    @Override
+    public void close() throws IOException {
+        stream.close();
+    }
+
+    /**
+     * Releases the content without reading the rest of it, e.g. once the client has gone away.
+     * Backends whose stream holds a pooled connection override this to drop the connection
+     * rather than drain it.
+     */
+    public void abort() throws IOException {
+        close();
+    }
+}
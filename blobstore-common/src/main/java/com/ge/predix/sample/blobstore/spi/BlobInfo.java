@@ -0,0 +1,81 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.spi;
+
+/**
+ * Metadata of a stored Blob.
+ */
+public class BlobInfo {
+
+    /**
+     * Name of the Blob
+     */
+    private final String key;
+
+    /**
+     * Size in bytes, -1 if unknown
+     */
+    private final long size;
+
+    /**
+     * Entity tag as reported by the backend, may be null
+     */
+    private final String eTag;
+
+    /**
+     * Media type, may be null
+     */
+    private final String contentType;
+
+    /**
+     * Last modification time in milliseconds since the epoch, 0 if unknown
+     */
+    private final long lastModified;
+
+    public BlobInfo(String key, long size, String eTag, String contentType, long lastModified) {
+        this.key = key;
+        this.size = size;
+        this.eTag = eTag;
+        this.contentType = contentType;
+        this.lastModified = lastModified;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public String getETag() {
+        return eTag;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    @Override
+    public String toString() {
+        return "BlobInfo [key=" + key + ", size=" + size + ", eTag=" + eTag + ", contentType=" + contentType
+                + ", lastModified=" + lastModified + "]";
+    }
+}
@@ -0,0 +1,48 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.spi;
+
+import java.util.List;
+
+/**
+ * One page of a Blob listing.
+ */
+public class BlobPage {
+
+    private final List<BlobInfo> blobs;
+
+    /**
+     * Marker to pass for the next page, null on the last page
+     */
+    private final String nextMarker;
+
+    public BlobPage(List<BlobInfo> blobs, String nextMarker) {
+        this.blobs = blobs;
+        this.nextMarker = nextMarker;
+    }
+
+    public List<BlobInfo> getBlobs() {
+        return blobs;
+    }
+
+    public String getNextMarker() {
+        return nextMarker;
+    }
+
+    public boolean isTruncated() {
+        return nextMarker != null;
+    }
+}
@@ -0,0 +1,89 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.spi;
+
+import java.util.SortedMap;
+
+/**
+ * Optional capability of a backend whose store can be reached by clients directly. The application
+ * signs requests and coordinates multipart uploads while the content travels between client and
+ * store.
+ */
+public interface BlobRequestSigning {
+
+    /**
+     * Signs a download of a Blob.
+     *
+     * @param key              name of the Blob
+     * @param expiresInSeconds lifetime of the signature
+     * @return SignedRequest GET request for the Blob
+     * @throws Exception
+     */
+    SignedRequest signGet(String key, long expiresInSeconds) throws Exception;
+
+    /**
+     * Signs an upload of a Blob in a single request.
+     *
+     * @param key              name of the Blob
+     * @param contentType      media type the client will send, may be null
+     * @param expiresInSeconds lifetime of the signature
+     * @return SignedRequest PUT request for the Blob
+     * @throws Exception
+     */
+    SignedRequest signPut(String key, String contentType, long expiresInSeconds) throws Exception;
+
+    /**
+     * Starts a multipart upload whose parts the client uploads with {@link #signUploadPart}.
+     *
+     * @param key         name of the Blob
+     * @param contentType media type of the Blob, may be null
+     * @return String id of the upload
+     * @throws Exception
+     */
+    String initiateMultipartUpload(String key, String contentType) throws Exception;
+
+    /**
+     * Signs the upload of one part of a multipart upload.
+     *
+     * @param key              name of the Blob
+     * @param uploadId         id returned by {@link #initiateMultipartUpload}
+     * @param partNumber       number of the part, starting at 1
+     * @param expiresInSeconds lifetime of the signature
+     * @return SignedRequest PUT request for the part
+     * @throws Exception
+     */
+    SignedRequest signUploadPart(String key, String uploadId, int partNumber, long expiresInSeconds) throws Exception;
+
+    /**
+     * Completes a multipart upload.
+     *
+     * @param key       name of the Blob
+     * @param uploadId  id returned by {@link #initiateMultipartUpload}
+     * @param partETags ETag returned by the store for each part, by part number
+     * @return BlobInfo of the stored Blob
+     * @throws Exception
+     */
+    BlobInfo completeMultipartUpload(String key, String uploadId, SortedMap<Integer, String> partETags) throws Exception;
+
+    /**
+     * Abandons a multipart upload and discards its parts.
+     *
+     * @param key      name of the Blob
+     * @param uploadId id returned by {@link #initiateMultipartUpload}
+     * @throws Exception
+     */
+    void abortMultipartUpload(String key, String uploadId) throws Exception;
+}
@@ -0,0 +1,100 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.spi;
+
+import java.io.InputStream;
+
+/**
+ * Operations every Blobstore backend provides. Implemented by the Object Store services of the
+ * sample applications and by {@link com.ge.predix.sample.blobstore.fs.FileSystemBackend}.
+ */
+public interface BlobStoreBackend {
+
+    /**
+     * Stores a Blob, replacing any Blob with the same key. The content is consumed and closed.
+     *
+     * @param key         name of the Blob
+     * @param content     content of the Blob
+     * @param length      number of bytes in the content, or -1 if unknown
+     * @param contentType media type of the content, may be null
+     * @return BlobInfo of the stored Blob
+     * @throws Exception
+     */
+    BlobInfo put(String key, InputStream content, long length, String contentType) throws Exception;
+
+    /**
+     * Opens a Blob for reading. The caller must close the returned content.
+     *
+     * @param key   name of the Blob
+     * @param range bytes to read, or null for the whole Blob
+     * @return BlobContent content and metadata of the Blob
+     * @throws BlobNotFoundException if there is no Blob with that key
+     * @throws Exception
+     */
+    BlobContent get(String key, ByteRange range) throws Exception;
+
+    /**
+     * Reads the metadata of a Blob without its content.
+     *
+     * @param key name of the Blob
+     * @return BlobInfo metadata of the Blob
+     * @throws BlobNotFoundException if there is no Blob with that key
+     * @throws Exception
+     */
+    BlobInfo head(String key) throws Exception;
+
+    /**
+     * Lists Blobs in key order.
+     *
+     * @param prefix  only keys starting with this prefix, may be null
+     * @param marker  only keys after this key, may be null
+     * @param maxKeys largest number of Blobs to return
+     * @return BlobPage one page of Blobs
+     * @throws Exception
+     */
+    BlobPage list(String prefix, String marker, int maxKeys) throws Exception;
+
+    /**
+     * Copies a Blob within the store, replacing any Blob at the target key. The content is
+     * copied by the store itself and does not pass through the application.
+     *
+     * @param sourceKey name of the Blob to copy
+     * @param targetKey name of the copy
+     * @return BlobInfo of the copy
+     * @throws BlobNotFoundException if there is no Blob with the source key
+     * @throws Exception
+     */
+    BlobInfo copy(String sourceKey, String targetKey) throws Exception;
+
+    /**
+     * Moves a Blob to a new key, replacing any Blob at the target key.
+     *
+     * @param sourceKey name of the Blob to move
+     * @param targetKey new name of the Blob
+     * @return BlobInfo of the Blob at its new key
+     * @throws BlobNotFoundException if there is no Blob with the source key
+     * @throws Exception
+     */
+    BlobInfo move(String sourceKey, String targetKey) throws Exception;
+
+    /**
+     * Deletes a Blob. Deleting a missing Blob is not an error.
+     *
+     * @param key name of the Blob
+     * @throws Exception
+     */
+    void delete(String key) throws Exception;
+}
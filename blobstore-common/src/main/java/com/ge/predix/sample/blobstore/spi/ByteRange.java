@@ -0,0 +1,73 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.spi;
+
+/**
+ * Inclusive range of bytes within a Blob.
+ */
+public class ByteRange {
+
+    private final long start;
+
+    private final long end;
+
+    public ByteRange(long start, long end) {
+        if (start < 0 || end < start) {
+            throw new IllegalArgumentException("Invalid range specified " + start + ":" + end);
+        }
+        this.start = start;
+        this.end = end;
+    }
+
+    /**
+     * Parses a range of the form start:end as accepted by the REST endpoints.
+     *
+     * @param range range to parse, may be null or empty
+     * @return ByteRange the parsed range, or null when no range was given
+     * @throws IllegalArgumentException if the range is malformed
+     */
+    public static ByteRange parse(String range) {
+        if (range == null || range.isEmpty()) {
+            return null;
+        }
+        String[] r = range.split(":");
+        if (r.length != 2) {
+            throw new IllegalArgumentException("Invalid range format");
+        }
+        try {
+            return new ByteRange(Long.parseLong(r[0]), Long.parseLong(r[1]));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid range specified ", e);
+        }
+    }
+
+    public long getStart() {
+        return start;
+    }
+
+    public long getEnd() {
+        return end;
+    }
+
+    public long length() {
+        return end - start + 1;
+    }
+
+    @Override
+    public String toString() {
+        return start + ":" + end;
+    }
+}
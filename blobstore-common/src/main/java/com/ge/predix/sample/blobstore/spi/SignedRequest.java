@@ -0,0 +1,62 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.spi;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * A request signed by the application that a client sends directly to the store.
+ */
+public class SignedRequest {
+
+    private final String method;
+
+    private final String url;
+
+    /**
+     * Headers the client must send with the request, they are part of the signature
+     */
+    private final Map<String, String> headers;
+
+    /**
+     * Time the signature expires, in milliseconds since the epoch
+     */
+    private final long expiration;
+
+    public SignedRequest(String method, String url, Map<String, String> headers, long expiration) {
+        this.method = method;
+        this.url = url;
+        this.headers = Collections.unmodifiableMap(headers);
+        this.expiration = expiration;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public Map<String, String> getHeaders() {
+        return headers;
+    }
+
+    public long getExpiration() {
+        return expiration;
+    }
+}
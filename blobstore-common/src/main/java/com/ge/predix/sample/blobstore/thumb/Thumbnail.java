@@ -0,0 +1,49 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.thumb;
+
+/**
+ * A generated thumbnail, small enough to be served from memory.
+ */
+public class Thumbnail {
+
+    private final byte[] data;
+
+    private final String contentType;
+
+    /**
+     * Changes whenever the source Blob or the thumbnail size changes
+     */
+    private final String eTag;
+
+    public Thumbnail(byte[] data, String contentType, String eTag) {
+        this.data = data;
+        this.contentType = contentType;
+        this.eTag = eTag;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public String getETag() {
+        return eTag;
+    }
+}
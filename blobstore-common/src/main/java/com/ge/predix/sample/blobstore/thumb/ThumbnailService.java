@@ -0,0 +1,386 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.thumb;
+
+import com.ge.predix.sample.blobstore.io.ContentTypeDetector;
+import com.ge.predix.sample.blobstore.spi.BlobChangeListener;
+import com.ge.predix.sample.blobstore.spi.BlobContent;
+import com.ge.predix.sample.blobstore.spi.BlobInfo;
+import com.ge.predix.sample.blobstore.spi.BlobNotFoundException;
+import com.ge.predix.sample.blobstore.spi.BlobStoreBackend;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Generates JPEG thumbnails of image Blobs and stores them next to the originals under
+ * {@code <keyPrefix><maxEdge>/<key>}, so each is decoded once and then served as a small read.
+ * <p/>
+ * Thumbnails are made on upload when told of writes through {@link BlobChangeListener}, or on
+ * first request otherwise, always on the given worker pool. Concurrent requests for the same
+ * version of a source share one generation. Each stored thumbnail carries the ETag of the source
+ * it was made from in a JPEG comment, one made from another version is regenerated, and
+ * deleting a source deletes its thumbnail.
+ * <p/>
+ * Listings carry no content type, for them the extension of the key decides whether a thumbnail
+ * can be made.
+ * <p/>
+ * Large sources are decoded subsampled, so the decoded pixels follow the thumbnail size rather
+ * than the image size. The encoded source is cached in memory while it is decoded, up to
+ * maxSourceBytes per worker.
+ */
+public class ThumbnailService implements BlobChangeListener {
+
+    Log log = LogFactory.getLog(ThumbnailService.class);
+
+    private static final String IMAGE_JPEG = "image/jpeg";
+
+    /**
+     * Starts the JPEG comment naming the version of the source a thumbnail was made from
+     */
+    private static final String SOURCE_COMMENT = "source ";
+
+    private final BlobStoreBackend backend;
+
+    private final ExecutorService workers;
+
+    private final int maxEdge;
+
+    private final float quality;
+
+    private final long maxSourceBytes;
+
+    private final String keyPrefix;
+
+    private final boolean generateOnUpload;
+
+    private final long waitMillis;
+
+    private final ContentTypeDetector contentTypeDetector;
+
+    private final Set<String> readableTypes = new HashSet<>(Arrays.asList(ImageIO.getReaderMIMETypes()));
+
+    private final ConcurrentMap<String, Future<Thumbnail>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * @param backend          store holding sources and thumbnails
+     * @param workers          bounded pool that decodes and encodes images
+     * @param maxEdge          longest side of a thumbnail in pixels
+     * @param quality          JPEG quality between 0 and 1
+     * @param maxSourceBytes   larger sources get no thumbnail
+     * @param keyPrefix        prepended to the keys of thumbnails
+     * @param generateOnUpload make thumbnails as images are written instead of on first request
+     * @param waitMillis          how long a request waits for a thumbnail being generated
+     * @param contentTypeDetector types Blobs listed without a content type by their key
+     */
+    public ThumbnailService(BlobStoreBackend backend, ExecutorService workers, int maxEdge, float quality,
+                            long maxSourceBytes, String keyPrefix, boolean generateOnUpload, long waitMillis,
+                            ContentTypeDetector contentTypeDetector) {
+        this.backend = backend;
+        this.workers = workers;
+        this.maxEdge = maxEdge;
+        this.quality = quality;
+        this.maxSourceBytes = maxSourceBytes;
+        this.keyPrefix = keyPrefix;
+        this.generateOnUpload = generateOnUpload;
+        this.waitMillis = waitMillis;
+        this.contentTypeDetector = contentTypeDetector;
+    }
+
+    /**
+     * @param info the Blob as read or listed, without a content type its key decides
+     * @return true if a thumbnail can be made of the Blob
+     */
+    public boolean supports(BlobInfo info) {
+        String contentType = info.getContentType() != null ? info.getContentType() : contentTypeDetector.fromName(info.getKey());
+        return contentType != null && readableTypes.contains(contentType)
+                && info.getSize() <= maxSourceBytes && !isThumbnail(info.getKey());
+    }
+
+    public boolean isThumbnail(String key) {
+        return key.startsWith(keyPrefix);
+    }
+
+    /**
+     * @return listing marker past every stored thumbnail, for listings that skip them
+     */
+    public String markerAfterThumbnails() {
+        return keyPrefix + Character.MAX_VALUE;
+    }
+
+    public String thumbnailKey(String key) {
+        return keyPrefix + maxEdge + "/" + key;
+    }
+
+    /**
+     * Returns the stored thumbnail of the source, generating it first if it is missing or older
+     * than the source.
+     *
+     * @param source metadata of the source Blob, as current as the caller has it
+     * @return Thumbnail JPEG no larger than maxEdge on either side
+     * @throws IllegalArgumentException                if the source is not a supported image
+     * @throws java.util.concurrent.TimeoutException   if generation takes longer than waitMillis
+     * @throws RejectedExecutionException              if the worker pool is saturated
+     * @throws Exception                               when the store or the image decoder fails
+     */
+    public Thumbnail get(BlobInfo source) throws Exception {
+        if (!supports(source)) {
+            throw new IllegalArgumentException("No thumbnail for " + source.getKey() + " of type " + source.getContentType());
+        }
+        try (BlobContent stored = backend.get(thumbnailKey(source.getKey()), null)) {
+            byte[] data = read(stored.getStream(), stored.getContentLength());
+            if (versionOf(source).equals(sourceVersionOf(data))) {
+                return new Thumbnail(data, IMAGE_JPEG, eTagOf(source));
+            }
+        } catch (BlobNotFoundException e) {
+            // Not generated yet
+        }
+        try {
+            return generate(source).get(waitMillis, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        }
+    }
+
+    @Override
+    public void written(BlobInfo info) {
+        if (generateOnUpload && supports(info)) {
+            try {
+                generate(info);
+            } catch (RejectedExecutionException e) {
+                // Made on first request instead
+                log.info("written(): Thumbnail pool busy, deferring " + info.getKey());
+            }
+        }
+    }
+
+    @Override
+    public void deleted(final String key) {
+        if (isThumbnail(key)) {
+            return;
+        }
+        try {
+            workers.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        backend.delete(thumbnailKey(key));
+                    } catch (BlobNotFoundException e) {
+                        // Never generated
+                    } catch (Exception e) {
+                        log.error("deleted(): Could not delete thumbnail of " + key + " : " + e.getMessage());
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            log.error("deleted(): Thumbnail pool busy, thumbnail of " + key + " left behind");
+        }
+    }
+
+    /**
+     * Starts generating the thumbnail of this version of the source unless it already is being
+     * generated
+     */
+    private Future<Thumbnail> generate(final BlobInfo source) {
+        final String key = thumbnailKey(source.getKey());
+        final String generation = key + " " + versionOf(source);
+        FutureTask<Thumbnail> task = new FutureTask<>(new Callable<Thumbnail>() {
+            @Override
+            public Thumbnail call() throws Exception {
+                try {
+                    try (BlobContent content = backend.get(source.getKey(), null)) {
+                        // Tag the thumbnail with the version actually read, which may be newer
+                        BlobInfo read = content.getInfo() != null ? content.getInfo() : source;
+                        byte[] data = withSourceVersion(render(source.getKey(), content), versionOf(read));
+                        backend.put(key, new ByteArrayInputStream(data), data.length, IMAGE_JPEG);
+                        if (log.isDebugEnabled())
+                            log.debug("generate(): Stored " + data.length + " byte thumbnail of " + source.getKey());
+                        return new Thumbnail(data, IMAGE_JPEG, eTagOf(read));
+                    }
+                } finally {
+                    inFlight.remove(generation);
+                }
+            }
+        });
+        Future<Thumbnail> running = inFlight.putIfAbsent(generation, task);
+        if (running != null) {
+            return running;
+        }
+        try {
+            workers.execute(task);
+        } catch (RejectedExecutionException e) {
+            inFlight.remove(generation, task);
+            throw e;
+        }
+        return task;
+    }
+
+    private byte[] render(String sourceKey, BlobContent content) throws Exception {
+        BufferedImage image;
+        try (ImageInputStream in = new MemoryCacheImageInputStream(content.getStream())) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) {
+                throw new IllegalArgumentException("No image decoder for " + sourceKey);
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                int longest = Math.max(reader.getWidth(0), reader.getHeight(0));
+                ImageReadParam param = reader.getDefaultReadParam();
+                // Skip pixels while decoding, keeping at least twice the target for a clean downscale
+                int step = Math.max(1, longest / (2 * maxEdge));
+                param.setSourceSubsampling(step, step, 0, 0);
+                image = reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+
+        double scale = Math.min(1.0, (double) maxEdge / Math.max(image.getWidth(), image.getHeight()));
+        int width = Math.max(1, (int) Math.round(image.getWidth() * scale));
+        int height = Math.max(1, (int) Math.round(image.getHeight() * scale));
+        BufferedImage thumbnail = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = thumbnail.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            // JPEG has no alpha, transparent areas become white
+            g.setColor(Color.WHITE);
+            g.fillRect(0, 0, width, height);
+            g.drawImage(image, 0, 0, width, height, null);
+        } finally {
+            g.dispose();
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(16 * 1024);
+        ImageWriter writer = ImageIO.getImageWritersByMIMEType(IMAGE_JPEG).next();
+        try (ImageOutputStream out = new MemoryCacheImageOutputStream(bytes)) {
+            writer.setOutput(out);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(quality);
+            writer.write(null, new IIOImage(thumbnail, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @return ETag of the thumbnail of the source, known without generating it
+     */
+    public String eTagOf(BlobInfo source) {
+        return versionOf(source) + "-" + maxEdge;
+    }
+
+    private static String versionOf(BlobInfo source) {
+        return source.getETag() != null ? source.getETag() : Long.toHexString(source.getLastModified());
+    }
+
+    /**
+     * Adds a comment segment naming the source version after the JFIF header, which has to
+     * follow the start of image directly
+     */
+    static byte[] withSourceVersion(byte[] jpeg, String version) {
+        byte[] comment = (SOURCE_COMMENT + version).getBytes(StandardCharsets.UTF_8);
+        int at = commentOffset(jpeg);
+        if (at < 0 || comment.length > 0xFFFF - 2) {
+            return jpeg;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(jpeg.length + comment.length + 4);
+        out.write(jpeg, 0, at);
+        out.write(0xFF);
+        out.write(0xFE);
+        out.write((comment.length + 2) >>> 8);
+        out.write((comment.length + 2) & 0xFF);
+        out.write(comment, 0, comment.length);
+        out.write(jpeg, at, jpeg.length - at);
+        return out.toByteArray();
+    }
+
+    /**
+     * @return the source version written by {@link #withSourceVersion}, null if there is none
+     */
+    static String sourceVersionOf(byte[] jpeg) {
+        int at = commentOffset(jpeg);
+        if (at < 0 || at + 4 > jpeg.length || (jpeg[at] & 0xFF) != 0xFF || (jpeg[at + 1] & 0xFF) != 0xFE) {
+            return null;
+        }
+        int length = ((jpeg[at + 2] & 0xFF) << 8) | (jpeg[at + 3] & 0xFF);
+        if (length < 2 || at + 2 + length > jpeg.length) {
+            return null;
+        }
+        String comment = new String(jpeg, at + 4, length - 2, StandardCharsets.UTF_8);
+        return comment.startsWith(SOURCE_COMMENT) ? comment.substring(SOURCE_COMMENT.length()) : null;
+    }
+
+    /**
+     * @return offset past the start of image and the JFIF header if there is one, -1 if the
+     * data is not a JPEG
+     */
+    private static int commentOffset(byte[] jpeg) {
+        if (jpeg.length < 4 || (jpeg[0] & 0xFF) != 0xFF || (jpeg[1] & 0xFF) != 0xD8) {
+            return -1;
+        }
+        if ((jpeg[2] & 0xFF) == 0xFF && (jpeg[3] & 0xFF) == 0xE0 && jpeg.length >= 6) {
+            int length = ((jpeg[4] & 0xFF) << 8) | (jpeg[5] & 0xFF);
+            return 2 + length <= jpeg.length - 2 ? 4 + length : -1;
+        }
+        return 2;
+    }
+
+    private static byte[] read(InputStream in, long length) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(length > 0 ? (int) length : 16 * 1024);
+        byte[] buffer = new byte[8192];
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,647 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.tier;
+
+import com.ge.predix.sample.blobstore.spi.BlobContent;
+import com.ge.predix.sample.blobstore.spi.BlobInfo;
+import com.ge.predix.sample.blobstore.spi.BlobNotFoundException;
+import com.ge.predix.sample.blobstore.spi.BlobPage;
+import com.ge.predix.sample.blobstore.spi.BlobRequestSigning;
+import com.ge.predix.sample.blobstore.spi.BlobStoreBackend;
+import com.ge.predix.sample.blobstore.spi.ByteRange;
+import com.ge.predix.sample.blobstore.spi.SignedRequest;
+import com.ge.predix.sample.blobstore.write.StripedLocks;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps recently written Blobs on a local disk tier in front of the Object Store, so the reads
+ * that follow an upload are served from local disk.
+ * <p/>
+ * Uploads are written to the local tier first and then copied to the Object Store. With
+ * {@link Acknowledge#REMOTE} the upload is acknowledged once both copies exist, with
+ * {@link Acknowledge#LOCAL} as soon as the local copy is on disk and the Object Store copy is
+ * made in the background. Blobs not yet in the Object Store are never demoted, and are found
+ * again and uploaded by {@link #recover()} after a restart.
+ * <p/>
+ * The local state of a key is changed under a short lock that is never held across Object
+ * Store calls. The Object Store writes and deletes of a key are ordered by a second lock, so an
+ * older local copy never reaches the Object Store after a newer one.
+ * <p/>
+ * {@link #demote()} drops Blobs from the local tier once they are older than hotMillis, and
+ * the least frequently read ones while the tier is over its capacity. Read counts are halved on
+ * every run so old popularity fades. Blobs larger than maxObjectBytes, or written while the
+ * tier is full, go straight to the Object Store.
+ * <p/>
+ * The Object Store stays the source of truth for listings. Blobs written by other instances or
+ * through signed requests are read from the Object Store.
+ */
+public class TieredBackend implements BlobStoreBackend, BlobRequestSigning {
+
+    Log log = LogFactory.getLog(TieredBackend.class);
+
+    public enum Acknowledge {
+        /**
+         * Acknowledge once the Blob is on the local tier, copy it to the Object Store afterwards
+         */
+        LOCAL,
+        /**
+         * Acknowledge once the Blob is on the local tier and in the Object Store
+         */
+        REMOTE
+    }
+
+    private final BlobStoreBackend hot;
+
+    private final BlobStoreBackend cold;
+
+    private final ExecutorService uploadExecutor;
+
+    private final Acknowledge acknowledge;
+
+    private final long capacityBytes;
+
+    private final long maxObjectBytes;
+
+    private final long hotMillis;
+
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * Keys whose local copy has not reached the Object Store yet, merged into listings
+     */
+    private final ConcurrentSkipListSet<String> unsynced = new ConcurrentSkipListSet<>();
+
+    /**
+     * Guards the entry and the local copy of a key
+     */
+    private final StripedLocks locks = new StripedLocks(256);
+
+    /**
+     * Orders the Object Store writes and deletes of a key, taken before locks when both are held
+     */
+    private final StripedLocks remoteLocks = new StripedLocks(256);
+
+    private final AtomicLong bytes = new AtomicLong();
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong uploads = new AtomicLong();
+
+    private final AtomicLong uploadFailures = new AtomicLong();
+
+    private final AtomicLong demotions = new AtomicLong();
+
+    /**
+     * @param hot            local tier, typically a FileSystemBackend on an SSD
+     * @param cold           Object Store the Blobs are kept in
+     * @param uploadExecutor copies Blobs to the Object Store in the background
+     * @param acknowledge    when uploads are acknowledged
+     * @param capacityBytes  size the local tier is kept under
+     * @param maxObjectBytes larger Blobs bypass the local tier
+     * @param hotMillis      age after which a Blob is demoted
+     */
+    public TieredBackend(BlobStoreBackend hot, BlobStoreBackend cold, ExecutorService uploadExecutor, Acknowledge acknowledge,
+                         long capacityBytes, long maxObjectBytes, long hotMillis) {
+        this.hot = hot;
+        this.cold = cold;
+        this.uploadExecutor = uploadExecutor;
+        this.acknowledge = acknowledge;
+        this.capacityBytes = capacityBytes;
+        this.maxObjectBytes = maxObjectBytes;
+        this.hotMillis = hotMillis;
+    }
+
+    @Override
+    public BlobInfo put(String key, InputStream content, long length, String contentType) throws Exception {
+        if (length < 0 || length > maxObjectBytes || bytes.get() + length > capacityBytes) {
+            // Too large for the tier or no room left, the local copy would be stale after this
+            remoteLocks.lock(key);
+            try {
+                invalidate(key);
+                return cold.put(key, content, length, contentType);
+            } finally {
+                remoteLocks.unlock(key);
+            }
+        }
+
+        BlobInfo info;
+        Entry entry;
+        locks.lock(key);
+        try {
+            info = hot.put(key, content, length, contentType);
+            entry = new Entry(info, System.currentTimeMillis());
+            Entry previous = entries.put(key, entry);
+            unsynced.add(key);
+            bytes.addAndGet(entry.size - (previous != null ? previous.size : 0));
+        } finally {
+            locks.unlock(key);
+        }
+
+        if (acknowledge == Acknowledge.REMOTE) {
+            try {
+                return upload(key, entry);
+            } catch (Exception e) {
+                // The write failed for the caller, its local copy must not be read or uploaded later
+                locks.lock(key);
+                try {
+                    drop(key, entry);
+                } catch (Exception dropFailure) {
+                    log.error("put(): Couldnt remove " + key + " from the local tier. Exception = " + dropFailure.getMessage());
+                } finally {
+                    locks.unlock(key);
+                }
+                throw e;
+            }
+        }
+        queueUpload(key, entry);
+        return info;
+    }
+
+    @Override
+    public BlobContent get(String key, ByteRange range) throws Exception {
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            try {
+                BlobContent content = hot.get(key, range);
+                entry.touch();
+                hits.incrementAndGet();
+                return content;
+            } catch (BlobNotFoundException e) {
+                // Demoted while reading
+            }
+        }
+        misses.incrementAndGet();
+        return cold.get(key, range);
+    }
+
+    @Override
+    public BlobInfo head(String key) throws Exception {
+        if (entries.containsKey(key)) {
+            try {
+                return hot.head(key);
+            } catch (BlobNotFoundException e) {
+                // Demoted while reading
+            }
+        }
+        return cold.head(key);
+    }
+
+    /**
+     * Lists the Object Store, adding the Blobs still waiting for their upload
+     */
+    @Override
+    public BlobPage list(String prefix, String marker, int maxKeys) throws Exception {
+        BlobPage page = cold.list(prefix, marker, maxKeys);
+        String from = marker;
+        if (prefix != null && (from == null || from.compareTo(prefix) < 0)) {
+            from = prefix;
+        }
+        Iterator<String> pending = (from == null ? unsynced : unsynced.tailSet(from, !from.equals(marker))).iterator();
+        if (!pending.hasNext()) {
+            return page;
+        }
+
+        TreeMap<String, BlobInfo> merged = new TreeMap<>();
+        for (BlobInfo info : page.getBlobs()) {
+            merged.put(info.getKey(), info);
+        }
+        int added = 0;
+        while (pending.hasNext() && added < maxKeys) {
+            String key = pending.next();
+            if (prefix != null && !key.startsWith(prefix)) {
+                break;
+            }
+            try {
+                merged.put(key, hot.head(key));
+                added++;
+            } catch (BlobNotFoundException e) {
+                // Deleted while listing
+            }
+        }
+        List<BlobInfo> blobs = new ArrayList<>(Math.min(maxKeys, merged.size()));
+        for (BlobInfo info : merged.values()) {
+            if (blobs.size() == maxKeys) {
+                break;
+            }
+            blobs.add(info);
+        }
+        boolean more = page.isTruncated() || merged.size() > maxKeys || pending.hasNext();
+        String nextMarker = more && !blobs.isEmpty() ? blobs.get(blobs.size() - 1).getKey() : null;
+        return new BlobPage(blobs, nextMarker);
+    }
+
+    @Override
+    public BlobInfo copy(String sourceKey, String targetKey) throws Exception {
+        flush(sourceKey);
+        remoteLocks.lock(targetKey);
+        try {
+            invalidate(targetKey);
+            return cold.copy(sourceKey, targetKey);
+        } finally {
+            remoteLocks.unlock(targetKey);
+        }
+    }
+
+    @Override
+    public BlobInfo move(String sourceKey, String targetKey) throws Exception {
+        BlobInfo info = copy(sourceKey, targetKey);
+        delete(sourceKey);
+        return info;
+    }
+
+    @Override
+    public void delete(String key) throws Exception {
+        remoteLocks.lock(key);
+        try {
+            invalidate(key);
+            cold.delete(key);
+        } finally {
+            remoteLocks.unlock(key);
+        }
+    }
+
+    @Override
+    public SignedRequest signGet(String key, long expiresInSeconds) throws Exception {
+        flush(key);
+        return signing().signGet(key, expiresInSeconds);
+    }
+
+    @Override
+    public SignedRequest signPut(String key, String contentType, long expiresInSeconds) throws Exception {
+        invalidate(key);
+        return signing().signPut(key, contentType, expiresInSeconds);
+    }
+
+    @Override
+    public String initiateMultipartUpload(String key, String contentType) throws Exception {
+        invalidate(key);
+        return signing().initiateMultipartUpload(key, contentType);
+    }
+
+    @Override
+    public SignedRequest signUploadPart(String key, String uploadId, int partNumber, long expiresInSeconds) throws Exception {
+        return signing().signUploadPart(key, uploadId, partNumber, expiresInSeconds);
+    }
+
+    @Override
+    public BlobInfo completeMultipartUpload(String key, String uploadId, SortedMap<Integer, String> partETags) throws Exception {
+        invalidate(key);
+        return signing().completeMultipartUpload(key, uploadId, partETags);
+    }
+
+    @Override
+    public void abortMultipartUpload(String key, String uploadId) throws Exception {
+        signing().abortMultipartUpload(key, uploadId);
+    }
+
+    /**
+     * Registers the Blobs already on the local tier, e.g. after a restart, and reconciles them
+     * with the Object Store.
+     */
+    public void recover() throws Exception {
+        reconcile(register());
+    }
+
+    /**
+     * Registers the Blobs already on the local tier as not uploaded yet, so they are read and
+     * listed from the local tier until {@link #reconcile(List)} has checked them. Only reads the
+     * local tier, meant to run before the backend takes requests.
+     *
+     * @return keys of the Blobs registered
+     */
+    public List<String> register() throws Exception {
+        List<String> found = new ArrayList<>();
+        String marker = null;
+        do {
+            BlobPage page = hot.list(null, marker, 1000);
+            for (BlobInfo info : page.getBlobs()) {
+                Entry entry = new Entry(info, info.getLastModified());
+                if (entries.putIfAbsent(info.getKey(), entry) != null) {
+                    continue;
+                }
+                unsynced.add(info.getKey());
+                bytes.addAndGet(entry.size);
+                found.add(info.getKey());
+            }
+            marker = page.getNextMarker();
+        } while (marker != null);
+        log.info("register(): " + found.size() + " Blobs on the local tier, " + bytes.get() + " bytes");
+        return found;
+    }
+
+    /**
+     * Checks registered Blobs against the Object Store. Ones it has with the same ETag are
+     * taken as uploaded. Missing ones, and ones written locally after the version the Object
+     * Store has, are uploaded again. Ones the Object Store has a newer version of are dropped
+     * from the local tier.
+     */
+    public void reconcile(List<String> keys) throws Exception {
+        for (String key : keys) {
+            Entry entry = entries.get(key);
+            if (entry == null || entry.synced) {
+                continue;
+            }
+            BlobInfo remote;
+            try {
+                remote = cold.head(key);
+            } catch (BlobNotFoundException e) {
+                queueUpload(key, entry);
+                continue;
+            }
+            boolean newer = false;
+            locks.lock(key);
+            try {
+                if (entries.get(key) != entry || entry.synced) {
+                    continue;
+                }
+                if (sameVersion(entry.eTag, remote.getETag())) {
+                    entry.synced = true;
+                    unsynced.remove(key);
+                } else if (entry.created > remote.getLastModified()) {
+                    newer = true;
+                } else {
+                    drop(key, entry);
+                }
+            } finally {
+                locks.unlock(key);
+            }
+            if (newer) {
+                queueUpload(key, entry);
+            }
+        }
+    }
+
+    /**
+     * Demotes Blobs older than hotMillis, then the least frequently read ones until the tier is
+     * back under 90% of its capacity. Uploads that failed are queued again.
+     */
+    public void demote() {
+        long now = System.currentTimeMillis();
+        List<Map.Entry<String, Entry>> candidates = new ArrayList<>();
+        for (Map.Entry<String, Entry> e : entries.entrySet()) {
+            Entry entry = e.getValue();
+            if (!entry.synced) {
+                if (!entry.queued.get()) {
+                    queueUpload(e.getKey(), entry);
+                }
+            } else if (now - entry.created > hotMillis) {
+                demote(e.getKey(), entry);
+            } else {
+                candidates.add(e);
+            }
+            // Halve the read counts so that old popularity fades
+            int count = entry.reads.get();
+            entry.reads.compareAndSet(count, count >> 1);
+        }
+
+        long target = capacityBytes / 10 * 9;
+        if (bytes.get() <= target) {
+            return;
+        }
+        Collections.sort(candidates, new Comparator<Map.Entry<String, Entry>>() {
+            @Override
+            public int compare(Map.Entry<String, Entry> a, Map.Entry<String, Entry> b) {
+                int c = Integer.compare(a.getValue().reads.get(), b.getValue().reads.get());
+                return c != 0 ? c : Long.compare(a.getValue().lastRead, b.getValue().lastRead);
+            }
+        });
+        for (Map.Entry<String, Entry> e : candidates) {
+            if (bytes.get() <= target) {
+                break;
+            }
+            demote(e.getKey(), e.getValue());
+        }
+    }
+
+    public long getBytes() {
+        return bytes.get();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public int getUnsynced() {
+        return unsynced.size();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getUploads() {
+        return uploads.get();
+    }
+
+    public long getUploadFailures() {
+        return uploadFailures.get();
+    }
+
+    public long getDemotions() {
+        return demotions.get();
+    }
+
+    private void queueUpload(final String key, final Entry entry) {
+        if (!entry.queued.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            uploadExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        upload(key, entry);
+                    } catch (Exception e) {
+                        log.error("queueUpload(): Couldnt copy " + key + " to the Object Store, retried on the next demotion run. Exception = " + e.getMessage());
+                    } finally {
+                        entry.queued.set(false);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Picked up by the next demotion run
+            entry.queued.set(false);
+        }
+    }
+
+    /**
+     * Copies the local copy of the key to the Object Store, unless it has been replaced or
+     * dropped in the meantime.
+     */
+    private BlobInfo upload(String key, Entry entry) throws Exception {
+        remoteLocks.lock(key);
+        try {
+            if (entries.get(key) != entry || entry.synced) {
+                // Replaced, dropped or uploaded meanwhile, a newer local copy is uploaded on its own
+                return entry.info;
+            }
+            BlobInfo info;
+            try (BlobContent content = hot.get(key, null)) {
+                if (!sameVersion(entry.eTag, content.getInfo().getETag())) {
+                    return entry.info;
+                }
+                info = cold.put(key, content.getStream(), content.getContentLength(), content.getInfo().getContentType());
+            }
+            locks.lock(key);
+            try {
+                entry.synced = true;
+                if (entries.get(key) == entry) {
+                    unsynced.remove(key);
+                }
+            } finally {
+                locks.unlock(key);
+            }
+            uploads.incrementAndGet();
+            return info;
+        } catch (Exception e) {
+            uploadFailures.incrementAndGet();
+            throw e;
+        } finally {
+            remoteLocks.unlock(key);
+        }
+    }
+
+    /**
+     * Makes sure the Object Store has the latest local copy of the key
+     */
+    private void flush(String key) throws Exception {
+        Entry entry = entries.get(key);
+        if (entry != null && !entry.synced) {
+            upload(key, entry);
+        }
+    }
+
+    /**
+     * Drops the local copy of a key about to be written to the Object Store directly
+     */
+    private void invalidate(String key) throws Exception {
+        locks.lock(key);
+        try {
+            drop(key, entries.get(key));
+        } finally {
+            locks.unlock(key);
+        }
+    }
+
+    private void demote(String key, Entry entry) {
+        try {
+            locks.lock(key);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        try {
+            if (entry.synced && entries.get(key) == entry) {
+                drop(key, entry);
+                demotions.incrementAndGet();
+            }
+        } catch (Exception e) {
+            log.error("demote(): Couldnt remove " + key + " from the local tier. Exception = " + e.getMessage());
+        } finally {
+            locks.unlock(key);
+        }
+    }
+
+    /**
+     * Removes the entry and its local copy if the entry is still the current one, the caller
+     * holds the lock of the key, under which local copies are replaced
+     */
+    private void drop(String key, Entry entry) throws Exception {
+        if (entry != null && entries.remove(key, entry)) {
+            bytes.addAndGet(-entry.size);
+            unsynced.remove(key);
+            hot.delete(key);
+        }
+    }
+
+    /**
+     * ETags compared without quotes or case, stores differ in both
+     */
+    private static boolean sameVersion(String a, String b) {
+        if (a == null || b == null) {
+            return false;
+        }
+        return a.replace("\"", "").equalsIgnoreCase(b.replace("\"", ""));
+    }
+
+    private BlobRequestSigning signing() {
+        if (!(cold instanceof BlobRequestSigning)) {
+            throw new UnsupportedOperationException("The configured backend does not support signed requests");
+        }
+        return (BlobRequestSigning) cold;
+    }
+
+    private static class Entry {
+
+        /**
+         * The local copy as written
+         */
+        final BlobInfo info;
+
+        final long size;
+
+        final String eTag;
+
+        final long created;
+
+        final AtomicInteger reads = new AtomicInteger();
+
+        final AtomicBoolean queued = new AtomicBoolean();
+
+        volatile long lastRead;
+
+        volatile boolean synced;
+
+        Entry(BlobInfo info, long created) {
+            this.info = info;
+            this.size = info.getSize();
+            this.eTag = info.getETag();
+            this.created = created;
+            this.lastRead = created;
+        }
+
+        void touch() {
+            reads.incrementAndGet();
+            lastRead = System.currentTimeMillis();
+        }
+    }
+}
@@ -0,0 +1,392 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.write;
+
+import com.ge.predix.sample.blobstore.meta.BlobMetadataService;
+import com.ge.predix.sample.blobstore.spi.BlobInfo;
+import com.ge.predix.sample.blobstore.spi.BlobNotFoundException;
+import com.ge.predix.sample.blobstore.spi.BlobStoreBackend;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Serializes writes of the same key on this instance and checks their If-Match and
+ * If-None-Match preconditions. A write waits up to lockWaitMillis for a write of the same key
+ * to finish, then fails with WriteConflictException, 0 rejects concurrent writes outright.
+ * <p/>
+ * The Object Stores behind this service take no conditional headers on writes, so preconditions
+ * are checked with a fresh HEAD while the key is locked. Cached metadata can be stale, other
+ * instances write the same keys, so it is never taken as the answer: a precondition that fails
+ * on it is confirmed with a fresh HEAD before the upload starts. Writes of the same key from
+ * other instances are not serialized.
+ * <p/>
+ * Conditional writes of a known length up to maxStagedBytes are uploaded to a staging key next
+ * to their key first, the key is only locked to check the condition and move the staged Blob
+ * into place. Unconditional writes are never staged, the move would cost them a copy, larger and
+ * unconditional writes keep the key locked while they upload.
+ */
+public class ConditionalWrites {
+
+    Log log = LogFactory.getLog(ConditionalWrites.class);
+
+    /**
+     * Separates a staging key from the key it is staged for, followed by 32 hex digits
+     */
+    public static final String STAGING_MARKER = "#staging-";
+
+    private final BlobMetadataService metadataService;
+
+    private final BlobStoreBackend backend;
+
+    private final StripedLocks locks;
+
+    private final long lockWaitMillis;
+
+    private final long maxStagedBytes;
+
+    private final AtomicLong completed = new AtomicLong();
+
+    private final AtomicLong staged = new AtomicLong();
+
+    private final AtomicLong contended = new AtomicLong();
+
+    private final AtomicLong conflicts = new AtomicLong();
+
+    private final AtomicLong preconditionsFailed = new AtomicLong();
+
+    private final AtomicLong lockWaitNanos = new AtomicLong();
+
+    /**
+     * @param metadataService reports writes and reads the current metadata of keys
+     * @param backend         stores staged writes and moves them into place
+     * @param stripes         locks keys are hashed onto
+     * @param lockWaitMillis  time a write waits for another write of the same key
+     * @param maxStagedBytes  largest conditional write that is staged, 0 to lock keys for every
+     *                        whole write, e.g. when the backend acknowledges writes before they
+     *                        reach the Object Store and a move would wait for them
+     */
+    public ConditionalWrites(BlobMetadataService metadataService, BlobStoreBackend backend, int stripes,
+                             long lockWaitMillis, long maxStagedBytes) {
+        this.metadataService = metadataService;
+        this.backend = backend;
+        this.locks = new StripedLocks(stripes);
+        this.lockWaitMillis = lockWaitMillis;
+        this.maxStagedBytes = maxStagedBytes;
+    }
+
+    /**
+     * @return the key a staged write of the key is uploaded to
+     */
+    public static String stagingKey(String key) {
+        return key + STAGING_MARKER + UUID.randomUUID().toString().replace("-", "");
+    }
+
+    /**
+     * @return the key a staging key was made for, the key itself if it is not a staging key
+     */
+    public static String targetOf(String key) {
+        int marker = key.length() - STAGING_MARKER.length() - 32;
+        if (marker < 0 || !key.startsWith(STAGING_MARKER, marker)) {
+            return key;
+        }
+        for (int i = marker + STAGING_MARKER.length(); i < key.length(); i++) {
+            if (Character.digit(key.charAt(i), 16) < 0) {
+                return key;
+            }
+        }
+        return key.substring(0, marker);
+    }
+
+    /**
+     * Uploads the Blob, staged if it is conditional and its length allows, and commits it once
+     * the condition holds.
+     *
+     * @param key       name of the Blob to write
+     * @param condition precondition of the write
+     * @param length    length of the Blob, -1 if unknown
+     * @param upload    uploads the Blob under the key it is given
+     * @return BlobInfo of the written Blob
+     * @throws WriteConflictException     if another write of the key did not finish in time
+     * @throws PreconditionFailedException if the condition does not hold
+     * @throws Exception                  thrown by the upload or the commit
+     */
+    public BlobInfo write(String key, WriteCondition condition, long length, Upload upload) throws Exception {
+        Write write = begin(key, condition, length);
+        BlobInfo uploaded;
+        try {
+            uploaded = upload.put(write.getKey());
+        } catch (Exception e) {
+            write.abort();
+            throw e;
+        }
+        return write.commit(uploaded);
+    }
+
+    /**
+     * Starts a write that uploads on another thread. The upload goes to the key of the returned
+     * Write, which must then be committed, or aborted if the upload failed.
+     *
+     * @throws WriteConflictException     if the key stays locked and another write of it did not
+     *                                    finish in time
+     * @throws PreconditionFailedException if the condition does not hold
+     * @throws Exception                  if the current metadata cannot be read
+     */
+    public Write begin(String key, WriteCondition condition, long length) throws Exception {
+        if (!condition.isNone() && maxStagedBytes > 0 && length >= 0 && length <= maxStagedBytes) {
+            // Fail before the upload if the cache says so and a fresh HEAD agrees, the condition
+            // is checked for real at commit
+            BlobInfo cached = metadataService.cached(key);
+            if (cached != null && !condition.isSatisfiedBy(cached)) {
+                check(key, condition);
+            }
+            return new Write(key, condition, stagingKey(key), null);
+        }
+        return new Write(key, condition, key, acquire(key, condition));
+    }
+
+    /**
+     * Runs the write once the key is locked and the condition holds, for writes that cannot be
+     * staged such as the completion of a multipart upload.
+     *
+     * @param key       name of the Blob to write
+     * @param condition precondition of the write
+     * @param write     the write itself
+     * @return BlobInfo returned by the write
+     * @throws WriteConflictException     if another write of the key did not finish in time
+     * @throws PreconditionFailedException if the condition does not hold
+     * @throws Exception                  thrown by the write
+     */
+    public BlobInfo write(String key, WriteCondition condition, Callable<BlobInfo> write) throws Exception {
+        Permit permit = acquire(key, condition);
+        BlobInfo info = null;
+        try {
+            info = write.call();
+            return info;
+        } finally {
+            permit.release(info);
+        }
+    }
+
+    /**
+     * Locks the key and checks the condition, for writes that complete on another thread. The
+     * permit must be released once the write is done, successful or not.
+     *
+     * @throws WriteConflictException     if another write of the key did not finish in time
+     * @throws PreconditionFailedException if the condition does not hold
+     * @throws Exception                  if the current metadata cannot be read
+     */
+    public Permit acquire(String key, WriteCondition condition) throws Exception {
+        lock(key);
+        boolean acquired = false;
+        try {
+            check(key, condition);
+            acquired = true;
+            return new Permit(key);
+        } finally {
+            if (!acquired) {
+                locks.unlock(key);
+            }
+        }
+    }
+
+    public long getCompleted() {
+        return completed.get();
+    }
+
+    public long getStaged() {
+        return staged.get();
+    }
+
+    public long getContended() {
+        return contended.get();
+    }
+
+    public long getConflicts() {
+        return conflicts.get();
+    }
+
+    public long getPreconditionsFailed() {
+        return preconditionsFailed.get();
+    }
+
+    public long getLockWaitMillis() {
+        return lockWaitNanos.get() / 1000000;
+    }
+
+    private void lock(String key) throws Exception {
+        if (locks.tryLock(key)) {
+            return;
+        }
+        contended.incrementAndGet();
+        long start = System.nanoTime();
+        boolean locked = lockWaitMillis > 0 && locks.tryLock(key, lockWaitMillis);
+        lockWaitNanos.addAndGet(System.nanoTime() - start);
+        if (!locked) {
+            conflicts.incrementAndGet();
+            log.info("lock(): Rejected write of " + key + ", another write of it is in progress");
+            throw new WriteConflictException(key);
+        }
+    }
+
+    private void check(String key, WriteCondition condition) throws Exception {
+        if (condition.isNone()) {
+            return;
+        }
+        BlobInfo current;
+        try {
+            current = metadataService.headFresh(key);
+        } catch (BlobNotFoundException e) {
+            current = null;
+        }
+        if (condition.isSatisfiedBy(current)) {
+            return;
+        }
+        preconditionsFailed.incrementAndGet();
+        if (log.isDebugEnabled())
+            log.debug("check(): " + condition + " does not hold for " + key);
+        throw new PreconditionFailedException(key);
+    }
+
+    /**
+     * Best effort, a staged Blob left behind only costs storage
+     */
+    private void discard(String stagingKey) {
+        try {
+            backend.delete(stagingKey);
+        } catch (Exception e) {
+            log.error("discard(): Staged Blob " + stagingKey + " not deleted : " + e.getMessage());
+        }
+    }
+
+    /**
+     * Callback uploading the content of a write.
+     */
+    public interface Upload {
+
+        /**
+         * @param key the key to upload to, a staging key if the write is staged
+         * @return BlobInfo of the uploaded Blob
+         */
+        BlobInfo put(String key) throws Exception;
+    }
+
+    /**
+     * One write between begin and commit. A staged write holds no lock until it commits, one
+     * that is not staged holds the lock of its key from begin on.
+     */
+    public class Write {
+
+        private final String key;
+
+        private final WriteCondition condition;
+
+        private final String uploadKey;
+
+        private final Permit permit;
+
+        Write(String key, WriteCondition condition, String uploadKey, Permit permit) {
+            this.key = key;
+            this.condition = condition;
+            this.uploadKey = uploadKey;
+            this.permit = permit;
+        }
+
+        /**
+         * @return the key to upload the Blob to
+         */
+        public String getKey() {
+            return uploadKey;
+        }
+
+        /**
+         * Moves a staged Blob into place once the key is locked and the condition holds.
+         *
+         * @param uploaded the Blob uploaded to {@link #getKey()}
+         * @return BlobInfo of the written Blob
+         */
+        public BlobInfo commit(BlobInfo uploaded) throws Exception {
+            if (permit != null) {
+                permit.release(uploaded);
+                return uploaded;
+            }
+            Permit commit;
+            try {
+                commit = acquire(key, condition);
+            } catch (Exception e) {
+                discard(uploadKey);
+                throw e;
+            }
+            BlobInfo info = null;
+            try {
+                info = backend.move(uploadKey, key);
+                staged.incrementAndGet();
+                return info;
+            } catch (Exception e) {
+                log.error("commit(): Staged Blob " + uploadKey + " not moved to " + key + " : " + e.getMessage());
+                discard(uploadKey);
+                throw e;
+            } finally {
+                commit.release(info);
+            }
+        }
+
+        /**
+         * Gives up the write after a failed upload.
+         */
+        public void abort() {
+            if (permit != null) {
+                permit.release(null);
+            } else {
+                discard(uploadKey);
+            }
+        }
+    }
+
+    /**
+     * Lock of a key held for one write. Releasing reports the write to the metadata service, or
+     * only drops the cached metadata of the key if the write failed.
+     */
+    public class Permit {
+
+        private final String key;
+
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        Permit(String key) {
+            this.key = key;
+        }
+
+        /**
+         * @param info the Blob written, null if the write failed
+         */
+        public void release(BlobInfo info) {
+            if (released.compareAndSet(false, true)) {
+                if (info != null) {
+                    metadataService.written(info);
+                    completed.incrementAndGet();
+                } else {
+                    metadataService.invalidate(key);
+                }
+                locks.unlock(key);
+            }
+        }
+    }
+}
@@ -0,0 +1,35 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.write;
+
+/**
+ * Thrown when an If-Match or If-None-Match header is set but names no ETag.
+ */
+public class InvalidConditionException extends IllegalArgumentException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String header;
+
+    public InvalidConditionException(String header) {
+        super("Invalid precondition header: '" + header + "'");
+        this.header = header;
+    }
+
+    public String getHeader() {
+        return header;
+    }
+}
@@ -0,0 +1,35 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.write;
+
+/**
+ * Thrown when the precondition of a write does not hold for the current Blob.
+ */
+public class PreconditionFailedException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String key;
+
+    public PreconditionFailedException(String key) {
+        super("Precondition failed for " + key);
+        this.key = key;
+    }
+
+    public String getKey() {
+        return key;
+    }
+}
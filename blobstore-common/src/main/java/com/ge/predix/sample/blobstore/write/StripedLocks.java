@@ -0,0 +1,73 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.write;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fixed set of locks keys are hashed onto, so locking a key costs no allocation and the number
+ * of locks stays bounded. Unrelated keys sharing a stripe wait for each other, more stripes make
+ * that rarer. Locks are semaphores so an asynchronous write can release from another thread.
+ */
+public class StripedLocks {
+
+    private final Semaphore[] stripes;
+
+    public StripedLocks(int stripeCount) {
+        int size = Integer.highestOneBit(Math.max(1, stripeCount - 1)) << 1;
+        stripes = new Semaphore[size];
+        for (int i = 0; i < size; i++) {
+            stripes[i] = new Semaphore(1);
+        }
+    }
+
+    /**
+     * @return boolean true if the lock of the key was free and is now held
+     */
+    public boolean tryLock(String key) {
+        return stripeOf(key).tryAcquire();
+    }
+
+    /**
+     * Waits for the lock of the key as long as it takes
+     */
+    public void lock(String key) throws InterruptedException {
+        stripeOf(key).acquire();
+    }
+
+    /**
+     * @return boolean true if the lock of the key was acquired within the wait
+     */
+    public boolean tryLock(String key, long waitMillis) throws InterruptedException {
+        return stripeOf(key).tryAcquire(waitMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public void unlock(String key) {
+        stripeOf(key).release();
+    }
+
+    public int getStripeCount() {
+        return stripes.length;
+    }
+
+    private Semaphore stripeOf(String key) {
+        int h = key.hashCode();
+        // Spread the high bits, String hashes of similar keys differ mostly in the low ones
+        h ^= (h >>> 16);
+        return stripes[h & (stripes.length - 1)];
+    }
+}
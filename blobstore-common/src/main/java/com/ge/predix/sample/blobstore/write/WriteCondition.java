@@ -0,0 +1,133 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.write;
+
+import com.ge.predix.sample.blobstore.spi.BlobInfo;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Precondition of a write, from the If-Match and If-None-Match request headers. Either header
+ * holds "*" or a comma separated list of ETags, quoted or not. A header naming no ETag at all
+ * is rejected rather than read as "*".
+ */
+public class WriteCondition {
+
+    private static final WriteCondition NONE = new WriteCondition(null, null);
+
+    /**
+     * ETags one of which the current Blob must have, empty for any existing Blob, null if unset
+     */
+    private final List<String> ifMatch;
+
+    /**
+     * ETags none of which the current Blob may have, empty for no Blob at all, null if unset
+     */
+    private final List<String> ifNoneMatch;
+
+    private WriteCondition(List<String> ifMatch, List<String> ifNoneMatch) {
+        this.ifMatch = ifMatch;
+        this.ifNoneMatch = ifNoneMatch;
+    }
+
+    public static WriteCondition none() {
+        return NONE;
+    }
+
+    /**
+     * @param ifMatch     value of the If-Match header, may be null
+     * @param ifNoneMatch value of the If-None-Match header, may be null
+     * @return WriteCondition for the headers
+     * @throws InvalidConditionException if a header is set but names no ETag
+     */
+    public static WriteCondition fromHeaders(String ifMatch, String ifNoneMatch) {
+        if (ifMatch == null && ifNoneMatch == null) {
+            return NONE;
+        }
+        return new WriteCondition(parse(ifMatch), parse(ifNoneMatch));
+    }
+
+    public boolean isNone() {
+        return ifMatch == null && ifNoneMatch == null;
+    }
+
+    /**
+     * @param current the Blob as it is now, null if there is none
+     * @return boolean true if the write may go ahead
+     */
+    public boolean isSatisfiedBy(BlobInfo current) {
+        if (ifMatch != null) {
+            if (current == null) {
+                return false;
+            }
+            if (!ifMatch.isEmpty() && !ifMatch.contains(normalize(current.getETag()))) {
+                return false;
+            }
+        }
+        if (ifNoneMatch != null && current != null) {
+            if (ifNoneMatch.isEmpty() || ifNoneMatch.contains(normalize(current.getETag()))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "If-Match " + ifMatch + ", If-None-Match " + ifNoneMatch;
+    }
+
+    private static List<String> parse(String header) {
+        if (header == null) {
+            return null;
+        }
+        if (header.trim().equals("*")) {
+            return Collections.emptyList();
+        }
+        List<String> eTags = new ArrayList<>();
+        for (String eTag : header.split(",")) {
+            String normalized = normalize(eTag);
+            if (normalized != null && !normalized.isEmpty()) {
+                eTags.add(normalized);
+            }
+        }
+        if (eTags.isEmpty()) {
+            // An empty list would otherwise mean "*"
+            throw new InvalidConditionException(header);
+        }
+        return eTags;
+    }
+
+    /**
+     * Strips whitespace, the weak marker and quotes, S3 returns ETags quoted or not depending
+     * on the call
+     */
+    private static String normalize(String eTag) {
+        if (eTag == null) {
+            return null;
+        }
+        String normalized = eTag.trim();
+        if (normalized.startsWith("W/")) {
+            normalized = normalized.substring(2);
+        }
+        if (normalized.length() >= 2 && normalized.startsWith("\"") && normalized.endsWith("\"")) {
+            normalized = normalized.substring(1, normalized.length() - 1);
+        }
+        return normalized;
+    }
+}
@@ -0,0 +1,35 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.write;
+
+/**
+ * Thrown when another write of the same key holds its lock for longer than a write may wait.
+ */
+public class WriteConflictException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String key;
+
+    public WriteConflictException(String key) {
+        super("Write in progress for " + key);
+        this.key = key;
+    }
+
+    public String getKey() {
+        return key;
+    }
+}
@@ -0,0 +1,156 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.archive;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class TarArchiveInputTest {
+
+    @Test
+    public void paxRecordsAreSplitByLength() throws Exception {
+        Map<String, String> records = TarArchiveInput.paxRecords(pax("path=a\nb", "size=12", "path=c/d"));
+        assertEquals("c/d", records.get("path"));
+        assertEquals("12", records.get("size"));
+
+        records = TarArchiveInput.paxRecords(pax("comment=x\ny\nz"));
+        assertEquals("x\ny\nz", records.get("comment"));
+    }
+
+    @Test(expected = IOException.class)
+    public void paxRecordLongerThanHeaderIsRejected() throws Exception {
+        TarArchiveInput.paxRecords("99 path=a\n".getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test(expected = IOException.class)
+    public void paxRecordWithoutLengthIsRejected() throws Exception {
+        TarArchiveInput.paxRecords("path=a\n".getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test(expected = IOException.class)
+    public void paxRecordWithoutKeyIsRejected() throws Exception {
+        TarArchiveInput.paxRecords("5 =a\n".getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void paxHeaderOverridesNameAndSize() throws Exception {
+        byte[] content = "hello tar".getBytes(StandardCharsets.UTF_8);
+        String longName = "dir/" + repeat('n', 200) + ".txt";
+        ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        byte[] extended = pax("path=" + longName, "size=" + content.length);
+        entry(archive, "PaxHeaders/x", 'x', extended);
+        // The ustar size field is left at 0, the pax size applies
+        entry(archive, "short", '0', new byte[0]);
+        archive.write(content);
+        archive.write(new byte[512 - content.length]);
+        entry(archive, "dir/", '5', new byte[0]);
+        entry(archive, "second", '0', "2".getBytes(StandardCharsets.UTF_8));
+        archive.write(new byte[1024]);
+
+        TarArchiveInput in = new TarArchiveInput(new ByteArrayInputStream(archive.toByteArray()));
+        TarArchiveInput.Entry first = in.next();
+        assertEquals(longName, first.name);
+        assertEquals(content.length, first.size);
+        assertArrayEquals(content, readAll(in));
+
+        TarArchiveInput.Entry second = in.next();
+        assertEquals("second", second.name);
+        // Left unread, next skips it
+        assertNull(in.next());
+    }
+
+    @Test(expected = IOException.class)
+    public void negativePaxSizeIsRejected() throws Exception {
+        ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        entry(archive, "PaxHeaders/x", 'x', pax("size=-1"));
+        entry(archive, "file", '0', new byte[0]);
+        new TarArchiveInput(new ByteArrayInputStream(archive.toByteArray())).next();
+    }
+
+    /**
+     * Builds pax records, each prefixed with its own length in bytes
+     */
+    private static byte[] pax(String... keyValues) {
+        StringBuilder out = new StringBuilder();
+        for (String keyValue : keyValues) {
+            int length = keyValue.getBytes(StandardCharsets.UTF_8).length + 2;
+            int total = length + String.valueOf(length).length();
+            if (String.valueOf(total).length() != String.valueOf(length).length()) {
+                total++;
+            }
+            out.append(total).append(' ').append(keyValue).append('\n');
+        }
+        return out.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes a ustar header for the entry followed by its data padded to the block size
+     */
+    private static void entry(ByteArrayOutputStream archive, String name, char type, byte[] data) throws IOException {
+        byte[] header = new byte[512];
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        System.arraycopy(nameBytes, 0, header, 0, Math.min(100, nameBytes.length));
+        octal(header, 100, 8, 0644);
+        octal(header, 124, 12, data.length);
+        octal(header, 136, 12, 1500000000L);
+        header[156] = (byte) type;
+        System.arraycopy("ustar\0".getBytes(StandardCharsets.US_ASCII), 0, header, 257, 6);
+        header[263] = '0';
+        header[264] = '0';
+        Arrays.fill(header, 148, 156, (byte) ' ');
+        long checksum = 0;
+        for (byte b : header) {
+            checksum += b & 0xff;
+        }
+        octal(header, 148, 8, checksum);
+        archive.write(header);
+        archive.write(data);
+        archive.write(new byte[(512 - data.length % 512) % 512]);
+    }
+
+    private static void octal(byte[] header, int offset, int length, long value) {
+        String digits = Long.toOctalString(value);
+        byte[] field = (repeat('0', length - 1 - digits.length()) + digits).getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(field, 0, header, offset, field.length);
+    }
+
+    private static String repeat(char c, int count) {
+        char[] chars = new char[count];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[100];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+}
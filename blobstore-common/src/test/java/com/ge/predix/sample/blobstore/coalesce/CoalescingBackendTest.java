@@ -0,0 +1,269 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.coalesce;
+
+import com.ge.predix.sample.blobstore.spi.BlobContent;
+import com.ge.predix.sample.blobstore.spi.BlobInfo;
+import com.ge.predix.sample.blobstore.spi.BlobPage;
+import com.ge.predix.sample.blobstore.spi.BlobStoreBackend;
+import com.ge.predix.sample.blobstore.spi.ByteRange;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CoalescingBackendTest {
+
+    private static final int RING_BYTES = 64 * 1024;
+
+    private static final byte[] DATA = new byte[1024 * 1024];
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path spillDirectory;
+
+    private ExecutorService pumpExecutor;
+
+    private ExecutorService clients;
+
+    private Upstream upstream;
+
+    @Before
+    public void setUp() throws Exception {
+        new Random(1).nextBytes(DATA);
+        spillDirectory = folder.newFolder("spill").toPath();
+        pumpExecutor = Executors.newFixedThreadPool(2);
+        clients = Executors.newCachedThreadPool();
+        upstream = new Upstream();
+    }
+
+    @After
+    public void tearDown() {
+        pumpExecutor.shutdownNow();
+        clients.shutdownNow();
+    }
+
+    @Test
+    public void slowReaderReadsFromSpillWhileFastReadersKeepUp() throws Exception {
+        CoalescingBackend backend = new CoalescingBackend(upstream, pumpExecutor, spillDirectory, RING_BYTES, 2, 1L << 30);
+        List<Future<byte[]>> reads = readConcurrently(backend, "key", 3);
+        for (Future<byte[]> read : reads) {
+            assertArrayEquals(DATA, read.get(30, TimeUnit.SECONDS));
+        }
+        assertEquals(1, upstream.reads.get());
+        assertEquals(2, backend.getCoalescedReads());
+        // Only what the slow reader had not read yet went to disk
+        assertTrue(backend.getSpilledBytes() > 0);
+        assertTrue(backend.getSpilledBytes() <= DATA.length - RING_BYTES);
+        assertEquals(0, backend.getDetachedReads());
+        assertEquals(0, spillDirectory.toFile().list().length);
+    }
+
+    @Test
+    public void readersBeyondTheSpillBudgetReadOnTheirOwn() throws Exception {
+        CoalescingBackend backend = new CoalescingBackend(upstream, pumpExecutor, spillDirectory, RING_BYTES, 2, RING_BYTES);
+        List<Future<byte[]>> reads = readConcurrently(backend, "key", 3);
+        for (Future<byte[]> read : reads) {
+            assertArrayEquals(DATA, read.get(30, TimeUnit.SECONDS));
+        }
+        // At least the slow reader, fast ones too if they fell a ring behind
+        assertTrue(backend.getDetachedReads() >= 1);
+        assertEquals(1 + backend.getDetachedReads(), upstream.reads.get());
+        assertTrue(backend.getSpilledBytes() <= RING_BYTES);
+        assertEquals(0, spillDirectory.toFile().list().length);
+    }
+
+    @Test
+    public void rangedReadsAreCoalescedPerRange() throws Exception {
+        CoalescingBackend backend = new CoalescingBackend(upstream, pumpExecutor, spillDirectory, RING_BYTES, 2, RING_BYTES);
+        byte[] read = readAll(backend.get("key", new ByteRange(100, 199999)), false);
+        assertArrayEquals(Arrays.copyOfRange(DATA, 100, 200000), read);
+    }
+
+    @Test
+    public void readsBeyondMaxFlightsAreNotCoalesced() throws Exception {
+        final CoalescingBackend backend = new CoalescingBackend(upstream, pumpExecutor, spillDirectory, RING_BYTES, 1, 1L << 30);
+        upstream.hold = new CountDownLatch(1);
+        Future<byte[]> first = clients.submit(new Callable<byte[]>() {
+            @Override
+            public byte[] call() throws Exception {
+                return readAll(backend.get("first", null), false);
+            }
+        });
+        while (backend.getActiveFlights() == 0) {
+            Thread.sleep(1);
+        }
+        BlobContent second = backend.get("second", null);
+        upstream.hold.countDown();
+        assertArrayEquals(DATA, readAll(second, false));
+        assertArrayEquals(DATA, first.get(30, TimeUnit.SECONDS));
+        assertEquals(1, backend.getUncoalescedReads());
+    }
+
+    @Test
+    public void rejectedPumpFailsTheRead() throws Exception {
+        pumpExecutor.shutdown();
+        CoalescingBackend backend = new CoalescingBackend(upstream, pumpExecutor, spillDirectory, RING_BYTES, 2, 1L << 30);
+        BlobContent content = backend.get("key", null);
+        try {
+            readAll(content, false);
+            fail("Read without a pump succeeded");
+        } catch (IOException e) {
+            // Expected
+        }
+        assertEquals(1, upstream.aborts.get());
+        assertEquals(0, backend.getActiveFlights());
+    }
+
+    /**
+     * Starts the readers together, the first of them reading slowly
+     */
+    private List<Future<byte[]>> readConcurrently(final CoalescingBackend backend, final String key, int count)
+            throws InterruptedException {
+        upstream.hold = new CountDownLatch(1);
+        final CountDownLatch joined = new CountDownLatch(count);
+        List<Future<byte[]>> reads = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            final boolean slow = i == 0;
+            reads.add(clients.submit(new Callable<byte[]>() {
+                @Override
+                public byte[] call() throws Exception {
+                    BlobContent content = backend.get(key, null);
+                    joined.countDown();
+                    return readAll(content, slow);
+                }
+            }));
+            if (i == 0) {
+                while (backend.getActiveFlights() == 0) {
+                    Thread.sleep(1);
+                }
+            }
+        }
+        joined.await();
+        upstream.hold.countDown();
+        return reads;
+    }
+
+    private static byte[] readAll(BlobContent content, boolean slow) throws Exception {
+        try (InputStream in = content.getStream()) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+                if (slow) {
+                    Thread.sleep(2);
+                }
+            }
+            return out.toByteArray();
+        }
+    }
+
+    /**
+     * Serves DATA for every key, 8 KB per read with a pause, so readers that pause longer fall
+     * behind. Reads wait for hold before the first byte.
+     */
+    private static class Upstream implements BlobStoreBackend {
+
+        final AtomicInteger reads = new AtomicInteger();
+
+        final AtomicInteger aborts = new AtomicInteger();
+
+        volatile CountDownLatch hold = new CountDownLatch(0);
+
+        @Override
+        public BlobContent get(String key, ByteRange range) {
+            reads.incrementAndGet();
+            int start = range == null ? 0 : (int) range.getStart();
+            int end = range == null ? DATA.length - 1 : (int) Math.min(range.getEnd(), DATA.length - 1);
+            final CountDownLatch latch = hold;
+            InputStream in = new ByteArrayInputStream(DATA, start, end - start + 1) {
+                @Override
+                public synchronized int read(byte[] b, int off, int len) {
+                    try {
+                        latch.await();
+                        Thread.sleep(1);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return -1;
+                    }
+                    return super.read(b, off, Math.min(len, 8192));
+                }
+            };
+            return new BlobContent(new BlobInfo(key, DATA.length, "\"etag\"", null, 0), in, end - start + 1) {
+                @Override
+                public void abort() throws IOException {
+                    aborts.incrementAndGet();
+                    super.abort();
+                }
+            };
+        }
+
+        @Override
+        public BlobInfo put(String key, InputStream content, long length, String contentType) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public BlobInfo head(String key) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public BlobPage list(String prefix, String marker, int maxKeys) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public BlobInfo copy(String sourceKey, String targetKey) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public BlobInfo move(String sourceKey, String targetKey) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void delete(String key) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
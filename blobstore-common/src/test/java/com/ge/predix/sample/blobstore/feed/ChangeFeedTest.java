@@ -0,0 +1,170 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.feed;
+
+import com.ge.predix.sample.blobstore.fs.FileSystemBackend;
+import com.ge.predix.sample.blobstore.spi.BlobInfo;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ChangeFeedTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private FileSystemBackend store;
+
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() throws Exception {
+        store = new FileSystemBackend(folder.getRoot().toPath(), false);
+        executor = Executors.newFixedThreadPool(2);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void firstScanOnlySetsTheBaseline() throws Exception {
+        ChangeFeed feed = new ChangeFeed(100);
+        put("a", "1");
+        assertEquals(0, scan(feed));
+        assertEquals(1, feed.getSnapshotSize());
+        assertEquals(0, feed.lastSequence());
+    }
+
+    @Test
+    public void scansFindChangesMadeElsewhere() throws Exception {
+        ChangeFeed feed = new ChangeFeed(100);
+        put("changed", "old");
+        put("removed", "x");
+        scan(feed);
+
+        put("added", "new");
+        put("changed", "newer");
+        store.delete("removed");
+        assertEquals(3, scan(feed));
+
+        List<ChangeEvent> events = feed.read(0, 10).getEvents();
+        assertEquals(3, events.size());
+        assertEvent(events.get(0), ChangeEvent.Type.ADDED, "added", false);
+        assertEvent(events.get(1), ChangeEvent.Type.CHANGED, "changed", false);
+        assertEvent(events.get(2), ChangeEvent.Type.REMOVED, "removed", false);
+    }
+
+    @Test
+    public void localChangesAreNotRepeatedByTheNextScan() throws Exception {
+        ChangeFeed feed = new ChangeFeed(100);
+        put("existing", "x");
+        scan(feed);
+
+        feed.written(put("existing", "changed"));
+        feed.written(put("fresh", "y"));
+        store.delete("existing");
+        feed.deleted("existing");
+        assertEquals(0, scan(feed));
+
+        List<ChangeEvent> events = feed.read(0, 10).getEvents();
+        assertEquals(3, events.size());
+        assertEvent(events.get(0), ChangeEvent.Type.CHANGED, "existing", true);
+        assertEvent(events.get(1), ChangeEvent.Type.ADDED, "fresh", true);
+        assertEvent(events.get(2), ChangeEvent.Type.REMOVED, "existing", true);
+    }
+
+    @Test
+    public void aLaterRemoteChangeOfALocallyWrittenKeyIsFound() throws Exception {
+        ChangeFeed feed = new ChangeFeed(100);
+        scan(feed);
+        feed.written(put("key", "local"));
+        put("key", "remote version");
+        assertEquals(1, scan(feed));
+        // Diffed against the previous snapshot, which did not have the key yet
+        assertEvent(feed.read(1, 10).getEvents().get(0), ChangeEvent.Type.ADDED, "key", false);
+    }
+
+    @Test
+    public void readersFallingBehindTheRingAreTold() throws Exception {
+        ChangeFeed feed = new ChangeFeed(3);
+        for (int i = 0; i < 5; i++) {
+            feed.deleted("key-" + i);
+        }
+        ChangeFeedPage page = feed.read(0, 10);
+        assertTrue(page.isMissed());
+        assertEquals(3, page.getEvents().size());
+        assertEquals(3, page.getEvents().get(0).getSequence());
+        assertEquals(5, page.getLastSequence());
+
+        page = feed.read(4, 10);
+        assertFalse(page.isMissed());
+        assertEquals(1, page.getEvents().size());
+        assertEquals(0, feed.read(5, 10).getEvents().size());
+        assertEquals(5, feed.read(5, 10).getLastSequence());
+    }
+
+    @Test
+    public void subscribersSeeEventsAsTheyAreAppended() throws Exception {
+        ChangeFeed feed = new ChangeFeed(10);
+        final List<String> seen = new ArrayList<>();
+        feed.addSubscriber(new ChangeFeed.Subscriber() {
+            @Override
+            public void changed(ChangeEvent event) {
+                throw new IllegalStateException("Failing subscriber");
+            }
+        });
+        feed.addSubscriber(new ChangeFeed.Subscriber() {
+            @Override
+            public void changed(ChangeEvent event) {
+                seen.add(event.getType() + " " + event.getKey());
+            }
+        });
+        feed.deleted("a");
+        feed.deleted("b");
+        assertEquals(2, seen.size());
+        assertEquals("REMOVED b", seen.get(1));
+    }
+
+    private static void assertEvent(ChangeEvent event, ChangeEvent.Type type, String key, boolean local) {
+        assertEquals(type, event.getType());
+        assertEquals(key, event.getKey());
+        assertEquals(local, event.isLocal());
+    }
+
+    private int scan(ChangeFeed feed) throws Exception {
+        return feed.scan(store, executor, 2, 10);
+    }
+
+    private BlobInfo put(String key, String content) throws Exception {
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        return store.put(key, new ByteArrayInputStream(bytes), bytes.length, null);
+    }
+}
@@ -0,0 +1,176 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.fs;
+
+import com.ge.predix.sample.blobstore.spi.BlobContent;
+import com.ge.predix.sample.blobstore.spi.BlobInfo;
+import com.ge.predix.sample.blobstore.spi.BlobNotFoundException;
+import com.ge.predix.sample.blobstore.spi.BlobPage;
+import com.ge.predix.sample.blobstore.spi.ByteRange;
+import com.ge.predix.sample.blobstore.spi.InvalidBlobKeyException;
+import com.ge.predix.sample.blobstore.spi.RangeNotSatisfiableException;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class FileSystemBackendTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private FileSystemBackend backend;
+
+    @Before
+    public void setUp() throws Exception {
+        backend = new FileSystemBackend(folder.getRoot().toPath(), false);
+    }
+
+    @Test
+    public void putIsReadBackWithItsMetadata() throws Exception {
+        BlobInfo written = put("dir/blob.txt", "hello", "text/plain");
+        assertEquals(5, written.getSize());
+        assertEquals("5d41402abc4b2a76b9719d911017c592", written.getETag());
+
+        BlobContent content = backend.get("dir/blob.txt", null);
+        assertEquals("hello", read(content));
+        assertEquals("text/plain", content.getInfo().getContentType());
+        assertEquals(written.getETag(), backend.head("dir/blob.txt").getETag());
+    }
+
+    @Test
+    public void rangesAreClampedToTheBlob() throws Exception {
+        put("blob", "0123456789", null);
+        BlobContent content = backend.get("blob", new ByteRange(2, 4));
+        assertEquals(3, content.getContentLength());
+        assertEquals("234", read(content));
+        assertEquals("89", read(backend.get("blob", new ByteRange(8, 100))));
+    }
+
+    @Test(expected = RangeNotSatisfiableException.class)
+    public void rangesBeyondTheEndAreNotSatisfiable() throws Exception {
+        put("blob", "0123456789", null);
+        backend.get("blob", new ByteRange(10, 20));
+    }
+
+    @Test
+    public void keysEscapingTheStoreAreRejected() throws Exception {
+        for (String key : Arrays.asList("../outside", "a/../../outside", "")) {
+            try {
+                backend.head(key);
+                fail("Key " + key + " must be rejected");
+            } catch (InvalidBlobKeyException e) {
+                assertEquals(key, e.getKey());
+            }
+        }
+    }
+
+    @Test
+    public void lengthMismatchLeavesNoBlob() throws Exception {
+        byte[] bytes = "short".getBytes(StandardCharsets.UTF_8);
+        try {
+            backend.put("blob", new ByteArrayInputStream(bytes), 10, null);
+            fail("Put of fewer bytes than announced must fail");
+        } catch (IOException e) {
+            // Expected
+        }
+        try {
+            backend.head("blob");
+            fail("Failed put must not leave a Blob");
+        } catch (BlobNotFoundException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void listingsPageThroughNestedKeysInOrder() throws Exception {
+        List<String> keys = Arrays.asList("a/b", "a/c/d", "a0", "b", "b0", "c/x/y/z");
+        for (String key : keys) {
+            put(key, key, null);
+        }
+        List<String> listed = new ArrayList<>();
+        String marker = null;
+        do {
+            BlobPage page = backend.list(null, marker, 2);
+            for (BlobInfo info : page.getBlobs()) {
+                listed.add(info.getKey());
+            }
+            marker = page.getNextMarker();
+        } while (marker != null);
+        assertEquals(keys, listed);
+
+        List<String> prefixed = new ArrayList<>();
+        for (BlobInfo info : backend.list("a/", null, 10).getBlobs()) {
+            prefixed.add(info.getKey());
+        }
+        assertEquals(Arrays.asList("a/b", "a/c/d"), prefixed);
+    }
+
+    @Test
+    public void moveKeepsContentAndMetadata() throws Exception {
+        BlobInfo written = put("source", "content", "text/plain");
+        BlobInfo moved = backend.move("source", "target");
+        assertEquals("target", moved.getKey());
+        assertEquals(written.getETag(), moved.getETag());
+        assertEquals("text/plain", backend.head("target").getContentType());
+        assertEquals("content", read(backend.get("target", null)));
+        try {
+            backend.head("source");
+            fail("Moved source must be gone");
+        } catch (BlobNotFoundException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void deleteIsIdempotent() throws Exception {
+        put("blob", "x", null);
+        backend.delete("blob");
+        backend.delete("blob");
+        assertNull(backend.list(null, null, 10).getNextMarker());
+        assertEquals(0, backend.list(null, null, 10).getBlobs().size());
+    }
+
+    private BlobInfo put(String key, String content, String contentType) throws Exception {
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        return backend.put(key, new ByteArrayInputStream(bytes), bytes.length, contentType);
+    }
+
+    private static String read(BlobContent content) throws Exception {
+        try (InputStream in = content.getStream()) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[64];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.index;
+
+import com.ge.predix.sample.blobstore.fs.FileSystemBackend;
+import com.ge.predix.sample.blobstore.io.ContentTypeDetector;
+import com.ge.predix.sample.blobstore.spi.BlobInfo;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class MetadataIndexTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private FileSystemBackend store;
+
+    private ExecutorService executor;
+
+    private MetadataIndex index;
+
+    @Before
+    public void setUp() throws Exception {
+        store = new FileSystemBackend(folder.getRoot().toPath(), false);
+        executor = Executors.newFixedThreadPool(2);
+        index = new MetadataIndex(100, 1000);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void rescanKeepsTheContentTypeOfAnUnchangedBlob() throws Exception {
+        // Stored untyped, as a listing reports it
+        BlobInfo stored = put("photo", "pixels");
+        index.written(new BlobInfo(stored.getKey(), stored.getSize(), stored.getETag(), "image/png",
+                stored.getLastModified()));
+
+        scan();
+
+        List<BlobInfo> blobs = search("image/").getBlobs();
+        assertEquals(1, blobs.size());
+        assertEquals("image/png", blobs.get(0).getContentType());
+    }
+
+    @Test
+    public void rescanDropsTheContentTypeOfAChangedBlob() throws Exception {
+        BlobInfo stored = put("photo", "pixels");
+        index.written(new BlobInfo(stored.getKey(), stored.getSize(), stored.getETag(), "image/png",
+                stored.getLastModified()));
+        put("photo", "replaced elsewhere");
+
+        scan();
+
+        assertTrue(search("image/").getBlobs().isEmpty());
+        assertNull(search(null).getBlobs().get(0).getContentType());
+    }
+
+    @Test
+    public void scannedBlobsAreTypedByExtension() throws Exception {
+        index.setContentTypeDetector(new ContentTypeDetector(ContentTypeDetector.DEFAULT_PEEK_BYTES,
+                ContentTypeDetector.DEFAULT_MAX_CACHED_EXTENSIONS));
+        put("data/report.csv", "a,b");
+        put("data/unknown.zzz", "?");
+
+        scan();
+
+        List<BlobInfo> blobs = search("text/csv").getBlobs();
+        assertEquals(1, blobs.size());
+        assertEquals("data/report.csv", blobs.get(0).getKey());
+        assertEquals(2, search(null).getBlobs().size());
+    }
+
+    @Test
+    public void rescanDropsBlobsNoLongerListed() throws Exception {
+        put("a", "1");
+        put("b", "2");
+        scan();
+        assertEquals(2, index.size());
+
+        store.delete("a");
+        scan();
+
+        assertEquals(1, index.size());
+        assertEquals("b", search(null).getBlobs().get(0).getKey());
+    }
+
+    private BlobInfo put(String key, String content) throws Exception {
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        return store.put(key, new ByteArrayInputStream(bytes), bytes.length, null);
+    }
+
+    private void scan() throws Exception {
+        index.scan(store, executor, 2, 10);
+    }
+
+    private IndexPage search(String contentType) {
+        IndexQuery query = new IndexQuery();
+        query.setContentType(contentType);
+        return index.search(query);
+    }
+}
@@ -0,0 +1,140 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.journal;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class UploadJournalTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void replayReturnsLatestUploadOfEachKey() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        UploadJournal journal = new UploadJournal(directory, 1024, 1024 * 1024, false);
+        assertTrue(journal.open().isEmpty());
+        append(journal, "a", "first");
+        append(journal, "b", "deleted");
+        UploadJournal.Record latest = append(journal, "a", "second");
+        append(journal, "c", "third");
+        journal.appendDelete("b");
+
+        UploadJournal replayed = new UploadJournal(directory, 1024, 1024 * 1024, false);
+        List<UploadJournal.Record> records = replayed.open();
+        assertEquals(2, records.size());
+        assertEquals("a", records.get(0).getKey());
+        assertEquals(latest.getETag(), records.get(0).getETag());
+        assertEquals("text/plain", records.get(0).getContentType());
+        assertEquals("second", content(replayed, records.get(0)));
+        assertEquals("c", records.get(1).getKey());
+        assertEquals("third", content(replayed, records.get(1)));
+    }
+
+    @Test
+    public void replaySkipsCorruptAndTruncatedRecords() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        UploadJournal journal = new UploadJournal(directory, 1024 * 1024, 1024 * 1024, false);
+        journal.open();
+        append(journal, "a", "first");
+        append(journal, "a", "second");
+        append(journal, "b", "truncated");
+
+        Path segment = onlySegment(directory);
+        byte[] bytes = Files.readAllBytes(segment);
+        String text = new String(bytes, StandardCharsets.ISO_8859_1);
+        try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+            // Flip a byte of the second upload of a and cut off the end of b
+            file.seek(text.indexOf("second"));
+            file.write('S');
+            file.setLength(bytes.length - 3);
+        }
+
+        List<UploadJournal.Record> records = new UploadJournal(directory, 1024 * 1024, 1024 * 1024, false).open();
+        assertEquals(1, records.size());
+        assertEquals("a", records.get(0).getKey());
+        assertEquals(5, records.get(0).getLength());
+    }
+
+    @Test
+    public void appendGivesUpWhenJournalStaysFull() throws Exception {
+        UploadJournal journal = new UploadJournal(folder.getRoot().toPath(), 1024, 200, false);
+        journal.open();
+        UploadJournal.Record record = append(journal, "a", repeat(100));
+        assertNull(journal.append("b", stream(repeat(100)), 100, null, 50));
+        // Completing the first record frees its segment
+        journal.complete(record);
+        assertEquals("b", journal.append("b", stream(repeat(100)), 100, null, 50).getKey());
+    }
+
+    private static UploadJournal.Record append(UploadJournal journal, String key, String content) throws Exception {
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        return journal.append(key, new ByteArrayInputStream(bytes), bytes.length, "text/plain", 0);
+    }
+
+    private static String content(UploadJournal journal, UploadJournal.Record record) throws IOException {
+        try (InputStream in = journal.openContent(record, 0, record.getLength())) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[64];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static Path onlySegment(Path directory) throws IOException {
+        Path found = null;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*.seg")) {
+            for (Path file : stream) {
+                if (Files.size(file) > 0) {
+                    assertNull(found);
+                    found = file;
+                }
+            }
+        }
+        return found;
+    }
+
+    private static InputStream stream(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String repeat(int count) {
+        char[] chars = new char[count];
+        Arrays.fill(chars, 'x');
+        return new String(chars);
+    }
+}
@@ -0,0 +1,141 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.journal;
+
+import com.ge.predix.sample.blobstore.fs.FileSystemBackend;
+import com.ge.predix.sample.blobstore.spi.BlobContent;
+import com.ge.predix.sample.blobstore.spi.BlobInfo;
+import com.ge.predix.sample.blobstore.spi.BlobNotFoundException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class WriteBehindBackendTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path journalDirectory;
+
+    private FileSystemBackend store;
+
+    private ScheduledExecutorService uploader;
+
+    @Before
+    public void setUp() throws Exception {
+        journalDirectory = folder.newFolder("journal").toPath();
+        store = new FileSystemBackend(folder.newFolder("store").toPath(), false);
+        uploader = Executors.newScheduledThreadPool(2);
+    }
+
+    @After
+    public void tearDown() {
+        uploader.shutdownNow();
+    }
+
+    @Test
+    public void uploadsLeftInTheJournalAreReplayedAfterRestart() throws Exception {
+        // An uploader that is shut down leaves every upload in the journal, as a crash would
+        ScheduledExecutorService stopped = Executors.newScheduledThreadPool(1);
+        stopped.shutdown();
+        WriteBehindBackend before = backend(stopped);
+        before.put("a", stream("first"), 5, "text/plain");
+        BlobInfo latest = before.put("a", stream("second"), 6, "text/plain");
+        before.put("b", stream("deleted"), 7, "text/plain");
+        before.delete("b");
+        before.put("c", stream("third"), 5, "text/plain");
+        assertEquals("second", read(before.get("a", null)));
+        assertEquals(2, before.getQueueDepth());
+
+        WriteBehindBackend after = backend(uploader);
+        assertEquals(2, after.getQueueDepth());
+        drain(after);
+        assertEquals("second", read(store.get("a", null)));
+        assertEquals(latest.getETag(), store.head("a").getETag());
+        assertEquals("third", read(store.get("c", null)));
+        try {
+            store.head("b");
+            fail("Deleted upload was replayed");
+        } catch (BlobNotFoundException e) {
+            // Expected
+        }
+
+        // Nothing is left to replay once the uploads are done
+        assertEquals(0, backend(uploader).getQueueDepth());
+    }
+
+    @Test
+    public void writeThroughCancelsTheJournaledUpload() throws Exception {
+        ScheduledExecutorService stopped = Executors.newScheduledThreadPool(1);
+        stopped.shutdown();
+        WriteBehindBackend before = backend(stopped);
+        before.put("a", stream("journaled"), 9, "text/plain");
+        // Larger than maxObjectBytes, written through
+        before.put("a", stream("written through"), 15, "text/plain");
+        assertEquals(0, before.getQueueDepth());
+        assertEquals(1, before.getWriteThroughs());
+
+        WriteBehindBackend after = backend(uploader);
+        drain(after);
+        assertEquals("written through", read(store.get("a", null)));
+    }
+
+    private WriteBehindBackend backend(ScheduledExecutorService executor) throws Exception {
+        WriteBehindBackend backend = new WriteBehindBackend(store, new UploadJournal(journalDirectory, 1024, 1024 * 1024, false),
+                executor, 0, 10, 10);
+        backend.start();
+        return backend;
+    }
+
+    private static void drain(WriteBehindBackend backend) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (backend.getQueueDepth() > 0) {
+            if (System.currentTimeMillis() > deadline) {
+                fail(backend.getQueueDepth() + " uploads left after 10s");
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    private static InputStream stream(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String read(BlobContent content) throws Exception {
+        try (InputStream in = content.getStream()) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[64];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.listing;
+
+import com.ge.predix.sample.blobstore.spi.BlobInfo;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class KeySnapshotTest {
+
+    @Test
+    public void keysAreOrderedByUtf8Bytes() {
+        // U+FFFD sorts after the surrogate pair of U+1F600 as UTF-16 but before it as UTF-8
+        String bmp = "a\uFFFD";
+        String supplementary = "a\uD83D\uDE00";
+        assertTrue(bmp.compareTo(supplementary) > 0);
+
+        KeySnapshot snapshot = new KeySnapshot.Builder()
+                .add("a", 1, null, 0)
+                .add(bmp, 2, null, 0)
+                .add(supplementary, 3, null, 0)
+                .build();
+        KeySnapshot.Cursor cursor = snapshot.cursor();
+        assertTrue(cursor.next());
+        assertEquals("a", cursor.getKey());
+        assertTrue(cursor.next());
+        assertEquals(bmp, cursor.getKey());
+        assertTrue(cursor.next());
+        assertEquals(supplementary, cursor.getKey());
+        assertFalse(cursor.next());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void keysOutOfOrderAreRejected() {
+        new KeySnapshot.Builder().add("b", 1, null, 0).add("a", 1, null, 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void duplicateKeysAreRejected() {
+        new KeySnapshot.Builder().add("a", 1, null, 0).add("a", 1, null, 0);
+    }
+
+    @Test
+    public void entriesRoundTripAcrossBlocks() {
+        KeySnapshot.Builder builder = new KeySnapshot.Builder();
+        int count = KeySnapshot.BLOCK_KEYS * 5 + 3;
+        for (int i = 0; i < count; i++) {
+            String eTag = i % 2 == 0 ? "0123456789abcdef0123456789abcdef" : "\"etag-" + i + "\"";
+            builder.add(key(i), i, eTag, 1000L + i);
+        }
+        KeySnapshot snapshot = builder.build();
+        assertEquals(count, snapshot.size());
+
+        KeySnapshot.Cursor cursor = snapshot.cursor();
+        for (int i = 0; i < count; i++) {
+            assertTrue(cursor.next());
+            assertEquals(key(i), cursor.getKey());
+            assertEquals(i, cursor.getSize());
+            assertEquals(1000L + i, cursor.getLastModified());
+            assertEquals(i % 2 == 0 ? "0123456789abcdef0123456789abcdef" : "\"etag-" + i + "\"", cursor.getETag());
+        }
+        assertFalse(cursor.next());
+
+        assertTrue(snapshot.contains(key(37)));
+        assertFalse(snapshot.contains(key(37) + "x"));
+        cursor = snapshot.cursor();
+        cursor.seek(key(50) + "x");
+        assertTrue(cursor.next());
+        assertEquals(key(51), cursor.getKey());
+    }
+
+    @Test
+    public void diffReportsAddedRemovedAndChanged() {
+        KeySnapshot before = new KeySnapshot.Builder()
+                .add("a", 1, "e1", 0)
+                .add("b", 1, "e1", 0)
+                .add("c", 1, "e1", 0)
+                .build();
+        KeySnapshot after = new KeySnapshot.Builder()
+                .add("b", 1, "e2", 0)
+                .add("c", 1, "e1", 0)
+                .add("d", 1, "e1", 0)
+                .build();
+        final List<String> events = new ArrayList<>();
+        int differences = KeySnapshot.diff(before, after, new KeySnapshot.DiffListener() {
+            @Override
+            public void added(BlobInfo after) {
+                events.add("+" + after.getKey());
+            }
+
+            @Override
+            public void removed(BlobInfo before) {
+                events.add("-" + before.getKey());
+            }
+
+            @Override
+            public void changed(BlobInfo before, BlobInfo after) {
+                events.add("~" + after.getKey() + " " + before.getETag() + ">" + after.getETag());
+            }
+        });
+        assertEquals(3, differences);
+        assertEquals("[-a, ~b e1>e2, +d]", events.toString());
+    }
+
+    private static String key(int i) {
+        return String.format("devices/%05d/firmware.bin", i);
+    }
+}
@@ -0,0 +1,72 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.routing;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class HashedPrefixLayoutTest {
+
+    @Test
+    public void prefixesArePaddedToTheSameWidth() {
+        HashedPrefixLayout layout = new HashedPrefixLayout(20);
+        assertEquals(20, layout.partitions().size());
+        assertEquals("00/", layout.partitions().get(0));
+        assertEquals("13/", layout.partitions().get(19));
+    }
+
+    @Test
+    public void physicalKeysMapBackToTheirIds() {
+        HashedPrefixLayout layout = new HashedPrefixLayout(16);
+        for (int i = 0; i < 1000; i++) {
+            String id = "device-" + i + "/reading.json";
+            String key = layout.physicalKey(id);
+            assertTrue(layout.partitions().contains(key.substring(0, 2)));
+            assertEquals(id, layout.logicalKey(key));
+        }
+    }
+
+    @Test
+    public void sequentialIdsSpreadOverAllPartitions() {
+        HashedPrefixLayout layout = new HashedPrefixLayout(16);
+        Set<String> used = new HashSet<>();
+        for (int i = 0; i < 1000; i++) {
+            used.add(layout.physicalKey("2016-01-29T10:00:" + i).substring(0, 2));
+        }
+        assertEquals(16, used.size());
+    }
+
+    @Test
+    public void keysOutsideTheLayoutHaveNoId() {
+        HashedPrefixLayout layout = new HashedPrefixLayout(16);
+        String key = layout.physicalKey("a");
+        String otherPrefix = layout.partitions().get((layout.partitions().indexOf(key.substring(0, 2)) + 1) % 16);
+        assertNull(layout.logicalKey("a"));
+        assertNull(layout.logicalKey("abc/def"));
+        assertNull(layout.logicalKey(otherPrefix + "a"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void zeroPartitionsAreRejected() {
+        new HashedPrefixLayout(0);
+    }
+}
@@ -0,0 +1,179 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.routing;
+
+import com.ge.predix.sample.blobstore.fs.FileSystemBackend;
+import com.ge.predix.sample.blobstore.spi.BlobContent;
+import com.ge.predix.sample.blobstore.spi.BlobInfo;
+import com.ge.predix.sample.blobstore.spi.BlobNotFoundException;
+import com.ge.predix.sample.blobstore.spi.BlobPage;
+import com.ge.predix.sample.blobstore.spi.BlobStoreBackend;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class KeyLayoutBackendTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private FileSystemBackend store;
+
+    private HashedPrefixLayout layout;
+
+    private ExecutorService executor;
+
+    private KeyLayoutBackend backend;
+
+    @Before
+    public void setUp() throws Exception {
+        store = new FileSystemBackend(folder.getRoot().toPath(), false);
+        layout = new HashedPrefixLayout(4);
+        executor = Executors.newFixedThreadPool(4);
+        backend = new KeyLayoutBackend(store, layout, executor);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void blobsAreStoredUnderTheLayoutAndReadByTheirIds() throws Exception {
+        BlobInfo info = put(backend, "reading-1", "one");
+        assertEquals("reading-1", info.getKey());
+        assertEquals("one", read(store, layout.physicalKey("reading-1")));
+        assertEquals("one", read(backend, "reading-1"));
+        assertEquals("reading-1", backend.head("reading-1").getKey());
+    }
+
+    @Test
+    public void listingsMergePartitionsInIdOrder() throws Exception {
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            String id = String.format("reading-%03d", i);
+            put(backend, id, "x");
+            expected.add(id);
+        }
+
+        List<String> listed = new ArrayList<>();
+        String marker = null;
+        do {
+            BlobPage page = backend.list("reading-", marker, 7);
+            for (BlobInfo info : page.getBlobs()) {
+                listed.add(info.getKey());
+            }
+            marker = page.getNextMarker();
+        } while (marker != null);
+        assertEquals(expected, listed);
+    }
+
+    @Test
+    public void blobsWrittenBeforeTheLayoutStayReadable() throws Exception {
+        put(store, "legacy", "old");
+
+        assertEquals("old", read(backend, "legacy"));
+        assertEquals("legacy", backend.head("legacy").getKey());
+        assertNull(find(backend.list(null, null, 100), "legacy"));
+
+        BlobInfo copy = backend.copy("legacy", "copied");
+        assertEquals("copied", copy.getKey());
+        assertEquals("old", read(store, layout.physicalKey("copied")));
+    }
+
+    @Test
+    public void rewrittenBlobsShadowTheirLegacyCopy() throws Exception {
+        put(store, "legacy", "old");
+        put(backend, "legacy", "new");
+        assertEquals("new", read(backend, "legacy"));
+
+        backend.delete("legacy");
+        try {
+            backend.head("legacy");
+            fail("Deleted Blob must not be read from its legacy key");
+        } catch (BlobNotFoundException expected) {
+        }
+    }
+
+    @Test
+    public void legacyBlobsMoveIntoTheLayout() throws Exception {
+        put(store, "legacy", "old");
+        backend.move("legacy", "moved");
+        assertEquals("old", read(backend, "moved"));
+        try {
+            store.head("legacy");
+            fail("Moved Blob must be gone from its legacy key");
+        } catch (BlobNotFoundException expected) {
+        }
+    }
+
+    @Test
+    public void idsThatAreLayoutKeysHaveNoFallback() throws Exception {
+        String key = layout.physicalKey("other");
+        put(backend, "other", "other");
+        try {
+            backend.get(key, null);
+            fail("Id naming a layout key must not reach the Blob stored under it");
+        } catch (BlobNotFoundException expected) {
+        }
+        backend.delete(key);
+        assertEquals("other", read(backend, "other"));
+    }
+
+    private static BlobInfo find(BlobPage page, String key) {
+        for (BlobInfo info : page.getBlobs()) {
+            if (info.getKey().equals(key)) {
+                return info;
+            }
+        }
+        return null;
+    }
+
+    private static BlobInfo put(BlobStoreBackend target, String key,
+                                String content) throws Exception {
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        return target.put(key, new ByteArrayInputStream(bytes), bytes.length, null);
+    }
+
+    private static String read(BlobStoreBackend source, String key)
+            throws Exception {
+        try (BlobContent content = source.get(key, null)) {
+            InputStream in = content.getStream();
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1024];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.routing;
+
+import com.ge.predix.sample.blobstore.write.ConditionalWrites;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class KeyRouterTest {
+
+    private static final List<String> SHARDS = Arrays.asList("a", "b", "c");
+
+    private static final KeyRouter.KeyMapping STAGING_TARGET = new KeyRouter.KeyMapping() {
+        @Override
+        public String routingKey(String key) {
+            return ConditionalWrites.targetOf(key);
+        }
+    };
+
+    @Test
+    public void longestPrefixRuleWins() {
+        Map<String, String> rules = new HashMap<>();
+        rules.put("logs/", "a");
+        rules.put("logs/archive/", "c");
+        KeyRouter router = new KeyRouter(SHARDS, rules, 64);
+        assertEquals(0, router.route("logs/today"));
+        assertEquals(2, router.route("logs/archive/2015"));
+    }
+
+    @Test
+    public void addingAShardMovesAboutItsShareOfKeys() {
+        KeyRouter three = new KeyRouter(SHARDS, Collections.<String, String>emptyMap(), 128);
+        KeyRouter four = new KeyRouter(Arrays.asList("a", "b", "c", "d"), Collections.<String, String>emptyMap(), 128);
+        int keys = 10000;
+        int moved = 0;
+        int[] counts = new int[3];
+        for (int i = 0; i < keys; i++) {
+            String key = "device-" + i;
+            int before = three.route(key);
+            counts[before]++;
+            int after = four.route(key);
+            if (before != after) {
+                moved++;
+                assertEquals("Keys only move to the new shard", 3, after);
+            }
+        }
+        assertTrue("moved " + moved, moved > keys / 8 && moved < keys / 2.5);
+        for (int count : counts) {
+            assertTrue("shard holds " + count, count > keys / 5);
+        }
+    }
+
+    @Test
+    public void keysAreRoutedThroughTheMapping() {
+        KeyRouter router = new KeyRouter(SHARDS, Collections.<String, String>emptyMap(), 64, null, STAGING_TARGET);
+        for (int i = 0; i < 100; i++) {
+            String key = "blob-" + i;
+            assertEquals(router.route(key), router.route(ConditionalWrites.stagingKey(key)));
+        }
+    }
+
+    @Test
+    public void keysWithoutAMappingAreRoutedAsTheyAre() {
+        KeyRouter router = new KeyRouter(SHARDS, Collections.<String, String>emptyMap(), 64);
+        int differing = 0;
+        for (int i = 0; i < 100; i++) {
+            String key = "blob-" + i;
+            if (router.route(key) != router.route(ConditionalWrites.stagingKey(key))) {
+                differing++;
+            }
+        }
+        assertNotEquals(0, differing);
+    }
+
+    @Test
+    public void storedKeysAreRoutedOnTheirIds() {
+        HashedPrefixLayout layout = new HashedPrefixLayout(16);
+        Map<String, String> rules = new HashMap<>();
+        rules.put("logs/", "b");
+        KeyRouter router = new KeyRouter(SHARDS, rules, 64, layout, null);
+        assertEquals(1, router.route(layout.physicalKey("logs/today")));
+        KeyRouter plain = new KeyRouter(SHARDS, Collections.<String, String>emptyMap(), 64);
+        KeyRouter layered = new KeyRouter(SHARDS, Collections.<String, String>emptyMap(), 64, layout, null);
+        assertEquals(plain.route("id"), layered.route(layout.physicalKey("id")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rulesNamingUnknownShardsAreRejected() {
+        new KeyRouter(SHARDS, Collections.singletonMap("x/", "z"), 64);
+    }
+}
@@ -0,0 +1,148 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.routing;
+
+import com.ge.predix.sample.blobstore.fs.FileSystemBackend;
+import com.ge.predix.sample.blobstore.spi.BlobInfo;
+import com.ge.predix.sample.blobstore.spi.BlobNotFoundException;
+import com.ge.predix.sample.blobstore.spi.BlobPage;
+import com.ge.predix.sample.blobstore.spi.BlobStoreBackend;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class RoutingBackendTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private List<BlobStoreBackend> shards;
+
+    private KeyRouter router;
+
+    private ExecutorService executor;
+
+    private RoutingBackend backend;
+
+    @Before
+    public void setUp() throws Exception {
+        shards = new ArrayList<>();
+        for (String name : Arrays.asList("a", "b", "c")) {
+            shards.add(new FileSystemBackend(folder.newFolder(name).toPath(), false));
+        }
+        router = new KeyRouter(Arrays.asList("a", "b", "c"), Collections.<String, String>emptyMap(), 64);
+        executor = Executors.newFixedThreadPool(3);
+        backend = new RoutingBackend(router, shards, executor);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void blobsAreStoredOnTheirShard() throws Exception {
+        for (int i = 0; i < 30; i++) {
+            put("blob-" + i, "x");
+        }
+        for (int i = 0; i < 30; i++) {
+            String key = "blob-" + i;
+            assertEquals(key, shards.get(router.route(key)).head(key).getKey());
+            assertEquals(key, backend.head(key).getKey());
+        }
+    }
+
+    @Test
+    public void listingsMergeShardsInKeyOrder() throws Exception {
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            String key = String.format("blob-%03d", i);
+            put(key, "x");
+            expected.add(key);
+        }
+        List<String> listed = new ArrayList<>();
+        String marker = null;
+        do {
+            BlobPage page = backend.list(null, marker, 9);
+            for (BlobInfo info : page.getBlobs()) {
+                listed.add(info.getKey());
+            }
+            marker = page.getNextMarker();
+        } while (marker != null);
+        assertEquals(expected, listed);
+    }
+
+    @Test
+    public void movesAcrossShardsStreamTheBlob() throws Exception {
+        String source = "source";
+        String target = keyOnOtherShard(source);
+        put(source, "content");
+
+        BlobInfo moved = backend.move(source, target);
+
+        assertEquals(target, moved.getKey());
+        assertEquals(7, backend.head(target).getSize());
+        try {
+            backend.head(source);
+            fail("Moved source must be deleted");
+        } catch (BlobNotFoundException expected) {
+        }
+    }
+
+    @Test
+    public void deletesReachBlobsLeftOnOtherShards() throws Exception {
+        String key = "stray";
+        BlobStoreBackend other = shards.get((router.route(key) + 1) % shards.size());
+        byte[] bytes = "x".getBytes(StandardCharsets.UTF_8);
+        other.put(key, new ByteArrayInputStream(bytes), bytes.length, null);
+
+        backend.delete(key);
+
+        try {
+            other.head(key);
+            fail("Delete must reach every shard");
+        } catch (BlobNotFoundException expected) {
+        }
+    }
+
+    private String keyOnOtherShard(String key) {
+        for (int i = 0; ; i++) {
+            String candidate = "target-" + i;
+            if (router.route(candidate) != router.route(key)) {
+                return candidate;
+            }
+        }
+    }
+
+    private void put(String key, String content) throws Exception {
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        backend.put(key, new ByteArrayInputStream(bytes), bytes.length, null);
+    }
+}
@@ -0,0 +1,214 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.tier;
+
+import com.ge.predix.sample.blobstore.fs.FileSystemBackend;
+import com.ge.predix.sample.blobstore.spi.BlobContent;
+import com.ge.predix.sample.blobstore.spi.BlobInfo;
+import com.ge.predix.sample.blobstore.spi.BlobNotFoundException;
+import com.ge.predix.sample.blobstore.spi.BlobStoreBackend;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TieredBackendTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path hotRoot;
+
+    private FileSystemBackend hot;
+
+    private FileSystemBackend cold;
+
+    private ExecutorService uploadExecutor;
+
+    @Before
+    public void setUp() throws Exception {
+        hotRoot = folder.newFolder("hot").toPath();
+        hot = new FileSystemBackend(hotRoot, false);
+        cold = new FileSystemBackend(folder.newFolder("cold").toPath(), false);
+        uploadExecutor = Executors.newFixedThreadPool(2);
+    }
+
+    @After
+    public void tearDown() {
+        uploadExecutor.shutdownNow();
+    }
+
+    @Test
+    public void putsRacingDemotionLeaveTheLatestVersionInBothTiers() throws Exception {
+        final TieredBackend backend = new TieredBackend(hot, cold, uploadExecutor, TieredBackend.Acknowledge.LOCAL,
+                1024 * 1024, 1024, 0);
+        final int versions = 300;
+        final AtomicBoolean writing = new AtomicBoolean(true);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread demoter = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (writing.get()) {
+                    backend.demote();
+                }
+            }
+        });
+        demoter.start();
+        try {
+            for (int i = 0; i < versions; i++) {
+                String content = "version " + i;
+                backend.put("key", stream(content), content.length(), "text/plain");
+                if (i % 10 == 0) {
+                    // Blobs with a pending upload are never demoted
+                    assertEquals(content, read(backend.get("key", null)));
+                }
+            }
+        } catch (Throwable t) {
+            failure.set(t);
+        } finally {
+            writing.set(false);
+            demoter.join();
+        }
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+
+        sync(backend);
+        String latest = "version " + (versions - 1);
+        assertEquals(latest, read(backend.get("key", null)));
+        assertEquals(latest, read(cold.get("key", null)));
+        if (backend.size() > 0) {
+            assertEquals(latest, read(hot.get("key", null)));
+        }
+    }
+
+    @Test
+    public void recoverReconcilesTheLocalTierWithTheObjectStore() throws Exception {
+        long now = System.currentTimeMillis();
+        hot.put("same", stream("same"), 4, "text/plain");
+        cold.put("same", stream("same"), 4, "text/plain");
+        hot.put("local-only", stream("local"), 5, "text/plain");
+        hot.put("stale", stream("old"), 3, "text/plain");
+        cold.put("stale", stream("new"), 3, "text/plain");
+        hot.put("newer", stream("newer"), 5, "text/plain");
+        cold.put("newer", stream("older"), 5, "text/plain");
+        setLastModified(hot, "stale", now - 60000);
+        setLastModified(cold, "newer", now - 60000);
+
+        TieredBackend backend = new TieredBackend(hot, cold, uploadExecutor, TieredBackend.Acknowledge.LOCAL,
+                1024 * 1024, 1024, 60000);
+        List<String> registered = backend.register();
+        assertEquals(4, registered.size());
+        // Registered Blobs are served from the local tier before the reconciliation
+        assertEquals("local", read(backend.get("local-only", null)));
+        assertEquals(4, backend.getUnsynced());
+
+        backend.reconcile(registered);
+        sync(backend);
+        assertEquals(2, backend.getUploads());
+        assertEquals("local", read(cold.get("local-only", null)));
+        assertEquals("newer", read(cold.get("newer", null)));
+        assertEquals("new", read(backend.get("stale", null)));
+        try {
+            hot.head("stale");
+            fail("Local copy older than the Object Store was kept");
+        } catch (BlobNotFoundException e) {
+            // Expected
+        }
+        assertEquals(3, backend.size());
+    }
+
+    @Test
+    public void failedRemoteUploadDropsTheLocalCopy() throws Exception {
+        FileSystemBackend failing = new FileSystemBackend(folder.newFolder("failing").toPath(), false) {
+            @Override
+            public BlobInfo put(String key, InputStream content, long length, String contentType) throws Exception {
+                throw new IOException("Object Store unavailable");
+            }
+        };
+        TieredBackend backend = new TieredBackend(hot, failing, uploadExecutor, TieredBackend.Acknowledge.REMOTE,
+                1024 * 1024, 1024, 60000);
+        try {
+            backend.put("key", stream("lost"), 4, "text/plain");
+            fail("Upload to the Object Store must fail the put");
+        } catch (IOException e) {
+            // Expected
+        }
+        assertEquals(0, backend.size());
+        assertEquals(0, backend.getUnsynced());
+        try {
+            hot.head("key");
+            fail("Local copy of a failed put was kept");
+        } catch (BlobNotFoundException e) {
+            // Expected
+        }
+    }
+
+    /**
+     * Runs demotion, which queues failed or pending uploads again, until every upload is done
+     */
+    private static void sync(TieredBackend backend) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (backend.getUnsynced() > 0) {
+            if (System.currentTimeMillis() > deadline) {
+                fail(backend.getUnsynced() + " uploads left after 10s");
+            }
+            backend.demote();
+            Thread.sleep(10);
+        }
+    }
+
+    private void setLastModified(BlobStoreBackend backend, String key, long millis) throws Exception {
+        Path root = backend == hot ? hotRoot : folder.getRoot().toPath().resolve("cold");
+        Files.setLastModifiedTime(root.resolve("data").resolve(key), FileTime.fromMillis(millis));
+        assertTrue(Math.abs(backend.head(key).getLastModified() - millis) < 1000);
+    }
+
+    private static InputStream stream(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String read(BlobContent content) throws Exception {
+        try (InputStream in = content.getStream()) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[64];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+}
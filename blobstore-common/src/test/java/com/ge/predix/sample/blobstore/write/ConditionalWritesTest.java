@@ -0,0 +1,156 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.write;
+
+import com.ge.predix.sample.blobstore.fs.FileSystemBackend;
+import com.ge.predix.sample.blobstore.meta.BlobMetadataService;
+import com.ge.predix.sample.blobstore.meta.MetadataCache;
+import com.ge.predix.sample.blobstore.spi.BlobInfo;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Callable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ConditionalWritesTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private FileSystemBackend store;
+
+    private BlobMetadataService metadataService;
+
+    private ConditionalWrites writes;
+
+    @Before
+    public void setUp() throws Exception {
+        store = new FileSystemBackend(folder.getRoot().toPath(), false);
+        metadataService = new BlobMetadataService(store, null, 1, new MetadataCache(60000, 1000));
+        writes = new ConditionalWrites(metadataService, store, 16, 0, 1024);
+    }
+
+    @Test
+    public void unconditionalWritesAreNotStaged() throws Exception {
+        BlobInfo info = writes.write("key", WriteCondition.none(), 5, upload("first"));
+        assertEquals("key", info.getKey());
+        assertEquals(0, writes.getStaged());
+        assertEquals(1, writes.getCompleted());
+    }
+
+    @Test
+    public void conditionalWritesAreStagedAndMovedIntoPlace() throws Exception {
+        final String[] uploadedTo = new String[1];
+        BlobInfo info = writes.write("key", WriteCondition.fromHeaders(null, "*"), 5, new ConditionalWrites.Upload() {
+            @Override
+            public BlobInfo put(String key) throws Exception {
+                uploadedTo[0] = key;
+                return store.put(key, stream("first"), 5, "text/plain");
+            }
+        });
+        assertEquals("key", info.getKey());
+        assertEquals("key", ConditionalWrites.targetOf(uploadedTo[0]));
+        assertFalse("key".equals(uploadedTo[0]));
+        assertEquals(1, writes.getStaged());
+        assertEquals(1, store.list(null, null, 10).getBlobs().size());
+    }
+
+    @Test
+    public void staleCacheDoesNotFailAValidCondition() throws Exception {
+        store.put("key", stream("first"), 5, "text/plain");
+        metadataService.head("key");
+        // Another instance overwrites the key, the cached metadata is stale
+        BlobInfo current = store.put("key", stream("second"), 6, "text/plain");
+
+        WriteCondition condition = WriteCondition.fromHeaders(current.getETag(), null);
+        writes.write("key", condition, 5, upload("third"));
+        assertEquals(0, writes.getPreconditionsFailed());
+        try {
+            // The ETag is the one just overwritten
+            writes.write("key", condition, new Callable<BlobInfo>() {
+                @Override
+                public BlobInfo call() throws Exception {
+                    fail("Written with a stale ETag");
+                    return null;
+                }
+            });
+            fail("Stale ETag accepted");
+        } catch (PreconditionFailedException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void failedConditionAtCommitDiscardsTheStagedBlob() throws Exception {
+        ConditionalWrites.Write write = writes.begin("key", WriteCondition.fromHeaders(null, "*"), 5);
+        BlobInfo staged = store.put(write.getKey(), stream("first"), 5, "text/plain");
+        // Created meanwhile
+        store.put("key", stream("other"), 5, "text/plain");
+        try {
+            write.commit(staged);
+            fail("Committed over an existing Blob");
+        } catch (PreconditionFailedException e) {
+            // Expected
+        }
+        assertEquals(1, writes.getPreconditionsFailed());
+        assertEquals(1, store.list(null, null, 10).getBlobs().size());
+    }
+
+    @Test
+    public void concurrentWriteOfTheSameKeyConflicts() throws Exception {
+        ConditionalWrites.Permit permit = writes.acquire("key", WriteCondition.none());
+        try {
+            writes.write("key", WriteCondition.none(), 5, upload("second"));
+            fail("Concurrent write accepted");
+        } catch (WriteConflictException e) {
+            // Expected
+        } finally {
+            permit.release(null);
+        }
+        assertEquals(1, writes.getConflicts());
+        writes.write("key", WriteCondition.none(), 5, upload("third"));
+    }
+
+    @Test
+    public void targetOfOnlyStripsStagingSuffixes() {
+        String staging = ConditionalWrites.stagingKey("a/b");
+        assertTrue(staging.startsWith("a/b" + ConditionalWrites.STAGING_MARKER));
+        assertEquals("a/b", ConditionalWrites.targetOf(staging));
+        assertEquals("a/b#staging-xyz", ConditionalWrites.targetOf("a/b#staging-xyz"));
+        assertEquals("a/b", ConditionalWrites.targetOf("a/b"));
+    }
+
+    private ConditionalWrites.Upload upload(final String content) {
+        return new ConditionalWrites.Upload() {
+            @Override
+            public BlobInfo put(String key) throws Exception {
+                return store.put(key, stream(content), content.length(), "text/plain");
+            }
+        };
+    }
+
+    private static ByteArrayInputStream stream(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+}
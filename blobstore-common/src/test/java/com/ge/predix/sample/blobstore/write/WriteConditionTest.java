@@ -0,0 +1,78 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.write;
+
+import com.ge.predix.sample.blobstore.spi.BlobInfo;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class WriteConditionTest {
+
+    private static final BlobInfo CURRENT = new BlobInfo("key", 3, "\"abc\"", "text/plain", 0);
+
+    @Test
+    public void noHeadersAllowEveryWrite() {
+        WriteCondition condition = WriteCondition.fromHeaders(null, null);
+        assertTrue(condition.isNone());
+        assertTrue(condition.isSatisfiedBy(null));
+        assertTrue(condition.isSatisfiedBy(CURRENT));
+    }
+
+    @Test
+    public void ifMatchComparesNormalizedETags() {
+        assertTrue(WriteCondition.fromHeaders("abc", null).isSatisfiedBy(CURRENT));
+        assertTrue(WriteCondition.fromHeaders("\"x\", W/\"abc\"", null).isSatisfiedBy(CURRENT));
+        assertFalse(WriteCondition.fromHeaders("\"x\"", null).isSatisfiedBy(CURRENT));
+        assertFalse(WriteCondition.fromHeaders("abc", null).isSatisfiedBy(null));
+    }
+
+    @Test
+    public void starMatchesAnyExistingBlob() {
+        assertTrue(WriteCondition.fromHeaders("*", null).isSatisfiedBy(CURRENT));
+        assertFalse(WriteCondition.fromHeaders("*", null).isSatisfiedBy(null));
+        assertTrue(WriteCondition.fromHeaders(null, " * ").isSatisfiedBy(null));
+        assertFalse(WriteCondition.fromHeaders(null, "*").isSatisfiedBy(CURRENT));
+    }
+
+    @Test
+    public void ifNoneMatchRejectsListedETags() {
+        assertFalse(WriteCondition.fromHeaders(null, "\"abc\"").isSatisfiedBy(CURRENT));
+        assertTrue(WriteCondition.fromHeaders(null, "\"def\"").isSatisfiedBy(CURRENT));
+        assertTrue(WriteCondition.fromHeaders(null, "\"def\"").isSatisfiedBy(null));
+    }
+
+    @Test
+    public void headerNamingNoETagIsRejected() {
+        for (String header : new String[]{"", " ", ",", "\"\"", " , \"\" "}) {
+            try {
+                WriteCondition.fromHeaders(header, null);
+                fail("If-Match '" + header + "' accepted");
+            } catch (InvalidConditionException e) {
+                assertEquals(header, e.getHeader());
+            }
+            try {
+                WriteCondition.fromHeaders(null, header);
+                fail("If-None-Match '" + header + "' accepted");
+            } catch (InvalidConditionException e) {
+                assertEquals(header, e.getHeader());
+            }
+        }
+    }
+}
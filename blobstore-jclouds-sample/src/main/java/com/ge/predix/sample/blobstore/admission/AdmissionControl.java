@@ -0,0 +1,290 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.admission;
+
+import com.ge.predix.sample.blobstore.config.AdmissionProperties;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides whether a transfer may start. Every admitted transfer holds a reservation against
+ * a global byte budget and is charged against the bandwidth bucket of its tenant.
+ * Requests that do not fit are rejected immediately instead of being queued.
+ * <p/>
+ * At most maxTenants buckets are kept. Once they are all in use, new tenants share a single
+ * overflow bucket until idle buckets can be evicted.
+ */
+public class AdmissionControl implements PublicMetrics {
+
+    Log log = LogFactory.getLog(AdmissionControl.class);
+
+    private final AdmissionProperties properties;
+
+    private final ByteBudget budget;
+
+    /**
+     * Heap an upload may hold in part buffers, the least an upload of unknown length reserves
+     */
+    private final long uploadBufferBytes;
+
+    private final ConcurrentMap<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+
+    /**
+     * Shared by the tenants that find no room for a bucket of their own
+     */
+    private final TokenBucket overflowBucket;
+
+    private final AtomicLong overflowed = new AtomicLong();
+
+    private final AtomicLong admitted = new AtomicLong();
+
+    private final AtomicLong rejectedBudget = new AtomicLong();
+
+    private final AtomicLong rejectedBandwidth = new AtomicLong();
+
+    private final AtomicLong bytesTransferred = new AtomicLong();
+
+    private final AtomicLong throttledMillis = new AtomicLong();
+
+    public AdmissionControl(AdmissionProperties properties, long uploadBufferBytes) {
+        this.properties = properties;
+        this.budget = new ByteBudget(properties.getMaxInFlightBytes());
+        this.uploadBufferBytes = uploadBufferBytes;
+        this.overflowBucket = properties.getBytesPerSecond() > 0
+                ? new TokenBucket(properties.getBytesPerSecond(), properties.getBurstBytes()) : null;
+    }
+
+    /**
+     * Number of bytes to reserve for a transfer.
+     *
+     * @param upload        true for uploads, false for downloads
+     * @param contentLength request Content-Length, or -1 when unknown
+     * @return long bytes to reserve
+     */
+    public long reservationFor(boolean upload, long contentLength) {
+        long reservation = upload ? Math.max(properties.getUploadReservationBytes(), uploadBufferBytes)
+                : properties.getDownloadReservationBytes();
+        if (upload && contentLength >= 0) {
+            reservation = Math.min(reservation, contentLength);
+        }
+        return Math.min(reservation, budget.getCapacity());
+    }
+
+    /**
+     * Caps a fixed reservation at the budget, so it can still be admitted when nothing else runs.
+     *
+     * @param bytes bytes an endpoint holds in buffers while it runs
+     * @return long bytes to reserve
+     */
+    public long reservationOf(long bytes) {
+        return Math.min(bytes, budget.getCapacity());
+    }
+
+    /**
+     * Number of bytes to charge when a transfer is admitted, before any of it has moved.
+     *
+     * @param upload        true for uploads, false for downloads
+     * @param contentLength request Content-Length, or -1 when unknown
+     * @return long bytes to prepay, 0 when the transfer is charged only as it streams
+     */
+    public long prepaymentFor(boolean upload, long contentLength) {
+        return upload && contentLength < 0 ? properties.getChunkedUploadChargeBytes() : 0;
+    }
+
+    /**
+     * Admits a transfer or rejects it without waiting.
+     *
+     * @param tenant      client or tenant the transfer is accounted to
+     * @param reservation bytes to hold against the global budget while the transfer runs
+     * @return Ticket to be released once the transfer completes
+     * @throws AdmissionRejectedException if the budget or the tenant's bandwidth is exhausted
+     */
+    public Ticket admit(String tenant, long reservation) throws AdmissionRejectedException {
+        TokenBucket bucket = bucketFor(tenant);
+        if (bucket != null) {
+            long waitNanos = bucket.nanosUntilAvailable();
+            if (waitNanos > 0) {
+                rejectedBandwidth.incrementAndGet();
+                throw new AdmissionRejectedException("Bandwidth limit exceeded for " + tenant,
+                        Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos) + 1));
+            }
+        }
+
+        if (!budget.tryAcquire(reservation)) {
+            rejectedBudget.incrementAndGet();
+            throw new AdmissionRejectedException("Too many transfers in flight", 1);
+        }
+
+        admitted.incrementAndGet();
+        return new Ticket(reservation, bucket);
+    }
+
+    private TokenBucket bucketFor(String tenant) {
+        if (properties.getBytesPerSecond() <= 0) {
+            return null;
+        }
+        TokenBucket bucket = buckets.get(tenant);
+        if (bucket != null) {
+            return bucket;
+        }
+        // Creation is serialized so concurrent new tenants cannot push the map past its cap
+        synchronized (buckets) {
+            bucket = buckets.get(tenant);
+            if (bucket != null) {
+                return bucket;
+            }
+            if (buckets.size() >= properties.getMaxTenants()) {
+                evictIdleBuckets();
+                if (buckets.size() >= properties.getMaxTenants()) {
+                    overflowed.incrementAndGet();
+                    return overflowBucket;
+                }
+            }
+            bucket = new TokenBucket(properties.getBytesPerSecond(), properties.getBurstBytes());
+            buckets.put(tenant, bucket);
+            return bucket;
+        }
+    }
+
+    private void evictIdleBuckets() {
+        for (Iterator<Map.Entry<String, TokenBucket>> it = buckets.entrySet().iterator(); it.hasNext(); ) {
+            if (it.next().getValue().isIdle()) {
+                it.remove();
+            }
+        }
+        if (log.isDebugEnabled())
+            log.debug("evictIdleBuckets(): " + buckets.size() + " tenant buckets remaining");
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        Collection<Metric<?>> metrics = new ArrayList<>();
+        metrics.add(new Metric<Long>("blobstore.admission.admitted", admitted.get()));
+        metrics.add(new Metric<Long>("blobstore.admission.rejected.budget", rejectedBudget.get()));
+        metrics.add(new Metric<Long>("blobstore.admission.rejected.bandwidth", rejectedBandwidth.get()));
+        metrics.add(new Metric<Long>("blobstore.admission.bytes.transferred", bytesTransferred.get()));
+        metrics.add(new Metric<Long>("blobstore.admission.throttled.millis", throttledMillis.get()));
+        metrics.add(new Metric<Long>("blobstore.admission.inflight.bytes", budget.getInFlight()));
+        metrics.add(new Metric<Long>("blobstore.admission.inflight.capacity", budget.getCapacity()));
+        metrics.add(new Metric<Integer>("blobstore.admission.tenants", buckets.size()));
+        metrics.add(new Metric<Long>("blobstore.admission.tenants.overflowed", overflowed.get()));
+        return metrics;
+    }
+
+    /**
+     * Handle on an admitted transfer.
+     */
+    public class Ticket {
+
+        private final long reservation;
+
+        private final TokenBucket bucket;
+
+        /**
+         * Bytes charged ahead of the transfer that streamed bytes are counted against first
+         */
+        private long prepaid;
+
+        private boolean released;
+
+        private Ticket(long reservation, TokenBucket bucket) {
+            this.reservation = reservation;
+            this.bucket = bucket;
+        }
+
+        /**
+         * Charges bytes to the tenant's bandwidth bucket before they are transferred, e.g. for
+         * an upload of unknown length. Transferred bytes are charged once they exceed it.
+         *
+         * @param bytes number of bytes to charge up front
+         */
+        public void prepay(long bytes) {
+            if (bytes <= 0) {
+                return;
+            }
+            synchronized (this) {
+                prepaid += bytes;
+            }
+            if (bucket != null) {
+                bucket.charge(bytes);
+            }
+        }
+
+        /**
+         * Charges transferred bytes to the tenant's bandwidth bucket.
+         *
+         * @param bytes number of bytes moved
+         */
+        public void charge(long bytes) {
+            if (bytes <= 0) {
+                return;
+            }
+            bytesTransferred.addAndGet(bytes);
+            long due;
+            synchronized (this) {
+                long credit = Math.min(prepaid, bytes);
+                prepaid -= credit;
+                due = bytes - credit;
+            }
+            if (bucket != null && due > 0) {
+                bucket.charge(due);
+            }
+        }
+
+        /**
+         * Charges transferred bytes and waits until the tenant's bucket is out of debt again,
+         * which paces a running transfer to the tenant's sustained rate.
+         *
+         * @param bytes number of bytes moved
+         * @throws InterruptedIOException if interrupted while waiting
+         */
+        public void throttle(long bytes) throws InterruptedIOException {
+            charge(bytes);
+            if (bucket == null) {
+                return;
+            }
+            long waitNanos = bucket.nanosUntilAvailable();
+            if (waitNanos > 0) {
+                throttledMillis.addAndGet(TimeUnit.NANOSECONDS.toMillis(waitNanos));
+                try {
+                    TimeUnit.NANOSECONDS.sleep(waitNanos);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while throttling a transfer");
+                }
+            }
+        }
+
+        public synchronized void release() {
+            if (!released) {
+                released = true;
+                budget.release(reservation);
+            }
+        }
+    }
+}
@@ -0,0 +1,368 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.admission;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.FilterChain;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.IOException;
+import java.security.Principal;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Servlet filter that applies {@link AdmissionControl} to blob transfers. Rejected requests
+ * get a 429 with a Retry-After header before any of the body has been read. Admitted
+ * transfers are charged as their request or response body streams and are paced to the
+ * tenant's rate once its bucket runs into debt.
+ * <p/>
+ * Only multipart uploads and routes registered as uploads reserve upload buffers, other POSTs
+ * such as copy, move or the presigned multipart calls carry small bodies and are admitted like
+ * downloads. The tenant is the authenticated principal, else the trusted tenant header when one
+ * is configured, else the remote address.
+ */
+public class AdmissionFilter extends OncePerRequestFilter {
+
+    Log log = LogFactory.getLog(AdmissionFilter.class);
+
+    /**
+     * Transfers are charged to the bandwidth bucket in chunks of this size
+     */
+    private static final int CHARGE_INTERVAL = 64 * 1024;
+
+    private final AdmissionControl admissionControl;
+
+    /**
+     * Header set by a trusted proxy, null or empty if clients may not choose their tenant
+     */
+    private final String tenantHeader;
+
+    /**
+     * Endpoints admitted with a fixed reservation, keyed by path below the context path
+     */
+    private final Map<String, Route> routes = new HashMap<>();
+
+    public AdmissionFilter(AdmissionControl admissionControl, String tenantHeader) {
+        this.admissionControl = admissionControl;
+        this.tenantHeader = tenantHeader;
+    }
+
+    /**
+     * Admits requests to an endpoint with a fixed reservation, for endpoints whose method does
+     * not tell which way the body flows or whose buffers differ from those of a single transfer.
+     *
+     * @param path        path of the endpoint below the context path
+     * @param upload      true if the bulk of the bytes is read from the client
+     * @param reservation bytes the endpoint holds in buffers while it runs
+     */
+    public void addRoute(String path, boolean upload, long reservation) {
+        routes.put(path, new Route(upload, reservation));
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+
+        String method = request.getMethod();
+        if ("DELETE".equals(method) || "HEAD".equals(method) || "OPTIONS".equals(method)) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        Route route = routes.get(request.getRequestURI().substring(request.getContextPath().length()));
+        boolean upload = route != null ? route.upload : isMultipartUpload(request);
+        long contentLength = contentLength(request);
+        String tenant = tenantOf(request);
+        long reservation = route != null ? admissionControl.reservationOf(route.reservation)
+                : admissionControl.reservationFor(upload, contentLength);
+
+        AdmissionControl.Ticket ticket;
+        try {
+            ticket = admissionControl.admit(tenant, reservation);
+        } catch (AdmissionRejectedException e) {
+            if (log.isDebugEnabled())
+                log.debug("doFilterInternal(): Rejected " + method + " " + request.getRequestURI() + " : " + e.getMessage());
+            response.setHeader("Retry-After", String.valueOf(e.getRetryAfterSeconds()));
+            response.sendError(HttpStatus.TOO_MANY_REQUESTS.value(), e.getMessage());
+            return;
+        }
+
+        MeteredResponse meteredResponse = null;
+        try {
+            if (upload) {
+                ticket.prepay(admissionControl.prepaymentFor(true, contentLength));
+                filterChain.doFilter(new MeteredRequest(request, ticket), response);
+            } else {
+                meteredResponse = new MeteredResponse(response, ticket);
+                filterChain.doFilter(request, meteredResponse);
+            }
+        } finally {
+            if (request.isAsyncStarted()) {
+                // The transfer continues after this thread returns, release once it is done
+                request.getAsyncContext().addListener(new ReleaseListener(ticket, meteredResponse));
+            } else {
+                release(ticket, meteredResponse);
+            }
+        }
+    }
+
+    private static void release(AdmissionControl.Ticket ticket, MeteredResponse meteredResponse) {
+        if (meteredResponse != null) {
+            meteredResponse.chargePending();
+        }
+        ticket.release();
+    }
+
+    private static boolean isMultipartUpload(HttpServletRequest request) {
+        String method = request.getMethod();
+        String contentType = request.getContentType();
+        return ("POST".equals(method) || "PUT".equals(method)) && contentType != null
+                && contentType.toLowerCase().startsWith("multipart/");
+    }
+
+    private String tenantOf(HttpServletRequest request) {
+        Principal principal = request.getUserPrincipal();
+        if (principal != null && principal.getName() != null) {
+            return "principal:" + principal.getName();
+        }
+        if (tenantHeader != null && !tenantHeader.isEmpty()) {
+            String tenant = request.getHeader(tenantHeader);
+            if (tenant != null && !tenant.isEmpty()) {
+                return "tenant:" + tenant;
+            }
+        }
+        return "address:" + request.getRemoteAddr();
+    }
+
+    private long contentLength(HttpServletRequest request) {
+        String header = request.getHeader("Content-Length");
+        if (header == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(header.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static class Route {
+
+        private final boolean upload;
+
+        private final long reservation;
+
+        Route(boolean upload, long reservation) {
+            this.upload = upload;
+            this.reservation = reservation;
+        }
+    }
+
+    /**
+     * Releases the ticket of an asynchronously processed request.
+     */
+    private static class ReleaseListener implements AsyncListener {
+
+        private final AdmissionControl.Ticket ticket;
+
+        private final MeteredResponse meteredResponse;
+
+        ReleaseListener(AdmissionControl.Ticket ticket, MeteredResponse meteredResponse) {
+            this.ticket = ticket;
+            this.meteredResponse = meteredResponse;
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            release(ticket, meteredResponse);
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            release(ticket, meteredResponse);
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            release(ticket, meteredResponse);
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            event.getAsyncContext().addListener(this);
+        }
+    }
+
+    /**
+     * Request wrapper charging the bytes read from the client.
+     */
+    private static class MeteredRequest extends HttpServletRequestWrapper {
+
+        private final AdmissionControl.Ticket ticket;
+
+        private ServletInputStream inputStream;
+
+        private long pending;
+
+        MeteredRequest(HttpServletRequest request, AdmissionControl.Ticket ticket) {
+            super(request);
+            this.ticket = ticket;
+        }
+
+        @Override
+        public ServletInputStream getInputStream() throws IOException {
+            if (inputStream == null) {
+                final ServletInputStream delegate = super.getInputStream();
+                inputStream = new ServletInputStream() {
+                    @Override
+                    public int read() throws IOException {
+                        int b = delegate.read();
+                        consumed(b == -1 ? -1 : 1);
+                        return b;
+                    }
+
+                    @Override
+                    public int read(byte[] b, int off, int len) throws IOException {
+                        int n = delegate.read(b, off, len);
+                        consumed(n);
+                        return n;
+                    }
+
+                    @Override
+                    public int available() throws IOException {
+                        return delegate.available();
+                    }
+
+                    @Override
+                    public void close() throws IOException {
+                        delegate.close();
+                    }
+
+                    public boolean isFinished() {
+                        return delegate.isFinished();
+                    }
+
+                    public boolean isReady() {
+                        return delegate.isReady();
+                    }
+
+                    public void setReadListener(ReadListener readListener) {
+                        delegate.setReadListener(readListener);
+                    }
+                };
+            }
+            return inputStream;
+        }
+
+        /**
+         * @param bytes bytes read, -1 at the end of the body
+         */
+        private synchronized void consumed(int bytes) throws IOException {
+            if (bytes > 0) {
+                pending += bytes;
+            }
+            if (pending >= CHARGE_INTERVAL || (bytes == -1 && pending > 0)) {
+                long charged = pending;
+                pending = 0;
+                ticket.throttle(charged);
+            }
+        }
+    }
+
+    /**
+     * Response wrapper counting the bytes written to the client.
+     */
+    private static class MeteredResponse extends HttpServletResponseWrapper {
+
+        private final AdmissionControl.Ticket ticket;
+
+        private ServletOutputStream outputStream;
+
+        private long pending;
+
+        MeteredResponse(HttpServletResponse response, AdmissionControl.Ticket ticket) {
+            super(response);
+            this.ticket = ticket;
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            if (outputStream == null) {
+                final ServletOutputStream delegate = super.getOutputStream();
+                outputStream = new ServletOutputStream() {
+                    @Override
+                    public void write(int b) throws IOException {
+                        delegate.write(b);
+                        written(1);
+                    }
+
+                    @Override
+                    public void write(byte[] b, int off, int len) throws IOException {
+                        delegate.write(b, off, len);
+                        written(len);
+                    }
+
+                    @Override
+                    public void flush() throws IOException {
+                        delegate.flush();
+                    }
+
+                    @Override
+                    public void close() throws IOException {
+                        delegate.close();
+                    }
+
+                    public boolean isReady() {
+                        return delegate.isReady();
+                    }
+
+                    public void setWriteListener(WriteListener writeListener) {
+                        delegate.setWriteListener(writeListener);
+                    }
+                };
+            }
+            return outputStream;
+        }
+
+        private synchronized void written(long bytes) throws IOException {
+            pending += bytes;
+            if (pending >= CHARGE_INTERVAL) {
+                long charged = pending;
+                pending = 0;
+                ticket.throttle(charged);
+            }
+        }
+
+        synchronized void chargePending() {
+            ticket.charge(pending);
+            pending = 0;
+        }
+    }
+}
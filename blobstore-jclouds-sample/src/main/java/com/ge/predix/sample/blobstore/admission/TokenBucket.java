@@ -0,0 +1,73 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.admission;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket measured in bytes. Transfers are charged as they happen and may drive the
+ * bucket into debt; new requests are only admitted once the debt has been paid back.
+ */
+public class TokenBucket {
+
+    private final long bytesPerSecond;
+
+    private final long burstBytes;
+
+    private double tokens;
+
+    private long lastRefillNanos;
+
+    public TokenBucket(long bytesPerSecond, long burstBytes) {
+        this.bytesPerSecond = bytesPerSecond;
+        this.burstBytes = burstBytes;
+        this.tokens = burstBytes;
+        this.lastRefillNanos = System.nanoTime();
+    }
+
+    /**
+     * @return 0 if a new transfer may start now, otherwise the nanoseconds until the debt is repaid
+     */
+    public synchronized long nanosUntilAvailable() {
+        refill();
+        if (tokens > 0) {
+            return 0;
+        }
+        return (long) Math.ceil(-tokens * TimeUnit.SECONDS.toNanos(1) / bytesPerSecond) + 1;
+    }
+
+    public synchronized void charge(long bytes) {
+        refill();
+        tokens -= bytes;
+    }
+
+    /**
+     * @return true if the bucket is full, meaning the client has been idle long enough to forget it
+     */
+    public synchronized boolean isIdle() {
+        refill();
+        return tokens >= burstBytes;
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        long elapsed = now - lastRefillNanos;
+        if (elapsed > 0) {
+            tokens = Math.min(burstBytes, tokens + (double) elapsed * bytesPerSecond / TimeUnit.SECONDS.toNanos(1));
+            lastRefillNanos = now;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.config;
+
+import com.ge.predix.sample.blobstore.admission.AdmissionControl;
+import com.ge.predix.sample.blobstore.admission.AdmissionFilter;
+import com.ge.predix.sample.blobstore.repository.BlobstoreService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.embedded.FilterRegistrationBean;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+
+/**
+ * Registers admission control in front of the blob transfer endpoints.
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "blobstore.admission", name = "enabled", matchIfMissing = true)
+@EnableConfigurationProperties({AdmissionProperties.class})
+public class AdmissionConfig {
+
+    private static final String ARCHIVE_PATH = "/v1/blobs/archive";
+
+    private static final String EXTRACT_PATH = "/v1/blob/extract";
+
+    @Autowired
+    private AdmissionProperties admissionProperties;
+
+    @Autowired
+    private TransferProperties transferProperties;
+
+    @Autowired
+    private ArchiveProperties archiveProperties;
+
+    @Bean
+    public AdmissionControl admissionControl() {
+        return new AdmissionControl(admissionProperties, uploadBufferBytes());
+    }
+
+    @Bean
+    public FilterRegistrationBean admissionFilter() {
+        AdmissionFilter filter = new AdmissionFilter(admissionControl(), admissionProperties.getTenantHeader());
+        // An archive is a download requested with a POST, it holds the chunks read ahead for
+        // the next Blobs while the current one is written
+        filter.addRoute(ARCHIVE_PATH, false, (long) archiveProperties.getPrefetchCount()
+                * (archiveProperties.getChunksPerBlob() + 2) * archiveProperties.getChunkSize());
+        // Extraction buffers small entries for batched puts and streams large ones as uploads
+        filter.addRoute(EXTRACT_PATH, true, archiveProperties.getExtractMaxBufferedBytes() + uploadBufferBytes());
+
+        FilterRegistrationBean registration = new FilterRegistrationBean(filter);
+        registration.addUrlPatterns("/v1/blob", "/v1/blob/*", "/v1/async/blob", "/v1/async/blob/*", ARCHIVE_PATH);
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE);
+        return registration;
+    }
+
+    private long uploadBufferBytes() {
+        return BlobstoreService.uploadBufferBytes(transferProperties.getPartSizeBytes(),
+                transferProperties.getMaxParallelParts());
+    }
+}
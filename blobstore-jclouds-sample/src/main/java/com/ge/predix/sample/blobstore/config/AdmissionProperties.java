@@ -0,0 +1,146 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Limits applied by the admission filter in front of the /v1/blob endpoints.
+ */
+@ConfigurationProperties(prefix = "blobstore.admission", locations = "classpath:application.yml")
+public class AdmissionProperties {
+
+    /**
+     * Turns admission control on or off
+     */
+    private boolean enabled = true;
+
+    /**
+     * Global budget for bytes held in transfer buffers across all requests
+     */
+    private long maxInFlightBytes = 256L * 1024 * 1024;
+
+    /**
+     * Bytes reserved for an upload, capped by its Content-Length. Raised to the part buffers
+     * an upload may hold when those are larger
+     */
+    private long uploadReservationBytes = 50L * 1024 * 1024;
+
+    /**
+     * Bytes charged to the client's bandwidth up front for an upload without Content-Length
+     */
+    private long chunkedUploadChargeBytes = 8L * 1024 * 1024;
+
+    /**
+     * Bytes reserved for a download
+     */
+    private long downloadReservationBytes = 1024 * 1024;
+
+    /**
+     * Sustained transfer rate allowed per client, 0 disables bandwidth limiting
+     */
+    private long bytesPerSecond = 20L * 1024 * 1024;
+
+    /**
+     * Bytes a client may transfer in a burst above its sustained rate
+     */
+    private long burstBytes = 100L * 1024 * 1024;
+
+    /**
+     * Request header identifying the tenant when there is no authenticated principal, empty to
+     * use the remote address. Clients can send any header, so only set it behind a proxy that
+     * overwrites it
+     */
+    private String tenantHeader = "";
+
+    /**
+     * Upper bound on the number of per-client buckets kept in memory, tenants beyond it share
+     * one bucket
+     */
+    private int maxTenants = 10000;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public long getMaxInFlightBytes() {
+        return maxInFlightBytes;
+    }
+
+    public void setMaxInFlightBytes(long maxInFlightBytes) {
+        this.maxInFlightBytes = maxInFlightBytes;
+    }
+
+    public long getUploadReservationBytes() {
+        return uploadReservationBytes;
+    }
+
+    public void setUploadReservationBytes(long uploadReservationBytes) {
+        this.uploadReservationBytes = uploadReservationBytes;
+    }
+
+    public long getChunkedUploadChargeBytes() {
+        return chunkedUploadChargeBytes;
+    }
+
+    public void setChunkedUploadChargeBytes(long chunkedUploadChargeBytes) {
+        this.chunkedUploadChargeBytes = chunkedUploadChargeBytes;
+    }
+
+    public long getDownloadReservationBytes() {
+        return downloadReservationBytes;
+    }
+
+    public void setDownloadReservationBytes(long downloadReservationBytes) {
+        this.downloadReservationBytes = downloadReservationBytes;
+    }
+
+    public long getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    public void setBytesPerSecond(long bytesPerSecond) {
+        this.bytesPerSecond = bytesPerSecond;
+    }
+
+    public long getBurstBytes() {
+        return burstBytes;
+    }
+
+    public void setBurstBytes(long burstBytes) {
+        this.burstBytes = burstBytes;
+    }
+
+    public String getTenantHeader() {
+        return tenantHeader;
+    }
+
+    public void setTenantHeader(String tenantHeader) {
+        this.tenantHeader = tenantHeader;
+    }
+
+    public int getMaxTenants() {
+        return maxTenants;
+    }
+
+    public void setMaxTenants(int maxTenants) {
+        this.maxTenants = maxTenants;
+    }
+}
@@ -0,0 +1,72 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.config;
+
+import com.ge.predix.sample.blobstore.archive.ArchiveExtractor;
+import com.ge.predix.sample.blobstore.archive.ArchiveStreamer;
+import com.ge.predix.sample.blobstore.io.ContentTypeDetector;
+import com.ge.predix.sample.blobstore.spi.BlobStoreBackend;
+import com.ge.predix.sample.blobstore.write.ConditionalWrites;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Provides the archive streamer and extractor. Blobs are read ahead and extracted entries are
+ * put on the transfer executor, archives are flushed to the client at the same interval as
+ * single downloads.
+ */
+@Configuration
+@EnableConfigurationProperties({ArchiveProperties.class})
+public class ArchiveConfig {
+
+    @Autowired
+    private ArchiveProperties archiveProperties;
+
+    @Autowired
+    private DownloadProperties downloadProperties;
+
+    @Autowired
+    private BlobStoreBackend objectStoreService;
+
+    @Autowired
+    private ExecutorService transferExecutor;
+
+    @Autowired
+    private ContentTypeDetector contentTypeDetector;
+
+    @Autowired
+    private ConditionalWrites conditionalWrites;
+
+    @Bean
+    public ArchiveStreamer archiveStreamer() {
+        return new ArchiveStreamer(objectStoreService, transferExecutor, archiveProperties.getPrefetchCount(),
+                archiveProperties.getChunkSize(), archiveProperties.getChunksPerBlob(),
+                archiveProperties.getCompressionLevel(), archiveProperties.getMaxEntries(),
+                downloadProperties.getFlushIntervalBytes());
+    }
+
+    @Bean
+    public ArchiveExtractor archiveExtractor() {
+        return new ArchiveExtractor(objectStoreService, conditionalWrites, transferExecutor, contentTypeDetector, archiveProperties.getExtractSmallEntryBytes(),
+                archiveProperties.getExtractBatchEntries(), archiveProperties.getExtractBatchBytes(),
+                archiveProperties.getExtractMaxBufferedBytes(), archiveProperties.getExtractMaxConcurrency(),
+                archiveProperties.getMaxEntries());
+    }
+}
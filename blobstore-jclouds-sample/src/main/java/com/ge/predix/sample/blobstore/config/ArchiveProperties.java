@@ -0,0 +1,168 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Streaming of many Blobs as one zip or tar archive.
+ */
+@ConfigurationProperties(prefix = "blobstore.archive", locations = "classpath:application.yml")
+public class ArchiveProperties {
+
+    /**
+     * Blobs read ahead while the current one is written to the client
+     */
+    private int prefetchCount = 4;
+
+    /**
+     * Size of each read ahead chunk
+     */
+    private int chunkSize = 64 * 1024;
+
+    /**
+     * Chunks buffered per Blob read ahead
+     */
+    private int chunksPerBlob = 16;
+
+    /**
+     * Deflate level of zip entries, 0 stores them uncompressed
+     */
+    private int compressionLevel = 1;
+
+    /**
+     * Largest number of Blobs in one archive
+     */
+    private int maxEntries = 10000;
+
+    /**
+     * Keys requested per listing when archiving a prefix
+     */
+    private int listPageSize = 1000;
+
+    /**
+     * Extracted entries up to this size are buffered and put in batches, larger ones are streamed
+     */
+    private int extractSmallEntryBytes = 1024 * 1024;
+
+    /**
+     * Most entries put by one batch
+     */
+    private int extractBatchEntries = 32;
+
+    /**
+     * Bytes after which a batch is put even if it has room for more entries
+     */
+    private int extractBatchBytes = 4 * 1024 * 1024;
+
+    /**
+     * Memory held by buffered entries of one upload
+     */
+    private int extractMaxBufferedBytes = 64 * 1024 * 1024;
+
+    /**
+     * Batches of one upload put concurrently
+     */
+    private int extractMaxConcurrency = 16;
+
+    public int getPrefetchCount() {
+        return prefetchCount;
+    }
+
+    public void setPrefetchCount(int prefetchCount) {
+        this.prefetchCount = prefetchCount;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public void setChunkSize(int chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+
+    public int getChunksPerBlob() {
+        return chunksPerBlob;
+    }
+
+    public void setChunksPerBlob(int chunksPerBlob) {
+        this.chunksPerBlob = chunksPerBlob;
+    }
+
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    public void setCompressionLevel(int compressionLevel) {
+        this.compressionLevel = compressionLevel;
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public void setMaxEntries(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    public int getListPageSize() {
+        return listPageSize;
+    }
+
+    public void setListPageSize(int listPageSize) {
+        this.listPageSize = listPageSize;
+    }
+
+    public int getExtractSmallEntryBytes() {
+        return extractSmallEntryBytes;
+    }
+
+    public void setExtractSmallEntryBytes(int extractSmallEntryBytes) {
+        this.extractSmallEntryBytes = extractSmallEntryBytes;
+    }
+
+    public int getExtractBatchEntries() {
+        return extractBatchEntries;
+    }
+
+    public void setExtractBatchEntries(int extractBatchEntries) {
+        this.extractBatchEntries = extractBatchEntries;
+    }
+
+    public int getExtractBatchBytes() {
+        return extractBatchBytes;
+    }
+
+    public void setExtractBatchBytes(int extractBatchBytes) {
+        this.extractBatchBytes = extractBatchBytes;
+    }
+
+    public int getExtractMaxBufferedBytes() {
+        return extractMaxBufferedBytes;
+    }
+
+    public void setExtractMaxBufferedBytes(int extractMaxBufferedBytes) {
+        this.extractMaxBufferedBytes = extractMaxBufferedBytes;
+    }
+
+    public int getExtractMaxConcurrency() {
+        return extractMaxConcurrency;
+    }
+
+    public void setExtractMaxConcurrency(int extractMaxConcurrency) {
+        this.extractMaxConcurrency = extractMaxConcurrency;
+    }
+}
@@ -30,6 +30,21 @@ public class BlobstoreProperties {
     private String bucket;
     private String url;
 
+    /**
+     * Backend storing the Blobs, s3 or filesystem
+     */
+    private String backend = "s3";
+
+    /**
+     * Root directory of the filesystem backend
+     */
+    private String filesystemRoot = "blobstore-data";
+
+    /**
+     * Force uploads to disk before acknowledging them with the filesystem backend
+     */
+    private boolean filesystemFsync = true;
+
     public String getAccessKey() {
         return accessKey;
     }
@@ -61,4 +76,28 @@ public class BlobstoreProperties {
     public void setUrl(String url) {
         this.url = url;
     }
+
+    public String getBackend() {
+        return backend;
+    }
+
+    public void setBackend(String backend) {
+        this.backend = backend;
+    }
+
+    public String getFilesystemRoot() {
+        return filesystemRoot;
+    }
+
+    public void setFilesystemRoot(String filesystemRoot) {
+        this.filesystemRoot = filesystemRoot;
+    }
+
+    public boolean isFilesystemFsync() {
+        return filesystemFsync;
+    }
+
+    public void setFilesystemFsync(boolean filesystemFsync) {
+        this.filesystemFsync = filesystemFsync;
+    }
 }
@@ -16,20 +16,64 @@
 package com.ge.predix.sample.blobstore.config;
 
 import com.ge.predix.sample.blobstore.repository.BlobstoreService;
+import com.ge.predix.sample.blobstore.spi.BlobStoreBackend;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.cloud.config.java.AbstractCloudConfig;
 import org.springframework.cloud.config.java.ServiceScan;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Profile;
 
+import java.util.concurrent.ExecutorService;
+
 @Configuration
 @Profile("cloud")
 @ServiceScan
 public class CloudConfig extends AbstractCloudConfig {
 
+    @Autowired
+    private TransferProperties transferProperties;
+
+    @Autowired
+    private ExecutorService requestExecutor;
+
+    @Autowired(required = false)
+    private ShardedBackends shardedBackends;
+
+    @Autowired(required = false)
+    private JournalDecorator journalDecorator;
+
+    @Autowired(required = false)
+    private TierDecorator tierDecorator;
+
+    @Autowired(required = false)
+    private KeyLayoutDecorator keyLayoutDecorator;
+
+    @Autowired(required = false)
+    private CoalescingDecorator coalescingDecorator;
+
     @Bean
-    public BlobstoreService objectStoreService() {
-        return connectionFactory().service(BlobstoreService.class);
+    public BlobStoreBackend objectStoreService() {
+        if (shardedBackends != null) {
+            return decorate(shardedBackends.create());
+        }
+        BlobstoreService blobstoreService = connectionFactory().service(BlobstoreService.class);
+        blobstoreService.setTransferExecutor(requestExecutor, transferProperties.getMaxParallelParts());
+        blobstoreService.setPartSize(transferProperties.getPartSizeBytes());
+        return decorate(blobstoreService);
+    }
+
+    private BlobStoreBackend decorate(BlobStoreBackend backend) {
+        if (journalDecorator != null) {
+            backend = journalDecorator.decorate(backend);
+        }
+        if (tierDecorator != null) {
+            backend = tierDecorator.decorate(backend);
+        }
+        if (keyLayoutDecorator != null) {
+            backend = keyLayoutDecorator.decorate(backend);
+        }
+        return coalescingDecorator != null ? coalescingDecorator.decorate(backend) : backend;
     }
 
 }
@@ -0,0 +1,76 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.config;
+
+import com.ge.predix.sample.blobstore.coalesce.CoalescingBackend;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Provides download coalescing and publishes how many Object Store reads it saved on /metrics.
+ */
+@Configuration
+@EnableConfigurationProperties({CoalesceProperties.class})
+@ConditionalOnProperty(prefix = "blobstore.coalesce", name = "enabled")
+public class CoalesceConfig {
+
+    @Autowired
+    private CoalesceProperties coalesceProperties;
+
+    /**
+     * One thread per shared Object Store read, at most maxFlights of them run at a time
+     */
+    @Bean(destroyMethod = "shutdownNow")
+    public ExecutorService coalescePumpExecutor() {
+        return Executors.newFixedThreadPool(coalesceProperties.getMaxFlights());
+    }
+
+    @Bean
+    public CoalescingDecorator coalescingDecorator() {
+        return new CoalescingDecorator(coalesceProperties, coalescePumpExecutor());
+    }
+
+    @Bean
+    public PublicMetrics coalesceMetrics() {
+        final CoalescingDecorator decorator = coalescingDecorator();
+        return new PublicMetrics() {
+            @Override
+            public Collection<Metric<?>> metrics() {
+                Collection<Metric<?>> metrics = new ArrayList<>();
+                CoalescingBackend backend = decorator.getBackend();
+                if (backend != null) {
+                    metrics.add(new Metric<Long>("blobstore.coalesce.upstream.reads", backend.getUpstreamReads()));
+                    metrics.add(new Metric<Long>("blobstore.coalesce.coalesced.reads", backend.getCoalescedReads()));
+                    metrics.add(new Metric<Long>("blobstore.coalesce.spilled.bytes", backend.getSpilledBytes()));
+                    metrics.add(new Metric<Long>("blobstore.coalesce.uncoalesced.reads", backend.getUncoalescedReads()));
+                    metrics.add(new Metric<Long>("blobstore.coalesce.detached.reads", backend.getDetachedReads()));
+                    metrics.add(new Metric<Long>("blobstore.coalesce.active", (long) backend.getActiveFlights()));
+                }
+                return metrics;
+            }
+        };
+    }
+}
@@ -0,0 +1,90 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Coalescing of concurrent downloads of the same Blob into a single Object Store read.
+ */
+@ConfigurationProperties(prefix = "blobstore.coalesce", locations = "classpath:application.yml")
+public class CoalesceProperties {
+
+    /**
+     * Turns coalescing on or off
+     */
+    private boolean enabled = false;
+
+    /**
+     * Bytes of each shared read kept in memory, readers further behind read from disk
+     */
+    private int ringBytes = 1024 * 1024;
+
+    /**
+     * Directory of the spill files of readers behind the ring
+     */
+    private String spillDirectory = "blobstore-spill";
+
+    /**
+     * Object Store reads shared at a time, downloads of further keys read on their own
+     */
+    private int maxFlights = 64;
+
+    /**
+     * Bytes all spill files may hold together, readers needing more read on their own
+     */
+    private long maxSpillBytes = 1024L * 1024 * 1024;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getRingBytes() {
+        return ringBytes;
+    }
+
+    public void setRingBytes(int ringBytes) {
+        this.ringBytes = ringBytes;
+    }
+
+    public String getSpillDirectory() {
+        return spillDirectory;
+    }
+
+    public void setSpillDirectory(String spillDirectory) {
+        this.spillDirectory = spillDirectory;
+    }
+
+    public int getMaxFlights() {
+        return maxFlights;
+    }
+
+    public void setMaxFlights(int maxFlights) {
+        this.maxFlights = maxFlights;
+    }
+
+    public long getMaxSpillBytes() {
+        return maxSpillBytes;
+    }
+
+    public void setMaxSpillBytes(long maxSpillBytes) {
+        this.maxSpillBytes = maxSpillBytes;
+    }
+}
@@ -0,0 +1,63 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.config;
+
+import com.ge.predix.sample.blobstore.coalesce.CoalescingBackend;
+import com.ge.predix.sample.blobstore.spi.BlobStoreBackend;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Puts download coalescing in front of the backend.
+ */
+public class CoalescingDecorator {
+
+    Log log = LogFactory.getLog(CoalescingDecorator.class);
+
+    private final CoalesceProperties coalesceProperties;
+
+    private final ExecutorService pumpExecutor;
+
+    private volatile CoalescingBackend backend;
+
+    public CoalescingDecorator(CoalesceProperties coalesceProperties, ExecutorService pumpExecutor) {
+        this.coalesceProperties = coalesceProperties;
+        this.pumpExecutor = pumpExecutor;
+    }
+
+    public synchronized BlobStoreBackend decorate(BlobStoreBackend delegate) {
+        try {
+            backend = new CoalescingBackend(delegate, pumpExecutor, Paths.get(coalesceProperties.getSpillDirectory()),
+                    coalesceProperties.getRingBytes(), coalesceProperties.getMaxFlights(),
+                    coalesceProperties.getMaxSpillBytes());
+            return backend;
+        } catch (IOException e) {
+            log.error("decorate(): Couldnt create the spill directory. Exception = " + e.getMessage());
+            throw new RuntimeException("Blobstore spill directory is invalid", e);
+        }
+    }
+
+    /**
+     * @return the CoalescingBackend, null until {@link #decorate(BlobStoreBackend)} has been called
+     */
+    public CoalescingBackend getBackend() {
+        return backend;
+    }
+}
@@ -0,0 +1,39 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.config;
+
+import com.ge.predix.sample.blobstore.io.DownloadWriter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Provides the writer that streams Blobs to clients.
+ */
+@Configuration
+@EnableConfigurationProperties({DownloadProperties.class})
+public class DownloadConfig {
+
+    @Autowired
+    private DownloadProperties downloadProperties;
+
+    @Bean
+    public DownloadWriter downloadWriter() {
+        return new DownloadWriter(downloadProperties.getBufferSize(), downloadProperties.getFlushIntervalBytes(),
+                downloadProperties.getMaxPooledBuffers());
+    }
+}
@@ -0,0 +1,64 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Buffering of Blob downloads to clients.
+ */
+@ConfigurationProperties(prefix = "blobstore.download", locations = "classpath:application.yml")
+public class DownloadProperties {
+
+    /**
+     * Size of each copy buffer
+     */
+    private int bufferSize = 256 * 1024;
+
+    /**
+     * Bytes written to the client between flushes
+     */
+    private long flushIntervalBytes = 4L * 1024 * 1024;
+
+    /**
+     * Idle copy buffers kept for reuse
+     */
+    private int maxPooledBuffers = 64;
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public void setBufferSize(int bufferSize) {
+        this.bufferSize = bufferSize;
+    }
+
+    public long getFlushIntervalBytes() {
+        return flushIntervalBytes;
+    }
+
+    public void setFlushIntervalBytes(long flushIntervalBytes) {
+        this.flushIntervalBytes = flushIntervalBytes;
+    }
+
+    public int getMaxPooledBuffers() {
+        return maxPooledBuffers;
+    }
+
+    public void setMaxPooledBuffers(int maxPooledBuffers) {
+        this.maxPooledBuffers = maxPooledBuffers;
+    }
+}
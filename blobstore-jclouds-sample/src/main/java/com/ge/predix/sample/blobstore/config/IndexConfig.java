@@ -0,0 +1,107 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.config;
+
+import com.ge.predix.sample.blobstore.index.MetadataIndex;
+import com.ge.predix.sample.blobstore.io.ContentTypeDetector;
+import com.ge.predix.sample.blobstore.meta.BlobMetadataService;
+import com.ge.predix.sample.blobstore.spi.BlobStoreBackend;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Builds the metadata index when enabled, keeps it current through the metadata service and
+ * rescans the Object Store periodically to pick up changes made elsewhere.
+ */
+@Configuration
+@EnableConfigurationProperties({IndexProperties.class})
+@ConditionalOnProperty(prefix = "blobstore.index", name = "enabled")
+public class IndexConfig {
+
+    Log log = LogFactory.getLog(IndexConfig.class);
+
+    @Autowired
+    private IndexProperties indexProperties;
+
+    @Autowired
+    private BlobStoreBackend objectStoreService;
+
+    @Autowired
+    private BlobMetadataService blobMetadataService;
+
+    @Autowired
+    private ExecutorService transferExecutor;
+
+    @Autowired
+    private ContentTypeDetector contentTypeDetector;
+
+    @Bean
+    public MetadataIndex metadataIndex() {
+        MetadataIndex index = new MetadataIndex(indexProperties.getMaxResults(), indexProperties.getMaxScanned());
+        index.setContentTypeDetector(contentTypeDetector);
+        blobMetadataService.addListener(index);
+        return index;
+    }
+
+    @Bean(destroyMethod = "shutdownNow")
+    public ScheduledExecutorService indexScanScheduler() {
+        final MetadataIndex index = metadataIndex();
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    index.scan(objectStoreService, transferExecutor, indexProperties.getScanParallelism(),
+                            indexProperties.getPageSize());
+                } catch (Exception e) {
+                    // Keep the schedule, the next scan retries
+                    log.error("indexScanScheduler(): Scan failed : " + e.getMessage());
+                }
+            }
+        }, 0, indexProperties.getReconcileIntervalMinutes(), TimeUnit.MINUTES);
+        return scheduler;
+    }
+
+    @Bean
+    public PublicMetrics indexMetrics() {
+        final MetadataIndex index = metadataIndex();
+        return new PublicMetrics() {
+            @Override
+            public Collection<Metric<?>> metrics() {
+                Collection<Metric<?>> metrics = new ArrayList<>();
+                metrics.add(new Metric<Long>("blobstore.index.size", (long) index.size()));
+                metrics.add(new Metric<Long>("blobstore.index.scan.millis", index.getLastScanDurationMillis()));
+                metrics.add(new Metric<Long>("blobstore.index.scan.age.millis",
+                        index.getLastScanMillis() == 0 ? -1 : System.currentTimeMillis() - index.getLastScanMillis()));
+                return metrics;
+            }
+        };
+    }
+}
@@ -0,0 +1,78 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.config;
+
+import com.ge.predix.sample.blobstore.journal.WriteBehindBackend;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * Provides write-behind uploads and the bounded pool draining the journal, and publishes the
+ * queue depth and drain lag on /metrics.
+ */
+@Configuration
+@EnableConfigurationProperties({JournalProperties.class})
+@ConditionalOnProperty(prefix = "blobstore.journal", name = "enabled")
+public class JournalConfig {
+
+    @Autowired
+    private JournalProperties journalProperties;
+
+    /**
+     * Uploads left queued at shutdown stay in the journal and are replayed on the next start
+     */
+    @Bean(destroyMethod = "shutdownNow")
+    public ScheduledExecutorService journalUploader() {
+        return Executors.newScheduledThreadPool(journalProperties.getUploadThreads());
+    }
+
+    @Bean
+    public JournalDecorator journalDecorator() {
+        return new JournalDecorator(journalProperties, journalUploader());
+    }
+
+    @Bean
+    public PublicMetrics journalMetrics() {
+        final JournalDecorator decorator = journalDecorator();
+        return new PublicMetrics() {
+            @Override
+            public Collection<Metric<?>> metrics() {
+                Collection<Metric<?>> metrics = new ArrayList<>();
+                WriteBehindBackend backend = decorator.getBackend();
+                if (backend != null) {
+                    metrics.add(new Metric<Long>("blobstore.journal.queue.depth", (long) backend.getQueueDepth()));
+                    metrics.add(new Metric<Long>("blobstore.journal.drain.lag.millis", backend.getDrainLagMillis()));
+                    metrics.add(new Metric<Long>("blobstore.journal.bytes", backend.getJournalBytes()));
+                    metrics.add(new Metric<Long>("blobstore.journal.journaled", backend.getJournaled()));
+                    metrics.add(new Metric<Long>("blobstore.journal.uploaded", backend.getUploaded()));
+                    metrics.add(new Metric<Long>("blobstore.journal.upload.failures", backend.getUploadFailures()));
+                    metrics.add(new Metric<Long>("blobstore.journal.write.throughs", backend.getWriteThroughs()));
+                }
+                return metrics;
+            }
+        };
+    }
+}
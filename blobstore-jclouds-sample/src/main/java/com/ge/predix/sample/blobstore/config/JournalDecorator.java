@@ -0,0 +1,70 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.config;
+
+import com.ge.predix.sample.blobstore.journal.UploadJournal;
+import com.ge.predix.sample.blobstore.journal.WriteBehindBackend;
+import com.ge.predix.sample.blobstore.spi.BlobStoreBackend;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * Puts the write-behind journal in front of the backend and replays the uploads a previous run
+ * left in it.
+ */
+public class JournalDecorator {
+
+    Log log = LogFactory.getLog(JournalDecorator.class);
+
+    private final JournalProperties journalProperties;
+
+    private final ScheduledExecutorService uploader;
+
+    private volatile WriteBehindBackend backend;
+
+    public JournalDecorator(JournalProperties journalProperties, ScheduledExecutorService uploader) {
+        this.journalProperties = journalProperties;
+        this.uploader = uploader;
+    }
+
+    public synchronized BlobStoreBackend decorate(BlobStoreBackend delegate) {
+        try {
+            UploadJournal journal = new UploadJournal(Paths.get(journalProperties.getDirectory()),
+                    journalProperties.getSegmentBytes(), journalProperties.getMaxBytes(), journalProperties.isFsync());
+            WriteBehindBackend writeBehind = new WriteBehindBackend(delegate, journal, uploader,
+                    journalProperties.getWaitMillis(), journalProperties.getRetryDelayMillis(),
+                    journalProperties.getMaxObjectBytes());
+            writeBehind.start();
+            log.info("decorate(): write-behind journal at " + journalProperties.getDirectory());
+            backend = writeBehind;
+            return writeBehind;
+        } catch (IOException e) {
+            log.error("decorate(): Couldnt open the write-behind journal. Exception = " + e.getMessage());
+            throw new RuntimeException("Blobstore journal directory is invalid", e);
+        }
+    }
+
+    /**
+     * @return the WriteBehindBackend, null until {@link #decorate(BlobStoreBackend)} has been called
+     */
+    public WriteBehindBackend getBackend() {
+        return backend;
+    }
+}
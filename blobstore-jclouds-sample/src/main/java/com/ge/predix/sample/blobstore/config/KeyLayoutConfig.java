@@ -0,0 +1,52 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.config;
+
+import com.ge.predix.sample.blobstore.routing.HashedPrefixLayout;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Provides the hashed key layout and the pool its listings fan out on.
+ */
+@Configuration
+@EnableConfigurationProperties({KeyLayoutProperties.class})
+@ConditionalOnProperty(prefix = "blobstore.layout", name = "enabled")
+public class KeyLayoutConfig {
+    Log log = LogFactory.getLog(KeyLayoutConfig.class);
+
+    @Autowired
+    private KeyLayoutProperties keyLayoutProperties;
+
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService layoutExecutor() {
+        return Executors.newFixedThreadPool(Math.min(keyLayoutProperties.getPartitions(), 16));
+    }
+
+    @Bean
+    public KeyLayoutDecorator keyLayoutDecorator() {
+        log.info("keyLayoutDecorator(): ids hashed over " + keyLayoutProperties.getPartitions() + " prefixes");
+        return new KeyLayoutDecorator(new HashedPrefixLayout(keyLayoutProperties.getPartitions()), layoutExecutor());
+    }
+}
@@ -0,0 +1,77 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Settings of the paged listings behind the index page and /v1/blobs.
+ */
+@ConfigurationProperties(prefix = "blobstore.listing", locations = "classpath:application.yml")
+public class ListingProperties {
+
+    /**
+     * How long a listed page is served from memory, 0 disables the listing cache
+     */
+    private long cacheTtlMillis = 5000;
+
+    /**
+     * Upper bound on the number of pages kept in memory
+     */
+    private int cacheMaxEntries = 1000;
+
+    /**
+     * Blobs per page of the index page
+     */
+    private int uiPageSize = 50;
+
+    /**
+     * Largest page /v1/blobs returns
+     */
+    private int maxPageSize = 1000;
+
+    public long getCacheTtlMillis() {
+        return cacheTtlMillis;
+    }
+
+    public void setCacheTtlMillis(long cacheTtlMillis) {
+        this.cacheTtlMillis = cacheTtlMillis;
+    }
+
+    public int getCacheMaxEntries() {
+        return cacheMaxEntries;
+    }
+
+    public void setCacheMaxEntries(int cacheMaxEntries) {
+        this.cacheMaxEntries = cacheMaxEntries;
+    }
+
+    public int getUiPageSize() {
+        return uiPageSize;
+    }
+
+    public void setUiPageSize(int uiPageSize) {
+        this.uiPageSize = uiPageSize;
+    }
+
+    public int getMaxPageSize() {
+        return maxPageSize;
+    }
+
+    public void setMaxPageSize(int maxPageSize) {
+        this.maxPageSize = maxPageSize;
+    }
+}
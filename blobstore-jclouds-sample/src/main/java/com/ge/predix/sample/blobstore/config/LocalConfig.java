@@ -16,7 +16,9 @@
 package com.ge.predix.sample.blobstore.config;
 
 import com.ge.predix.sample.blobstore.connector.spring.BlobstoreServiceConnectorCreator;
+import com.ge.predix.sample.blobstore.fs.FileSystemBackend;
 import com.ge.predix.sample.blobstore.repository.BlobstoreService;
+import com.ge.predix.sample.blobstore.spi.BlobStoreBackend;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.jclouds.ContextBuilder;
@@ -28,8 +30,11 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Profile;
 
+import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutorService;
 
 @Configuration
 @Profile("default")
@@ -40,14 +45,62 @@ public class LocalConfig {
     @Autowired
     private BlobstoreProperties objectStoreProperties;
 
+    @Autowired
+    private TransferProperties transferProperties;
+
+    @Autowired
+    private ExecutorService requestExecutor;
+
+    @Autowired(required = false)
+    private ShardedBackends shardedBackends;
+
+    @Autowired(required = false)
+    private JournalDecorator journalDecorator;
+
+    @Autowired(required = false)
+    private TierDecorator tierDecorator;
+
+    @Autowired(required = false)
+    private KeyLayoutDecorator keyLayoutDecorator;
+
+    @Autowired(required = false)
+    private CoalescingDecorator coalescingDecorator;
+
     @Bean
-    public BlobstoreService objectStoreService() {
+    public BlobStoreBackend objectStoreService() {
+        BlobStoreBackend backend = createBackend();
+        if (journalDecorator != null) {
+            backend = journalDecorator.decorate(backend);
+        }
+        if (tierDecorator != null) {
+            backend = tierDecorator.decorate(backend);
+        }
+        if (keyLayoutDecorator != null) {
+            backend = keyLayoutDecorator.decorate(backend);
+        }
+        return coalescingDecorator != null ? coalescingDecorator.decorate(backend) : backend;
+    }
+
+    private BlobStoreBackend createBackend() {
+        if (shardedBackends != null) {
+            return shardedBackends.create();
+        }
+        if ("filesystem".equalsIgnoreCase(objectStoreProperties.getBackend())) {
+            log.info("objectStoreService(): filesystem backend at " + objectStoreProperties.getFilesystemRoot());
+            try {
+                return new FileSystemBackend(Paths.get(objectStoreProperties.getFilesystemRoot()),
+                        objectStoreProperties.isFilesystemFsync());
+            } catch (IOException e) {
+                log.error("objectStoreService(): Couldnt create the filesystem backend. Exception = " + e.getMessage());
+                throw new RuntimeException("Blobstore filesystem root is invalid", e);
+            }
+        }
         log.info("objectStoreService(): " + objectStoreProperties.getAccessKey()
                 + objectStoreProperties.getSecretKey() + ", " + objectStoreProperties.getBucket());
 
         // Initialize the BlobStoreContext
         BlobStoreContext context = ContextBuilder.newBuilder(BlobstoreServiceConnectorCreator.STORAGE_PROVIDER)
-                .overrides(BlobstoreServiceConnectorCreator.buildProperties(null))
+                .overrides(BlobstoreServiceConnectorCreator.buildProperties(null, transferProperties.getMaxConnections()))
                 .endpoint(objectStoreProperties.getUrl())
                 .credentials(objectStoreProperties.getAccessKey(), objectStoreProperties.getSecretKey())
                 .buildView(BlobStoreContext.class);
@@ -61,7 +114,10 @@ public class LocalConfig {
             String urlWithoutCredentials = url.getProtocol() + "://" + url.getHost();
 
             // Return BlobstoreService
-            return new BlobstoreService(blobStore, objectStoreProperties.getBucket(), urlWithoutCredentials);
+            BlobstoreService blobstoreService = new BlobstoreService(blobStore, objectStoreProperties.getBucket(), urlWithoutCredentials);
+            blobstoreService.setTransferExecutor(requestExecutor, transferProperties.getMaxParallelParts());
+            blobstoreService.setPartSize(transferProperties.getPartSizeBytes());
+            return blobstoreService;
         } catch (MalformedURLException e) {
             log.error("create(): Couldnt parse the URL provided by VCAP_SERVICES. Exception = " + e.getMessage());
             throw new RuntimeException("Blobstore URL is Invalid", e);
@@ -0,0 +1,127 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.config;
+
+import com.ge.predix.sample.blobstore.connector.spring.BlobstoreServiceConnectorCreator;
+import com.ge.predix.sample.blobstore.repository.BlobstoreService;
+import com.ge.predix.sample.blobstore.routing.KeyLayout;
+import com.ge.predix.sample.blobstore.routing.RoutingBackend;
+import com.ge.predix.sample.blobstore.routing.ShardStats;
+import com.ge.predix.sample.blobstore.spi.BlobStoreBackend;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.jclouds.Constants;
+import org.jclouds.ContextBuilder;
+import org.jclouds.blobstore.BlobStore;
+import org.jclouds.blobstore.BlobStoreContext;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Provides the shards behind the RoutingBackend, one jclouds context and connection pool per bucket,
+ * and publishes per shard request counts on /metrics.
+ */
+@Configuration
+@EnableConfigurationProperties({RoutingProperties.class})
+@ConditionalOnProperty(prefix = "blobstore.routing", name = "enabled")
+public class RoutingConfig {
+    Log log = LogFactory.getLog(RoutingConfig.class);
+
+    @Autowired
+    private RoutingProperties routingProperties;
+
+    @Autowired(required = false)
+    private KeyLayoutDecorator keyLayoutDecorator;
+
+    @Autowired
+    private TransferProperties transferProperties;
+
+    @Autowired
+    private ExecutorService requestExecutor;
+
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService routingExecutor() {
+        return Executors.newFixedThreadPool(Math.max(4, routingProperties.getShards().size() * 4));
+    }
+
+    @Bean
+    public ShardedBackends shardedBackends() {
+        KeyLayout layout = keyLayoutDecorator != null ? keyLayoutDecorator.getLayout() : null;
+        return new ShardedBackends(routingProperties, routingExecutor(), layout) {
+            @Override
+            protected BlobStoreBackend createShard(RoutingProperties.Shard shard) {
+                Properties overrides = BlobstoreServiceConnectorCreator.buildProperties(null, shard.getMaxConnections());
+                overrides.setProperty(Constants.PROPERTY_CONNECTION_TIMEOUT, Integer.toString(shard.getConnectionTimeoutMillis()));
+                overrides.setProperty(Constants.PROPERTY_SO_TIMEOUT, Integer.toString(shard.getSocketTimeoutMillis()));
+
+                BlobStoreContext context = ContextBuilder.newBuilder(BlobstoreServiceConnectorCreator.STORAGE_PROVIDER)
+                        .overrides(overrides)
+                        .endpoint(shard.getUrl())
+                        .credentials(shard.getAccessKey(), shard.getSecretKey())
+                        .buildView(BlobStoreContext.class);
+                BlobStore blobStore = context.getBlobStore();
+
+                try {
+                    // Remove the Credentials from the Object Store URL
+                    URL url = new URL(shard.getUrl());
+                    String urlWithoutCredentials = url.getProtocol() + "://" + url.getHost();
+
+                    BlobstoreService blobstoreService = new BlobstoreService(blobStore, shard.getBucket(), urlWithoutCredentials);
+                    blobstoreService.setTransferExecutor(requestExecutor, transferProperties.getMaxParallelParts());
+                    blobstoreService.setPartSize(transferProperties.getPartSizeBytes());
+                    return blobstoreService;
+                } catch (MalformedURLException e) {
+                    log.error("createShard(): Couldnt parse the URL of shard " + shard.getName() + ". Exception = " + e.getMessage());
+                    throw new RuntimeException("Shard URL is Invalid", e);
+                }
+            }
+        };
+    }
+
+    @Bean
+    public PublicMetrics routingMetrics() {
+        final ShardedBackends shardedBackends = shardedBackends();
+        return new PublicMetrics() {
+            @Override
+            public Collection<Metric<?>> metrics() {
+                Collection<Metric<?>> metrics = new ArrayList<>();
+                RoutingBackend backend = shardedBackends.getBackend();
+                if (backend != null) {
+                    for (ShardStats stats : backend.getStats()) {
+                        String prefix = "blobstore.routing." + stats.getName();
+                        metrics.add(new Metric<Long>(prefix + ".requests", stats.getRequests()));
+                        metrics.add(new Metric<Long>(prefix + ".failures", stats.getFailures()));
+                        metrics.add(new Metric<Long>(prefix + ".millis", stats.getTotalMillis()));
+                    }
+                }
+                return metrics;
+            }
+        };
+    }
+}
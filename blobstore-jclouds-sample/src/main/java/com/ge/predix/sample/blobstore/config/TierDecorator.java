@@ -0,0 +1,90 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.config;
+
+import com.ge.predix.sample.blobstore.fs.FileSystemBackend;
+import com.ge.predix.sample.blobstore.spi.BlobStoreBackend;
+import com.ge.predix.sample.blobstore.tier.TieredBackend;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Puts the local tier in front of the backend and picks up the Blobs left on it by the
+ * previous run.
+ */
+public class TierDecorator {
+
+    Log log = LogFactory.getLog(TierDecorator.class);
+
+    private final TierProperties tierProperties;
+
+    private final ExecutorService uploadExecutor;
+
+    private volatile TieredBackend backend;
+
+    public TierDecorator(TierProperties tierProperties, ExecutorService uploadExecutor) {
+        this.tierProperties = tierProperties;
+        this.uploadExecutor = uploadExecutor;
+    }
+
+    public synchronized BlobStoreBackend decorate(BlobStoreBackend cold) {
+        FileSystemBackend hot;
+        try {
+            hot = new FileSystemBackend(Paths.get(tierProperties.getRoot()), tierProperties.isFsync());
+        } catch (IOException e) {
+            log.error("decorate(): Couldnt create the local tier. Exception = " + e.getMessage());
+            throw new RuntimeException("Blobstore tier root is invalid", e);
+        }
+        log.info("decorate(): local tier at " + tierProperties.getRoot() + ", acknowledge = " + tierProperties.getAcknowledge());
+        final TieredBackend tiered = new TieredBackend(hot, cold, uploadExecutor,
+                TieredBackend.Acknowledge.valueOf(tierProperties.getAcknowledge().toUpperCase()),
+                tierProperties.getCapacityBytes(), tierProperties.getMaxObjectBytes(),
+                TimeUnit.HOURS.toMillis(tierProperties.getHotHours()));
+        final List<String> found;
+        try {
+            // Local Blobs are known before the first request, only the Object Store check is deferred
+            found = tiered.register();
+        } catch (Exception e) {
+            log.error("decorate(): Couldnt register the local tier. Exception = " + e.getMessage());
+            throw new RuntimeException("Blobstore tier could not be registered", e);
+        }
+        uploadExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    tiered.reconcile(found);
+                } catch (Exception e) {
+                    log.error("decorate(): Couldnt recover the local tier. Exception = " + e.getMessage());
+                }
+            }
+        });
+        backend = tiered;
+        return tiered;
+    }
+
+    /**
+     * @return the TieredBackend, null until {@link #decorate(BlobStoreBackend)} has been called
+     */
+    public TieredBackend getBackend() {
+        return backend;
+    }
+}
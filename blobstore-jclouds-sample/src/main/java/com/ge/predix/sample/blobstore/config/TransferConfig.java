@@ -0,0 +1,64 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.config;
+
+import com.ge.predix.sample.blobstore.io.ContentTypeDetector;
+import com.ge.predix.sample.blobstore.transfer.TransferExecutors;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Provides the executors behind uploads and downloads and the content type detection of uploads.
+ */
+@Configuration
+@EnableConfigurationProperties({TransferProperties.class})
+public class TransferConfig {
+
+    @Autowired
+    private TransferProperties transferProperties;
+
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService transferExecutor() {
+        return TransferExecutors.create(transferProperties.getThreads(), transferProperties.getPlatformPoolSize());
+    }
+
+    /**
+     * Runs single Object Store requests that never wait on other tasks
+     */
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService requestExecutor() {
+        return TransferExecutors.create(transferProperties.getThreads(), transferProperties.getRequestPoolSize(),
+                "blobstore-request-");
+    }
+
+    /**
+     * Dispatches the calls of the asynchronous endpoints, which wait on requests they start
+     */
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService asyncExecutor() {
+        return TransferExecutors.create(transferProperties.getThreads(), transferProperties.getAsyncPoolSize(),
+                "blobstore-async-");
+    }
+
+    @Bean
+    public ContentTypeDetector contentTypeDetector() {
+        return new ContentTypeDetector(transferProperties.getContentTypePeekBytes(), transferProperties.getContentTypeCacheSize());
+    }
+}
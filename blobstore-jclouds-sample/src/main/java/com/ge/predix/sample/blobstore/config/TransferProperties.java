@@ -0,0 +1,142 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Threads used to drive blocking transfers against the Object Store.
+ */
+@ConfigurationProperties(prefix = "blobstore.transfer", locations = "classpath:application.yml")
+public class TransferProperties {
+
+    /**
+     * "platform" for a fixed pool of platform threads, "virtual" for one virtual thread per task
+     */
+    private String threads = "platform";
+
+    /**
+     * Size of the platform thread pool
+     */
+    private int platformPoolSize = 64;
+
+    /**
+     * Size of the platform pool running single Object Store requests such as upload parts
+     */
+    private int requestPoolSize = 64;
+
+    /**
+     * Size of the platform pool dispatching the calls of the asynchronous endpoints
+     */
+    private int asyncPoolSize = 64;
+
+    /**
+     * Parts of a single multipart upload that may be in flight at once
+     */
+    private int maxParallelParts = 4;
+
+    /**
+     * Size of the HTTP connection pool of the jclouds context
+     */
+    private int maxConnections = 200;
+
+    /**
+     * Size of each part of a multipart upload
+     */
+    private int partSizeBytes = 32 * 1024 * 1024;
+
+    /**
+     * Leading bytes of an upload inspected to detect its content type
+     */
+    private int contentTypePeekBytes = 4096;
+
+    /**
+     * File extensions whose content type is remembered
+     */
+    private int contentTypeCacheSize = 1024;
+
+    public String getThreads() {
+        return threads;
+    }
+
+    public void setThreads(String threads) {
+        this.threads = threads;
+    }
+
+    public int getPlatformPoolSize() {
+        return platformPoolSize;
+    }
+
+    public void setPlatformPoolSize(int platformPoolSize) {
+        this.platformPoolSize = platformPoolSize;
+    }
+
+    public int getRequestPoolSize() {
+        return requestPoolSize;
+    }
+
+    public void setRequestPoolSize(int requestPoolSize) {
+        this.requestPoolSize = requestPoolSize;
+    }
+
+    public int getAsyncPoolSize() {
+        return asyncPoolSize;
+    }
+
+    public void setAsyncPoolSize(int asyncPoolSize) {
+        this.asyncPoolSize = asyncPoolSize;
+    }
+
+    public int getMaxParallelParts() {
+        return maxParallelParts;
+    }
+
+    public void setMaxParallelParts(int maxParallelParts) {
+        this.maxParallelParts = maxParallelParts;
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    public void setMaxConnections(int maxConnections) {
+        this.maxConnections = maxConnections;
+    }
+
+    public int getPartSizeBytes() {
+        return partSizeBytes;
+    }
+
+    public void setPartSizeBytes(int partSizeBytes) {
+        this.partSizeBytes = partSizeBytes;
+    }
+
+    public int getContentTypePeekBytes() {
+        return contentTypePeekBytes;
+    }
+
+    public void setContentTypePeekBytes(int contentTypePeekBytes) {
+        this.contentTypePeekBytes = contentTypePeekBytes;
+    }
+
+    public int getContentTypeCacheSize() {
+        return contentTypeCacheSize;
+    }
+
+    public void setContentTypeCacheSize(int contentTypeCacheSize) {
+        this.contentTypeCacheSize = contentTypeCacheSize;
+    }
+}
@@ -30,6 +30,8 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.Properties;
 
+import static org.jclouds.Constants.PROPERTY_MAX_CONNECTIONS_PER_CONTEXT;
+import static org.jclouds.Constants.PROPERTY_MAX_CONNECTIONS_PER_HOST;
 import static org.jclouds.Constants.PROPERTY_RELAX_HOSTNAME;
 import static org.jclouds.Constants.PROPERTY_TRUST_ALL_CERTS;
 import static org.jclouds.aws.reference.AWSConstants.PROPERTY_AUTH_TAG;
@@ -47,6 +49,11 @@ public class BlobstoreServiceConnectorCreator extends AbstractServiceConnectorCr
      * JCloud APIs uses provider "aws-s3".
      */
     public static String STORAGE_PROVIDER = "s3";
+
+    /**
+     * Size of the HTTP connection pool, optional
+     */
+    private static String maxConnections = System.getenv("BLOBSTORE_MAX_CONNECTIONS");
     Log log = LogFactory.getLog(BlobstoreServiceConnectorCreator.class);
 
     /**
@@ -54,18 +61,36 @@ public class BlobstoreServiceConnectorCreator extends AbstractServiceConnectorCr
      * Properties include:
      * PROPERTY_TRUST_ALL_CERTS - Trust all certificates (including Selfsigned)
      * PROPERTY_RELAX_HOSTNAME - Optional host name check
+     * PROPERTY_MAX_CONNECTIONS_PER_CONTEXT/HOST - Size of the HTTP connection pool, from BLOBSTORE_MAX_CONNECTIONS
      *
      * @param serviceInfo Object Store Service Info Object
      * @return Properties required properties
      */
     public static Properties buildProperties(BlobstoreServiceInfo serviceInfo) {
+        Properties props = buildProperties(serviceInfo, 0);
+        if (maxConnections != null && !maxConnections.isEmpty()) {
+            props.setProperty(PROPERTY_MAX_CONNECTIONS_PER_CONTEXT, maxConnections);
+            props.setProperty(PROPERTY_MAX_CONNECTIONS_PER_HOST, maxConnections);
+        }
+        return props;
+    }
+
+    /**
+     * @param serviceInfo    Object Store Service Info Object
+     * @param maxConnections Size of the HTTP connection pool, jclouds defaults are kept when 0
+     * @return Properties required properties
+     */
+    public static Properties buildProperties(BlobstoreServiceInfo serviceInfo, int maxConnections) {
         Properties props = new Properties();
         props.setProperty(PROPERTY_AUTH_TAG, "AWS");
         props.setProperty(PROPERTY_HEADER_TAG, S3Headers.DEFAULT_AMAZON_HEADERTAG);
         props.setProperty(PROPERTY_TRUST_ALL_CERTS, "true");
         props.setProperty(PROPERTY_RELAX_HOSTNAME, "true");
         props.setProperty(PROPERTY_S3_VIRTUAL_HOST_BUCKETS, "true");
-        props.setProperty("jclouds.mpu.parallel.degree", "4");
+        if (maxConnections > 0) {
+            props.setProperty(PROPERTY_MAX_CONNECTIONS_PER_CONTEXT, Integer.toString(maxConnections));
+            props.setProperty(PROPERTY_MAX_CONNECTIONS_PER_HOST, Integer.toString(maxConnections));
+        }
 
         return props;
     }
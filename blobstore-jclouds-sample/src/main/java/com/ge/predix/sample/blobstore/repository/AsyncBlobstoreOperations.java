@@ -0,0 +1,94 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.repository;
+
+import com.ge.predix.sample.blobstore.spi.BlobContent;
+import com.ge.predix.sample.blobstore.spi.BlobInfo;
+import com.ge.predix.sample.blobstore.spi.BlobPage;
+import com.ge.predix.sample.blobstore.spi.BlobStoreBackend;
+import com.ge.predix.sample.blobstore.spi.ByteRange;
+import org.springframework.util.concurrent.ListenableFuture;
+import org.springframework.util.concurrent.ListenableFutureTask;
+
+import java.io.InputStream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+
+/**
+ * Runs each call on the async executor so request threads are released while the
+ * Object Store is working. Paired with virtual transfer threads this keeps the number of
+ * platform threads small regardless of the number of calls in flight. The calls wait on the
+ * upload parts they start, so the executor must not be the one those run on.
+ */
+public class AsyncBlobstoreOperations implements BlobstoreOperations {
+
+    private final BlobStoreBackend backend;
+
+    private final Executor executor;
+
+    public AsyncBlobstoreOperations(BlobStoreBackend backend, Executor executor) {
+        this.backend = backend;
+        this.executor = executor;
+    }
+
+    @Override
+    public ListenableFuture<BlobInfo> put(final String key, final InputStream content, final long length,
+                                          final String contentType) {
+        return submit(new Callable<BlobInfo>() {
+            @Override
+            public BlobInfo call() throws Exception {
+                return backend.put(key, content, length, contentType);
+            }
+        });
+    }
+
+    @Override
+    public ListenableFuture<BlobContent> get(final String key, final ByteRange range) {
+        return submit(new Callable<BlobContent>() {
+            @Override
+            public BlobContent call() throws Exception {
+                return backend.get(key, range);
+            }
+        });
+    }
+
+    @Override
+    public ListenableFuture<BlobPage> list(final String prefix, final String marker, final int maxKeys) {
+        return submit(new Callable<BlobPage>() {
+            @Override
+            public BlobPage call() throws Exception {
+                return backend.list(prefix, marker, maxKeys);
+            }
+        });
+    }
+
+    @Override
+    public ListenableFuture<Void> delete(final String key) {
+        return submit(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                backend.delete(key);
+                return null;
+            }
+        });
+    }
+
+    private <T> ListenableFuture<T> submit(Callable<T> call) {
+        ListenableFutureTask<T> task = new ListenableFutureTask<>(call);
+        executor.execute(task);
+        return task;
+    }
+}
@@ -16,30 +16,61 @@
 package com.ge.predix.sample.blobstore.repository;
 
 import com.ge.predix.sample.blobstore.entity.BlobFile;
+import com.ge.predix.sample.blobstore.spi.BlobContent;
+import com.ge.predix.sample.blobstore.spi.BlobInfo;
+import com.ge.predix.sample.blobstore.spi.BlobNotFoundException;
+import com.ge.predix.sample.blobstore.spi.BlobPage;
+import com.ge.predix.sample.blobstore.spi.BlobRequestSigning;
+import com.ge.predix.sample.blobstore.spi.BlobStoreBackend;
+import com.ge.predix.sample.blobstore.spi.ByteRange;
+import com.ge.predix.sample.blobstore.spi.SignedRequest;
+import com.ge.predix.sample.blobstore.write.PreconditionFailedException;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.jclouds.blobstore.BlobStore;
-import org.jclouds.blobstore.ContainerNotFoundException;
+import org.jclouds.blobstore.BlobRequestSigner;
 import org.jclouds.blobstore.domain.Blob;
+import org.jclouds.blobstore.domain.BlobMetadata;
+import org.jclouds.blobstore.domain.MultipartPart;
+import org.jclouds.blobstore.domain.MultipartUpload;
 import org.jclouds.blobstore.domain.PageSet;
 import org.jclouds.blobstore.domain.StorageMetadata;
+import org.jclouds.blobstore.domain.StorageType;
+import org.jclouds.blobstore.options.CopyOptions;
+import org.jclouds.blobstore.options.ListContainerOptions;
+import org.jclouds.blobstore.options.PutOptions;
+import org.jclouds.http.HttpRequest;
+import org.jclouds.io.ContentMetadata;
+import org.jclouds.io.Payload;
+import org.jclouds.io.Payloads;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 import static org.jclouds.blobstore.options.GetOptions.Builder.range;
-import static org.jclouds.blobstore.options.PutOptions.Builder.multipart;
 
 
 /**
  * This is Core Object Store Service Class. Has methods for operating on the Object Store.
+ * Implements the common {@link BlobStoreBackend} SPI on top of jclouds, and signs requests so
+ * clients can transfer directly with the Object Store.
  *
  * @since Feb 2015
  */
-public class BlobstoreService {
+public class BlobstoreService implements BlobStoreBackend, BlobRequestSigning {
 
     Log log = LogFactory.getLog(BlobstoreService.class);
 
@@ -58,6 +89,33 @@ public class BlobstoreService {
      */
     private String url;
 
+    /**
+     * Runs part uploads in parallel, parts are uploaded on the calling thread when null
+     */
+    private ExecutorService transferExecutor;
+
+    /**
+     * Parts of one upload that may be in flight at once
+     */
+    private int maxParallelParts = 1;
+
+    /**
+     * Size of each part of a multipart upload, Blobs smaller than this are sent with a single PUT
+     */
+    private int partSize = DEFAULT_PART_SIZE;
+
+    public static final int DEFAULT_PART_SIZE = 32 * 1024 * 1024;
+
+    /**
+     * Largest Blob S3 copies with a single request
+     */
+    public static final long MAX_SINGLE_COPY_SIZE = 5L * 1024 * 1024 * 1024;
+
+    /**
+     * Initial size of the buffer a part is read into
+     */
+    private static final int INITIAL_PART_BUFFER = 64 * 1024;
+
     public BlobstoreService(BlobStore blobStore, String bucket) {
         this.blobStore = blobStore;
         this.bucket = bucket;
@@ -69,6 +127,26 @@ public class BlobstoreService {
         this.url = url;
     }
 
+    /**
+     * Heap one upload may hold in part buffers, the parts in flight plus the part being read.
+     *
+     * @param partSize         size of each part of a multipart upload
+     * @param maxParallelParts parts of one upload that may be in flight at once
+     * @return long bytes
+     */
+    public static long uploadBufferBytes(int partSize, int maxParallelParts) {
+        return (long) partSize * (Math.max(1, maxParallelParts) + 1);
+    }
+
+    public void setTransferExecutor(ExecutorService transferExecutor, int maxParallelParts) {
+        this.transferExecutor = transferExecutor;
+        this.maxParallelParts = Math.max(1, maxParallelParts);
+    }
+
+    public void setPartSize(int partSize) {
+        this.partSize = (int) Math.max(partSize, blobStore.getMinimumMultipartPartSize());
+    }
+
     public BlobFile createBlobFileObject(String id, String name, InputStream file) {
         return new BlobFile(id, bucket, name, file, url);
     }
@@ -81,40 +159,377 @@ public class BlobstoreService {
      * @throws Exception
      */
     public void put(BlobFile file, String contentType) throws Exception {
+        if (file == null) {
+            log.error("put(): Empty file provided");
+            throw new Exception("File is null");
+        }
+        put(file.getId(), file.getFile(), -1, contentType);
+    }
+
+    /**
+     * Adds a new Blob to the binded bucket. Blobs smaller than one part are sent with a single
+     * streaming PUT. Larger Blobs use a multipart upload: with one part in flight each part is a
+     * slice of the stream and nothing is buffered, with more parts in flight each part is read
+     * into memory first so parts can be sent in parallel.
+     *
+     * @param length length of the content, or -1 to read parts until the end of the stream
+     */
+    @Override
+    public BlobInfo put(String key, InputStream content, long length, String contentType) throws Exception {
         try {
+            long size;
+            String eTag;
+            if (length >= 0 && length < partSize) {
+                eTag = putSingle(key, Payloads.newInputStreamPayload(content), length, contentType);
+                size = length;
+            } else if (length >= 0 && maxParallelParts == 1) {
+                MultipartUpload mpu = initiate(key, contentType);
+                try {
+                    size = 0;
+                    long partLength = partSizeFor(length);
+                    List<MultipartPart> parts = new ArrayList<>();
+                    int partNumber = 1;
+                    while (size < length) {
+                        long slice = Math.min(partLength, length - size);
+                        Payload payload = Payloads.newInputStreamPayload(new SliceInputStream(content, slice));
+                        parts.add(uploadPart(mpu, partNumber++, payload, slice));
+                        size += slice;
+                    }
+                    eTag = blobStore.completeMultipartUpload(mpu, parts);
+                } catch (Exception e) {
+                    abortQuietly(mpu);
+                    throw e;
+                }
+            } else {
+                byte[] part = readPart(content);
+                if (part.length < partSize) {
+                    checkLength(key, length, part.length);
+                    eTag = putSingle(key, Payloads.newByteArrayPayload(part), part.length, contentType);
+                    size = part.length;
+                } else {
+                    MultipartUpload mpu = initiate(key, contentType);
+                    List<Future<MultipartPart>> pending = new ArrayList<>();
+                    try {
+                        List<MultipartPart> parts = new ArrayList<>();
+                        int partNumber = 1;
+                        size = 0;
+                        do {
+                            if (pending.size() == maxParallelParts) {
+                                parts.add(awaitPart(pending.remove(0)));
+                            }
+                            pending.add(submitPart(mpu, partNumber++, part));
+                            size += part.length;
+                            part = part.length == partSize ? readPart(content) : new byte[0];
+                        } while (part.length > 0);
+                        while (!pending.isEmpty()) {
+                            parts.add(awaitPart(pending.remove(0)));
+                        }
+                        checkLength(key, length, size);
+                        eTag = blobStore.completeMultipartUpload(mpu, parts);
+                    } catch (Exception e) {
+                        for (Future<MultipartPart> future : pending) {
+                            future.cancel(true);
+                        }
+                        abortQuietly(mpu);
+                        throw e;
+                    }
+                }
+            }
 
-            if (file != null) {
+            if (log.isDebugEnabled())
+                log.debug("put(): Successfully added the file = " + key + ", eTag = " + eTag + ", size = " + size);
+            return new BlobInfo(key, size, eTag, contentType, System.currentTimeMillis());
+        } catch (Exception e) {
+            log.error("put(): Exception occurred in put(): " + e.getMessage());
+            throw e;
+        } finally {
+            content.close();
+        }
+    }
 
-                // Build the Blob object to persist
-                Blob blob = blobStore.blobBuilder(file.getId())
-                        .payload(file.getFile())
-                        .contentDisposition(file.getName())
-                        .contentLength(file.getFile().available())
-                        .contentType(contentType)
-                        .build();
+    private String putSingle(String key, Payload payload, long length, String contentType) {
+        payload.getContentMetadata().setContentLength(length);
+        Blob blob = blobStore.blobBuilder(key)
+                .payload(payload)
+                .contentDisposition(key)
+                .contentLength(length)
+                .contentType(contentType)
+                .build();
+        return blobStore.putBlob(bucket, blob);
+    }
 
-                // Upload the Blob
-                String eTag = blobStore.putBlob(bucket, blob, multipart());
+    private MultipartUpload initiate(String key, String contentType) {
+        // The builder needs a payload, only the metadata of the Blob is sent
+        Blob blob = blobStore.blobBuilder(key)
+                .payload(new byte[0])
+                .contentDisposition(key)
+                .contentType(contentType)
+                .build();
+        return blobStore.initiateMultipartUpload(bucket, blob.getMetadata(), PutOptions.NONE);
+    }
 
-                if (log.isDebugEnabled())
-                    log.debug("put(): Successfully added the file = " + file.getId() + ", eTag = " + eTag + ", Name = " + file.getName());
+    /**
+     * Grows the part size when the Blob would otherwise need more parts than the store allows
+     */
+    private long partSizeFor(long length) {
+        int maxParts = blobStore.getMaximumNumberOfParts();
+        return Math.max(partSize, (length + maxParts - 1) / maxParts);
+    }
 
-            } else {
-                log.error("put(): Empty file provided");
-                throw new Exception("File is null");
+    private MultipartPart uploadPart(MultipartUpload mpu, int partNumber, Payload payload, long length) {
+        payload.getContentMetadata().setContentLength(length);
+        return blobStore.uploadMultipartPart(mpu, partNumber, payload);
+    }
+
+    /**
+     * Starts the upload of a part on the transfer executor, or uploads it right away without one
+     */
+    private Future<MultipartPart> submitPart(final MultipartUpload mpu, final int partNumber, final byte[] part) {
+        Callable<MultipartPart> upload = new Callable<MultipartPart>() {
+            @Override
+            public MultipartPart call() {
+                return uploadPart(mpu, partNumber, Payloads.newByteArrayPayload(part), part.length);
             }
-        } catch (ContainerNotFoundException e) {
-            log.error("put(): Exception occurred in put(): " + e.getMessage());
+        };
+        if (transferExecutor == null || maxParallelParts == 1) {
+            FutureTask<MultipartPart> task = new FutureTask<>(upload);
+            task.run();
+            return task;
+        }
+        return transferExecutor.submit(upload);
+    }
+
+    private MultipartPart awaitPart(Future<MultipartPart> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof Exception ? (Exception) cause : e;
+        }
+    }
+
+    /**
+     * Reads up to partSize bytes, growing the buffer as data arrives so small uploads stay small.
+     *
+     * @return byte[] the bytes read, shorter than partSize only at the end of the stream
+     */
+    private byte[] readPart(InputStream is) throws IOException {
+        byte[] buffer = new byte[INITIAL_PART_BUFFER];
+        int length = 0;
+        int read;
+        while ((read = is.read(buffer, length, buffer.length - length)) != -1) {
+            length += read;
+            if (length == buffer.length) {
+                if (length == partSize) {
+                    break;
+                }
+                buffer = Arrays.copyOf(buffer, Math.min(partSize, buffer.length * 2));
+            }
+        }
+        return length == buffer.length ? buffer : Arrays.copyOf(buffer, length);
+    }
+
+    private void checkLength(String key, long expected, long actual) throws IOException {
+        if (expected >= 0 && expected != actual) {
+            throw new IOException("put(): Expected " + expected + " bytes for " + key + " but received " + actual);
+        }
+    }
+
+    private void abortQuietly(MultipartUpload mpu) {
+        try {
+            blobStore.abortMultipartUpload(mpu);
+        } catch (Exception e) {
+            log.error("put(): Unable to abort multipart upload " + mpu.id() + " : " + e.getMessage());
+        }
+    }
+
+    @Override
+    public BlobContent get(String key, ByteRange range) throws Exception {
+        try {
+            Blob blob = range != null
+                    ? blobStore.getBlob(bucket, key, range(range.getStart(), range.getEnd()))
+                    : blobStore.getBlob(bucket, key);
+            if (blob == null) {
+                throw new BlobNotFoundException(key);
+            }
+            ContentMetadata contentMetadata = blob.getPayload().getContentMetadata();
+            Long contentLength = contentMetadata.getContentLength();
+            return new BlobContent(toBlobInfo(blob.getMetadata()), blob.getPayload().openStream(),
+                    contentLength != null ? contentLength : -1);
+        } catch (BlobNotFoundException e) {
             throw e;
-        } catch (IOException e) {
-            log.error("put(): Exception occurred in put(): " + e.getMessage());
+        } catch (Exception e) {
+            log.error("Exception Occurred in get(): " + e.getMessage());
             throw e;
+        }
+    }
+
+    @Override
+    public BlobInfo head(String key) throws Exception {
+        BlobMetadata metadata = blobStore.blobMetadata(bucket, key);
+        if (metadata == null) {
+            throw new BlobNotFoundException(key);
+        }
+        return toBlobInfo(metadata);
+    }
+
+    @Override
+    public BlobPage list(String prefix, String marker, int maxKeys) throws Exception {
+        ListContainerOptions options = ListContainerOptions.Builder.recursive().maxResults(maxKeys);
+        if (prefix != null) {
+            options.prefix(prefix);
+        }
+        if (marker != null) {
+            options.afterMarker(marker);
+        }
+        try {
+            PageSet<? extends StorageMetadata> page = blobStore.list(bucket, options);
+            List<BlobInfo> blobs = new ArrayList<>();
+            for (StorageMetadata storageMetadata : page) {
+                if (storageMetadata.getType() == StorageType.BLOB) {
+                    Long size = storageMetadata.getSize();
+                    blobs.add(new BlobInfo(storageMetadata.getName(), size != null ? size : -1,
+                            storageMetadata.getETag(), null, toMillis(storageMetadata.getLastModified())));
+                }
+            }
+            return new BlobPage(blobs, page.getNextMarker());
         } catch (Exception e) {
-            log.error("put(): Exception occurred in put(): " + e.getMessage());
+            log.error("Exception occurred in list(): " + e.getMessage());
+            throw e;
+        }
+    }
+
+    /**
+     * Copies a Blob within the binded bucket with a server-side copy. jclouds has no portable
+     * part copy and its fallback for large Blobs streams them through the application, so Blobs
+     * above the 5 GB single copy limit of S3 are rejected. The copy is pinned to the ETag of the
+     * source so a concurrent overwrite fails the copy instead of mixing two versions.
+     *
+     * @throws UnsupportedOperationException if the source is too large for a server-side copy
+     */
+    @Override
+    public BlobInfo copy(String sourceKey, String targetKey) throws Exception {
+        return copy(sourceKey, head(sourceKey), targetKey);
+    }
+
+    private BlobInfo copy(String sourceKey, BlobInfo source, String targetKey) throws Exception {
+        try {
+            if (source.getSize() > MAX_SINGLE_COPY_SIZE) {
+                throw new UnsupportedOperationException("copy(): " + sourceKey + " is larger than "
+                        + MAX_SINGLE_COPY_SIZE + " bytes and cannot be copied server-side");
+            }
+            CopyOptions options = source.getETag() == null ? CopyOptions.NONE
+                    : CopyOptions.builder().ifMatch(source.getETag()).build();
+            String eTag = blobStore.copyBlob(bucket, sourceKey, bucket, targetKey, options);
+            if (log.isDebugEnabled())
+                log.debug("copy(): Successfully copied " + sourceKey + " to " + targetKey + ", eTag = " + eTag);
+            return new BlobInfo(targetKey, source.getSize(), eTag, source.getContentType(), System.currentTimeMillis());
+        } catch (Exception e) {
+            log.error("copy(): Exception Occurred in copy(): " + e.getMessage());
+            throw e;
+        }
+    }
+
+    /**
+     * Copies the Blob and deletes the source, S3 has no rename. The source is only deleted while
+     * it still has the ETag that was copied, a source overwritten during the move is kept.
+     *
+     * @throws PreconditionFailedException if the source changed after it was copied
+     */
+    @Override
+    public BlobInfo move(String sourceKey, String targetKey) throws Exception {
+        if (sourceKey.equals(targetKey)) {
+            return head(sourceKey);
+        }
+        BlobInfo source = head(sourceKey);
+        BlobInfo info = copy(sourceKey, source, targetKey);
+        String eTag = head(sourceKey).getETag();
+        if (source.getETag() == null ? eTag != null : !source.getETag().equals(eTag)) {
+            log.warn("move(): " + sourceKey + " was overwritten while it was moved to " + targetKey + ", keeping it");
+            throw new PreconditionFailedException(sourceKey);
+        }
+        delete(sourceKey);
+        return info;
+    }
+
+    @Override
+    public void delete(String key) {
+        try {
+            blobStore.removeBlob(bucket, key);
+            if (log.isDebugEnabled())
+                log.debug("delete(): Successfully deleted the file = " + key);
+        } catch (Exception e) {
+            log.error("delete(): Exception Occurred in delete(): " + e.getMessage());
             throw e;
         }
     }
 
+    @Override
+    public SignedRequest signGet(String key, long expiresInSeconds) {
+        BlobRequestSigner signer = blobStore.getContext().getSigner();
+        return toSignedRequest(signer.signGetBlob(bucket, key, expiresInSeconds), expiresInSeconds);
+    }
+
+    @Override
+    public SignedRequest signPut(String key, String contentType, long expiresInSeconds) {
+        BlobRequestSigner signer = blobStore.getContext().getSigner();
+        Blob blob = blobStore.blobBuilder(key)
+                .forSigning()
+                .contentType(contentType)
+                .build();
+        return toSignedRequest(signer.signPutBlob(bucket, blob, expiresInSeconds), expiresInSeconds);
+    }
+
+    /**
+     * The jclouds request signer has no portable way to sign part uploads, so direct multipart
+     * uploads are only offered by the AWS sample.
+     */
+    @Override
+    public String initiateMultipartUpload(String key, String contentType) {
+        throw new UnsupportedOperationException("Signed multipart uploads are not supported by jclouds, use a signed PUT");
+    }
+
+    @Override
+    public SignedRequest signUploadPart(String key, String uploadId, int partNumber, long expiresInSeconds) {
+        throw new UnsupportedOperationException("Signed multipart uploads are not supported by jclouds, use a signed PUT");
+    }
+
+    @Override
+    public BlobInfo completeMultipartUpload(String key, String uploadId, SortedMap<Integer, String> partETags) {
+        throw new UnsupportedOperationException("Signed multipart uploads are not supported by jclouds, use a signed PUT");
+    }
+
+    @Override
+    public void abortMultipartUpload(String key, String uploadId) {
+        throw new UnsupportedOperationException("Signed multipart uploads are not supported by jclouds, use a signed PUT");
+    }
+
+    private SignedRequest toSignedRequest(HttpRequest request, long expiresInSeconds) {
+        Map<String, String> headers = new LinkedHashMap<>();
+        for (Map.Entry<String, String> header : request.getHeaders().entries()) {
+            // Host is set by the client from the URL
+            if (!"Host".equalsIgnoreCase(header.getKey())) {
+                headers.put(header.getKey(), header.getValue());
+            }
+        }
+        return new SignedRequest(request.getMethod(), request.getEndpoint().toString(), headers,
+                System.currentTimeMillis() + expiresInSeconds * 1000);
+    }
+
+    private BlobInfo toBlobInfo(BlobMetadata metadata) {
+        ContentMetadata contentMetadata = metadata.getContentMetadata();
+        Long size = metadata.getSize();
+        if (size == null) {
+            size = contentMetadata.getContentLength();
+        }
+        return new BlobInfo(metadata.getName(), size != null ? size : -1, metadata.getETag(),
+                contentMetadata.getContentType(), toMillis(metadata.getLastModified()));
+    }
+
+    private static long toMillis(Date date) {
+        return date != null ? date.getTime() : 0;
+    }
+
     /**
      * Get the Blob from the binded bucket
      *
@@ -190,14 +605,7 @@ public class BlobstoreService {
      * @param file Blobfile to be removed
      */
     public void delete(BlobFile file) {
-        try {
-            blobStore.removeBlob(bucket, file.getId());
-            if (log.isDebugEnabled())
-                log.debug("delete(): Successfully deleted the file = " + file.getId());
-        } catch (Exception e) {
-            log.error("delete(): Exception Occurred in delete(): " + e.getMessage());
-            throw e;
-        }
+        delete(file.getId());
     }
 
     /**
@@ -0,0 +1,80 @@
+/*******************************************************************************
+ * Copyright 2016 General Electric Company.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.ge.predix.sample.blobstore.transfer;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Creates the executors that run blocking Object Store calls. Virtual threads are looked up
+ * reflectively so the application still builds for older Java levels; when the running JVM
+ * has no virtual threads the platform pool is used instead.
+ * <p/>
+ * A task that waits for other tasks must not share a bounded pool with them, once every thread
+ * waits nothing is left to run the tasks waited for. Single requests such as upload parts and
+ * hedged GETs therefore run on their own request pool.
+ */
+public final class TransferExecutors {
+
+    private static final Log log = LogFactory.getLog(TransferExecutors.class);
+
+    public static final String PLATFORM = "platform";
+
+    public static final String VIRTUAL = "virtual";
+
+    private TransferExecutors() {
+    }
+
+    /**
+     * @param threads          "platform" or "virtual"
+     * @param platformPoolSize number of threads in the platform pool
+     * @return ExecutorService for transfer tasks
+     */
+    public static ExecutorService create(String threads, int platformPoolSize) {
+        return create(threads, platformPoolSize, "blobstore-transfer-");
+    }
+
+    /**
+     * @param threads          "platform" or "virtual"
+     * @param platformPoolSize number of threads in the platform pool
+     * @param threadNamePrefix name prefix of the platform threads
+     * @return ExecutorService for transfer tasks
+     */
+    public static ExecutorService create(String threads, int platformPoolSize, String threadNamePrefix) {
+        if (VIRTUAL.equalsIgnoreCase(threads)) {
+            try {
+                Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+                ExecutorService executor = (ExecutorService) factory.invoke(null);
+                log.info("create(): Running transfers on virtual threads");
+                return executor;
+            } catch (ReflectiveOperationException e) {
+                log.warn("create(): Virtual threads are not available on this JVM, using " + platformPoolSize
+                        + " platform threads");
+            }
+        } else if (!PLATFORM.equalsIgnoreCase(threads)) {
+            throw new IllegalArgumentException("Unknown transfer thread mode: " + threads);
+        }
+
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory(threadNamePrefix);
+        threadFactory.setDaemon(true);
+        return Executors.newFixedThreadPool(platformPoolSize, threadFactory);
+    }
+}
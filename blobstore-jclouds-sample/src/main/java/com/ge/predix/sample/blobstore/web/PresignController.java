@@ -0,0 +1,218 @@
+package com.ge.predix.sample.blobstore.web;
+
+import com.ge.predix.sample.blobstore.spi.BlobInfo;
+import com.ge.predix.sample.blobstore.spi.BlobRequestSigning;
+import com.ge.predix.sample.blobstore.spi.BlobStoreBackend;
+import com.ge.predix.sample.blobstore.spi.SignedRequest;
+import com.ge.predix.sample.blobstore.write.ConditionalWrites;
+import com.ge.predix.sample.blobstore.write.InvalidConditionException;
+import com.ge.predix.sample.blobstore.write.PreconditionFailedException;
+import com.ge.predix.sample.blobstore.write.WriteCondition;
+import com.ge.predix.sample.blobstore.write.WriteConflictException;
+import com.wordnik.swagger.annotations.Api;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+
+/**
+ * Issues signed requests so clients upload and download directly against the Object Store.
+ * Only the initiation and completion of multipart uploads go through this application.
+ */
+@RestController
+@RequestMapping("/v1/presign")
+@Api(value = "/v1/presign", description = "Signed Blobstore requests")
+public class PresignController {
+
+    Log log = LogFactory.getLog(PresignController.class);
+
+    @Autowired
+    BlobStoreBackend objectStoreService;
+
+    @Autowired
+    ConditionalWrites conditionalWrites;
+
+    @Value("${blobstore.presign.defaultExpirySeconds:900}")
+    private long defaultExpirySeconds;
+
+    @Value("${blobstore.presign.maxExpirySeconds:3600}")
+    private long maxExpirySeconds;
+
+    /**
+     * Signs a download of a Blob
+     *
+     * @param id      name of the Blob
+     * @param expires lifetime of the signature in seconds
+     * @return SignedRequest to send to the Object Store
+     * @throws Exception
+     */
+    @RequestMapping(value = "/blob/{id:.+}/get", method = RequestMethod.GET)
+    public ResponseEntity<SignedRequest> signGet(@PathVariable(value = "id") String id,
+                                                 @RequestParam(value = "expires", required = false) Long expires)
+            throws Exception {
+        return new ResponseEntity<SignedRequest>(signer().signGet(id, expiry(expires)), HttpStatus.OK);
+    }
+
+    /**
+     * Signs an upload of a Blob in a single request
+     *
+     * @param id          name of the Blob
+     * @param contentType media type the client will send
+     * @param expires     lifetime of the signature in seconds
+     * @return SignedRequest to send to the Object Store
+     * @throws Exception
+     */
+    @RequestMapping(value = "/blob/{id:.+}/put", method = RequestMethod.GET)
+    public ResponseEntity<SignedRequest> signPut(@PathVariable(value = "id") String id,
+                                                 @RequestParam(value = "contentType", required = false) String contentType,
+                                                 @RequestParam(value = "expires", required = false) Long expires)
+            throws Exception {
+        return new ResponseEntity<SignedRequest>(signer().signPut(id, contentType, expiry(expires)), HttpStatus.OK);
+    }
+
+    /**
+     * Starts a multipart upload whose parts the client uploads directly
+     *
+     * @param id          name of the Blob
+     * @param contentType media type of the Blob
+     * @return Map with the uploadId
+     * @throws Exception
+     */
+    @RequestMapping(value = "/blob/{id:.+}/multipart", method = RequestMethod.POST)
+    public ResponseEntity<Map<String, String>> initiateMultipartUpload(@PathVariable(value = "id") String id,
+                                                                       @RequestParam(value = "contentType", required = false) String contentType)
+            throws Exception {
+        String uploadId = signer().initiateMultipartUpload(id, contentType);
+        log.info("Multipart upload " + uploadId + " started for " + id);
+        return new ResponseEntity<Map<String, String>>(Collections.singletonMap("uploadId", uploadId), HttpStatus.CREATED);
+    }
+
+    /**
+     * Signs the upload of one part
+     *
+     * @param id         name of the Blob
+     * @param uploadId   id of the multipart upload
+     * @param partNumber number of the part, starting at 1
+     * @param expires    lifetime of the signature in seconds
+     * @return SignedRequest to send to the Object Store
+     * @throws Exception
+     */
+    @RequestMapping(value = "/blob/{id:.+}/multipart/{uploadId}/part/{partNumber}", method = RequestMethod.GET)
+    public ResponseEntity<SignedRequest> signUploadPart(@PathVariable(value = "id") String id,
+                                                        @PathVariable(value = "uploadId") String uploadId,
+                                                        @PathVariable(value = "partNumber") int partNumber,
+                                                        @RequestParam(value = "expires", required = false) Long expires)
+            throws Exception {
+        return new ResponseEntity<SignedRequest>(signer().signUploadPart(id, uploadId, partNumber, expiry(expires)),
+                HttpStatus.OK);
+    }
+
+    /**
+     * Completes a multipart upload. The completion is the write of the Blob, so it takes the same
+     * path as an upload through this application: it is serialized with other writes of the
+     * name, checked against the preconditions and reported to the metadata listeners.
+     *
+     * @param id          name of the Blob
+     * @param uploadId    id of the multipart upload
+     * @param partETags   ETag returned by the Object Store for each part, keyed by part number
+     * @param ifMatch     ETags one of which the current Blob must have, * for any existing Blob
+     * @param ifNoneMatch * to only create the Blob if it does not exist yet
+     * @return BlobInfo of the stored Blob
+     * @throws Exception
+     */
+    @RequestMapping(value = "/blob/{id:.+}/multipart/{uploadId}/complete", method = RequestMethod.POST)
+    public ResponseEntity<BlobInfo> completeMultipartUpload(@PathVariable(value = "id") final String id,
+                                                            @PathVariable(value = "uploadId") final String uploadId,
+                                                            @RequestBody final TreeMap<Integer, String> partETags,
+                                                            @RequestHeader(value = "If-Match", required = false) String ifMatch,
+                                                            @RequestHeader(value = "If-None-Match", required = false) String ifNoneMatch)
+            throws Exception {
+        try {
+            final BlobRequestSigning signer = signer();
+            BlobInfo info = conditionalWrites.write(id, WriteCondition.fromHeaders(ifMatch, ifNoneMatch), new Callable<BlobInfo>() {
+                @Override
+                public BlobInfo call() throws Exception {
+                    return signer.completeMultipartUpload(id, uploadId, partETags);
+                }
+            });
+            log.info("Multipart upload " + uploadId + " completed for " + id);
+            return new ResponseEntity<BlobInfo>(info, HttpStatus.OK);
+        } catch (Exception e) {
+            log.error("completeMultipartUpload(): Exception occurred : " + e.getMessage());
+            throw e;
+        }
+    }
+
+    /**
+     * Abandons a multipart upload
+     *
+     * @param id       name of the Blob
+     * @param uploadId id of the multipart upload
+     * @throws Exception
+     */
+    @RequestMapping(value = "/blob/{id:.+}/multipart/{uploadId}", method = RequestMethod.DELETE)
+    public ResponseEntity<Void> abortMultipartUpload(@PathVariable(value = "id") String id,
+                                                     @PathVariable(value = "uploadId") String uploadId)
+            throws Exception {
+        signer().abortMultipartUpload(id, uploadId);
+        log.info("Multipart upload " + uploadId + " aborted for " + id);
+        return new ResponseEntity<Void>(HttpStatus.NO_CONTENT);
+    }
+
+    /**
+     * Maps operations the backend cannot sign to 501
+     */
+    @ExceptionHandler(UnsupportedOperationException.class)
+    public ResponseEntity<String> handleUnsupported(UnsupportedOperationException e) {
+        return new ResponseEntity<String>(e.getMessage(), HttpStatus.NOT_IMPLEMENTED);
+    }
+
+    /**
+     * Maps a failed If-Match or If-None-Match to 412
+     */
+    @ExceptionHandler(PreconditionFailedException.class)
+    public ResponseEntity<String> handlePreconditionFailed(PreconditionFailedException e) {
+        return new ResponseEntity<String>(e.getMessage(), HttpStatus.PRECONDITION_FAILED);
+    }
+
+    /**
+     * Maps an If-Match or If-None-Match naming no ETag to 400
+     */
+    @ExceptionHandler(InvalidConditionException.class)
+    public ResponseEntity<String> handleInvalidCondition(InvalidConditionException e) {
+        return new ResponseEntity<String>(e.getMessage(), HttpStatus.BAD_REQUEST);
+    }
+
+    /**
+     * Maps a completion rejected because the same key is being written to 409
+     */
+    @ExceptionHandler(WriteConflictException.class)
+    public ResponseEntity<String> handleWriteConflict(WriteConflictException e) {
+        return new ResponseEntity<String>(e.getMessage(), HttpStatus.CONFLICT);
+    }
+
+    /**
+     * Backends clients cannot reach directly, e.g. the filesystem backend, do not sign requests
+     */
+    private BlobRequestSigning signer() {
+        if (!(objectStoreService instanceof BlobRequestSigning)) {
+            throw new UnsupportedOperationException("The configured backend does not support signed requests");
+        }
+        return (BlobRequestSigning) objectStoreService;
+    }
+
+    private long expiry(Long expires) {
+        if (expires == null || expires <= 0) {
+            return defaultExpirySeconds;
+        }
+        return Math.min(expires, maxExpirySeconds);
+    }
+}
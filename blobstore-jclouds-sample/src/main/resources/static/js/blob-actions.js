@@ -1,5 +1,5 @@
    $(function() {
-       $('.delete-blob-link').click(function(event) {
+       $(document).on('click', '.delete-blob-link', function(event) {
        $.ajax({
            url:'/v1/blob/' + $(event.target).attr('data-blob-id'),
            type: 'DELETE',
@@ -40,4 +40,36 @@
                location.reload();
            });
        });
+
+       // Loads the next page of rows whenever the end of the table comes into view
+       var loadingRows = false;
+       function loadMoreRows() {
+           var rows = $('#blob-rows');
+           var marker = rows.attr('data-next-marker');
+           if (!marker || loadingRows || $(window).scrollTop() + $(window).height() < $(document).height() - 200) {
+               return;
+           }
+           loadingRows = true;
+           $.ajax({
+               url: '/rows',
+               data: {marker: marker},
+               global: false
+           }).done(function(html) {
+               var page = $('<table>' + html + '</table>').find('tbody');
+               rows.append(page.children('tr'));
+               var next = page.attr('data-next-marker');
+               if (next) {
+                   rows.attr('data-next-marker', next);
+               } else {
+                   rows.removeAttr('data-next-marker');
+               }
+               loadingRows = false;
+               loadMoreRows();
+           }).fail(function(request) {
+               console.log(request.responseText);
+               loadingRows = false;
+           });
+       }
+       $(window).on('scroll resize', loadMoreRows);
+       loadMoreRows();
    });